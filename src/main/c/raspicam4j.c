@@ -173,6 +173,34 @@ JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_readFrame(JNIEnv *env
     return readBytes;
 }
 
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_readFrameDirect(JNIEnv *env, jobject object, jint fd, jobject target, jint start, jint remaining) {
+
+    // Direct buffers are not moved by the JVM so their memory can be written as is.
+    char* bytes = (char *) (*env)->GetDirectBufferAddress(env, target);
+    if (bytes == NULL || remaining < bufferinfo.length) {
+        fprintf(stderr, "Frame buffer is not direct or is too small.\n");
+        return -1;
+    }
+
+    // If -1 is returned, the buffer isn't ready to read yet.
+    if (v4l2_ioctl(fd, VIDIOC_DQBUF, &bufferinfo) < 0) {
+        return -1;
+    }
+
+    // Place buffer bytes into the Java buffer.
+    int readBytes = bufferinfo.length;
+    memcpy(bytes + start, buffer_start, readBytes);
+
+    // Put the buffer in the incoming queue.
+    if (v4l2_ioctl(fd, VIDIOC_QBUF, &bufferinfo) < 0) {
+        fprintf(stderr, "Could not queue buffer (during read).\n");
+        return -1; // TODO: More descriptive error?
+    }
+
+    // Success.
+    return readBytes;
+}
+
 JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_close(JNIEnv *env, jobject object, jint fd) {
 
     // Deactivate streaming
@@ -181,4 +209,235 @@ JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_close(JNIEnv *env, jo
     } else {
         v4l2_close(fd);
     }
-}
\ No newline at end of file
+}
+
+// Streaming state, one entry per open stream. Buffers stay mapped for the life of
+// the stream and are handed to Java as direct byte buffers so frames are never copied.
+#define MAX_STREAMS 4
+#define MAX_STREAM_BUFFERS 32
+
+struct stream {
+    int fd;
+    int width;
+    int height;
+    int count;
+    void* starts[MAX_STREAM_BUFFERS];
+    size_t lengths[MAX_STREAM_BUFFERS];
+    int bytesused[MAX_STREAM_BUFFERS];
+};
+
+struct stream streams[MAX_STREAMS];
+int streams_initialized = false;
+
+static struct stream* find_stream(int fd) {
+    if (!streams_initialized) {
+        for (int i = 0; i < MAX_STREAMS; i++) {
+            streams[i].fd = -1;
+            streams[i].count = 0;
+        }
+        streams_initialized = true;
+    }
+    for (int i = 0; i < MAX_STREAMS; i++) {
+        if (streams[i].fd == fd) {
+            return &streams[i];
+        }
+    }
+    return NULL;
+}
+
+static void release_stream(struct stream* s, int fd) {
+    for (int i = 0; i < s->count; i++) {
+        v4l2_munmap(s->starts[i], s->lengths[i]);
+    }
+    s->count = 0;
+    s->fd = -1;
+    v4l2_close(fd);
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_openStream(JNIEnv *env, jobject object, jstring device, jint width, jint height, jint pixelFormat, jint bufferCount) {
+
+    // Find a free stream slot.
+    struct stream* s = find_stream(-1);
+    if (s == NULL) {
+        fprintf(stderr, "Too many open camera streams.\n");
+        return -1;
+    }
+
+    const char *actualDevice = (*env)->GetStringUTFChars(env, device, NULL);
+    int fd = v4l2_open(actualDevice, O_RDWR | O_NONBLOCK, 0);
+    if (fd < 0) {
+        fprintf(stderr, "Could not open video feed at: %s.\n", actualDevice);
+        (*env)->ReleaseStringUTFChars(env, device, actualDevice);
+        return -1;
+    }
+    (*env)->ReleaseStringUTFChars(env, device, actualDevice);
+
+    // Clear and setup pixel format.
+    struct v4l2_format format;
+    memset(&(format), 0, sizeof(format));
+    format.type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+    format.fmt.pix.pixelformat = pixelFormat;
+    format.fmt.pix.width = width;
+    format.fmt.pix.height = height;
+    format.fmt.pix.field = V4L2_FIELD_ANY;
+
+    // Configure image format.
+    if (v4l2_ioctl(fd, VIDIOC_S_FMT, &format) < 0) {
+        v4l2_close(fd);
+        fprintf(stderr, "Could not configure desired image format.\n");
+        return -1;
+    }
+
+    // The format can not be substituted, listeners depend on the layout.
+    if (format.fmt.pix.pixelformat != pixelFormat) {
+        v4l2_close(fd);
+        fprintf(stderr, "Camera does not support format %d, it offered %d.\n", pixelFormat, format.fmt.pix.pixelformat);
+        return -1;
+    }
+
+    // Resolution may be adjusted to the nearest the camera supports.
+    s->width = format.fmt.pix.width;
+    s->height = format.fmt.pix.height;
+
+    // Request the ring of mmap buffers.
+    struct v4l2_requestbuffers bufrequest;
+    memset(&bufrequest, 0, sizeof(bufrequest));
+    bufrequest.type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+    bufrequest.memory = V4L2_MEMORY_MMAP;
+    bufrequest.count = bufferCount > MAX_STREAM_BUFFERS ? MAX_STREAM_BUFFERS : bufferCount;
+
+    if (v4l2_ioctl(fd, VIDIOC_REQBUFS, &bufrequest) < 0 || bufrequest.count < 1) {
+        v4l2_close(fd);
+        fprintf(stderr, "Could not request buffers.\n");
+        return -1;
+    }
+
+    // Map and queue every buffer the driver gave us.
+    s->count = 0;
+    for (int i = 0; i < bufrequest.count; i++) {
+        struct v4l2_buffer bufferinfo;
+        memset(&bufferinfo, 0, sizeof(bufferinfo));
+        bufferinfo.type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+        bufferinfo.memory = V4L2_MEMORY_MMAP;
+        bufferinfo.index = i;
+
+        if (v4l2_ioctl(fd, VIDIOC_QUERYBUF, &bufferinfo) < 0) {
+            release_stream(s, fd);
+            fprintf(stderr, "Could not query buffer %d.\n", i);
+            return -1;
+        }
+
+        void* start = v4l2_mmap(NULL, bufferinfo.length, PROT_READ | PROT_WRITE, MAP_SHARED, fd, bufferinfo.m.offset);
+        if (start == MAP_FAILED) {
+            release_stream(s, fd);
+            fprintf(stderr, "Could not memory map buffer %d.\n", i);
+            return -1;
+        }
+        s->starts[i] = start;
+        s->lengths[i] = bufferinfo.length;
+        s->bytesused[i] = 0;
+        s->count = i + 1;
+
+        if (v4l2_ioctl(fd, VIDIOC_QBUF, &bufferinfo) < 0) {
+            release_stream(s, fd);
+            fprintf(stderr, "Could not queue buffer %d.\n", i);
+            return -1;
+        }
+    }
+
+    // Activate streaming
+    enum v4l2_buf_type type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+    if (v4l2_ioctl(fd, VIDIOC_STREAMON, &type) < 0) {
+        release_stream(s, fd);
+        fprintf(stderr, "Could not activate streaming.\n");
+        return -1;
+    }
+
+    s->fd = fd;
+    return fd;
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_getStreamWidth(JNIEnv *env, jobject object, jint fd) {
+    struct stream* s = find_stream(fd);
+    return s == NULL ? -1 : s->width;
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_getStreamHeight(JNIEnv *env, jobject object, jint fd) {
+    struct stream* s = find_stream(fd);
+    return s == NULL ? -1 : s->height;
+}
+
+JNIEXPORT jobjectArray JNICALL Java_com_ociweb_iot_camera_RaspiCam_mapStreamBuffers(JNIEnv *env, jobject object, jint fd) {
+    struct stream* s = find_stream(fd);
+    if (s == NULL) {
+        return NULL;
+    }
+
+    jclass bufferClass = (*env)->FindClass(env, "java/nio/ByteBuffer");
+    jobjectArray result = (*env)->NewObjectArray(env, s->count, bufferClass, NULL);
+    for (int i = 0; i < s->count; i++) {
+        jobject buffer = (*env)->NewDirectByteBuffer(env, s->starts[i], (jlong) s->lengths[i]);
+        (*env)->SetObjectArrayElement(env, result, i, buffer);
+        (*env)->DeleteLocalRef(env, buffer);
+    }
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_dequeue(JNIEnv *env, jobject object, jint fd) {
+    struct stream* s = find_stream(fd);
+    if (s == NULL) {
+        return -1;
+    }
+
+    struct v4l2_buffer bufferinfo;
+    memset(&bufferinfo, 0, sizeof(bufferinfo));
+    bufferinfo.type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+    bufferinfo.memory = V4L2_MEMORY_MMAP;
+
+    // Non blocking, -1 when no frame has completed yet.
+    if (v4l2_ioctl(fd, VIDIOC_DQBUF, &bufferinfo) < 0) {
+        return -1;
+    }
+
+    s->bytesused[bufferinfo.index] = bufferinfo.bytesused;
+    return bufferinfo.index;
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_getBytesUsed(JNIEnv *env, jobject object, jint fd, jint index) {
+    struct stream* s = find_stream(fd);
+    if (s == NULL || index < 0 || index >= s->count) {
+        return -1;
+    }
+    return s->bytesused[index];
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_requeue(JNIEnv *env, jobject object, jint fd, jint index) {
+    struct stream* s = find_stream(fd);
+    if (s == NULL || index < 0 || index >= s->count) {
+        return -1;
+    }
+
+    struct v4l2_buffer bufferinfo;
+    memset(&bufferinfo, 0, sizeof(bufferinfo));
+    bufferinfo.type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+    bufferinfo.memory = V4L2_MEMORY_MMAP;
+    bufferinfo.index = index;
+
+    if (v4l2_ioctl(fd, VIDIOC_QBUF, &bufferinfo) < 0) {
+        fprintf(stderr, "Could not queue buffer %d.\n", index);
+        return -1;
+    }
+    return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_ociweb_iot_camera_RaspiCam_closeStreamNative(JNIEnv *env, jobject object, jint fd) {
+    struct stream* s = find_stream(fd);
+    if (s == NULL) {
+        return -1;
+    }
+
+    enum v4l2_buf_type type = V4L2_BUF_TYPE_VIDEO_CAPTURE;
+    int result = v4l2_ioctl(fd, VIDIOC_STREAMOFF, &type);
+    release_stream(s, fd);
+    return result < 0 ? -1 : 0;
+}
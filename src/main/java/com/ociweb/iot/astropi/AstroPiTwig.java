@@ -6,6 +6,7 @@
 package com.ociweb.iot.astropi;
 
 import com.ociweb.iot.hardware.I2CConnection;
+import com.ociweb.iot.hardware.I2CFifo;
 import com.ociweb.iot.hardware.I2CIODevice;
 import com.ociweb.iot.maker.FogCommandChannel;
 import com.ociweb.iot.maker.IODeviceTransducer;
@@ -51,6 +52,21 @@ public enum AstroPiTwig {
                     return new I2CConnection(this, I2C_ADDR, REG_ADDR, BYTESTOREAD, REG_ID, null);
                 }
             },
+            GetMotionFifo(){
+                @Override
+                public int defaultPullRateMS() {
+                    return 10; //10 samples at 952 Hz, well inside the 32 the FIFO holds
+                }
+                @Override
+                public I2CConnection getI2CConnection() { //drains every gyro and accel sample waiting in the FIFO on each poll
+                    byte I2C_ADDR = AstroPi_Constants.LSM9DS1_AG_ADDR;
+                    I2CFifo FIFO = new I2CFifo(AstroPi_Constants.FIFO_SRC, AstroPi_Constants.FIFO_LEVEL_MASK,
+                                               new byte[]{AstroPi_Constants.OUT_X_L_G, AstroPi_Constants.OUT_X_L_XL},
+                                               new int[]{6, 6});
+                    byte REG_ID = AstroPi_Constants.FIFO_SRC; //just an identifier
+                    return new I2CConnection(this, I2C_ADDR, FIFO, REG_ID, null);
+                }
+            },
             GetMag(){
                 @Override
                 public I2CConnection getI2CConnection() {
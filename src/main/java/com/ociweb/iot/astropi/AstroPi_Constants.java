@@ -53,6 +53,10 @@ public class AstroPi_Constants {
     public static final int OUT_Z_H_XL	=	0x2D;
     public static final int FIFO_CTRL	=	0x2E;
     public static final int FIFO_SRC	=	0x2F;
+    public static final int FIFO_EN         =       0x02; //CTRL_REG9 bit
+    public static final int FIFO_MODE_CONTINUOUS =  0xC0; //FIFO_CTRL mode bits, oldest samples are dropped when full
+    public static final int FIFO_LEVEL_MASK =       0x3F; //FIFO_SRC bits counting the waiting samples
+    public static final int FIFO_DEPTH      =       32;
     public static final int INT_GEN_CFG_G	=0x30;
     public static final int INT_GEN_THS_XH_G=0x31;
     public static final int INT_GEN_THS_XL_G=0x32;
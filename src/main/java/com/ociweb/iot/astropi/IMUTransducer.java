@@ -9,6 +9,7 @@ import com.ociweb.iot.astropi.listeners.MagListener;
 import com.ociweb.iot.astropi.listeners.AccelListener;
 import com.ociweb.iot.astropi.listeners.GyroListener;
 import com.ociweb.iot.astropi.listeners.AstroPiListener;
+import com.ociweb.iot.astropi.listeners.IMUBatchListener;
 import static com.ociweb.iot.astropi.AstroPi_Constants.*;
 
 import com.ociweb.gl.api.transducer.StartupListenerTransducer;
@@ -38,6 +39,9 @@ public class IMUTransducer implements IODeviceTransducer,I2CListenerTransducer,S
             if(item instanceof MagListener){
                 this.magListener = (MagListener) item;
             }
+            if(item instanceof IMUBatchListener){
+                this.batchListener = (IMUBatchListener) item;
+            }
         
         }
     }
@@ -45,6 +49,20 @@ public class IMUTransducer implements IODeviceTransducer,I2CListenerTransducer,S
     @Override
     public void startup() {
         this.begin(true, true, true);
+        if(null != batchListener){
+            this.enableFIFO(16);
+        }
+    }
+    
+    /**
+     * Keep gyroscope and accelerometer samples in the FIFO, dropping the oldest when full, so the
+     * GetMotionFifo twig can drain them in bursts. While enabled the single sample twigs read the oldest
+     * waiting sample instead of the latest. This is done at startup when an IMUBatchListener is given.
+     * @param threshold samples in the FIFO before the threshold flag is raised, between 0 and 31
+     */
+    public void enableFIFO(int threshold){
+        agWriteByte(CTRL_REG9, FIFO_EN);
+        agWriteByte(FIFO_CTRL, FIFO_MODE_CONTINUOUS | (threshold & 0x1F));
     }
     
     /**
@@ -516,6 +534,137 @@ public class IMUTransducer implements IODeviceTransducer,I2CListenerTransducer,S
     private GyroListener gyroListener;
     private AccelListener accelListener;
     private MagListener magListener;
+    private IMUBatchListener batchListener;
+    
+    private long[] fifoTimes = new long[FIFO_DEPTH];
+    private double[] fifoGyro = new double[3*FIFO_DEPTH];
+    private double[] fifoAccel = new double[3*FIFO_DEPTH];
+    
+    /**
+     * Microseconds between samples, with the gyroscope on the accelerometer runs at its rate.
+     */
+    private long samplePeriodUS(){
+        switch(GyroSettings.enabled ? GyroSettings.sampleRate : AccelSettings.sampleRate){
+            case 1:
+                return GyroSettings.enabled ? 67_114 : 100_000;
+            case 2:
+                return GyroSettings.enabled ? 16_807 : 20_000;
+            case 3:
+                return 8_403;
+            case 4:
+                return 4_202;
+            case 5:
+                return 2_101;
+            default:
+                return 1_050;
+        }
+    }
+    
+    private static int readAxis(byte[] backing, int position, int mask){
+        return (short)(((backing[(position+1)&mask]&0xFF) << 8) | (backing[position&mask]&0xFF));
+    }
+    
+    /**
+     * Convert a burst drained from the FIFO, the first byte counts the samples still waiting
+     * and is followed by 6 gyro and 6 accel bytes for each sample, oldest first.
+     * Each sample is placed in time from the output data rate, the newest one was taken just before those still waiting.
+     */
+    private void interpretFifo(long time, byte[] backing, int position, int length, int mask){
+        int waiting = backing[position&mask]&0xFF;
+        int count = (length-1)/12;
+        if (fifoTimes.length < count) {
+            fifoTimes = new long[count];
+            fifoGyro = new double[3*count];
+            fifoAccel = new double[3*count];
+        }
+        long periodUS = samplePeriodUS();
+        long newestUS = time*1000 - waiting*periodUS;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int p = position+1+12*i;
+            int gx = readAxis(backing, p, mask);
+            int gy = readAxis(backing, p+2, mask);
+            int gz = readAxis(backing, p+4, mask);
+            int ax = readAxis(backing, p+6, mask);
+            int ay = readAxis(backing, p+8, mask);
+            int az = readAxis(backing, p+10, mask);
+            boolean calibrating = takeGyroCalibration(gx, gy, gz);
+            if (takeAccelCalibration(ax, ay, az) || calibrating) {
+                continue;
+            }
+            fifoTimes[n] = newestUS - (count-1-i)*periodUS;
+            fifoGyro[3*n]   = calcGyro(gx-GyroSettings.gBiasRaw[0]);
+            fifoGyro[3*n+1] = calcGyro(gy-GyroSettings.gBiasRaw[1]);
+            fifoGyro[3*n+2] = calcGyro(gz-GyroSettings.gBiasRaw[2]);
+            fifoAccel[3*n]   = calcAccel(ax-AccelSettings.aBiasRaw[0]);
+            fifoAccel[3*n+1] = calcAccel(ay-AccelSettings.aBiasRaw[1]);
+            fifoAccel[3*n+2] = calcAccel(az-AccelSettings.aBiasRaw[2]);
+            if (null == batchListener) {
+                if (null != gyroListener) {
+                    gyroListener.gyroscopeValues(fifoGyro[3*n], fifoGyro[3*n+1], fifoGyro[3*n+2]);
+                }
+                if (null != accelListener) {
+                    accelListener.accelerationValues(fifoAccel[3*n], fifoAccel[3*n+1], fifoAccel[3*n+2]);
+                }
+            }
+            n++;
+        }
+        if (null != batchListener && n > 0) {
+            batchListener.motionValues(fifoTimes, fifoGyro, fifoAccel, n);
+        }
+    }
+    
+    /**
+     * Collects the bias from the first samples, ignoring the very first one.
+     * @return true while the sample is used for calibration
+     */
+    private boolean takeGyroCalibration(int x, int y, int z){
+        if(calibrateGyro < 9){
+            if(calibrateGyro != 0){
+                gBiasRawTemp[0] += x;
+                gBiasRawTemp[1] += y;
+                gBiasRawTemp[2] += z;
+            }
+            calibrateGyro++;
+            return true;
+        }
+        else if(calibrateGyro == 9){
+            for(int i=0;i<3;i++){
+                GyroSettings.gBiasRaw[i] = gBiasRawTemp[i]>>3;
+                GyroSettings.gBias[i] = calcGyro(GyroSettings.gBiasRaw[i]);
+            }
+            System.out.println("Gyroscope Calibration Complete.");
+            calibrateGyro++;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Collects the bias from the first samples, ignoring the very first one. Z is expected to read 1g.
+     * @return true while the sample is used for calibration
+     */
+    private boolean takeAccelCalibration(int x, int y, int z){
+        if(calibrateAccel < 9){
+            if(calibrateAccel !=0){
+                aBiasRawTemp[0] += x;
+                aBiasRawTemp[1] += y;
+                aBiasRawTemp[2] += z - (int)(1/AccelSettings.aRes);
+            }
+            calibrateAccel++;
+            return true;
+        }
+        else if(calibrateAccel == 9){
+            for(int i=0;i<3;i++){
+                AccelSettings.aBiasRaw[i] = aBiasRawTemp[i]>>3;
+                AccelSettings.aBias[i] = calcAccel(AccelSettings.aBiasRaw[i]);
+            }
+            System.out.println("Accelerometer Calibration Complete.");
+            calibrateAccel++;
+            return true;
+        }
+        return false;
+    }
     
     //Calibrate the sensor by taking 8 samples (ignoring the first sample) and average them. Then set
     // it to be the Bias value
@@ -524,49 +673,20 @@ public class IMUTransducer implements IODeviceTransducer,I2CListenerTransducer,S
     public void i2cEvent(int addr, int register, long time, byte[] backing, int position, int length, int mask) {
         if(addr == AstroPi_Constants.LSM9DS1_AG_ADDR){
             if(register == AstroPi_Constants.OUT_X_L_G){
-                if(calibrateGyro < 9){
-                    if(calibrateGyro != 0){
-                        int[] temp = this.interpretData(backing, position, length, mask);
-                        gBiasRawTemp[0] += temp[0];
-                        gBiasRawTemp[1] += temp[1];
-                        gBiasRawTemp[2] += temp[2];
-                    }
-                    calibrateGyro++;
-                }
-                else if(calibrateGyro == 9){
-                    for(int i=0;i<3;i++){
-                        GyroSettings.gBiasRaw[i] = gBiasRawTemp[i]>>3;
-                        GyroSettings.gBias[i] = calcGyro(GyroSettings.gBiasRaw[i]);
-                    }
-                    System.out.println("Gyroscope Calibration Complete.");
-                    calibrateGyro++;
-                }else{
-                    int[] temp = this.interpretData(backing, position, length, mask);
+                int[] temp = this.interpretData(backing, position, length, mask);
+                if(!takeGyroCalibration(temp[0], temp[1], temp[2])){
                     gyroListener.gyroscopeValues(calcGyro(temp[0]-GyroSettings.gBiasRaw[0]), calcGyro(temp[1]-GyroSettings.gBiasRaw[1]), calcGyro(temp[2]-GyroSettings.gBiasRaw[2]));
                 }
             }
             if(register == AstroPi_Constants.OUT_X_L_XL){
-                if(calibrateAccel < 9){
-                    if(calibrateAccel !=0){
-                        int[] temp = this.interpretData(backing, position, length, mask);
-                        aBiasRawTemp[0] += temp[0];
-                        aBiasRawTemp[1] += temp[1];
-                        aBiasRawTemp[2] += temp[2] - (int)(1/AccelSettings.aRes);
-                    }
-                    calibrateAccel++;
-                }
-                else if(calibrateAccel == 9){
-                    for(int i=0;i<3;i++){
-                        AccelSettings.aBiasRaw[i] = aBiasRawTemp[i]>>3;
-                        AccelSettings.aBias[i] = calcAccel(AccelSettings.aBiasRaw[i]);
-                    }
-                    System.out.println("Accelerometer Calibration Complete.");
-                    calibrateAccel++;
-                }else{
-                    int[] temp = this.interpretData(backing, position, length, mask);
+                int[] temp = this.interpretData(backing, position, length, mask);
+                if(!takeAccelCalibration(temp[0], temp[1], temp[2])){
                     accelListener.accelerationValues(calcAccel(temp[0]-AccelSettings.aBiasRaw[0]), calcAccel(temp[1]-AccelSettings.aBiasRaw[1]), calcAccel(temp[2]-AccelSettings.aBiasRaw[2]));
                 }
             }
+            if(register == AstroPi_Constants.FIFO_SRC){
+                interpretFifo(time, backing, position, length, mask);
+            }
         }
         if(addr == AstroPi_Constants.LSM9DS1_M_ADDR){
             if(register == AstroPi_Constants.OUT_X_L_M){
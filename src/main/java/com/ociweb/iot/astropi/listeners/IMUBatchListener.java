@@ -0,0 +1,19 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.ociweb.iot.astropi.listeners;
+
+/**
+ * Receives the gyroscope and accelerometer samples drained from the LSM9DS1 FIFO by the GetMotionFifo twig.
+ */
+public interface IMUBatchListener extends AstroPiListener{
+    /**
+     * @param timesUS microsecond timestamp of each sample, placed from the output data rate
+     * @param gyro x,y,z of each sample one after the other in DPS
+     * @param accel x,y,z of each sample one after the other in g
+     * @param count number of samples, the arrays are reused and may be longer
+     */
+    void motionValues(long[] timesUS, double[] gyro, double[] accel, int count);
+}
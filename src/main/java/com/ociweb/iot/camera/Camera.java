@@ -1,5 +1,7 @@
 package com.ociweb.iot.camera;
 
+import java.nio.ByteBuffer;
+
 /**
  * TODO:
  *
@@ -48,6 +50,27 @@ public interface Camera {
      */
     public int readFrame(int fd, byte[] bytes, int start);
 
+    /**
+     * Reads the next frame directly into a buffer, starting at its position. Used
+     * to capture into pooled frames without an intermediate array.
+     *
+     * The default implementation reads into a temporary array and copies it over,
+     * cameras able to fill the buffer directly should override this.
+     *
+     * @param fd File descriptor of the camera to read from. Obtained from {@link #open(String, int, int)}.
+     * @param target Buffer with at least {@link #getFrameSizeBytes(int)} bytes remaining.
+     *
+     * @return The number of bytes read, or -1 if no frame was read.
+     */
+    default int readFrame(int fd, ByteBuffer target) {
+        byte[] bytes = new byte[getFrameSizeBytes(fd)];
+        int count = readFrame(fd, bytes, 0);
+        if (count > 0) {
+            target.put(bytes, 0, count);
+        }
+        return count;
+    }
+
     /**
      * Closes a camera file descriptor.
      *
@@ -0,0 +1,47 @@
+package com.ociweb.iot.camera;
+
+/**
+ * Pixel formats a {@link StreamingCamera} can be asked to deliver, with their V4L2 fourcc codes.
+ */
+public enum CameraFormat {
+
+    RGB24('R','G','B','3', 24),
+    YUYV('Y','U','Y','V', 16),
+    GREY('G','R','E','Y', 8),
+    MJPEG('M','J','P','G', 0);
+
+    /**
+     * V4L2 pixel format code.
+     */
+    public final int fourcc;
+
+    /**
+     * Bits per pixel, zero for compressed formats whose frame size varies.
+     */
+    public final int bitsPerPixel;
+
+    CameraFormat(char a, char b, char c, char d, int bitsPerPixel) {
+        this.fourcc = a | (b << 8) | (c << 16) | (d << 24);
+        this.bitsPerPixel = bitsPerPixel;
+    }
+
+    public boolean isCompressed() {
+        return 0 == bitsPerPixel;
+    }
+
+    /**
+     * Bytes in one row, zero for compressed formats.
+     */
+    public int rowBytes(int width) {
+        return (width * bitsPerPixel) >> 3;
+    }
+
+    /**
+     * Bytes in one frame, for compressed formats this is the size of the uncompressed RGB24 frame
+     * which no compressed frame exceeds.
+     */
+    public int frameBytes(int width, int height) {
+        return isCompressed() ? width * height * 3 : rowBytes(width) * height;
+    }
+
+}
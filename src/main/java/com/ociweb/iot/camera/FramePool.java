@@ -0,0 +1,173 @@
+package com.ociweb.iot.camera;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed set of direct buffers which camera frames are captured into. Only the id of a
+ * frame travels down the {@link com.ociweb.pronghorn.iot.schema.ImageSchema} pipe, every
+ * listener reads the same memory and the slot is reused once each of them has released it.
+ *
+ * The buffers are either allocated by the pool or are the memory mapped buffers of a
+ * {@link StreamingCamera}, in which case the camera stage hands each frame back to the
+ * driver once the pool reports it free.
+ *
+ * Each slot holds a count of the readers still using it, zero means the slot is free and
+ * -1 means the camera stage is filling it.
+ */
+public class FramePool {
+
+    private static final int FREE = 0;
+    private static final int FILLING = -1;
+
+    private final int requestedFrames;
+    private ByteBuffer[] buffers;
+    private AtomicIntegerArray refCounts;
+    private int frameBytes;
+    private int next;
+
+    /**
+     * Pool which is given its buffers later by {@link #allocate(int)} or {@link #wrap(ByteBuffer[])},
+     * once the camera has been opened and the frame size is known.
+     */
+    public FramePool(int frames) {
+        if (frames < 1) {
+            throw new UnsupportedOperationException("Frame pool must hold at least one frame");
+        }
+        this.requestedFrames = frames;
+    }
+
+    public FramePool(int frames, int frameBytes) {
+        this(frames);
+        allocate(frameBytes);
+    }
+
+    /**
+     * Allocates the requested number of direct buffers, each large enough for one frame.
+     */
+    public void allocate(int frameBytes) {
+        ByteBuffer[] local = new ByteBuffer[requestedFrames];
+        int i = local.length;
+        while (--i>=0) {
+            local[i] = ByteBuffer.allocateDirect(frameBytes);
+        }
+        init(local, frameBytes);
+    }
+
+    /**
+     * Uses buffers owned by the camera, frame ids are then the camera buffer indexes.
+     */
+    public void wrap(ByteBuffer[] frames) {
+        int max = 0;
+        int i = frames.length;
+        while (--i>=0) {
+            max = Math.max(max, frames[i].capacity());
+        }
+        init(frames, max);
+    }
+
+    private void init(ByteBuffer[] frames, int frameBytes) {
+        if (null != buffers) {
+            throw new UnsupportedOperationException("Frame pool buffers have already been provided");
+        }
+        this.frameBytes = frameBytes;
+        this.refCounts = new AtomicIntegerArray(frames.length);
+        this.buffers = frames;
+    }
+
+    public int frames() {
+        return null == buffers ? requestedFrames : buffers.length;
+    }
+
+    public int frameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * Called only by the camera stage.
+     *
+     * @return id of a free frame now reserved for filling, or -1 if every frame is still held by listeners.
+     */
+    public int acquire() {
+        int i = buffers.length;
+        while (--i>=0) {
+            int id = next;
+            next = (next+1) % buffers.length;
+            if (refCounts.compareAndSet(id, FREE, FILLING)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reserves one specific frame, used when the camera decides which buffer was filled.
+     *
+     * @return false if the frame is still held by listeners.
+     */
+    public boolean claim(int id) {
+        return refCounts.compareAndSet(id, FREE, FILLING);
+    }
+
+    public boolean isFree(int id) {
+        return FREE == refCounts.get(id);
+    }
+
+    /**
+     * Buffer to capture into, only valid between {@link #acquire()} and {@link #publish(int, int)}.
+     */
+    public ByteBuffer fillBuffer(int id) {
+        assert(FILLING == refCounts.get(id)) : "frame must be acquired before it is filled";
+        ByteBuffer buffer = buffers[id];
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands the filled frame to its readers, each must call {@link #release(int)} once.
+     */
+    public void publish(int id, int readers) {
+        assert(FILLING == refCounts.get(id)) : "frame must be acquired before it is published";
+        refCounts.set(id, Math.max(FREE, readers));
+    }
+
+    /**
+     * Returns a frame which was acquired but could not be published.
+     */
+    public void abandon(int id) {
+        refCounts.compareAndSet(id, FILLING, FREE);
+    }
+
+    public void release(int id) {
+        int remaining = refCounts.decrementAndGet(id);
+        assert(remaining >= FREE) : "frame "+id+" released more times than it was published";
+    }
+
+    /**
+     * Frames not held by any listener, for monitoring.
+     */
+    public int available() {
+        int count = 0;
+        int i = buffers.length;
+        while (--i>=0) {
+            if (FREE == refCounts.get(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * One reusable handle per frame for a single consumer, each handle has its own
+     * read only view so consumers on different threads do not share buffer positions.
+     */
+    public ImageFrame[] newFrames() {
+        ImageFrame[] result = new ImageFrame[buffers.length];
+        int i = buffers.length;
+        while (--i>=0) {
+            result[i] = new ImageFrame(this, i, buffers[i].asReadOnlyBuffer());
+        }
+        return result;
+    }
+
+}
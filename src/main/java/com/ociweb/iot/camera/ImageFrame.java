@@ -0,0 +1,100 @@
+package com.ociweb.iot.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A captured frame held in a {@link FramePool}. The pixel data is never copied, listeners
+ * read it through {@link #buffer()} and call {@link #release()} once they are finished so
+ * the camera can capture into it again.
+ *
+ * Frames are in RGB24 format unless the camera was configured otherwise.
+ */
+public class ImageFrame {
+
+    private final FramePool pool;
+    private final int id;
+    private final ByteBuffer view;
+
+    private int width;
+    private int height;
+    private long timestamp;
+    private boolean held;
+    private byte[] row;
+
+    ImageFrame(FramePool pool, int id, ByteBuffer view) {
+        this.pool = pool;
+        this.id = id;
+        this.view = view;
+    }
+
+    /**
+     * Called by the listener stage as the frame handle arrives.
+     */
+    public void attach(int width, int height, long timestamp, int length) {
+        assert(!held) : "frame "+id+" delivered again before it was released";
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.held = true;
+        view.limit(length);
+        view.position(0);
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public int rowBytes() {
+        return height>0 ? view.limit()/height : 0;
+    }
+
+    /**
+     * Read only view of the whole frame, only valid until {@link #release()} is called.
+     */
+    public ByteBuffer buffer() {
+        assert(held) : "frame "+id+" used after release";
+        return view;
+    }
+
+    /**
+     * Copies a single row into the reusable row array, for listeners which still consume row by row.
+     */
+    public byte[] readRow(int rowIdx) {
+        int rowBytes = rowBytes();
+        if (null == row || row.length != rowBytes) {
+            row = new byte[rowBytes];
+        }
+        int pos = view.position();
+        view.position(rowIdx*rowBytes);
+        view.get(row, 0, rowBytes);
+        view.position(pos);
+        return row;
+    }
+
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * Gives the frame back to the pool, calling this more than once has no further effect.
+     */
+    public void release() {
+        if (held) {
+            held = false;
+            pool.release(id);
+        }
+    }
+
+}
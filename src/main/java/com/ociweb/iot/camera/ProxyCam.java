@@ -3,7 +3,10 @@ package com.ociweb.iot.camera;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,9 +17,13 @@ import java.util.Map;
  * In this implementation, the "device" is a path to a folder
  * containing images on the filesystem.
  *
+ * As a {@link StreamingCamera} every file in the folder is memory mapped once
+ * and the mapped files are replayed in name order as the stream buffers, so
+ * the pipeline can be exercised without camera hardware or frame copies.
+ *
  * @author Brandon Sanders [brandon@alicorn.io]
  */
-public class ProxyCam implements Camera {
+public class ProxyCam implements Camera, StreamingCamera {
 
     // Open camera file descriptors.
     private int cameraFds = 0;
@@ -26,6 +33,11 @@ public class ProxyCam implements Camera {
     private Map<Integer, Integer> camerasToFrameSizes = new HashMap<>();
     private Map<Integer, Integer> camerasToNextFrameIndices = new HashMap<>();
 
+    // Streaming state by camera file descriptor.
+    private Map<Integer, ByteBuffer[]> camerasToMappedFrames = new HashMap<>();
+    private Map<Integer, boolean[]> camerasToQueuedFrames = new HashMap<>();
+    private Map<Integer, int[]> camerasToDimensions = new HashMap<>();
+
     @Override
     public int open(String device, int width, int height) {
 
@@ -77,6 +89,134 @@ public class ProxyCam implements Camera {
         }
     }
 
+    @Override
+    public int readFrame(int fd, ByteBuffer target) {
+
+        // Only read if the FD is valid.
+        if (camerasToFrames.containsKey(fd)) {
+            File[] frames = camerasToFrames.get(fd);
+
+            // Calculate index of the next frame to read.
+            int nextFrameIndex = camerasToNextFrameIndices.get(fd) % frames.length;
+
+            // Read straight into the target buffer, no intermediate array.
+            try (FileInputStream fis = new FileInputStream(frames[nextFrameIndex])) {
+                FileChannel channel = fis.getChannel();
+                int remaining = Math.min(target.remaining(), camerasToFrameSizes.get(fd));
+                int limit = target.limit();
+                target.limit(target.position() + remaining);
+                int total = 0;
+                int count;
+                while (target.hasRemaining() && (count = channel.read(target)) > 0) {
+                    total += count;
+                }
+                target.limit(limit);
+                return total;
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                return -1;
+
+            // Increment next frame index.
+            } finally {
+                camerasToNextFrameIndices.put(fd, nextFrameIndex + 1);
+            }
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public int openStream(String device, int width, int height, CameraFormat format, int bufferCount) {
+
+        // Replay is in name order so recorded sequences play back as captured.
+        int cameraFd = open(device, width, height);
+        File[] frames = camerasToFrames.get(cameraFd);
+        Arrays.sort(frames);
+
+        // Every file is one buffer of the ring, mapped read only for the life of the stream.
+        ByteBuffer[] mapped = new ByteBuffer[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            try (FileInputStream fis = new FileInputStream(frames[i])) {
+                FileChannel channel = fis.getChannel();
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                e.printStackTrace();
+                close(cameraFd);
+                return -1;
+            }
+        }
+
+        boolean[] queued = new boolean[frames.length];
+        Arrays.fill(queued, true);
+
+        camerasToMappedFrames.put(cameraFd, mapped);
+        camerasToQueuedFrames.put(cameraFd, queued);
+        camerasToDimensions.put(cameraFd, new int[]{width, height});
+        return cameraFd;
+    }
+
+    @Override
+    public int getStreamWidth(int fd) {
+        int[] dimensions = camerasToDimensions.get(fd);
+        return null == dimensions ? -1 : dimensions[0];
+    }
+
+    @Override
+    public int getStreamHeight(int fd) {
+        int[] dimensions = camerasToDimensions.get(fd);
+        return null == dimensions ? -1 : dimensions[1];
+    }
+
+    @Override
+    public ByteBuffer[] getStreamBuffers(int fd) {
+        return camerasToMappedFrames.get(fd);
+    }
+
+    @Override
+    public int dequeue(int fd) {
+        boolean[] queued = camerasToQueuedFrames.get(fd);
+        if (null == queued) {
+            return -1;
+        }
+
+        // Like the driver, frames whose buffer is still held are skipped.
+        int start = camerasToNextFrameIndices.get(fd);
+        for (int i = 0; i < queued.length; i++) {
+            int index = (start + i) % queued.length;
+            if (queued[index]) {
+                queued[index] = false;
+                camerasToNextFrameIndices.put(fd, index + 1);
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getBytesUsed(int fd, int index) {
+        ByteBuffer[] mapped = camerasToMappedFrames.get(fd);
+        return null == mapped ? -1 : mapped[index].capacity();
+    }
+
+    @Override
+    public int requeue(int fd, int index) {
+        boolean[] queued = camerasToQueuedFrames.get(fd);
+        if (null == queued) {
+            return -1;
+        }
+        queued[index] = true;
+        return 0;
+    }
+
+    @Override
+    public int closeStream(int fd) {
+        camerasToMappedFrames.remove(fd);
+        camerasToQueuedFrames.remove(fd);
+        camerasToDimensions.remove(fd);
+        return close(fd);
+    }
+
     @Override
     public int close(int fd) {
         camerasToFrames.remove(fd);
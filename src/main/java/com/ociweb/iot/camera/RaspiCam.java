@@ -6,6 +6,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Native wrapper for accessing Raspberry Pi camera data.
@@ -13,9 +16,12 @@ import java.io.IOException;
  * Special thanks to: http://jwhsmith.net/2014/12/capturing-a-webcam-stream-using-v4l2/
  * for giving a good introduction of V4L2 API usage.
  *
+ * The {@link StreamingCamera} methods keep a ring of V4L2 mmap buffers queued and
+ * hand them out as direct buffers over the mapped memory, so frames are not copied.
+ *
  * @author Brandon Sanders [brandon@alicorn.io]
  */
-public final class RaspiCam implements Camera {
+public final class RaspiCam implements Camera, StreamingCamera {
 
     private static final Logger logger = LoggerFactory.getLogger(RaspiCam.class);
 
@@ -54,6 +60,67 @@ public final class RaspiCam implements Camera {
     @Override
     public native int readFrame(int fd, byte[] bytes, int start);
 
+    @Override
+    public int readFrame(int fd, ByteBuffer target) {
+        if (!target.isDirect()) {
+            return Camera.super.readFrame(fd, target);
+        }
+        // Pooled frames are direct so the native side copies the mapped frame straight into them.
+        int count = readFrameDirect(fd, target, target.position(), target.remaining());
+        if (count > 0) {
+            target.position(target.position() + count);
+        }
+        return count;
+    }
+
+    private native int readFrameDirect(int fd, ByteBuffer target, int start, int remaining);
+
     @Override
     public native int close(int fd);
+
+    // Mapped buffers by stream file descriptor, fetched once from the native side.
+    private final Map<Integer, ByteBuffer[]> streamBuffers = new HashMap<>();
+
+    @Override
+    public int openStream(String device, int width, int height, CameraFormat format, int bufferCount) {
+        return openStream(device, width, height, format.fourcc, bufferCount);
+    }
+
+    private native int openStream(String device, int width, int height, int pixelFormat, int bufferCount);
+
+    @Override
+    public native int getStreamWidth(int fd);
+
+    @Override
+    public native int getStreamHeight(int fd);
+
+    @Override
+    public ByteBuffer[] getStreamBuffers(int fd) {
+        ByteBuffer[] buffers = streamBuffers.get(fd);
+        if (null == buffers) {
+            buffers = mapStreamBuffers(fd);
+            streamBuffers.put(fd, buffers);
+        }
+        return buffers;
+    }
+
+    private native ByteBuffer[] mapStreamBuffers(int fd);
+
+    @Override
+    public native int dequeue(int fd);
+
+    @Override
+    public native int getBytesUsed(int fd, int index);
+
+    @Override
+    public native int requeue(int fd, int index);
+
+    @Override
+    public int closeStream(int fd) {
+        // Buffers are unmapped by the native close so must not be used after this.
+        streamBuffers.remove(fd);
+        return closeStreamNative(fd);
+    }
+
+    private native int closeStreamNative(int fd);
 }
@@ -0,0 +1,69 @@
+package com.ociweb.iot.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera which captures continuously into a ring of buffers it owns. Frames are taken
+ * from the ring with {@link #dequeue(int)}, read in place and given back with
+ * {@link #requeue(int, int)} so they are never copied.
+ *
+ * While a buffer is dequeued the camera will not write into it, if every buffer is
+ * dequeued new frames are dropped by the camera.
+ */
+public interface StreamingCamera {
+
+    /**
+     * Opens the camera and starts streaming.
+     *
+     * @param device Absolute path of the device file to open.
+     * @param width Requested width in pixels, the camera may choose the nearest it supports.
+     * @param height Requested height in pixels, the camera may choose the nearest it supports.
+     * @param format Pixel format for every frame.
+     * @param bufferCount Number of buffers to request, the camera may provide fewer.
+     *
+     * @return A file descriptor for the stream, or -1 if something went wrong.
+     */
+    public int openStream(String device, int width, int height, CameraFormat format, int bufferCount);
+
+    /**
+     * @return Width in pixels actually chosen by the camera.
+     */
+    public int getStreamWidth(int fd);
+
+    /**
+     * @return Height in pixels actually chosen by the camera.
+     */
+    public int getStreamHeight(int fd);
+
+    /**
+     * Buffers which frames are captured into, index with the value returned by {@link #dequeue(int)}.
+     * The same array is returned on every call.
+     */
+    public ByteBuffer[] getStreamBuffers(int fd);
+
+    /**
+     * Takes the next completed frame, never blocks.
+     *
+     * @return Index of the buffer holding the frame, or -1 if no frame is ready.
+     */
+    public int dequeue(int fd);
+
+    /**
+     * @return Number of valid bytes in the buffer, taken when it was dequeued.
+     */
+    public int getBytesUsed(int fd, int index);
+
+    /**
+     * Gives the buffer back to the camera for capturing.
+     *
+     * @return Some number if queueing succeeded, -1 if failed.
+     */
+    public int requeue(int fd, int index);
+
+    /**
+     * Stops streaming and releases every buffer.
+     *
+     * @return Some number if closing succeeded, -1 if failed.
+     */
+    public int closeStream(int fd);
+}
@@ -0,0 +1,25 @@
+package com.ociweb.iot.filter;
+
+/**
+ * One stage of an {@link AnalogFilterChain}. Each stage keeps its own primitive state and
+ * works on one sample at a time so nothing is allocated while the stage is running.
+ */
+public abstract class AnalogFilter {
+
+    /**
+     * Returned in place of a value when the sample must not be passed on.
+     */
+    public static final long DROP = Long.MIN_VALUE;
+
+    /**
+     * @param value new sample
+     * @return filtered value or {@link #DROP} if this sample should be suppressed.
+     */
+    public abstract long apply(int value);
+
+    /**
+     * @return a new filter with the same configuration and fresh state.
+     */
+    public abstract AnalogFilter newInstance();
+
+}
@@ -0,0 +1,81 @@
+package com.ociweb.iot.filter;
+
+import java.util.Arrays;
+
+/**
+ * Ordered list of filters applied to each analog sample before the moving average.
+ * Declared once per connection, eg.
+ * <pre>
+ * hardware.connect(LightSensor, A0, 50, 1000, new AnalogFilterChain().decimate(4).median(5).deadband(3));
+ * </pre>
+ * Each listener stage gets its own copy of the chain by calling {@link #newInstance()}.
+ */
+public class AnalogFilterChain {
+
+    private AnalogFilter[] filters = new AnalogFilter[0];
+
+    /**
+     * Chain used for connections which did not declare one and do not send every value.
+     */
+    public static AnalogFilterChain defaultChain() {
+        return new AnalogFilterChain().median(3);
+    }
+
+    public AnalogFilterChain add(AnalogFilter filter) {
+        filters = Arrays.copyOf(filters, filters.length+1);
+        filters[filters.length-1] = filter;
+        return this;
+    }
+
+    public AnalogFilterChain median(int taps) {
+        return add(new MedianFilter(taps));
+    }
+
+    public AnalogFilterChain ewma(double alpha) {
+        return add(new EWMAFilter(alpha));
+    }
+
+    public AnalogFilterChain kalman(double processNoise, double measurementNoise) {
+        return add(new KalmanFilter(processNoise, measurementNoise));
+    }
+
+    public AnalogFilterChain deadband(int band) {
+        return add(new DeadbandFilter(band));
+    }
+
+    public AnalogFilterChain decimate(int factor) {
+        return add(new DecimationFilter(factor));
+    }
+
+    /**
+     * Runs the sample through every filter in order.
+     *
+     * @return filtered value or {@link AnalogFilter#DROP} if any filter suppressed it.
+     */
+    public long apply(int value) {
+        long result = value;
+        final AnalogFilter[] local = filters;
+        for (int i = 0; i < local.length; i++) {
+            result = local[i].apply((int) result);
+            if (AnalogFilter.DROP == result) {
+                return AnalogFilter.DROP;
+            }
+        }
+        return result;
+    }
+
+    public AnalogFilterChain newInstance() {
+        AnalogFilterChain result = new AnalogFilterChain();
+        result.filters = new AnalogFilter[filters.length];
+        int i = filters.length;
+        while (--i>=0) {
+            result.filters[i] = filters[i].newInstance();
+        }
+        return result;
+    }
+
+    public int size() {
+        return filters.length;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.ociweb.iot.filter;
+
+/**
+ * Hysteresis deadband, a sample is only passed on once it has moved more than band away
+ * from the last value passed on. All other samples are dropped.
+ */
+public class DeadbandFilter extends AnalogFilter {
+
+    private final int band;
+    private int held;
+    private boolean primed;
+
+    public DeadbandFilter(int band) {
+        if (band < 0) {
+            throw new UnsupportedOperationException("Deadband must not be negative");
+        }
+        this.band = band;
+    }
+
+    @Override
+    public long apply(int value) {
+        if (primed && Math.abs(value - held) <= band) {
+            return DROP;
+        }
+        held = value;
+        primed = true;
+        return value;
+    }
+
+    @Override
+    public AnalogFilter newInstance() {
+        return new DeadbandFilter(band);
+    }
+
+}
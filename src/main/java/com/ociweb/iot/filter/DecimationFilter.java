@@ -0,0 +1,32 @@
+package com.ociweb.iot.filter;
+
+/**
+ * Passes on one sample out of every factor samples, the rest are dropped.
+ */
+public class DecimationFilter extends AnalogFilter {
+
+    private final int factor;
+    private int countDown;
+
+    public DecimationFilter(int factor) {
+        if (factor < 1) {
+            throw new UnsupportedOperationException("Decimation factor must be at least 1");
+        }
+        this.factor = factor;
+    }
+
+    @Override
+    public long apply(int value) {
+        if (--countDown > 0) {
+            return DROP;
+        }
+        countDown = factor;
+        return value;
+    }
+
+    @Override
+    public AnalogFilter newInstance() {
+        return new DecimationFilter(factor);
+    }
+
+}
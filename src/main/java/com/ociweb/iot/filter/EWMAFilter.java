@@ -0,0 +1,35 @@
+package com.ociweb.iot.filter;
+
+/**
+ * Exponentially weighted moving average, larger alpha follows the signal more closely.
+ */
+public class EWMAFilter extends AnalogFilter {
+
+    private final double alpha;
+    private double state;
+    private boolean primed;
+
+    public EWMAFilter(double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new UnsupportedOperationException("EWMA alpha must be greater than 0 and no more than 1");
+        }
+        this.alpha = alpha;
+    }
+
+    @Override
+    public long apply(int value) {
+        if (primed) {
+            state += alpha * (value - state);
+        } else {
+            state = value;
+            primed = true;
+        }
+        return Math.round(state);
+    }
+
+    @Override
+    public AnalogFilter newInstance() {
+        return new EWMAFilter(alpha);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.ociweb.iot.filter;
+
+/**
+ * One dimensional Kalman filter for a value expected to hold steady.
+ * processNoise is how fast the real value may drift, measurementNoise is the variance of the sensor.
+ */
+public class KalmanFilter extends AnalogFilter {
+
+    private final double processNoise;
+    private final double measurementNoise;
+    private double estimate;
+    private double errorCovariance;
+    private boolean primed;
+
+    public KalmanFilter(double processNoise, double measurementNoise) {
+        if (processNoise < 0 || measurementNoise <= 0) {
+            throw new UnsupportedOperationException("Kalman noise values must be positive");
+        }
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+    }
+
+    @Override
+    public long apply(int value) {
+        if (primed) {
+            errorCovariance += processNoise;
+            double gain = errorCovariance / (errorCovariance + measurementNoise);
+            estimate += gain * (value - estimate);
+            errorCovariance *= (1 - gain);
+        } else {
+            estimate = value;
+            errorCovariance = measurementNoise;
+            primed = true;
+        }
+        return Math.round(estimate);
+    }
+
+    @Override
+    public AnalogFilter newInstance() {
+        return new KalmanFilter(processNoise, measurementNoise);
+    }
+
+}
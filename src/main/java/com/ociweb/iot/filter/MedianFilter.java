@@ -0,0 +1,46 @@
+package com.ociweb.iot.filter;
+
+/**
+ * Median of the last N samples. Until N samples have arrived the median of those seen so far is used.
+ */
+public class MedianFilter extends AnalogFilter {
+
+    private final int[] ring;
+    private final int[] sorted;
+    private int pos;
+    private int count;
+
+    public MedianFilter(int taps) {
+        if (taps < 1) {
+            throw new UnsupportedOperationException("Median filter requires at least 1 tap");
+        }
+        this.ring = new int[taps];
+        this.sorted = new int[taps];
+    }
+
+    @Override
+    public long apply(int value) {
+        ring[pos] = value;
+        pos = (pos+1) % ring.length;
+        if (count < ring.length) {
+            count++;
+        }
+
+        //insertion sort, N is small
+        for (int i = 0; i < count; i++) {
+            int v = ring[i];
+            int j = i;
+            while (--j >= 0 && sorted[j] > v) {
+                sorted[j+1] = sorted[j];
+            }
+            sorted[j+1] = v;
+        }
+        return sorted[(count-1)>>1];
+    }
+
+    @Override
+    public AnalogFilter newInstance() {
+        return new MedianFilter(ring.length);
+    }
+
+}
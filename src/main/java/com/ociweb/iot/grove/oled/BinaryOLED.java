@@ -64,7 +64,7 @@ public abstract class BinaryOLED implements FogBmpDisplayable {
 	
 	/**
 	 * Send an array of data
-	 * Implemented by calling {@link #sendData(int[], int, int, int)}, which recursively calls itself
+	 * Implemented by calling {@link #sendData(int[], int, int, int)}, which loops
 	 * exactly 'm' times, where 'm' is the number of batches requires to send the data array specified by the start and length.
 	 * Implemented to use an array of passed-in data instead of defaulting to this.data_out so that one doesn't have
 	 * to go through the trouble of copying the entire data array if the data array is already constructed
@@ -76,7 +76,7 @@ public abstract class BinaryOLED implements FogBmpDisplayable {
 		if (!ch.i2cIsReady( ( (length + 1) * 2 / BATCH_SIZE) + 1) ){
 			return false;
 		}
-		//call the helper method to recursively send batches
+		//call the helper method to send batches
 		return sendData(data, start,BATCH_SIZE, start+length);
 	}
 	
@@ -91,18 +91,19 @@ public abstract class BinaryOLED implements FogBmpDisplayable {
 	 */
 	
 	private boolean sendData(int [] data, int start, int length, int finalTargetIndex){
-		DataOutputBlobWriter<I2CCommandSchema> i2cPayloadWriter = ch.i2cCommandOpen(i2c_address);
-		i2cPayloadWriter.write(DATA_MODE);
-		int i;
-		for (i = start; i < Math.min(start + length - 1, finalTargetIndex); i++){
-			i2cPayloadWriter.write(data[i]);
-		}
-		ch.i2cCommandClose(i2cPayloadWriter);
-		ch.i2cFlushBatch();
-		if (i == finalTargetIndex){
-			return true;
-		}
-		return sendData(data, i, BATCH_SIZE, finalTargetIndex); //calls itself recursively until we reach finalTargetIndex
+		int i = start;
+		do {
+			DataOutputBlobWriter<I2CCommandSchema> i2cPayloadWriter = ch.i2cCommandOpen(i2c_address);
+			i2cPayloadWriter.write(DATA_MODE);
+			int limit = Math.min(i + length - 1, finalTargetIndex);
+			for (; i < limit; i++){
+				i2cPayloadWriter.write(data[i]);
+			}
+			ch.i2cCommandClose(i2cPayloadWriter);
+			ch.i2cFlushBatch();
+			length = BATCH_SIZE;
+		} while (i != finalTargetIndex); //one batch per pass until we reach finalTargetIndex
+		return true;
 	}
 	
 	
@@ -141,26 +142,25 @@ public abstract class BinaryOLED implements FogBmpDisplayable {
 			logger.trace("I2C is not ready");
 			return false;
 		}
-		//call the helper method to recursively send batches
+		//call the helper method to send batches
 		return sendCommands(cmd, start,BATCH_SIZE, start+length);
 	}
 	
 	private boolean sendCommands(int [] cmd, int start, int length, int finalTargetIndex){
-		DataOutputBlobWriter<I2CCommandSchema> i2cPayloadWriter = ch.i2cCommandOpen(i2c_address);
 		length = length / 2; //we need to send two bytes for each command
-		int i;
-		
-		for (i = start; i < Math.min(start + length, finalTargetIndex); i++){
-			i2cPayloadWriter.write(COMMAND_MODE);
-			i2cPayloadWriter.write(cmd[i]);
-		}
-		ch.i2cCommandClose(i2cPayloadWriter);
-		ch.i2cFlushBatch();
-		
-		if (i == finalTargetIndex){
-			return true;
-		}
-		return sendCommands(cmd, i, BATCH_SIZE, finalTargetIndex); //calls itself recursively until we reach finalTargetIndex
+		int i = start;
+		do {
+			DataOutputBlobWriter<I2CCommandSchema> i2cPayloadWriter = ch.i2cCommandOpen(i2c_address);
+			int limit = Math.min(i + length, finalTargetIndex);
+			for (; i < limit; i++){
+				i2cPayloadWriter.write(COMMAND_MODE);
+				i2cPayloadWriter.write(cmd[i]);
+			}
+			ch.i2cCommandClose(i2cPayloadWriter);
+			ch.i2cFlushBatch();
+			length = BATCH_SIZE / 2;
+		} while (i != finalTargetIndex); //one batch per pass until we reach finalTargetIndex
+		return true;
 	}
 	
 	//This is protected at David Giovannini's request.
@@ -0,0 +1,124 @@
+package com.ociweb.iot.grove.oled;
+
+import java.util.Arrays;
+
+/**
+ * Copy of what was last sent to the display RAM, held as rows of bytes in the same
+ * layout as the data sent (pages for the 128x64, pixel rows for the 96x96).
+ * Each new frame is compared against it so only the changed window is resent.
+ *
+ * Anything else which writes the display RAM (text, scrolling) must call {@link #invalidate()}
+ * so the next frame is sent in full.
+ */
+class OLEDFrameShadow {
+
+	private final int[] shadow;
+	private final int rows;
+	private final int rowBytes;
+	private boolean valid;
+
+	// Window found by the last call to findDirty
+	int firstRow;
+	int lastRow;
+	int firstCol;
+	int lastCol;
+
+	OLEDFrameShadow(int rows, int rowBytes) {
+		this.rows = rows;
+		this.rowBytes = rowBytes;
+		this.shadow = new int[rows * rowBytes];
+	}
+
+	/**
+	 * The display RAM is unknown, the next frame will be sent in full.
+	 */
+	void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * The display RAM is known to be cleared.
+	 */
+	void cleared() {
+		Arrays.fill(shadow, 0);
+		valid = true;
+	}
+
+	/**
+	 * First changed byte of one row, or -1 if the row is unchanged.
+	 */
+	int firstChanged(int[] frame, int row) {
+		int start = row * rowBytes;
+		if (!valid) {
+			return 0;
+		}
+		for (int i = 0; i < rowBytes; i++) {
+			if ((frame[start + i] & 0xFF) != shadow[start + i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Last changed byte of one row, only meaningful when {@link #firstChanged(int[], int)} found a change.
+	 */
+	int lastChanged(int[] frame, int row) {
+		int start = row * rowBytes;
+		if (!valid) {
+			return rowBytes - 1;
+		}
+		for (int i = rowBytes - 1; i >= 0; i--) {
+			if ((frame[start + i] & 0xFF) != shadow[start + i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the bounding window of every changed byte.
+	 * @return false if nothing changed.
+	 */
+	boolean findDirty(int[] frame) {
+		firstRow = -1;
+		firstCol = rowBytes;
+		lastCol = -1;
+		for (int row = 0; row < rows; row++) {
+			int first = firstChanged(frame, row);
+			if (first >= 0) {
+				if (firstRow < 0) {
+					firstRow = row;
+				}
+				lastRow = row;
+				firstCol = Math.min(firstCol, first);
+				lastCol = Math.max(lastCol, lastChanged(frame, row));
+			}
+		}
+		return firstRow >= 0;
+	}
+
+	/**
+	 * Records that part of a row has been sent.
+	 */
+	void sent(int[] frame, int row, int fromCol, int toCol) {
+		int start = row * rowBytes;
+		for (int i = fromCol; i <= toCol; i++) {
+			shadow[start + i] = frame[start + i] & 0xFF;
+		}
+	}
+
+	/**
+	 * Records that every row has been sent, called once all rows of an invalid shadow were written.
+	 */
+	void sentAll(int[] frame) {
+		for (int i = 0; i < shadow.length; i++) {
+			shadow[i] = frame[i] & 0xFF;
+		}
+		valid = true;
+	}
+
+	boolean isValid() {
+		return valid;
+	}
+}
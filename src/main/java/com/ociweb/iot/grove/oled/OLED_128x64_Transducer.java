@@ -12,6 +12,7 @@ import com.ociweb.iot.grove.oled.Grove_OLED_128x64_Constants.Orientation;
 import com.ociweb.iot.maker.FogCommandChannel;
 import com.ociweb.iot.maker.image.FogBitmap;
 import com.ociweb.iot.maker.image.FogBitmapLayout;
+import com.ociweb.iot.maker.image.FogBmpConverter;
 import com.ociweb.iot.maker.image.FogColorSpace;
 
 /**
@@ -26,6 +27,8 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 	 * @param ch FogCommandChannel used for the i2c write.
 	 */
 
+	private final OLEDFrameShadow shadow = new OLEDFrameShadow(8, 128); //8 pages of 128 columns
+
 	public OLED_128x64_Transducer(FogCommandChannel ch){
 		super(ch, new int[1024], new int[32], OLEDADDRESS);
 		ch.ensureI2CWriting(100, BATCH_SIZE);
@@ -62,9 +65,15 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 		return bmpLayout;
 	}
 
+	/**
+	 * Displays a bitmap made by {@link #newEmptyBmp()}, packed into pages in one pass.
+	 * @param bmp gray bitmap of 128x64, pixels at or above half intensity are lit.
+	 * @return true if the i2c commands were succesfully sent, false otherwise
+	 */
 	@Override
 	public boolean display(FogBitmap bmp) {
-		return false;
+		FogBmpConverter.packPages(bmp, data_out);
+		return drawBitmap(data_out);
 	}
 
 	/**
@@ -151,6 +160,7 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 	 */
 	@Override
 	public boolean activateScroll(){
+		shadow.invalidate(); //scrolling moves the display RAM
 		return sendCommand(ACTIVATE_SCROLL);
 	}
 
@@ -186,6 +196,7 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 	@Override
 	public boolean printCharSequence(CharSequence s){
 		encodeCharSequence(s);
+		shadow.invalidate();
 		return sendData(0, s.length()*8);
 	}
 
@@ -200,6 +211,7 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 	 */
 	public boolean printCharSequence(CharSequence s, int[][] customFonts, int offset){
 		encodeCharSequence(s, 0,customFonts,offset);
+		shadow.invalidate();
 		return sendData(0, s.length()*8);
 
 	}
@@ -345,9 +357,11 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 			setTextRowCol(row, 0);
 			if (sendData(EMPTY_ROW)){
 			} else {
+				shadow.invalidate();
 				return false;
 			}
 		}
+		shadow.cleared();
 		return true;
 	}
 	
@@ -453,7 +467,12 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 		if (!setHorizontalMode()){
 			return false;
 		}
-		return sendData(map);
+		if (sendData(map)){
+			shadow.sentAll(map);
+			return true;
+		}
+		shadow.invalidate();
+		return false;
 	}
 	
 	private boolean drawBitmap(int[] map){
@@ -471,20 +490,39 @@ public class OLED_128x64_Transducer extends BinaryOLED implements IODeviceTransd
 	 */
 
 	public  boolean drawBitmapInPageMode (int[] map){
+		//only the changed columns of changed pages are sent, the rest of the display RAM already matches
+		boolean full = !shadow.isValid();
 		for (int page = 0; page <8; page++){
-			if (! setTextRowCol(page,0)){
+			int first = shadow.firstChanged(map, page);
+			if (first < 0){
+				continue;
+			}
+			int last = shadow.lastChanged(map, page);
+			if (! setPageAndColumn(page, first)){
 				return false;
 			}
-			int startingPoint = page*128;
-
-			if (!sendData(map, startingPoint, 128)){
+			if (!sendData(map, (page*128) + first, (last - first) + 1)){
 				return false;
 			}
-
+			shadow.sent(map, page, first, last);
+		}
+		if (full){
+			shadow.sentAll(map);
 		}
 		return true;
 	}
 
+	/**
+	 * Moves the page mode write position to a single column, unlike {@link #setTextRowCol(int, int)}
+	 * which moves in whole characters.
+	 */
+	private boolean setPageAndColumn(int page, int col){
+		cmd_out[0] = ROW_START_ADDRESS_PAGE_MODE + (page & 0x07);
+		cmd_out[1] = LOWER_COL_START_ADDRESS_PAGE_MODE + (col & 0x0F);
+		cmd_out[2] = HIGHER_COL_START_ADDRESS_PAGE_MODE + ((col >> 4) & 0x0F);
+		return sendCommands(0, 3);
+	}
+
 	@Override
 	public boolean display(int[][] raw_image){
 		return display(raw_image,1);
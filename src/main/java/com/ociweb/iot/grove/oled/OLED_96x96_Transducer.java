@@ -7,6 +7,7 @@ import com.ociweb.iot.grove.oled.OLED_96x96_Consts;
 import com.ociweb.iot.maker.FogCommandChannel;
 import com.ociweb.iot.maker.image.FogBitmap;
 import com.ociweb.iot.maker.image.FogBitmapLayout;
+import com.ociweb.iot.maker.image.FogBmpConverter;
 import com.ociweb.iot.maker.image.FogColorSpace;
 import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
 import com.ociweb.pronghorn.pipe.DataOutputBlobWriter;
@@ -20,6 +21,10 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 	private OLED_96x96_DriverChip chip;
 	private boolean clearScreenUponStartup = true;
 
+	//SSD1327 frames are 96 rows of 48 bytes, only the changed window is resent
+	private final OLEDFrameShadow shadow = new OLEDFrameShadow(OLED_96x96_Consts.ROW_COUNT, OLED_96x96_Consts.COL_COUNT / 2);
+	private final int[] window_out = new int[4608];
+
 	public OLED_96x96_Transducer(FogCommandChannel ch){
 		//A nibble determines pixel. A byte is therefore two horizontally adjascent pixels.
 		//96x96 divided 2. Since each pixel takes a nibble to send
@@ -38,8 +43,22 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 		return bmpLayout;
 	}
 
+	/**
+	 * Displays a bitmap made by {@link #newEmptyBmp()}, packed into 4 bit pixels in one pass.
+	 * @param bmp gray bitmap of 96x96.
+	 * @return true if the channel was ready for the i2c commands.
+	 */
 	public boolean display(FogBitmap bmp) {
-		return false;
+		switch (chip){
+		case SSD1327:
+			FogBmpConverter.packNibbles(bmp, data_out);
+			return sendFrame();
+		case SH1107G:
+			//TODO: implement function for SH1107G chip
+			return false;
+		default:
+			return false;
+		}
 	}
 
 	@Deprecated
@@ -129,6 +148,7 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 					return false;
 				}
 			}
+			shadow.cleared();
 			return true;
 
 		case SH1107G:
@@ -264,6 +284,7 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 	@Override
 	public boolean printCharSequence(CharSequence s) {
 		encodeCharSequence(s);
+		shadow.invalidate();
 		//TODO: decide if display needs to be in vertical mode
 		if (chip == SSD1327 && !setVerticalMode()){
 			//setVerticalMode would only execute if the chip is SSD1327
@@ -388,6 +409,7 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 	 * @return true if the channel was ready for the i2c commands.
 	 */
 	public boolean drawBitmap(int[] map) {
+		shadow.invalidate();
 		switch(chip){
 		case SSD1327:
 			int index = 0;
@@ -489,9 +511,6 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 	public boolean display(int[][] raw_image, int pixelDepth){
 		switch (chip){
 		case SSD1327:
-			if (!setHorizontalMode()){
-				return false;
-			}
 			int index = 0;
 			int mask = (1 << pixelDepth) - 1;
 			for (int i = 0; i < OLED_96x96_Consts.ROW_COUNT; i ++){
@@ -501,7 +520,7 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 					data_out[index++] = b;
 				}
 			}
-			return sendData(0,index);
+			return sendFrame();
 		case SH1107G:
 			//TODO: implement function for SH1107G chip
 			return false;
@@ -513,6 +532,54 @@ public class OLED_96x96_Transducer extends BinaryOLED implements IODeviceTransdu
 	}
 
 
+	/**
+	 * Sends the SSD1327 frame held in data_out, limited to the window around every byte
+	 * which differs from the last frame sent.
+	 * @return true if the channel was ready for the i2c commands.
+	 */
+	private boolean sendFrame(){
+		boolean full = !shadow.isValid();
+		if (!shadow.findDirty(data_out)){
+			return true;
+		}
+		int firstRow = shadow.firstRow;
+		int lastRow = shadow.lastRow;
+		int firstCol = shadow.firstCol;
+		int lastCol = shadow.lastCol;
+
+		cmd_out[0] = SSD1327_Consts.REMAP;
+		cmd_out[1] = SSD1327_Consts.HORIZONTAL;
+		cmd_out[2] = SSD1327_Consts.SET_ROW_ADDRESS;
+		cmd_out[3] = firstRow;
+		cmd_out[4] = lastRow;
+		cmd_out[5] = SSD1327_Consts.SET_COL_ADDRESS;
+		cmd_out[6] = 8 + firstCol; //the 8th column on the chip corresponds to the 0th column on the actual screen
+		cmd_out[7] = 8 + lastCol;
+		if (!sendCommands(0,8)){
+			return false;
+		}
+
+		int rowBytes = OLED_96x96_Consts.COL_COUNT / 2;
+		int width = (lastCol - firstCol) + 1;
+		int count = 0;
+		for (int row = firstRow; row <= lastRow; row++){
+			System.arraycopy(data_out, (row * rowBytes) + firstCol, window_out, count, width);
+			count += width;
+		}
+		if (!sendData(window_out, 0, count)){
+			return false;
+		}
+
+		if (full){
+			shadow.sentAll(data_out);
+		} else {
+			for (int row = firstRow; row <= lastRow; row++){
+				shadow.sent(data_out, row, firstCol, lastCol);
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public boolean setHorizontalMode() {
 		switch(chip){
@@ -0,0 +1,18 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.ociweb.iot.grove.three_axis_accelerometer_16g;
+
+/**
+ * Receives the samples drained from the ADXL345 FIFO by the GetXYZFifo twig.
+ */
+public interface AccelValsBatchListener extends ThreeAxisAccelerometer_16gListener {
+    /**
+     * @param timesUS microsecond timestamp of each sample on the monotonic AcquiredNS clock, placed from the output data rate
+     * @param xyz x,y,z of each sample one after the other, scaled like {@link AccelValsListener}
+     * @param count number of samples, the arrays are reused and may be longer
+     */
+    void accelerationValues(long[] timesUS, int[] xyz, int count);
+}
@@ -6,6 +6,7 @@
 package com.ociweb.iot.grove.three_axis_accelerometer_16g;
 
 import com.ociweb.iot.hardware.I2CConnection;
+import com.ociweb.iot.hardware.I2CFifo;
 import com.ociweb.iot.hardware.I2CIODevice;
 import com.ociweb.iot.maker.FogCommandChannel;
 
@@ -27,6 +28,25 @@ public enum ThreeAxisAccelerometer_16gTwig {
                 return new I2CConnection(this, I2C_ADDR, REG_ADDR, BYTESTOREAD, REG_ID, null);
             }
         },
+        GetXYZFifo(){
+            
+            @Override
+            public I2CConnection getI2CConnection() { //drains every sample waiting in the FIFO on each poll
+                byte I2C_ADDR = ThreeAxisAccelerometer_16g_Constants.ADXL345_DEVICE;
+                I2CFifo FIFO = new I2CFifo(ThreeAxisAccelerometer_16g_Constants.ADXL345_FIFO_STATUS,
+                                           ThreeAxisAccelerometer_16g_Constants.ADXL345_FIFO_ENTRIES_MASK,
+                                           ThreeAxisAccelerometer_16g_Constants.ADXL345_DATAX0, 6);
+                byte[] SETUP = {ThreeAxisAccelerometer_16g_Constants.ADXL345_FIFO_CTL,
+                                (byte)(ThreeAxisAccelerometer_16g_Constants.ADXL345_FIFO_STREAM | ThreeAxisAccelerometer_16g_Constants.ADXL345_FIFO_WATERMARK)};
+                byte REG_ID = ThreeAxisAccelerometer_16g_Constants.ADXL345_FIFO_STATUS; //just an identifier
+                return new I2CConnection(this, I2C_ADDR, FIFO, REG_ID, SETUP);
+            }
+            
+            @Override
+            public int defaultPullRateMS() {
+                return 10; //8 samples at the default 800 Hz, well inside the 32 the FIFO holds
+            }
+        },
         GetTapAct(){
             @Override
             public I2CConnection getI2CConnection() { //putting getI2CConnection in i2cOutput twigs allows setup commands to be sent
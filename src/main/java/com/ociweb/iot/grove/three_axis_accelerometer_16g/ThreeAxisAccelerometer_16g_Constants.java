@@ -51,6 +51,11 @@ public class ThreeAxisAccelerometer_16g_Constants {
     public static final int ADXL345_FIFO_CTL = 0x38;
     public static final int ADXL345_FIFO_STATUS = 0x39;
     
+    public static final int ADXL345_FIFO_STREAM = 0x80; //FIFO_CTL mode bits, oldest samples are dropped when full
+    public static final int ADXL345_FIFO_WATERMARK = 16;
+    public static final int ADXL345_FIFO_ENTRIES_MASK = 0x3F; //FIFO_STATUS bits counting the waiting samples
+    public static final int ADXL345_FIFO_DEPTH = 32;
+    
     public static final int ADXL345_RATE_3200 = 0x0F; // 1111
     public static final int ADXL345_RATE_1600 = 0x0E; // 1110
     public static final int ADXL345_RATE_800 = 0x0D ;// 1101
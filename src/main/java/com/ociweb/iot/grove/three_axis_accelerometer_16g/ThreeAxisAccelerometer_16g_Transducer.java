@@ -21,6 +21,7 @@ import com.ociweb.iot.transducer.I2CListenerTransducer;
 public class ThreeAxisAccelerometer_16g_Transducer implements IODeviceTransducer,I2CListenerTransducer,StartupListenerTransducer {    
     private final FogCommandChannel target;
     private AccelValsListener accellistener;
+    private AccelValsBatchListener batchlistener;
     private ActTapListener acttaplistener;
     private AccelInterruptListener interrlistener;
 
@@ -31,6 +32,9 @@ public class ThreeAxisAccelerometer_16g_Transducer implements IODeviceTransducer
             if(item instanceof AccelValsListener){
                 this.accellistener = (AccelValsListener) item;
             }
+            if(item instanceof AccelValsBatchListener){
+                this.batchlistener = (AccelValsBatchListener) item;
+            }
             if(item instanceof ActTapListener){
                 this.acttaplistener = (ActTapListener) item;
             }
@@ -51,6 +55,9 @@ public class ThreeAxisAccelerometer_16g_Transducer implements IODeviceTransducer
             if(item instanceof AccelValsListener){
                 this.accellistener = (AccelValsListener) item;
             }
+            if(item instanceof AccelValsBatchListener){
+                this.batchlistener = (AccelValsBatchListener) item;
+            }
             if(item instanceof ActTapListener){
                 this.acttaplistener = (ActTapListener) item;
             }
@@ -129,36 +136,47 @@ public class ThreeAxisAccelerometer_16g_Transducer implements IODeviceTransducer
         switch(rate){
             case 3200:
                 _s = ADXL345_RATE_3200;
+                samplePeriodUS = 312;
                 break;
             case 1600:
                 _s = ADXL345_RATE_1600;
+                samplePeriodUS = 625;
                 break;
             case 800:
                 _s = ADXL345_RATE_800;
+                samplePeriodUS = 1_250;
                 break;
             case 400:
                 _s = ADXL345_RATE_400;
+                samplePeriodUS = 2_500;
                 break;
             case 200:
                 _s = ADXL345_RATE_200;
+                samplePeriodUS = 5_000;
                 break;
             case 100:
                 _s = ADXL345_RATE_100;
+                samplePeriodUS = 10_000;
                 break;
             case 50:
                 _s = ADXL345_RATE_50;
+                samplePeriodUS = 20_000;
                 break;
             case 25:
                 _s = ADXL345_RATE_25;
+                samplePeriodUS = 40_000;
                 break;
             case 12:
                 _s = ADXL345_RATE_12;
+                samplePeriodUS = 80_000;
                 break;
             case 6:
                 _s = ADXL345_RATE_6;
+                samplePeriodUS = 160_000;
                 break;
             default:
                 _s = ADXL345_RATE_400;
+                samplePeriodUS = 2_500;
         }
         axWriteByte(ADXL345_BW_RATE,_s);
         
@@ -354,6 +372,15 @@ during which a second value tap can powerOn. The scale factor is 1.25ms/LSB. A
     public void writeINT_MAP_Reg(int _b){
         axWriteByte(ADXL345_INT_MAP,_b);
     }
+    /**
+     * Keep samples in the FIFO, dropping the oldest when full, so the GetXYZFifo twig can drain them in bursts.
+     * The GetXYZFifo twig sends this with the default watermark of 16 as its setup.
+     * @param watermark samples in the FIFO before the watermark interrupt is raised, between 0 and 31
+     */
+    public void enableFIFOStream(int watermark){
+        writeFIFO_CTL_Reg(ADXL345_FIFO_STREAM | (watermark & 0x1F));
+    }
+    
     /**
      * Write a byte to ADXL345_FIFO_CTL register
      * @param _b 
@@ -381,6 +408,42 @@ during which a second value tap can powerOn. The scale factor is 1.25ms/LSB. A
         
         return temp;
     }
+    private long samplePeriodUS = 10_000; //matches the 100 Hz the device starts with
+    private long[] fifoTimes = new long[ADXL345_FIFO_DEPTH];
+    private int[] fifoValues = new int[3*ADXL345_FIFO_DEPTH];
+    
+    /**
+     * Convert a burst drained from the FIFO, the first byte counts the samples still waiting
+     * and is followed by 6 bytes for each sample, oldest first.
+     * Each sample is placed in time from the output data rate, the newest one was taken just before those still waiting,
+     * counting back from the nanoTime the burst was acquired so the times share the clock of every other sample.
+     */
+    private void interpretFifo(long acquiredNS, byte[] backing, int position, int length, int mask){
+        int waiting = backing[position&mask]&0xFF;
+        int count = (length-1)/6;
+        if (fifoTimes.length < count) {
+            fifoTimes = new long[count];
+            fifoValues = new int[3*count];
+        }
+        long newestUS = acquiredNS/1000 - waiting*samplePeriodUS;
+        for (int i = 0; i < count; i++) {
+            int p = position+1+6*i;
+            int x = 4*(short)(((backing[(p+1)&mask]&0xFF) << 8) | (backing[p&mask]&0xFF));
+            int y = 4*(short)(((backing[(p+3)&mask]&0xFF) << 8) | (backing[(p+2)&mask]&0xFF));
+            int z = 4*(short)(((backing[(p+5)&mask]&0xFF) << 8) | (backing[(p+4)&mask]&0xFF));
+            fifoTimes[i] = newestUS - (count-1-i)*samplePeriodUS;
+            fifoValues[3*i] = x;
+            fifoValues[3*i+1] = y;
+            fifoValues[3*i+2] = z;
+            if (null==batchlistener && null!=accellistener) {
+                accellistener.accelerationValues(x, y, z);
+            }
+        }
+        if (null!=batchlistener && count>0) {
+            batchlistener.accelerationValues(fifoTimes, fifoValues, count);
+        }
+    }
+    
     /**
      * write a byte to a register
      * @param register register to write to
@@ -398,11 +461,20 @@ during which a second value tap can powerOn. The scale factor is 1.25ms/LSB. A
 
     @Override
     public void i2cEvent(int addr, int register, long time, byte[] backing, int position, int length, int mask) {
+        //only reached by direct callers that have no acquisition time, the message time is the best estimate left
+        i2cEvent(addr, register, time, time*1_000_000, backing, position, length, mask);
+    }
+
+    @Override
+    public void i2cEvent(int addr, int register, long time, long acquiredNS, byte[] backing, int position, int length, int mask) {
         if(addr == ADXL345_DEVICE){
             if(register == ADXL345_DATAX0){
                 short[] xyzVals = this.interpretData(backing, position, length, mask);
                 accellistener.accelerationValues(xyzVals[0]*4, xyzVals[1]*4, xyzVals[2]*4);
             }
+            if(register == ADXL345_FIFO_STATUS){
+                interpretFifo(acquiredNS, backing, position, length, mask);
+            }
             if(register == ADXL345_ACT_TAP_STATUS){
                 int actX = (backing[position] & 0b01000000)>>6;
                 int actY = (backing[position] & 0b00100000)>>5;
@@ -0,0 +1,33 @@
+package com.ociweb.iot.hardware;
+
+/**
+ * Linux GPIO character device lines which a digital input is wired to. Inputs connected with
+ * these lines are not polled, the kernel reports each edge with its own timestamp instead.
+ * Buttons and other single pin devices use one line, rotary encoders use two lines in the
+ * same order as their ports.
+ */
+public class GpioEdgeLines {
+
+	public final String chip;
+	public final int[] offsets;
+
+	/**
+	 * @param chip Path of the GPIO chip, eg /dev/gpiochip0
+	 * @param offsets Line offset on that chip for each pin of the device.
+	 */
+	public GpioEdgeLines(String chip, int ... offsets) {
+		if (offsets.length < 1) {
+			throw new UnsupportedOperationException("At least one GPIO line is required");
+		}
+		this.chip = chip;
+		this.offsets = offsets.clone();
+	}
+
+	/**
+	 * Lines on /dev/gpiochip0, the header GPIO on most boards.
+	 */
+	public static GpioEdgeLines lines(int ... offsets) {
+		return new GpioEdgeLines("/dev/gpiochip0", offsets);
+	}
+
+}
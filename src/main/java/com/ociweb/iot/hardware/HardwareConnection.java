@@ -1,5 +1,7 @@
 package com.ociweb.iot.hardware;
 
+import com.ociweb.iot.filter.AnalogFilterChain;
+
 public class HardwareConnection {
 
 	public final IODevice twig;
@@ -7,11 +9,23 @@ public class HardwareConnection {
     public final int movingAverageWindowMS;
     public final boolean sendEveryValue;
     public final byte register;
+    public final AnalogFilterChain filters; //null for the default analog filtering
+    public final GpioEdgeLines edges; //null when the connection is polled
 
     static final int DEFAULT_AVERAGE_WINDOW_MS = 1000;
 	static final int UNKOWN_REGISTER = -1;
 
 	public HardwareConnection(IODevice twig, int register, int pullRateMS, int movingAverageWindowMS, boolean sendEveryValue) {
+		this(twig, register, pullRateMS, movingAverageWindowMS, sendEveryValue, null);
+	}
+
+	public HardwareConnection(IODevice twig, int register, int pullRateMS, int movingAverageWindowMS, boolean sendEveryValue, AnalogFilterChain filters) {
+		this(twig, register, pullRateMS, movingAverageWindowMS, sendEveryValue, filters, null);
+	}
+
+	public HardwareConnection(IODevice twig, int register, int pullRateMS, int movingAverageWindowMS, boolean sendEveryValue, AnalogFilterChain filters, GpioEdgeLines edges) {
+		this.filters = filters;
+		this.edges = edges;
 		this.twig = twig;
 		this.responseMS = pullRateMS;
 		this.movingAverageWindowMS = movingAverageWindowMS;
@@ -0,0 +1,1629 @@
+package com.ociweb.iot.hardware;
+
+import static com.ociweb.iot.hardware.HardwareConnection.DEFAULT_AVERAGE_WINDOW_MS;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.gl.api.Behavior;
+import com.ociweb.gl.api.MsgCommandChannel;
+import com.ociweb.gl.api.MsgRuntime;
+import com.ociweb.gl.impl.BuilderImpl;
+import com.ociweb.gl.impl.ChildClassScanner;
+import com.ociweb.gl.impl.schema.IngressMessages;
+import com.ociweb.gl.impl.schema.MessagePubSub;
+import com.ociweb.gl.impl.schema.MessageSubscription;
+import com.ociweb.gl.impl.schema.TrafficAckSchema;
+import com.ociweb.gl.impl.schema.TrafficOrderSchema;
+import com.ociweb.gl.impl.schema.TrafficReleaseSchema;
+import com.ociweb.gl.impl.stage.TrafficCopStage;
+import com.ociweb.iot.hardware.impl.DirectHardwareAnalogDigitalOutputStage;
+import com.ociweb.iot.hardware.impl.SerialDataReaderStage;
+import com.ociweb.iot.hardware.impl.SerialDataWriterStage;
+import com.ociweb.iot.hardware.impl.SerialInputSchema;
+import com.ociweb.iot.hardware.impl.SerialOutputSchema;
+import com.ociweb.iot.camera.CameraFormat;
+import com.ociweb.iot.camera.FramePool;
+import com.ociweb.iot.filter.AnalogFilterChain;
+import com.ociweb.iot.hardware.impl.edison.EdisonConstants;
+import com.ociweb.iot.grove.simple_digital.SimpleDigitalTwig;
+import com.ociweb.iot.impl.AnalogBatchListenerBase;
+import com.ociweb.iot.impl.AnalogListenerBase;
+import com.ociweb.iot.impl.DigitalListenerBase;
+import com.ociweb.iot.impl.I2CBatchListenerBase;
+import com.ociweb.iot.impl.I2CListenerBase;
+import com.ociweb.iot.impl.ImageListenerBase;
+import com.ociweb.iot.impl.RotaryListenerBase;
+import com.ociweb.iot.impl.SerialListenerBase;
+import com.ociweb.iot.impl.WindowListenerBase;
+import com.ociweb.iot.maker.Baud;
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Hardware;
+import com.ociweb.iot.maker.I2CPriority;
+import com.ociweb.iot.maker.PiImageListenerStage;
+import com.ociweb.iot.maker.Port;
+import com.ociweb.iot.maker.PrecisionWait;
+import com.ociweb.iot.store.TimeSeriesStore;
+import com.ociweb.iot.transducer.AnalogListenerTransducer;
+import com.ociweb.iot.transducer.DigitalListenerTransducer;
+import com.ociweb.iot.transducer.I2CListenerTransducer;
+import com.ociweb.iot.transducer.ImageListenerTransducer;
+import com.ociweb.iot.transducer.RotaryListenerTransducer;
+import com.ociweb.iot.transducer.SerialListenerTransducer;
+import com.ociweb.pronghorn.iot.AdaptivePollSchedule;
+import com.ociweb.pronghorn.iot.ReactiveIoTListenerStage;
+import com.ociweb.pronghorn.iot.SensorWindowStage;
+import com.ociweb.pronghorn.iot.ReadDeviceInputStage;
+import com.ociweb.pronghorn.iot.TimeSeriesStoreStage;
+import com.ociweb.pronghorn.iot.gpio.GpioEdgeReader;
+import com.ociweb.pronghorn.iot.i2c.I2CBacking;
+import com.ociweb.pronghorn.iot.i2c.I2CBusArbiter;
+import com.ociweb.pronghorn.iot.i2c.I2CRetryBackoff;
+import com.ociweb.pronghorn.iot.i2c.I2CCoalescedReadPlan;
+import com.ociweb.pronghorn.iot.i2c.I2CCommandQueue;
+import com.ociweb.pronghorn.iot.i2c.I2CJFFIStage;
+import com.ociweb.pronghorn.iot.i2c.I2CResponseMergeStage;
+import com.ociweb.pronghorn.iot.i2c.impl.I2CNativeLinuxBacking;
+import com.ociweb.pronghorn.iot.iio.IioCaptureReader;
+import com.ociweb.pronghorn.iot.replay.InputRecorderStage;
+import com.ociweb.pronghorn.iot.rs232.RS232Client;
+import com.ociweb.pronghorn.iot.rs232.RS232Clientable;
+import com.ociweb.pronghorn.iot.schema.GroveRequestSchema;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.iot.schema.ImageSchema;
+import com.ociweb.pronghorn.iot.schema.SensorWindowSchema;
+import com.ociweb.pronghorn.iot.timing.LatencyHistogram;
+import com.ociweb.pronghorn.iot.timing.ParkWaitStrategy;
+import com.ociweb.pronghorn.iot.timing.PrecisionWaitStats;
+import com.ociweb.pronghorn.iot.timing.PrecisionWaitStrategy;
+import com.ociweb.pronghorn.iot.timing.SpinWaitStrategy;
+import com.ociweb.pronghorn.iot.timing.TimerFdWaitStrategy;
+import com.ociweb.pronghorn.network.schema.ClientHTTPRequestSchema;
+import com.ociweb.pronghorn.network.schema.NetPayloadSchema;
+import com.ociweb.pronghorn.network.schema.NetResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.util.hash.IntHashTable;
+import com.ociweb.pronghorn.stage.route.ReplicatorStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+import com.ociweb.pronghorn.stage.test.PipeCleanerStage;
+import com.ociweb.pronghorn.util.math.PMath;
+import com.ociweb.pronghorn.util.math.ScriptedSchedule;
+
+public abstract class HardwareImpl extends BuilderImpl implements Hardware {
+
+
+	private static final int MAX_MOVING_AVERAGE_SUPPORTED = 101; //TOOD: is this still needed, remove???
+
+	private static final HardwareConnection[] EMPTY = new HardwareConnection[0];
+
+	protected boolean configCamera = false;
+	protected boolean configI2C;       //Humidity, LCD need I2C address so..
+
+	protected long debugI2CRateLastTime;
+
+	protected HardwareConnection[] digitalInputs; //Button, Motion
+	protected HardwareConnection[] digitalOutputs;//Relay Buzzer
+
+	protected HardwareConnection[] analogInputs;  //Light, UV, Moisture
+	protected HardwareConnection[] edgeInputs = new HardwareConnection[0]; //also held in digitalInputs
+	protected Port[] analogCapturePorts = new Port[0]; //also held in analogInputs, sampled by the buffered ADC
+	protected int analogCaptureRateHz;
+	protected HardwareConnection[] pwmOutputs;    //Servo   //(only 3, 5, 6, 9, 10, 11 when on edison)
+
+	protected I2CConnection[] i2cInputs;
+	protected I2CConnection[] i2cOutputs;
+
+	private static final int DEFAULT_LENGTH = 16;
+	private static final int DEFAULT_PAYLOAD_SIZE = 128;
+	private static final boolean DEFAULT_EVERY_VALUE = false;
+
+	private int i2cBus;
+	private boolean i2cBusSelected;
+	private int[] extraI2CBuses = new int[0]; //each gets its own stage, see createI2COutputInputStage
+	private I2CBacking[] extraI2CBackings = new I2CBacking[0];
+	protected I2CBacking i2cBackingInternal;
+	protected boolean coalesceI2CReads = true;
+	private long i2cRetryInitialNS = 2*MS_TO_NS;
+	private long i2cRetryMaxNS = 1000*MS_TO_NS;
+	private int i2cRetryWriteAttempts = 8;
+	private I2CRetryBackoff[] i2cRetries = new I2CRetryBackoff[0];
+
+	private static final long EPOCH_RESYNC_NS = 10_000_000_000L;
+	private volatile long monotonicToEpochNS;
+	private volatile long epochSyncedNS = Long.MIN_VALUE;
+
+	protected PrecisionWait precisionWait = PrecisionWait.PARK;
+	private PrecisionWaitStrategy[] waitStrategies = new PrecisionWaitStrategy[0];
+
+	private boolean latencyHistograms;
+	private LatencyHistogram[] latencies = new LatencyHistogram[0];
+
+	private I2CPriority[] i2cPriorityByPipeId = new I2CPriority[0];
+	private I2CBusArbiter[] i2cArbiters = new I2CBusArbiter[0];
+
+	private long adaptiveStableWindowMS = 0; //zero polls every connection at its declared rate
+	private int adaptiveMaxBackoff = 1;
+	private int adaptiveAnalogThreshold = DEFAULT_ANALOG_CHANGE_THRESHOLD;
+	private Port[][] adaptiveLinks = new Port[0][];
+
+	private Port[] windowPorts = new Port[0]; //each summarized by the SensorWindowStage
+	private int[] windowLengthMS = new int[0];
+	private int[] windowSlideMS = new int[0];
+
+	private TimeSeriesStore timeSeriesStore; //null unless samples are recorded on the device
+	private String inputCapturePath; //null unless the inputs are recorded for replay
+	protected static final int DEFAULT_ANALOG_CHANGE_THRESHOLD = 4;
+
+	protected static final long MS_TO_NS = 1_000_000;
+
+
+	private static final Logger logger = LoggerFactory.getLogger(HardwareImpl.class);
+
+	protected final IODevice[] deviceOnPort= new IODevice[Port.values().length];
+
+	/////////////////
+	///Pipes for initial startup declared subscriptions. (Not part of graph)
+	private final int maxStartupSubs = 64;
+	private final int maxTopicLengh  = 128;
+	private Pipe<MessagePubSub> tempPipeOfStartupSubscriptions;
+	/////////////////
+	/////////////////
+
+	protected ReentrantLock devicePinConfigurationLock = new ReentrantLock();
+
+	protected RS232Client rs232Client;
+	protected String rs232ClientDevice = "/dev/ttyMFD1";//custom hardware should override this edison value
+	protected Baud   rs232ClientBaud = Baud.B_____9600;
+	protected String bluetoothDevice = null;
+
+
+	private static final boolean debug = false;
+
+    private int IDX_PIN = -1;
+    private int IDX_I2C = -1;
+    private int IDX_SER = -1;
+	
+    private int imageFrameTriggerRateMillis = 33;
+    private boolean imageFrameTriggerRateSet; //checked once the graph is built and the capture mode is known
+    private int imageFramePoolSize = 0; //zero sends frames row by row
+    private FramePool framePool;
+    private int cameraWidth = PiImageListenerStage.FRAME_WIDTH;
+    private int cameraHeight = PiImageListenerStage.FRAME_HEIGHT;
+    private CameraFormat cameraFormat; //null uses the synchronous 1080p RGB24 camera
+    private int cameraBuffers = PiImageListenerStage.DEFAULT_STREAM_BUFFERS;
+
+	public void setImageTriggerRate(int triggerRateMillis) {
+		if (triggerRateMillis < 1) {
+			throw new RuntimeException("Image listeners cannot be used with trigger rates of less than 1 MS.");
+		}
+
+		this.imageFrameTriggerRateMillis = triggerRateMillis;
+		this.imageFrameTriggerRateSet = true;
+	}
+
+	public Hardware useImageFrameHandles(int frames) {
+		if (frames < 1) {
+			throw new UnsupportedOperationException("At least one pooled frame is required");
+		}
+		this.imageFramePoolSize = frames;
+		return this;
+	}
+
+	public Hardware useCamera(int width, int height, CameraFormat format) {
+		return useCamera(width, height, format, PiImageListenerStage.DEFAULT_STREAM_BUFFERS);
+	}
+
+	public Hardware useCamera(int width, int height, CameraFormat format, int buffers) {
+		if (width < 1 || height < 1 || buffers < 1) {
+			throw new UnsupportedOperationException("Camera requires a positive resolution and at least one buffer");
+		}
+		this.cameraWidth = width;
+		this.cameraHeight = height;
+		this.cameraFormat = format;
+		this.cameraBuffers = buffers;
+		return this;
+	}
+
+	/**
+	 * Pool shared by the camera stage and the image listeners, null unless frame handles are in use.
+	 */
+	public FramePool getFramePool() {
+		return framePool;
+	}
+
+	public IODevice getConnectedDevice(Port p) {
+    	return deviceOnPort[p.ordinal()];
+    }
+
+	public HardwareImpl(GraphManager gm, String[] args, int i2cBus) {
+		this(gm, args, i2cBus, false, false, EMPTY,EMPTY,EMPTY,EMPTY,EMPTY);
+	}
+
+	protected HardwareImpl(GraphManager gm, String[] args, int i2cBus, boolean publishTime, boolean configI2C, HardwareConnection[] multiDigitalInput,
+			HardwareConnection[] digitalInputs, HardwareConnection[] digitalOutputs, HardwareConnection[] pwmOutputs, HardwareConnection[] analogInputs) {
+
+		super(gm, args);
+				ReactiveIoTListenerStage.initOperators(operators);
+
+		this.pcm.addConfig(new PipeConfig<NetPayloadSchema>(NetPayloadSchema.instance,
+															2, //only a few requests when FogLight 
+															MINIMUM_TLS_BLOB_SIZE)); 
+				
+		this.pcm.addConfig(new PipeConfig<SerialInputSchema>(SerialInputSchema.instance,
+				                                            DEFAULT_LENGTH, 
+				                                            DEFAULT_PAYLOAD_SIZE));
+
+		this.i2cBus = i2cBus;
+
+		this.configI2C = configI2C; //may be removed.
+
+		this.digitalInputs = digitalInputs;
+		this.digitalOutputs = digitalOutputs;
+		this.pwmOutputs = pwmOutputs;
+		this.analogInputs = analogInputs;
+
+		this.getTempPipeOfStartupSubscriptions().initBuffers();
+	}
+
+	public I2CBacking getI2CBacking() {
+		if (null == i2cBackingInternal) {
+			i2cBackingInternal = getI2CBacking((byte)i2cBus, false);
+		}
+		return i2cBackingInternal;
+	}
+
+	/**
+	 * Backing for one of the buses selected with {@link #useI2C(int)}, only used by the stage of that bus.
+	 */
+	public I2CBacking getI2CBacking(int bus) {
+		if (I2CConnection.DEFAULT_BUS == bus || i2cBus == bus) {
+			return getI2CBacking();
+		}
+		int i = extraI2CBuses.length;
+		while (--i>=0) {
+			if (extraI2CBuses[i] == bus) {
+				if (null == extraI2CBackings[i]) {
+					extraI2CBackings[i] = createI2CBacking(bus);
+				}
+				return extraI2CBackings[i];
+			}
+		}
+		throw new UnsupportedOperationException("I2C bus "+bus+" was not selected with useI2C");
+	}
+
+	protected I2CBacking createI2CBacking(int bus) {
+		return getI2CBacking((byte)bus, true);
+	}
+
+	private static I2CBacking getI2CBacking(byte deviceNum, boolean reportError) {
+		long start = System.currentTimeMillis();
+		try {
+			return new I2CNativeLinuxBacking().configure(deviceNum);
+		} catch (Throwable t) {
+			if (reportError) {
+				logger.info("warning could not find the i2c bus", t);
+			}
+			//avoid non error case that is used to detect which hardware is running.
+			return null;
+		} finally {
+			logger.info("duration of getI2CBacking {} ", System.currentTimeMillis()-start);
+		}
+	}
+
+	protected HardwareConnection[] growHardwareConnections(HardwareConnection[] original, HardwareConnection toAdd) {
+		final int len = original.length;
+		//Validate that what we are adding is safe
+		int i = len;
+		while (--i>=0) {
+			if (original[i].register == toAdd.register) {
+				throw new UnsupportedOperationException("This connection "+toAdd.register+" already has attachment "+original[i].twig+" so the attachment "+toAdd.twig+" can not be added.");
+			}
+		}
+
+		//Grow the array
+		HardwareConnection[] result = new HardwareConnection[len+1];
+		System.arraycopy(original, 0, result, 0, len);
+		result[len] = toAdd;
+		return result;
+	}
+
+	protected I2CConnection[] growI2CConnections(I2CConnection[] original, I2CConnection toAdd){
+		if (null==original) {
+			return new I2CConnection[] {toAdd};
+		} else {
+			int l = original.length;
+			I2CConnection[] result = new I2CConnection[l+1];
+			System.arraycopy(original, 0, result, 0, l);
+			result[l] = toAdd;
+			return result;
+		}
+	}
+
+	protected Hardware internalConnectAnalog(IODevice t, int connection, int customRate, int customAverageMS, boolean everyValue) {
+		return internalConnectAnalog(t, connection, customRate, customAverageMS, everyValue, null);
+	}
+
+	protected Hardware internalConnectAnalog(IODevice t, int connection, int customRate, int customAverageMS, boolean everyValue, AnalogFilterChain filters) {
+		if (t.isInput()) {
+			assert(!t.isOutput());
+			analogInputs = growHardwareConnections(analogInputs, new HardwareConnection(t,connection, customRate, customAverageMS, everyValue, filters));
+		} else {
+			assert(t.isOutput());
+			pwmOutputs = growHardwareConnections(pwmOutputs, new HardwareConnection(t,connection, customRate, customAverageMS, everyValue));
+		}
+		return this;
+	}  
+
+	protected Hardware internalConnectDigital(IODevice t, int connection, int customRate, int customAverageMS, boolean everyValue) {
+		if (t.isInput()) {
+			assert(!t.isOutput());
+			digitalInputs = growHardwareConnections(digitalInputs, new HardwareConnection(t,connection, customRate, customAverageMS, everyValue));
+		} else {
+			assert(t.isOutput());			
+			digitalOutputs = growHardwareConnections(digitalOutputs, new HardwareConnection(t,connection, customRate, customAverageMS, everyValue));
+		}
+		return this;
+	}
+
+	@Override
+	public Hardware connect(I2CIODevice t){
+		logger.debug("Connecting I2C Device "+t.getClass());
+
+		if(t.isInput()){
+			i2cInputs = growI2CConnections(i2cInputs, t.getI2CConnection());
+		}
+
+		if(t.isOutput()){
+			checkI2COutputAddress(t.getI2CConnection());
+			i2cOutputs = growI2CConnections(i2cOutputs, t.getI2CConnection());
+		}
+
+		this.useI2C();
+		return this;
+	}
+	@Override
+	public Hardware connect(I2CIODevice t, int customRateMS){
+		logger.debug("Connecting I2C Device "+t.getClass());
+		if(t.isInput()){
+			i2cInputs = growI2CConnections(i2cInputs, new I2CConnection(t.getI2CConnection(),customRateMS));
+		}
+
+		if(t.isOutput()){
+			checkI2COutputAddress(t.getI2CConnection());
+			i2cOutputs = growI2CConnections(i2cOutputs, t.getI2CConnection());
+		}
+
+		this.useI2C();
+		return this;
+	}
+
+	@Override
+	public Hardware connect(I2CIODevice t, int customRateMS, int bus){
+		logger.debug("Connecting I2C Device {} on bus {}", t.getClass(), bus);
+		I2CConnection con = t.getI2CConnection();
+		if(t.isInput()){
+			i2cInputs = growI2CConnections(i2cInputs, new I2CConnection(con, customRateMS, bus));
+		}
+
+		if(t.isOutput()){
+			I2CConnection output = new I2CConnection(con, con.responseMS, bus);
+			checkI2COutputAddress(output);
+			i2cOutputs = growI2CConnections(i2cOutputs, output);
+		}
+
+		this.useI2C();
+		addI2CBus(bus);
+		return this;
+	}
+
+	/**
+	 * Commands only carry the address so it must not be used for outputs on two buses.
+	 */
+	private void checkI2COutputAddress(I2CConnection output) {
+		if (null != i2cOutputs) {
+			int i = i2cOutputs.length;
+			while (--i>=0) {
+				if (i2cOutputs[i].address == output.address && busOf(i2cOutputs[i]) != busOf(output)) {
+					throw new UnsupportedOperationException("I2C address "+output.address+" is already an output on bus "+busOf(i2cOutputs[i]));
+				}
+			}
+		}
+	}
+
+	private void addI2CBus(int bus) {
+		if (bus == i2cBus || I2CConnection.DEFAULT_BUS == bus) {
+			return;
+		}
+		int i = extraI2CBuses.length;
+		while (--i>=0) {
+			if (extraI2CBuses[i] == bus) {
+				return;
+			}
+		}
+		extraI2CBuses = Arrays.copyOf(extraI2CBuses, extraI2CBuses.length+1);
+		extraI2CBuses[extraI2CBuses.length-1] = bus;
+		extraI2CBackings = Arrays.copyOf(extraI2CBackings, extraI2CBuses.length);
+	}
+
+	public int busOf(I2CConnection con) {
+		return I2CConnection.DEFAULT_BUS == con.bus ? i2cBus : con.bus;
+	}
+
+	/**
+	 * Default bus first then every other bus selected with {@link #useI2C(int)}.
+	 */
+	public int[] getI2CBuses() {
+		int[] result = new int[extraI2CBuses.length+1];
+		result[0] = i2cBus;
+		System.arraycopy(extraI2CBuses, 0, result, 1, extraI2CBuses.length);
+		return result;
+	}
+
+
+	public Hardware useSerial(Baud baud) {
+		this.rs232ClientBaud = baud;
+		return this;
+	}
+
+	/**
+	 *
+	 * @param baud
+	 * @param device Name of the port. On UNIX systems this will typically
+	 *             be of the form /dev/ttyX, where X is a port number. On
+	 *             Windows systems this will typically of the form COMX,
+	 *             where X is again a port number.
+	 */
+	public Hardware useSerial(Baud baud, String device) {
+		this.rs232ClientBaud = baud;
+		this.rs232ClientDevice = device;
+		return this;
+	}
+
+	public Hardware useI2C() {
+		this.configI2C = true;
+		return this;
+	}
+	public Hardware useCamera() {
+		this.configCamera = true;
+		return this;
+	}
+	public Hardware useI2C(int bus) {
+		this.configI2C = true;
+		if (i2cBusSelected) {
+			addI2CBus(bus);
+		} else {
+			//first bus selected replaces the platform default
+			i2cBusSelected = true;
+			if (bus != i2cBus) {
+				i2cBus = bus;
+				i2cBackingInternal = null;
+				removeExtraI2CBus(bus);
+			}
+		}
+		return this;
+	}
+
+	private void removeExtraI2CBus(int bus) {
+		int i = extraI2CBuses.length;
+		while (--i>=0) {
+			if (extraI2CBuses[i] == bus) {
+				int last = extraI2CBuses.length-1;
+				extraI2CBuses[i] = extraI2CBuses[last];
+				extraI2CBackings[i] = extraI2CBackings[last];
+				extraI2CBuses = Arrays.copyOf(extraI2CBuses, last);
+				extraI2CBackings = Arrays.copyOf(extraI2CBackings, last);
+				return;
+			}
+		}
+	}
+
+	public boolean isUseI2C() {
+		return this.configI2C;
+	}
+
+	public Hardware useI2CReadCoalescing(boolean enabled) {
+		this.coalesceI2CReads = enabled;
+		return this;
+	}
+
+	public Hardware useI2CRetry(int initialBackoffMS, int maxBackoffMS, int writeAttempts) {
+		if (initialBackoffMS < 1 || maxBackoffMS < initialBackoffMS || writeAttempts < 1) {
+			throw new UnsupportedOperationException("I2C retry requires a positive backoff no larger than the max and at least one attempt");
+		}
+		this.i2cRetryInitialNS = initialBackoffMS*MS_TO_NS;
+		this.i2cRetryMaxNS = maxBackoffMS*MS_TO_NS;
+		this.i2cRetryWriteAttempts = writeAttempts;
+		return this;
+	}
+
+	public long toEpochNS(long acquiredNS) {
+		long now = nanoTime();
+		if (Long.MIN_VALUE == epochSyncedNS || now-epochSyncedNS > EPOCH_RESYNC_NS) {
+			//races between threads only replace one measurement with another
+			monotonicToEpochNS = currentTimeMillis()*MS_TO_NS - now;
+			epochSyncedNS = now;
+		}
+		return acquiredNS + monotonicToEpochNS;
+	}
+
+	public Hardware usePrecisionWait(PrecisionWait mode) {
+		this.precisionWait = mode;
+		return this;
+	}
+
+	public Hardware enableLatencyHistograms() {
+		this.latencyHistograms = true;
+		return this;
+	}
+
+	public boolean isLatencyHistogramsEnabled() {
+		return latencyHistograms;
+	}
+
+	public Hardware useAdaptivePolling(int stableWindowMS, int maxBackoff) {
+		return useAdaptivePolling(stableWindowMS, maxBackoff, DEFAULT_ANALOG_CHANGE_THRESHOLD);
+	}
+
+	public Hardware useAdaptivePolling(int stableWindowMS, int maxBackoff, int analogThreshold) {
+		if (stableWindowMS < 1 || maxBackoff < 1 || maxBackoff > AdaptivePollSchedule.MAX_BACKOFF || Integer.bitCount(maxBackoff) != 1) {
+			throw new UnsupportedOperationException("Adaptive polling requires a positive window and a power of two backoff no larger than "+AdaptivePollSchedule.MAX_BACKOFF);
+		}
+		this.adaptiveStableWindowMS = stableWindowMS;
+		this.adaptiveMaxBackoff = maxBackoff;
+		this.adaptiveAnalogThreshold = analogThreshold;
+		return this;
+	}
+
+	public Hardware useNativeGpio(Port port, int headerPin) {
+		throw new UnsupportedOperationException("Native header GPIO is only supported on the Raspberry Pi");
+	}
+
+	public Hardware useAnalogCapture(int sampleRateHz, Port ... ports) {
+		throw new UnsupportedOperationException("Buffered analog capture is not supported on "+getPlatformType());
+	}
+
+	public Hardware window(Port port, int windowMS) {
+		return window(port, windowMS, windowMS);
+	}
+
+	public Hardware window(Port port, int windowMS, int slideMS) {
+		if (windowMS < 1 || slideMS < 1 || slideMS > windowMS) {
+			throw new UnsupportedOperationException("Windows require a positive length and a slide no larger than the window");
+		}
+		int i = windowPorts.length;
+		while (--i>=0) {
+			if (windowPorts[i] == port) {
+				throw new UnsupportedOperationException("Port "+port+" already has a window");
+			}
+		}
+		int w = windowPorts.length;
+		windowPorts = Arrays.copyOf(windowPorts, w+1);
+		windowLengthMS = Arrays.copyOf(windowLengthMS, w+1);
+		windowSlideMS = Arrays.copyOf(windowSlideMS, w+1);
+		windowPorts[w] = port;
+		windowLengthMS[w] = windowMS;
+		windowSlideMS[w] = slideMS;
+		return this;
+	}
+
+	public Hardware useTimeSeriesStore(String directory, long maxBytes, long retentionMS) {
+		timeSeriesStore = new TimeSeriesStore(directory, maxBytes, retentionMS);
+		return this;
+	}
+
+	public TimeSeriesStore getTimeSeriesStore() {
+		return timeSeriesStore;
+	}
+
+	public Hardware recordInputs(String path) {
+		inputCapturePath = path;
+		return this;
+	}
+
+	public boolean hasWindows() {
+		return windowPorts.length>0 && hasDigitalOrAnalogInputs();
+	}
+
+	public Hardware linkAdaptivePolling(Port ... ports) {
+		adaptiveLinks = Arrays.copyOf(adaptiveLinks, adaptiveLinks.length+1);
+		adaptiveLinks[adaptiveLinks.length-1] = ports.clone();
+		return this;
+	}
+
+	public boolean isAdaptivePolling() {
+		return adaptiveStableWindowMS > 0;
+	}
+
+	/**
+	 * Adaptive schedule over {@link #combinedADConnections()}, null when adaptive polling is off.
+	 */
+	public AdaptivePollSchedule buildAdaptiveADSchedule() {
+		if (!isAdaptivePolling() || !hasDigitalOrAnalogInputs()) {
+			return null;
+		}
+		HardwareConnection[] connections = combinedADConnections();
+		if (0==connections.length) {
+			return null; //every input is edge driven or captured
+		}
+		AdaptivePollSchedule result = new AdaptivePollSchedule(buildPeriods(connections),
+				                                               adaptiveStableWindowMS*MS_TO_NS, adaptiveMaxBackoff);
+		int analogCount = 0;
+		for (HardwareConnection con : getAnalogInputs()) {
+			if (isPolledByPins(con, true)) {
+				analogCount++;
+			}
+		}
+		int i = connections.length;
+		while (--i>=0) {
+			IODevice twig = connections[i].twig;
+			if (SimpleDigitalTwig.RotaryEncoder == twig || SimpleDigitalTwig.Button == twig) {
+				result.pin(i); //a press or turn would be missed at a slower rate
+			} else if (i < analogCount) {
+				result.setThreshold(i, adaptiveAnalogThreshold);
+			}
+		}
+		for (Port[] ports : adaptiveLinks) {
+			int first = -1;
+			for (Port port : ports) {
+				int idx = indexOfADConnection(port, analogCount, connections);
+				if (idx >= 0) {
+					if (first < 0) {
+						first = idx;
+					} else {
+						result.link(first, idx);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int indexOfADConnection(Port port, int analogCount, HardwareConnection[] connections) {
+		int start = port.isAnalog() ? 0 : analogCount;
+		int end   = port.isAnalog() ? analogCount : connections.length;
+		for (int i = start; i < end; i++) {
+			if (connections[i].register == port.port) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adaptive schedule over the reads of the plan, reads on the same address are linked.
+	 * Null when adaptive polling is off.
+	 */
+	public AdaptivePollSchedule buildAdaptiveI2CSchedule(I2CConnection[] reads) {
+		if (!isAdaptivePolling() || 0 == reads.length) {
+			return null;
+		}
+		long[] periods = new long[reads.length];
+		for (int i = 0; i < reads.length; i++) {
+			periods[i] = reads[i].responseMS*MS_TO_NS;
+		}
+		AdaptivePollSchedule result = new AdaptivePollSchedule(periods, adaptiveStableWindowMS*MS_TO_NS, adaptiveMaxBackoff);
+		for (int i = 0; i < reads.length; i++) {
+			if (null != reads[i].fifo) {
+				result.pin(i); //a slower rate would let the device FIFO overflow
+			}
+			for (int j = i+1; j < reads.length; j++) {
+				if (reads[i].address == reads[j].address) {
+					result.link(i, j);
+					break;//j will link the rest
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * New wait strategy for one polling stage, each stage must have its own.
+	 */
+	public synchronized PrecisionWaitStrategy newWaitStrategy(String name) {
+		PrecisionWaitStrategy result;
+		switch (precisionWait) {
+			case SPIN:
+				result = new SpinWaitStrategy(this, name);
+				break;
+			case TIMERFD:
+				result = new TimerFdWaitStrategy(this, name);
+				break;
+			default:
+				result = new ParkWaitStrategy(this, name);
+		}
+		waitStrategies = Arrays.copyOf(waitStrategies, waitStrategies.length+1);
+		waitStrategies[waitStrategies.length-1] = result;
+		return result;
+	}
+
+	/**
+	 * New latency histogram for one connection of one stage, each stage must have its own.
+	 * @return null when latency histograms were not enabled.
+	 */
+	public synchronized LatencyHistogram newLatencyHistogram(String name) {
+		if (!latencyHistograms) {
+			return null;
+		}
+		LatencyHistogram result = new LatencyHistogram(name);
+		latencies = Arrays.copyOf(latencies, latencies.length+1);
+		latencies[latencies.length-1] = result;
+		return result;
+	}
+
+	/**
+	 * Priority class of the writes on one command channel's I2C pipe.
+	 */
+	public synchronized void setI2CPriority(Pipe<I2CCommandSchema> pipe, I2CPriority priority) {
+		if (pipe.id >= i2cPriorityByPipeId.length) {
+			i2cPriorityByPipeId = Arrays.copyOf(i2cPriorityByPipeId, pipe.id+1);
+		}
+		i2cPriorityByPipeId[pipe.id] = priority;
+	}
+
+	public synchronized I2CPriority getI2CPriority(Pipe<I2CCommandSchema> pipe) {
+		I2CPriority result = pipe.id < i2cPriorityByPipeId.length ? i2cPriorityByPipeId[pipe.id] : null;
+		return null == result ? I2CPriority.NORMAL : result;
+	}
+
+	/**
+	 * New arbiter for the stage of one I2C bus, each stage must have its own.
+	 */
+	public synchronized I2CBusArbiter newI2CArbiter(int bus) {
+		I2CBusArbiter result = new I2CBusArbiter(bus);
+		i2cArbiters = Arrays.copyOf(i2cArbiters, i2cArbiters.length+1);
+		i2cArbiters[i2cArbiters.length-1] = result;
+		return result;
+	}
+
+	/**
+	 * New retry state for the stage of one I2C bus, each stage must have its own.
+	 */
+	public synchronized I2CRetryBackoff newI2CRetryBackoff(int slots) {
+		I2CRetryBackoff result = new I2CRetryBackoff(slots, i2cRetryInitialNS, i2cRetryMaxNS, i2cRetryWriteAttempts);
+		i2cRetries = Arrays.copyOf(i2cRetries, i2cRetries.length+1);
+		i2cRetries[i2cRetries.length-1] = result;
+		return result;
+	}
+
+	/**
+	 * Failed and abandoned transfer counters for every I2C bus.
+	 */
+	public synchronized I2CRetryBackoff[] getI2CRetries() {
+		return i2cRetries.clone();
+	}
+
+	/**
+	 * Missed deadline counters for every I2C bus.
+	 */
+	public synchronized I2CBusArbiter[] getI2CArbiters() {
+		return i2cArbiters.clone();
+	}
+
+	/**
+	 * Jitter and overshoot histograms for every polling stage wait.
+	 */
+	public synchronized PrecisionWaitStats[] getWaitStatistics() {
+		PrecisionWaitStats[] result = new PrecisionWaitStats[waitStrategies.length];
+		int i = result.length;
+		while (--i>=0) {
+			result[i] = waitStrategies[i].stats();
+		}
+		return result;
+	}
+
+	public synchronized LatencyHistogram[] getLatencyStatistics() {
+		LatencyHistogram[] result = new LatencyHistogram[latencies.length];
+		int i = result.length;
+		while (--i>=0) {
+			result[i] = latencies[i].snapshot();
+		}
+		return result;
+	}
+
+	public I2CCoalescedReadPlan buildI2CReadPlan() {
+		return buildI2CReadPlan(getI2CInputs());
+	}
+
+	public I2CCoalescedReadPlan buildI2CReadPlan(int bus) {
+		return buildI2CReadPlan(getI2CInputs(bus));
+	}
+
+	private I2CCoalescedReadPlan buildI2CReadPlan(I2CConnection[] localInputs) {
+		return coalesceI2CReads ? I2CCoalescedReadPlan.build(localInputs) : I2CCoalescedReadPlan.direct(localInputs);
+	}
+
+	public abstract HardwarePlatformType getPlatformType();
+	public abstract int read(Port port); //Platform specific
+	public abstract void write(Port port, int value); //Platform specific
+
+	public int maxAnalogMovingAverage() {
+		return MAX_MOVING_AVERAGE_SUPPORTED;
+	}
+
+
+	public void coldSetup(){
+		System.out.println("");
+	}
+
+	protected HardwareConnection[] buildUsedLines() {
+
+		HardwareConnection[] result = new HardwareConnection[digitalInputs.length+
+		                                                     digitalOutputs.length+
+		                                                     pwmOutputs.length+
+		                                                     analogInputs.length+
+		                                                     (configI2C?2:0)];
+
+		int pos = 0;
+		System.arraycopy(digitalInputs, 0, result, pos, digitalInputs.length);
+		pos+=digitalInputs.length;
+
+		findDup(result,pos,digitalOutputs, false);
+		System.arraycopy(digitalOutputs, 0, result, pos, digitalOutputs.length);
+		pos+=digitalOutputs.length;
+
+		findDup(result,pos,pwmOutputs, false);
+		System.arraycopy(pwmOutputs, 0, result, pos, pwmOutputs.length);
+		pos+=pwmOutputs.length;        
+
+		findDup(result,pos,analogInputs, true);
+		int j = analogInputs.length;
+		while (--j>=0) {
+			result[pos++] = new HardwareConnection(analogInputs[j].twig,(int) EdisonConstants.ANALOG_CONNECTOR_TO_PIN[analogInputs[j].register]);
+		}
+
+		if (configI2C) {
+			findDup(result,pos,EdisonConstants.i2cPins, false);
+			System.arraycopy(EdisonConstants.i2cPins, 0, result, pos, EdisonConstants.i2cPins.length);
+			pos+=EdisonConstants.i2cPins.length;
+		}
+
+		return result;
+	}
+
+	private static void findDup(HardwareConnection[] base, int baseLimit, HardwareConnection[] items, boolean mapAnalogs) {
+		int i = items.length;
+		while (--i>=0) {
+			int j = baseLimit;
+			while (--j>=0) {
+				if (mapAnalogs ? base[j].register ==  EdisonConstants.ANALOG_CONNECTOR_TO_PIN[items[i].register] :  base[j]==items[i]) {
+					throw new UnsupportedOperationException("Connector "+items[i]+" is assigned more than once.");
+				}
+			}
+		}     
+	}
+
+
+	public void shutdown() {
+		super.shutdown();
+		//can be overridden by specific hardware impl if shutdown is supported.
+	}
+
+
+	protected void createUARTInputStage(Pipe<SerialInputSchema> masterUARTPipe) {
+		RS232Clientable client = buildSerialClient();
+		new SerialDataReaderStage(this.gm, masterUARTPipe, client);
+	}
+
+
+	protected RS232Clientable buildSerialClient() {
+		if (null==rs232Client) {
+			//custom hardware can override this
+			rs232Client = new RS232Client(rs232ClientDevice, rs232ClientBaud);
+		}
+		return rs232Client;
+	}
+
+	protected void createADInputStage(Pipe<GroveResponseSchema> masterResponsePipe) {
+		//NOTE: rate is NOT set since stage sets and configs its own rate based on polling need.
+		ReadDeviceInputStage adInputStage = new ReadDeviceInputStage(this.gm, masterResponsePipe, this);
+	}
+
+	/**
+	 * @param readers Pipes the image messages are replicated to, each releases every pooled frame.
+	 */
+	protected void createImageInputStage(Pipe<ImageSchema> masterImagePipe, int readers) {
+		new PiImageListenerStage(gm, masterImagePipe, imageFrameTriggerRateMillis, framePool, readers,
+				                 cameraWidth, cameraHeight, cameraFormat, cameraBuffers);
+	}
+
+	protected void createWindowStage(Pipe<GroveResponseSchema> input, Pipe<SensorWindowSchema>[] windowPipes) {
+		if (windowPipes.length>1) {
+			Pipe<SensorWindowSchema> masterWindowPipe = SensorWindowSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+			ReplicatorStage.newInstance(gm, masterWindowPipe, windowPipes);
+			new SensorWindowStage(gm, input, masterWindowPipe, this, windowPorts, windowLengthMS, windowSlideMS);
+		} else {
+			new SensorWindowStage(gm, input, windowPipes[0], this, windowPorts, windowLengthMS, windowSlideMS);
+		}
+	}
+
+	protected void createI2COutputInputStage(MsgRuntime<?,?> runtime, Pipe<I2CCommandSchema>[] i2cPipes,
+			Pipe<TrafficReleaseSchema>[] masterI2CgoOut, Pipe<TrafficAckSchema>[] masterI2CackIn, Pipe<I2CResponseSchema> masterI2CResponsePipe) {
+
+		if (0 == extraI2CBuses.length) {
+			I2CJFFIStage i2cJFFIStage = new I2CJFFIStage(gm, runtime, masterI2CgoOut, i2cPipes, masterI2CackIn, masterI2CResponsePipe, this);
+			return;
+		}
+
+		//one stage per bus so each adapter is polled and written on its own thread,
+		//the default bus stage owns the command channels and hands writes for the other buses to their stage
+		int buses = extraI2CBuses.length+1;
+		Pipe<I2CResponseSchema>[] busResponsePipes = new Pipe[buses];
+		if (null != masterI2CResponsePipe) {
+			int i = buses;
+			while (--i>=0) {
+				busResponsePipes[i] = I2CResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+			}
+			new I2CResponseMergeStage(gm, busResponsePipes, masterI2CResponsePipe);
+		}
+
+		I2CCommandQueue[] queues = new I2CCommandQueue[extraI2CBuses.length];
+		I2CCommandQueue[] routes = new I2CCommandQueue[I2CJFFIStage.MAX_ADDR+1]; //by address, null for the default bus
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new I2CCommandQueue(extraI2CBuses[i]);
+		}
+		for (I2CConnection output : null==i2cOutputs ? new I2CConnection[0] : i2cOutputs) {
+			int bus = busOf(output);
+			for (int i = 0; i < queues.length; i++) {
+				if (queues[i].bus == bus) {
+					routes[I2CJFFIStage.MAX_ADDR & output.address] = queues[i];
+				}
+			}
+		}
+
+		new I2CJFFIStage(gm, runtime, masterI2CgoOut, i2cPipes, masterI2CackIn, busResponsePipes[0], this, i2cBus, routes);
+		for (int i = 0; i < queues.length; i++) {
+			new I2CJFFIStage(gm, runtime, busResponsePipes[i+1], this, queues[i]);
+		}
+	}
+
+	protected void createADOutputStage(MsgRuntime<?,?> runtime, Pipe<GroveRequestSchema>[] requestPipes, Pipe<TrafficReleaseSchema>[] masterPINgoOut, Pipe<TrafficAckSchema>[] masterPINackIn) {
+		DirectHardwareAnalogDigitalOutputStage adOutputStage = new DirectHardwareAnalogDigitalOutputStage(gm, runtime, requestPipes, masterPINgoOut, masterPINackIn, this);
+	}
+
+
+
+	public boolean isListeningToSerial(Object listener) {
+		return listener instanceof SerialListenerBase
+				|| !ChildClassScanner.visitUsedByClass(listener, deepListener, SerialListenerTransducer.class);
+	}
+	public boolean isListeningToCamera(Object listener) {
+		return listener instanceof ImageListenerBase
+				|| !ChildClassScanner.visitUsedByClass(listener, deepListener, ImageListenerTransducer.class);
+	}
+	public boolean isListeningToI2C(Object listener) {
+		return listener instanceof I2CListenerBase
+				|| listener instanceof I2CBatchListenerBase
+				|| !ChildClassScanner.visitUsedByClass(listener, deepListener, I2CListenerTransducer.class);
+	}
+
+	public boolean isListeningToWindows(Object listener) {
+		return listener instanceof WindowListenerBase;
+	}
+
+	public boolean isListeningToPins(Object listener) {
+		return listener instanceof DigitalListenerBase || 
+				listener instanceof AnalogListenerBase ||
+				listener instanceof AnalogBatchListenerBase ||
+				listener instanceof RotaryListenerBase
+				|| !ChildClassScanner.visitUsedByClass(listener, deepListener, DigitalListenerTransducer.class)
+				|| !ChildClassScanner.visitUsedByClass(listener, deepListener, AnalogListenerTransducer.class)
+				|| !ChildClassScanner.visitUsedByClass(listener, deepListener, RotaryListenerTransducer.class);
+	}
+
+	private Pipe<MessagePubSub> getTempPipeOfStartupSubscriptions() {
+		if (null==tempPipeOfStartupSubscriptions) {
+
+			final PipeConfig<MessagePubSub> messagePubSubConfig = new PipeConfig<MessagePubSub>(MessagePubSub.instance, maxStartupSubs,maxTopicLengh);   
+			tempPipeOfStartupSubscriptions = new Pipe<MessagePubSub>(messagePubSubConfig);
+
+		}		
+
+		return tempPipeOfStartupSubscriptions;
+	}
+
+
+	public boolean hasI2CInputs() {
+		return this.i2cInputs!=null && this.i2cInputs.length>0;
+	}
+
+	public I2CConnection[] getI2CInputs() {
+		return null==i2cInputs?new I2CConnection[0]:i2cInputs;
+	}
+
+	public boolean hasI2CInputs(int bus) {
+		return getI2CInputs(bus).length>0;
+	}
+
+	/**
+	 * I2C inputs polled on one bus.
+	 */
+	public I2CConnection[] getI2CInputs(int bus) {
+		I2CConnection[] all = getI2CInputs();
+		I2CConnection[] result = new I2CConnection[all.length];
+		int j = 0;
+		for (int i = 0; i < all.length; i++) {
+			if (busOf(all[i]) == bus) {
+				result[j++] = all[i];
+			}
+		}
+		return j == result.length ? result : Arrays.copyOf(result, j);
+	}
+
+	public HardwareConnection[] getAnalogInputs() {
+		return analogInputs;
+	}
+
+	public HardwareConnection[] getDigitalInputs() {
+		return digitalInputs;
+	}
+
+	public ScriptedSchedule buildI2CPollSchedule() {
+		return buildI2CPollSchedule(getI2CInputs());
+	}
+
+	public ScriptedSchedule buildI2CPollSchedule(I2CConnection[] localInputs) {
+
+		long[] schedulePeriods = new long[localInputs.length];
+		for (int i = 0; i < localInputs.length; i++) {
+			schedulePeriods[i] = localInputs[i].responseMS*MS_TO_NS;
+		}
+		
+		logger.info("Known I2C rates: {}",Arrays.toString(schedulePeriods));
+		return PMath.buildScriptedSchedule(schedulePeriods);
+
+	}
+
+	public boolean hasDigitalOrAnalogInputs() {
+		return (analogInputs.length+digitalInputs.length)>0;
+	}
+
+	public boolean hasDigitalOrAnalogOutputs() {
+		return (pwmOutputs.length+digitalOutputs.length)>0;
+	}
+
+	/**
+	 * Analog then digital inputs polled by {@link ReadDeviceInputStage}.
+	 */
+	public HardwareConnection[] combinedADConnections() {
+		HardwareConnection[] localAInputs = getAnalogInputs();
+		HardwareConnection[] localDInputs = getDigitalInputs();
+
+		HardwareConnection[] results = new HardwareConnection[localAInputs.length + localDInputs.length];
+		int j = 0;
+		for (int i = 0; i < localAInputs.length; i++) {
+			if (isPolledByPins(localAInputs[i], true)) {
+				results[j++] = localAInputs[i];
+			}
+		}
+		for (int i = 0; i < localDInputs.length; i++) {
+			if (isPolledByPins(localDInputs[i], false)) {
+				results[j++] = localDInputs[i];
+			}
+		}
+		return j == results.length ? results : Arrays.copyOf(results, j);
+	}
+
+	/**
+	 * True if the input is read with {@link #read(Port)}, inputs driven by GPIO edge events are not.
+	 * Platforms which read some inputs another way (eg over I2C) override this.
+	 */
+	protected boolean isPolledByPins(HardwareConnection con, boolean analog) {
+		return analog ? !isAnalogCaptured(con.register) : null == con.edges;
+	}
+
+	protected boolean isAnalogCaptured(int register) {
+		int i = analogCapturePorts.length;
+		while (--i>=0) {
+			if (analogCapturePorts[i].port == register) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Buffered ADC reader for every captured analog input, null if there are none.
+	 * Platforms which support {@link #useAnalogCapture(int, Port...)} override this.
+	 */
+	public IioCaptureReader newAnalogCapture() {
+		return null;
+	}
+
+	/**
+	 * Inputs driven by GPIO edge events, one for each device on the first port it uses.
+	 */
+	public HardwareConnection[] getEdgeInputs() {
+		return edgeInputs;
+	}
+
+	/**
+	 * Reader for every input connected with GPIO lines, null if there are none.
+	 */
+	public GpioEdgeReader newEdgeReader() {
+		return 0 == edgeInputs.length ? null : new GpioEdgeReader(edgeInputs);
+	}
+
+	public ScriptedSchedule buildADPollSchedule() {
+		HardwareConnection[] connections = combinedADConnections();
+		if (0==connections.length) {
+			return null;
+		}
+		//analogs then the digitals
+		return PMath.buildScriptedSchedule(buildPeriods(connections));
+
+	}
+
+	private static long[] buildPeriods(HardwareConnection[] connections) {
+		long[] schedulePeriods = new long[connections.length];
+		for (int i = 0; i < connections.length; i++) {
+			schedulePeriods[i] = connections[i].responseMS*MS_TO_NS;
+		}
+		return schedulePeriods;
+	}
+
+	public byte convertToPort(byte connection) {
+		return connection;
+	}
+
+	/**
+	 * Analog and digital samples carry a connector below this, stages keep their per connector
+	 * state in arrays of this length. Only hardware with more inputs than ports goes past the ports.
+	 */
+	public int connectorCount() {
+		return Port.values().length;
+	}
+
+	/**
+	 * Port reported to listeners for analog samples on this connector, null if there is none.
+	 */
+	public Port analogPort(int connector) {
+		return connector < Port.ANALOGS.length ? Port.ANALOGS[connector] : null;
+	}
+
+	/**
+	 * Port reported to listeners for digital samples on this connector, null if there is none.
+	 */
+	public Port digitalPort(int connector) {
+		return connector < Port.DIGITALS.length ? Port.DIGITALS[connector] : null;
+	}
+
+	/**
+	 * Analog inputs by connector, null where nothing is connected.
+	 */
+	public HardwareConnection[] analogConnectors() {
+		return byConnector(getAnalogInputs());
+	}
+
+	/**
+	 * Digital inputs by connector, null where nothing is connected.
+	 */
+	public HardwareConnection[] digitalConnectors() {
+		return byConnector(getDigitalInputs());
+	}
+
+	private HardwareConnection[] byConnector(HardwareConnection[] inputs) {
+		HardwareConnection[] result = new HardwareConnection[connectorCount()];
+		int i = inputs.length;
+		while (--i>=0) {
+			result[convertToPort(inputs[i].register)] = inputs[i];
+		}
+		return result;
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port, int customRateMS, int customAvgWindowMS, boolean everyValue) {
+		return connectAD(t, port, customRateMS, customAvgWindowMS, everyValue, null);
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port, int customRateMS, int customAvgWindowMS, AnalogFilterChain filters) {
+		return connectAD(t, port, customRateMS, customAvgWindowMS, DEFAULT_EVERY_VALUE, filters);
+	}
+
+	private Hardware connectAD(ADIODevice t, Port port, int customRateMS, int customAvgWindowMS, boolean everyValue, AnalogFilterChain filters) {
+		
+		int portsLeft = t.pinsUsed();
+
+		while (--portsLeft >= 0){
+			deviceOnPort[port.ordinal()] = t;
+
+			if (0 != (port.mask&Port.IS_ANALOG)) {
+				internalConnectAnalog(t, port.port, customRateMS, customAvgWindowMS, everyValue, filters);
+			}
+			else if (0 != (port.mask&Port.IS_DIGITAL)) {
+				internalConnectDigital(t, port.port, customRateMS, customAvgWindowMS, everyValue);
+			}
+			port = Port.nextPort(port);
+		}
+		return this;
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port, GpioEdgeLines lines) {
+		if (port.isAnalog() || !t.isInput()) {
+			throw new UnsupportedOperationException("GPIO edge events are only supported for digital inputs");
+		}
+		if (t.pinsUsed() != lines.offsets.length) {
+			throw new UnsupportedOperationException(t+" uses "+t.pinsUsed()+" pins but "+lines.offsets.length+" GPIO lines were given");
+		}
+
+		int portsLeft = t.pinsUsed();
+		Port p = port;
+		while (--portsLeft >= 0){
+			deviceOnPort[p.ordinal()] = t;
+			//polling rate is unused, only the moving average window applies
+			HardwareConnection con = new HardwareConnection(t, p.port, t.defaultPullRateMS(), DEFAULT_AVERAGE_WINDOW_MS, DEFAULT_EVERY_VALUE, null, lines);
+			digitalInputs = growHardwareConnections(digitalInputs, con);
+			if (p == port) {
+				edgeInputs = growHardwareConnections(edgeInputs, con);
+			}
+			p = Port.nextPort(p);
+		}
+		return this;
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port, int customRateMS, int customAvgWindowMS) {
+		return connect(t,port,customRateMS, customAvgWindowMS ,DEFAULT_EVERY_VALUE);
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port, int customRateMS) {
+		return connect(t,port,customRateMS, DEFAULT_AVERAGE_WINDOW_MS ,false);
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port, int customRateMS, boolean everyValue) {
+		return connect(t,port,customRateMS, DEFAULT_AVERAGE_WINDOW_MS ,everyValue);
+	}
+
+	@Override
+	public Hardware connect(ADIODevice t, Port port) {
+		return connect (t, port, t.defaultPullRateMS(),DEFAULT_AVERAGE_WINDOW_MS,false);
+	}
+
+	public void releasePinOutTraffic(int count, MsgCommandChannel<?> gcc) {		
+		MsgCommandChannel.publishGo(count, IDX_PIN, gcc);		
+	}
+
+	public void releaseI2CTraffic(int count, MsgCommandChannel<?> gcc) {
+		MsgCommandChannel.publishGo(count, IDX_I2C, gcc);
+	}
+
+	@Override
+	public void releasePubSubTraffic(int count, MsgCommandChannel<?> gcc) {
+		MsgCommandChannel.publishGo(count, IDX_MSG, gcc);
+	}
+
+	public void buildStages(MsgRuntime runtime) {
+
+		IntHashTable subscriptionPipeLookup2 = MsgRuntime.getSubPipeLookup(runtime);
+		GraphManager gm2 = MsgRuntime.getGraphManager(runtime);
+		
+		Pipe<I2CResponseSchema>[] i2cResponsePipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, I2CResponseSchema.instance);
+		Pipe<GroveResponseSchema>[] responsePipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, GroveResponseSchema.instance);
+
+		Pipe<SerialOutputSchema>[] serialOutputPipes = GraphManager.allPipesOfTypeWithNoConsumer(gm2, SerialOutputSchema.instance);
+		Pipe<I2CCommandSchema>[] i2cPipes = GraphManager.allPipesOfTypeWithNoConsumer(gm2, I2CCommandSchema.instance);
+		Pipe<GroveRequestSchema>[] pinRequestPipes = GraphManager.allPipesOfTypeWithNoConsumer(gm2, GroveRequestSchema.instance);
+		Pipe<SerialInputSchema>[] serialInputPipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, SerialInputSchema.instance);
+		Pipe<ImageSchema>[] imageInputPipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, ImageSchema.instance);
+		Pipe<NetResponseSchema>[] httpClientResponsePipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, NetResponseSchema.instance);
+		Pipe<MessageSubscription>[] subscriptionPipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, MessageSubscription.instance);
+
+		//the store takes its own copy of the responses, added before the I2C pipes are counted below
+		if (null != timeSeriesStore && (hasI2CInputs() || hasDigitalOrAnalogInputs())) {
+			Pipe<GroveResponseSchema> storePinInput = null;
+			Pipe<I2CResponseSchema> storeI2CInput = null;
+			if (hasDigitalOrAnalogInputs()) {
+				storePinInput = GroveResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+				responsePipes = Arrays.copyOf(responsePipes, responsePipes.length+1);
+				responsePipes[responsePipes.length-1] = storePinInput;
+			}
+			if (hasI2CInputs()) {
+				storeI2CInput = I2CResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+				i2cResponsePipes = Arrays.copyOf(i2cResponsePipes, i2cResponsePipes.length+1);
+				i2cResponsePipes[i2cResponsePipes.length-1] = storeI2CInput;
+			}
+			new TimeSeriesStoreStage(gm, storePinInput, storeI2CInput, this, timeSeriesStore);
+		}
+
+		//the recorder also takes its own copy, serial and image input is only read when something listens
+		if (null != inputCapturePath) {
+			Pipe<GroveResponseSchema> recordPinInput = null;
+			Pipe<I2CResponseSchema> recordI2CInput = null;
+			Pipe<SerialInputSchema> recordSerialInput = null;
+			Pipe<ImageSchema> recordImageInput = null;
+			if (hasDigitalOrAnalogInputs()) {
+				recordPinInput = GroveResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+				responsePipes = Arrays.copyOf(responsePipes, responsePipes.length+1);
+				responsePipes[responsePipes.length-1] = recordPinInput;
+			}
+			if (hasI2CInputs()) {
+				recordI2CInput = I2CResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+				i2cResponsePipes = Arrays.copyOf(i2cResponsePipes, i2cResponsePipes.length+1);
+				i2cResponsePipes[i2cResponsePipes.length-1] = recordI2CInput;
+			}
+			if (serialInputPipes.length>0) {
+				recordSerialInput = new Pipe<SerialInputSchema>(pcm.getConfig(SerialInputSchema.class));
+				serialInputPipes = Arrays.copyOf(serialInputPipes, serialInputPipes.length+1);
+				serialInputPipes[serialInputPipes.length-1] = recordSerialInput;
+			}
+			if (imageInputPipes.length>0) {
+				recordImageInput = ImageSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+				imageInputPipes = Arrays.copyOf(imageInputPipes, imageInputPipes.length+1);
+				imageInputPipes[imageInputPipes.length-1] = recordImageInput;
+			}
+			if (null != recordPinInput || null != recordI2CInput || null != recordSerialInput || null != recordImageInput) {
+				new InputRecorderStage(gm, recordPinInput, recordI2CInput, recordSerialInput, recordImageInput, this, inputCapturePath);
+			}
+		}
+
+		Pipe<TrafficOrderSchema>[] orderPipes = GraphManager.allPipesOfTypeWithNoConsumer(gm2, TrafficOrderSchema.instance);
+		Pipe<ClientHTTPRequestSchema>[] httpClientRequestPipes = GraphManager.allPipesOfTypeWithNoConsumer(gm2, ClientHTTPRequestSchema.instance);
+		Pipe<MessagePubSub>[] messagePubSub = GraphManager.allPipesOfTypeWithNoConsumer(gm2, MessagePubSub.instance);
+		Pipe<IngressMessages>[] ingressMessagePipes = GraphManager.allPipesOfTypeWithNoConsumer(gm2, IngressMessages.instance);
+
+
+		//TODO: must pull out those pubSub Pipes for direct connections
+		//TODO: new MessageSchema for direct messages from point to point
+		//      create the pipe instead of pub sub and attach?
+		//TODO: declare up front once in connections, direct connect topics
+		//      upon seeing these we build a new pipe
+
+
+		int commandChannelCount = orderPipes.length;
+
+		int eventSchemas = 0;
+		IDX_PIN = pinRequestPipes.length>0 ? eventSchemas++ : -1;
+		IDX_I2C = i2cPipes.length>0 || i2cResponsePipes.length > 0 ? eventSchemas++ : -1;  //the 'or' check is to ensure that reading without a cmd channel works
+		IDX_MSG = (IntHashTable.isEmpty(subscriptionPipeLookup2) && subscriptionPipes.length==0 && messagePubSub.length==0) ? -1 : eventSchemas++;
+		IDX_NET = useNetClient(httpClientRequestPipes) ? eventSchemas++ : -1;
+		IDX_SER = serialOutputPipes.length>0 ? eventSchemas++ : -1;
+
+		long timeout = 20_000; //20 seconds
+
+		//TODO: can we share this while with the parent BuilderImpl, I think so..
+		int maxGoPipeId = 0;
+
+		int t = commandChannelCount;
+
+		Pipe<TrafficReleaseSchema>[][] masterGoOut = new Pipe[eventSchemas][0];
+		Pipe<TrafficAckSchema>[][]     masterAckIn = new Pipe[eventSchemas][0];
+
+		if (IDX_PIN >= 0) {	
+			masterGoOut[IDX_PIN] = new Pipe[pinRequestPipes.length];
+			masterAckIn[IDX_PIN] = new Pipe[pinRequestPipes.length];
+		}		
+		if (IDX_I2C >= 0) {
+			masterGoOut[IDX_I2C] = new Pipe[i2cPipes.length];
+			masterAckIn[IDX_I2C] = new Pipe[i2cPipes.length];
+		}		
+		if (IDX_MSG >= 0) {
+			masterGoOut[IDX_MSG] = new Pipe[messagePubSub.length];
+			masterAckIn[IDX_MSG] = new Pipe[messagePubSub.length];
+		}		
+		if (IDX_NET >= 0) {
+			masterGoOut[IDX_NET] = new Pipe[httpClientRequestPipes.length];
+			masterAckIn[IDX_NET] = new Pipe[httpClientRequestPipes.length];
+		}		
+		if (IDX_SER >=0) {
+			masterGoOut[IDX_SER] = new Pipe[serialOutputPipes.length];
+			masterAckIn[IDX_SER] = new Pipe[serialOutputPipes.length];
+		}
+
+
+		while (--t>=0) {
+
+			int features = getFeatures(gm2, orderPipes[t]);
+
+			Pipe<TrafficReleaseSchema>[] goOut = new Pipe[eventSchemas];
+			Pipe<TrafficAckSchema>[] ackIn = new Pipe[eventSchemas];
+
+			boolean isDynamicMessaging = (features&Behavior.DYNAMIC_MESSAGING) != 0;
+			boolean isNetRequester     = (features&Behavior.NET_REQUESTER) != 0;
+			boolean isPinWriter        = (features&FogRuntime.PIN_WRITER) != 0;
+			boolean isI2CWriter        = (features&FogRuntime.I2C_WRITER) != 0;
+			boolean isSerialWriter     = (features&FogRuntime.SERIAL_WRITER) != 0;
+
+			boolean hasConnections = false;
+			if (isDynamicMessaging && IDX_MSG>=0) {
+				hasConnections = true;		 		
+				maxGoPipeId = populateGoAckPipes(maxGoPipeId, masterGoOut, masterAckIn, goOut, ackIn, IDX_MSG);
+			}
+			if (isNetRequester && IDX_NET>=0) {
+				hasConnections = true;		 		
+				maxGoPipeId = populateGoAckPipes(maxGoPipeId, masterGoOut, masterAckIn, goOut, ackIn, IDX_NET);
+			}
+			if (isPinWriter && IDX_PIN>=0) {
+				hasConnections = true;	
+				maxGoPipeId = populateGoAckPipes(maxGoPipeId, masterGoOut, masterAckIn, goOut, ackIn, IDX_PIN);
+			}
+			if (isI2CWriter && IDX_I2C>=0) {
+				hasConnections = true;		 		
+				maxGoPipeId = populateGoAckPipes(maxGoPipeId, masterGoOut, masterAckIn, goOut, ackIn, IDX_I2C);
+			}
+			if (isSerialWriter && IDX_SER>=0) {
+				hasConnections = true;		 		
+				maxGoPipeId = populateGoAckPipes(maxGoPipeId, masterGoOut, masterAckIn, goOut, ackIn, IDX_SER);
+			}
+
+			if (true | hasConnections) {
+				TrafficCopStage trafficCopStage = new TrafficCopStage(gm, timeout, orderPipes[t], ackIn, goOut, runtime, this);
+			} else {
+				//this optimization can no longer be done due to the use of shutdown on command channel.
+				//    revisit this later...
+				//TODO: we can reintroduce this as long has we have a stage here which does shutdown on -1;
+				PipeCleanerStage.newInstance(gm, orderPipes[t]);
+			}
+		}
+
+		initChannelBlocker(maxGoPipeId);
+		buildHTTPClientGraph(runtime, httpClientResponsePipes, httpClientRequestPipes, masterGoOut, masterAckIn);
+
+		if (IDX_MSG <0) {
+			logger.trace("saved some resources by not starting up the unused pub sub service.");
+		} else {
+			createMessagePubSubStage(
+					runtime,
+					subscriptionPipeLookup2, ingressMessagePipes,
+					messagePubSub,
+					masterGoOut[IDX_MSG], masterAckIn[IDX_MSG], subscriptionPipes);
+		}
+
+		//////////////////
+		//only build and connect I2C if it is used for either in or out  
+		//////////////////
+		Pipe<I2CResponseSchema> masterI2CResponsePipe = null;
+		if (i2cResponsePipes.length>0) {
+			masterI2CResponsePipe =  I2CResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+			ReplicatorStage.newInstance(gm, masterI2CResponsePipe, i2cResponsePipes);
+		}
+
+		if (i2cPipes.length>0 || (null!=masterI2CResponsePipe)) {
+			createI2COutputInputStage(runtime, i2cPipes, masterGoOut[IDX_I2C], masterAckIn[IDX_I2C], masterI2CResponsePipe);
+		}
+
+		//////////////
+		//window summaries are built from their own copy of the gpio input responses
+		//////////////
+		Pipe<SensorWindowSchema>[] windowPipes = GraphManager.allPipesOfTypeWithNoProducer(gm2, SensorWindowSchema.instance);
+		if (windowPipes.length>0) {
+			Pipe<GroveResponseSchema> windowInput = GroveResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+			responsePipes = Arrays.copyOf(responsePipes, responsePipes.length+1);
+			responsePipes[responsePipes.length-1] = windowInput;
+			createWindowStage(windowInput, windowPipes);
+		}
+
+		//////////////
+		//only build and connect gpio input responses if it is used
+		//////////////
+		if (responsePipes.length>1) {
+			Pipe<GroveResponseSchema> masterResponsePipe = GroveResponseSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+			ReplicatorStage.newInstance(gm, masterResponsePipe, responsePipes);
+			createADInputStage(masterResponsePipe);
+		} else {
+			if (responsePipes.length==1) {
+				createADInputStage(responsePipes[0]);
+			}
+		}
+
+		/////////////
+		//only build serial output if data is sent
+		/////////////
+		if (serialOutputPipes.length>0) {	
+			assert(null!=masterGoOut[IDX_SER]);
+			assert(serialOutputPipes.length == masterGoOut[IDX_SER].length) : serialOutputPipes.length+" == "+masterGoOut[IDX_SER].length;
+			createSerialOutputStage(runtime, serialOutputPipes, masterGoOut[IDX_SER], masterAckIn[IDX_SER]);			
+		}
+
+		//////////////
+		//only build serial input if the data is consumed
+		//////////////
+		if (serialInputPipes.length>1) {
+			Pipe<SerialInputSchema> masterUARTPipe = new Pipe<SerialInputSchema>(pcm.getConfig(SerialInputSchema.class));
+
+			new ReplicatorStage<SerialInputSchema>(gm, masterUARTPipe, serialInputPipes);   
+			createUARTInputStage(masterUARTPipe);
+		} else {
+			if (serialInputPipes.length==1) {
+				createUARTInputStage(serialInputPipes[0]);
+			} else {
+
+
+			}
+		}
+		
+				///////////////
+		//only build image input if the data is consumed
+		///////////////
+		// TODO: Is this where we determine what kind of platform to listen on (e.g., Edison, Pi)?
+		if (imageInputPipes.length > 0) {
+			if (null != cameraFormat && cameraFormat.isCompressed() && 0 == imageFramePoolSize) {
+				logger.info("{} frames can not be split into rows, using frame handles", cameraFormat);
+				imageFramePoolSize = cameraBuffers;
+			}
+			if (imageFramePoolSize > 0) {
+				//buffers are provided by the camera stage once the frame size is known
+				framePool = new FramePool(imageFramePoolSize);
+			} else if (imageFrameTriggerRateSet && imageFrameTriggerRateMillis < 1250) {
+				throw new RuntimeException("Image listeners cannot be used with trigger rates of less than 1250 MS unless frame handles are in use.");
+			}
+		}
+		if (imageInputPipes.length > 1) {
+			Pipe<ImageSchema> masterImagePipe = ImageSchema.instance.newPipe(DEFAULT_LENGTH, DEFAULT_PAYLOAD_SIZE);
+			new ReplicatorStage<ImageSchema>(gm, masterImagePipe, imageInputPipes);
+			createImageInputStage(masterImagePipe, imageInputPipes.length);
+		} else if (imageInputPipes.length == 1){
+			createImageInputStage(imageInputPipes[0], 1);
+		}
+		///////////////
+		//only build direct pin output when we detected its use
+		///////////////
+		if (IDX_PIN>=0) {
+			createADOutputStage(runtime, pinRequestPipes, masterGoOut[IDX_PIN], masterAckIn[IDX_PIN]);
+		}
+	}
+
+	private String featureName(final int c) {
+
+		if (c == IDX_I2C) {
+			//FogRuntime.I2C_WRITER;
+			return "I2C_WRITER";
+		}
+		if (c == IDX_MSG) {
+			//Behavior.DYNAMIC_MESSAGING;
+			return "DYNAMIC_MESSAGING";
+		}
+		if (c == IDX_NET) { //TODO: where is the responder??
+			//Behavior.NET_REQUESTER;
+			return "NET_REQUESTER";
+		}
+		if (c == IDX_PIN) {
+			//FogRuntime.PIN_WRITER;
+			return "PIN_WRITER";
+		}
+		if (c == IDX_SER) {
+			//FogRuntime.SERIAL_WRITER;
+			return "SERIAL_WRITER";
+		}
+
+		return null;
+	}
+
+	protected void createSerialOutputStage(MsgRuntime<?,?> runtime, Pipe<SerialOutputSchema>[] serialOutputPipes,
+			Pipe<TrafficReleaseSchema>[] masterGoOut, Pipe<TrafficAckSchema>[] masterAckIn) {
+		new SerialDataWriterStage(gm, runtime, serialOutputPipes, masterGoOut, masterAckIn,
+				this, this.buildSerialClient());
+	}
+
+	public static int serialIndex(HardwareImpl hardware) {
+		return hardware.IDX_SER;
+	}
+
+	public static int i2cIndex(HardwareImpl hardware) {
+		return hardware.IDX_I2C;
+	}
+
+	@Override
+	public int pubSubIndex() {
+		return IDX_MSG;
+	}
+
+	@Override
+	public int netIndex() {
+		return IDX_NET;
+	}
+
+	public boolean isTestHardware() {
+		return false;
+	}
+
+
+}
\ No newline at end of file
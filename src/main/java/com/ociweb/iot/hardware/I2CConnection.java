@@ -14,12 +14,20 @@ public class I2CConnection extends HardwareConnection {
 	public final byte[] setup;			//setup bytes sent to initialize communications
 	public final int readBytesAtStartUp;            // number of bytes to read at start up
 	public final long delayAfterRequestNS; //delay between read request and i2c.read
+	public final int bus;                  //adapter number, DEFAULT_BUS for the hardware's default bus
+	public final I2CFifo fifo;             //null unless the device FIFO is drained in bursts
+
+	public static final int DEFAULT_BUS = -1;
 
 // TODO: this has to become configurable
 	private final static int GROVE_PI_MIN_SCAN_DELAY_NS = 80_000;
 	
 	public I2CConnection(I2CConnection original ,int responseMS){// for connectI2C(device,response_time) method
-		this(original.twig, original.address, original.readCmd, original.readBytes, original.register, original.setup, responseMS, HardwareConnection.DEFAULT_AVERAGE_WINDOW_MS, original.sendEveryValue);
+		this(original, original.setup, responseMS, original.bus);
+	}
+
+	public I2CConnection(I2CConnection original, int responseMS, int bus){// for connectI2C(device,response_time,bus) method
+		this(original, original.setup, responseMS, bus);
 	}
 
 	public I2CConnection(IODevice twig, byte address, byte[] readCmd, int readBytes, int register, byte[] setup) {
@@ -31,7 +39,20 @@ public class I2CConnection extends HardwareConnection {
 	}
 
 	public I2CConnection(I2CConnection original, byte[] newSetup){
-		this(original.twig, original.address, original.readCmd, original.readBytes, original.register, newSetup, original.responseMS, HardwareConnection.DEFAULT_AVERAGE_WINDOW_MS, original.sendEveryValue);
+		this(original, newSetup, original.responseMS, original.bus);
+	}
+
+	private I2CConnection(I2CConnection original, byte[] setup, int responseMS, int bus) {
+		super(original.twig, UNKOWN_REGISTER, responseMS, HardwareConnection.DEFAULT_AVERAGE_WINDOW_MS, original.sendEveryValue);
+		this.address = original.address;
+		this.readCmd = original.readCmd;
+		this.readBytes = original.readBytes;
+		this.register = original.register;
+		this.setup = setup;
+		this.delayAfterRequestNS = GROVE_PI_MIN_SCAN_DELAY_NS +twig.pullResponseMinWaitNS();
+		this.readBytesAtStartUp = 0;
+		this.bus = bus;
+		this.fifo = original.fifo;
 	}
         
 	public I2CConnection(IODevice twig, byte address, byte[] readCmd, int readBytes, int register, byte[] setup, boolean everyValue) {
@@ -43,6 +64,8 @@ public class I2CConnection extends HardwareConnection {
 		this.setup = setup;
 		this.delayAfterRequestNS = GROVE_PI_MIN_SCAN_DELAY_NS +twig.pullResponseMinWaitNS();
 		this.readBytesAtStartUp = 0;
+		this.bus = DEFAULT_BUS;
+		this.fifo = null;
 	}
 
 	public I2CConnection(IODevice twig, byte address, byte[] readCmd, int readBytes, int register, byte[] setup, boolean everyValue,int readBytesAtStartUp) {
@@ -54,6 +77,8 @@ public class I2CConnection extends HardwareConnection {
 		this.setup = setup;
 		this.delayAfterRequestNS = GROVE_PI_MIN_SCAN_DELAY_NS +twig.pullResponseMinWaitNS();
 		this.readBytesAtStartUp = readBytesAtStartUp;
+		this.bus = DEFAULT_BUS;
+		this.fifo = null;
 	}
 
 	public I2CConnection(IODevice twig, byte address, byte[] readCmd, int readBytes, int register, byte[] setup, int pullRateMS) {
@@ -69,6 +94,25 @@ public class I2CConnection extends HardwareConnection {
 		this.setup = setup;
 		this.delayAfterRequestNS = GROVE_PI_MIN_SCAN_DELAY_NS +twig.pullResponseMinWaitNS();
 		this.readBytesAtStartUp = 0;
+		this.bus = DEFAULT_BUS;
+		this.fifo = null;
+	}
+
+	/**
+	 * Polls the FIFO of the device, each poll reads every waiting frame in one transfer.
+	 * The readCmd is the status register and readBytes the largest burst response.
+	 */
+	public I2CConnection(IODevice twig, byte address, I2CFifo fifo, int register, byte[] setup) {
+		super(twig, UNKOWN_REGISTER, twig.defaultPullRateMS(), HardwareConnection.DEFAULT_AVERAGE_WINDOW_MS, true);
+		this.address = address;
+		this.readCmd = new byte[]{fifo.statusRegister};
+		this.readBytes = 1+fifo.maxFramesPerTransfer*fifo.frameBytes;
+		this.register = register;
+		this.setup = setup;
+		this.delayAfterRequestNS = 0;
+		this.readBytesAtStartUp = 0;
+		this.bus = DEFAULT_BUS;
+		this.fifo = fifo;
 	}
 
 	@Override
@@ -0,0 +1,44 @@
+package com.ociweb.iot.hardware;
+
+import com.ociweb.pronghorn.iot.i2c.I2CTransferBatch;
+
+/**
+ * Describes the sample FIFO of an I2C device so it can be drained in bursts instead of reading
+ * one sample per poll. Each poll reads the fill level from the status register, then reads that
+ * many frames in a single transfer. A frame is one sample, made of one read per data register.
+ *
+ * The response for each burst holds the number of frames still waiting in the FIFO as its first
+ * byte followed by the frames in the order they were taken, oldest first. The listener can place
+ * each sample in time from the output data rate it configured on the device.
+ */
+public class I2CFifo {
+
+	public final byte statusRegister;  //register holding the fill level
+	public final int levelMask;        //bits of the status register which count the waiting frames
+	public final byte[] frameRegisters;//data registers read for each frame, in order
+	public final int[] frameReadBytes; //bytes read from each data register
+	public final int frameBytes;       //total bytes of one frame
+	public final int maxFramesPerTransfer;
+
+	public I2CFifo(int statusRegister, int levelMask, int frameRegister, int frameReadBytes) {
+		this(statusRegister, levelMask, new byte[]{(byte)frameRegister}, new int[]{frameReadBytes});
+	}
+
+	public I2CFifo(int statusRegister, int levelMask, byte[] frameRegisters, int[] frameReadBytes) {
+		if (frameRegisters.length != frameReadBytes.length || 0 == frameRegisters.length) {
+			throw new UnsupportedOperationException("Each FIFO data register needs its read length");
+		}
+		this.statusRegister = (byte)statusRegister;
+		this.levelMask = levelMask;
+		this.frameRegisters = frameRegisters;
+		this.frameReadBytes = frameReadBytes;
+		int total = 0;
+		for (int bytes : frameReadBytes) {
+			total += bytes;
+		}
+		this.frameBytes = total;
+		//every data register needs a write of its address then the read
+		this.maxFramesPerTransfer = I2CTransferBatch.MAX_MESSAGES / (2*frameRegisters.length);
+	}
+
+}
@@ -54,15 +54,18 @@ public class DefaultCommandChannel extends FogCommandChannel{
 		int msgId;
 		int msgField1;
 		int msgField2;
+		int msgField3;
 		if (port.isAnalog()) {
 			mask = ANALOG_BIT;
 			msgId= GroveRequestSchema.MSG_ANALOGSET_140;
 			msgField1 = GroveRequestSchema.MSG_ANALOGSET_140_FIELD_CONNECTOR_141;
 			msgField2 = GroveRequestSchema.MSG_ANALOGSET_140_FIELD_VALUE_142;
+			msgField3 = GroveRequestSchema.MSG_ANALOGSET_140_FIELD_ISSUEDNS_115;
 		} else {
 			msgId= GroveRequestSchema.MSG_DIGITALSET_110;
 			msgField1 = GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111;
 			msgField2 = GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112;
+			msgField3 = GroveRequestSchema.MSG_DIGITALSET_110_FIELD_ISSUEDNS_115;
 		}
 		
 		assert(enterBlockOk()) : "Concurrent usage error, ensure this never called concurrently";
@@ -71,6 +74,7 @@ public class DefaultCommandChannel extends FogCommandChannel{
 
 				PipeWriter.writeInt(pinOutput, msgField1, mask|port.port);
 				PipeWriter.writeInt(pinOutput, msgField2, value);
+				PipeWriter.writeLong(pinOutput, msgField3, builder.nanoTime());
 				PipeWriter.publishWrites(pinOutput);
 			                
 				builder.releasePinOutTraffic(1,this);
@@ -111,6 +115,7 @@ public class DefaultCommandChannel extends FogCommandChannel{
 
 	                PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111, port.port);
 	                PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112, 1);
+	                PipeWriter.writeLong(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_ISSUEDNS_115, builder.nanoTime());
 
 	                PipeWriter.publishWrites(pinOutput);
 	                
@@ -133,6 +138,7 @@ public class DefaultCommandChannel extends FogCommandChannel{
 
                     PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111, port.port);
                     PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112, 0);
+                    PipeWriter.writeLong(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_ISSUEDNS_115, builder.nanoTime());
 
                     PipeWriter.publishWrites(pinOutput);               
 	                
@@ -163,15 +169,18 @@ public class DefaultCommandChannel extends FogCommandChannel{
 		int msgId;
 		int msgField1;
 		int msgField2;
+		int msgField3;
 		if (port.isAnalog()) {
 			mask = ANALOG_BIT;
 			msgId= GroveRequestSchema.MSG_ANALOGSET_140;
 			msgField1 = GroveRequestSchema.MSG_ANALOGSET_140_FIELD_CONNECTOR_141;
 			msgField2 = GroveRequestSchema.MSG_ANALOGSET_140_FIELD_VALUE_142;
+			msgField3 = GroveRequestSchema.MSG_ANALOGSET_140_FIELD_ISSUEDNS_115;
 		} else {
 			msgId= GroveRequestSchema.MSG_DIGITALSET_110;
 			msgField1 = GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111;
 			msgField2 = GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112;
+			msgField3 = GroveRequestSchema.MSG_DIGITALSET_110_FIELD_ISSUEDNS_115;
 		}
 		
 		
@@ -185,6 +194,7 @@ public class DefaultCommandChannel extends FogCommandChannel{
                 PipeWriter.tryWriteFragment(pinOutput, msgId);
                 PipeWriter.writeInt(pinOutput, msgField1, mask|port.port);
                 PipeWriter.writeInt(pinOutput, msgField2, value);
+                PipeWriter.writeLong(pinOutput, msgField3, builder.nanoTime());
                 PipeWriter.publishWrites(pinOutput);
                             
                 PipeWriter.tryWriteFragment(pinOutput, GroveRequestSchema.MSG_BLOCKCONNECTION_220);
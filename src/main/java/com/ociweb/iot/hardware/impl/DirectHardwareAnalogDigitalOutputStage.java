@@ -10,6 +10,7 @@ import com.ociweb.gl.impl.stage.AbstractTrafficOrderedStage;
 import com.ociweb.iot.hardware.HardwareImpl;
 import com.ociweb.iot.maker.Port;
 import com.ociweb.pronghorn.iot.schema.GroveRequestSchema;
+import com.ociweb.pronghorn.iot.timing.LatencyHistogram;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeReader;
 import com.ociweb.pronghorn.stage.scheduling.GraphManager;
@@ -20,6 +21,10 @@ public class DirectHardwareAnalogDigitalOutputStage extends AbstractTrafficOrder
 
 	private static final Logger logger = LoggerFactory.getLogger(DirectHardwareAnalogDigitalOutputStage.class);
 
+	//command channel to pin write latency by connector, null unless enabled
+	private LatencyHistogram[] digitalLatency;
+	private LatencyHistogram[] analogLatency;
+
 
 	/**
 	 * Using real hardware support this stage turns on and off digital pins and sets PWM for analog out.
@@ -42,6 +47,23 @@ public class DirectHardwareAnalogDigitalOutputStage extends AbstractTrafficOrder
 		super(graphManager, runtime, hardware, ccToAdOut, goPipe, ackPipe);
 		this.fromCommandChannels = ccToAdOut;
 	}
+
+	@Override
+	public void startup() {
+		super.startup();
+		if (((HardwareImpl)hardware).isLatencyHistogramsEnabled()) {
+			digitalLatency = new LatencyHistogram[Port.DIGITALS.length];
+			analogLatency = new LatencyHistogram[Port.ANALOGS.length];
+		}
+	}
+
+	private void recordLatency(LatencyHistogram[] histograms, Port port, long issuedNS) {
+		LatencyHistogram h = histograms[port.port];
+		if (null == h) {
+			h = histograms[port.port] = ((HardwareImpl)hardware).newLatencyHistogram("pin "+port);
+		}
+		h.record(((HardwareImpl)hardware).nanoTime()-issuedNS);
+	}
 	
 	  protected void processMessagesForPipe(int activePipe) {
 	      	      
@@ -58,8 +80,13 @@ public class DirectHardwareAnalogDigitalOutputStage extends AbstractTrafficOrder
 	            switch(msgIdx){
 	                                
 	                case GroveRequestSchema.MSG_DIGITALSET_110:
-	                	((HardwareImpl)hardware).write(Port.DIGITALS[PipeReader.readInt(pipe,GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111)], 
-	                            PipeReader.readInt(pipe,GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112));
+	                {
+	                	Port port = Port.DIGITALS[PipeReader.readInt(pipe,GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111)];
+	                	((HardwareImpl)hardware).write(port, PipeReader.readInt(pipe,GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112));
+	                	if (null != digitalLatency) {
+	                		recordLatency(digitalLatency, port, PipeReader.readLong(pipe,GroveRequestSchema.MSG_DIGITALSET_110_FIELD_ISSUEDNS_115));
+	                	}
+	                }
 	                    break;
 	                                     	                    
 	                case GroveRequestSchema.MSG_BLOCKCONNECTION_220:
@@ -76,8 +103,13 @@ public class DirectHardwareAnalogDigitalOutputStage extends AbstractTrafficOrder
 	                    
 	                case GroveRequestSchema.MSG_ANALOGSET_140:
 	                    
-	                    ((HardwareImpl)hardware).write(Port.ANALOGS[PipeReader.readInt(pipe,GroveRequestSchema.MSG_ANALOGSET_140_FIELD_CONNECTOR_141)], 
-	                            PipeReader.readInt(pipe,GroveRequestSchema.MSG_ANALOGSET_140_FIELD_VALUE_142));
+	                {
+	                	Port port = Port.ANALOGS[PipeReader.readInt(pipe,GroveRequestSchema.MSG_ANALOGSET_140_FIELD_CONNECTOR_141)];
+	                    ((HardwareImpl)hardware).write(port, PipeReader.readInt(pipe,GroveRequestSchema.MSG_ANALOGSET_140_FIELD_VALUE_142));
+	                    if (null != analogLatency) {
+	                    	recordLatency(analogLatency, port, PipeReader.readLong(pipe,GroveRequestSchema.MSG_ANALOGSET_140_FIELD_ISSUEDNS_115));
+	                    }
+	                }
 	                    break;
 	                    
 	                default:
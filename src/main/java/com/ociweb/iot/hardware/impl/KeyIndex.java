@@ -0,0 +1,89 @@
+package com.ociweb.iot.hardware.impl;
+
+import java.util.Arrays;
+
+/**
+ * Gives each int key a dense index in the order the keys were added, so state for the key can be
+ * kept in plain arrays. Lookups hash into an open addressed table which is doubled before it is
+ * half full, so the cost does not grow with the number of keys. Keys are never removed.
+ */
+public final class KeyIndex {
+
+	private int[] keys;
+	private int[] slots; //index+1 of the key in each slot, 0 when empty
+	private int mask;
+	private int count;
+
+	public KeyIndex(int expected) {
+		int size = Integer.highestOneBit(Math.max(8, expected)<<1);
+		this.keys = new int[Math.max(8, expected)];
+		this.slots = new int[size];
+		this.mask = size-1;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int key(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * @return index of the key or -1 if it has not been added.
+	 */
+	public int indexOf(int key) {
+		int s = hash(key) & mask;
+		int slot;
+		while (0 != (slot = slots[s])) {
+			if (keys[slot-1] == key) {
+				return slot-1;
+			}
+			s = (s+1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index of the key, adding it with the next index if it is new.
+	 */
+	public int add(int key) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			return index;
+		}
+		if (count == keys.length) {
+			keys = Arrays.copyOf(keys, count<<1);
+		}
+		keys[count] = key;
+		if ((count+1)<<1 > slots.length) {
+			rehash(slots.length<<1);
+		} else {
+			place(count);
+		}
+		return count++;
+	}
+
+	private void rehash(int size) {
+		slots = new int[size];
+		mask = size-1;
+		int i = count+1; //includes the key being added
+		while (--i >= 0) {
+			place(i);
+		}
+	}
+
+	private void place(int index) {
+		int s = hash(keys[index]) & mask;
+		while (0 != slots[s]) {
+			s = (s+1) & mask;
+		}
+		slots[s] = index+1;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h>>>16);
+	}
+
+}
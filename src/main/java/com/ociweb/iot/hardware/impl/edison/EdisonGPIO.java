@@ -77,6 +77,13 @@ public class EdisonGPIO {
         gpioPullupEnablePins.setDirectionHigh(dPort);
         gpioLinuxPins.setDirectionIn(dPort);      
     }
+    /**
+     * Level shifter and pullup only, the Linux pin itself is left for the GPIO character device to request.
+     */
+    public static void configDigitalEdgeInput(int dPort) {
+        gpioOutputEnablePins.setDirectionLow(dPort);
+        gpioPullupEnablePins.setDirectionHigh(dPort);
+    }
     public static void configAnalogInput(int aPort) {
         if (aPort<0 || aPort>5) {
             throw new UnsupportedOperationException("only available on 0, 1, 2, or 3 and only 4 or 5 if I2C is not in use.");
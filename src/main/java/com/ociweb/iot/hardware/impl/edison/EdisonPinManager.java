@@ -36,6 +36,8 @@ public class EdisonPinManager {
     public FileSystemProvider provider;
 
     
+    public static final String IIO_DEVICE = "iio:device1";
+
     public static final Path[] PATH_A = new Path[] {
              FileSystems.getDefault().getPath("/sys/bus/iio/devices/iio:device1", "in_voltage0_raw"),
              FileSystems.getDefault().getPath("/sys/bus/iio/devices/iio:device1", "in_voltage1_raw"),
@@ -1,6 +1,7 @@
 package com.ociweb.iot.hardware.impl.edison;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +14,10 @@ import com.ociweb.iot.hardware.HardwareImpl;
 import com.ociweb.iot.hardware.HardwarePlatformType;
 import com.ociweb.iot.hardware.impl.DefaultCommandChannel;
 import com.ociweb.iot.maker.FogCommandChannel;
+import com.ociweb.iot.maker.Hardware;
 import com.ociweb.iot.maker.Port;
 import com.ociweb.pronghorn.iot.ReactiveIoTListenerStage;
+import com.ociweb.pronghorn.iot.iio.IioCaptureReader;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeConfigManager;
 import com.ociweb.pronghorn.stage.scheduling.GraphManager;
@@ -71,7 +74,11 @@ public class GroveV3EdisonImpl extends HardwareImpl {
 			EdisonGPIO.configPWM((int)pwmOutputs[i].register); //config for pwm
 		}
 		for (int i = 0; i < super.digitalInputs.length; i++) {
-			EdisonGPIO.configDigitalInput(digitalInputs[i].register); //config for readBit
+			if (null == digitalInputs[i].edges) {
+				EdisonGPIO.configDigitalInput(digitalInputs[i].register); //config for readBit
+			} else {
+				EdisonGPIO.configDigitalEdgeInput(digitalInputs[i].register);
+			}
 		}
 		for (int i = 0; i < super.analogInputs.length; i++) {
 			EdisonGPIO.configAnalogInput(analogInputs[i].register); //config for readInt
@@ -134,6 +141,38 @@ public class GroveV3EdisonImpl extends HardwareImpl {
 		//devicePinConfigurationLock.unlock(); //TODO: can be blown away?
 	}
 
+	@Override
+	public Hardware useAnalogCapture(int sampleRateHz, Port ... ports) {
+		if (sampleRateHz < 1) {
+			throw new UnsupportedOperationException("Sample rate must be positive, found "+sampleRateHz);
+		}
+		for (int i = 0; i < ports.length; i++) {
+			if (!ports[i].isAnalog() || ports[i].port >= EdisonPinManager.PATH_A.length) {
+				throw new UnsupportedOperationException("Only analog ports A0 to A"+(EdisonPinManager.PATH_A.length-1)+" can be captured, found "+ports[i]);
+			}
+		}
+		analogCaptureRateHz = sampleRateHz;
+		analogCapturePorts = ports.clone();
+		return this;
+	}
+
+	@Override
+	public IioCaptureReader newAnalogCapture() {
+		int[] channels = new int[analogCapturePorts.length];
+		int count = 0;
+		for (int i = 0; i < analogInputs.length; i++) {
+			if (count < channels.length && isAnalogCaptured(analogInputs[i].register)) {
+				channels[count++] = analogInputs[i].register;
+			}
+		}
+		if (0 == count) {
+			return null;
+		}
+		channels = Arrays.copyOf(channels, count);
+		//the in_voltageN channel is the analog connector
+		return new IioCaptureReader(EdisonPinManager.IIO_DEVICE, channels, channels, analogCaptureRateHz);
+	}
+
 	@Override
 	public HardwarePlatformType getPlatformType() {
 		return HardwarePlatformType.INTEL_EDITION;
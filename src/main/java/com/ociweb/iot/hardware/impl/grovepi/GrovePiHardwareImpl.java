@@ -3,6 +3,7 @@ package com.ociweb.iot.hardware.impl.grovepi;
 import static com.ociweb.iot.grove.simple_analog.SimpleAnalogTwig.UltrasonicRanger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,8 +11,11 @@ import org.slf4j.LoggerFactory;
 import com.ociweb.gl.api.Behavior;
 import com.ociweb.gl.impl.stage.ReactiveListenerStage;
 import com.ociweb.gl.impl.stage.ReactiveManagerPipeConsumer;
+import com.ociweb.iot.filter.AnalogFilterChain;
 import com.ociweb.iot.grove.four_digit_display.Grove_FourDigitDisplay;
 import com.ociweb.iot.hardware.ADIODevice;
+import com.ociweb.iot.hardware.GpioEdgeLines;
+import com.ociweb.iot.hardware.HardwareConnection;
 import com.ociweb.iot.hardware.HardwareImpl;
 import com.ociweb.iot.hardware.HardwarePlatformType;
 import com.ociweb.iot.hardware.I2CConnection;
@@ -20,6 +24,7 @@ import com.ociweb.iot.maker.Baud;
 import com.ociweb.iot.maker.Hardware;
 import com.ociweb.iot.maker.Port;
 import com.ociweb.pronghorn.iot.DexterGrovePiReactiveListenerStage;
+import com.ociweb.pronghorn.iot.gpio.PiGpioRegisters;
 import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
 import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
 import com.ociweb.pronghorn.pipe.MessageSchema;
@@ -37,6 +42,9 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 
 	private byte commandIndex = -1;
 
+	private final int[] nativePins = new int[Port.values().length]; //BCM pin for each port, -1 when read through the board
+	private PiGpioRegisters nativeGpio;
+
 	//TODO: urgent need for unit tests here, this custom pi logic is easily broken.
 
 	public GrovePiHardwareImpl(GraphManager gm, String[] args, int i2cBus) {
@@ -47,6 +55,7 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 		rs232ClientBaud = Baud.B___921600;
 		bluetoothDevice = model.bluetoothDevice();
 		configI2C = true; 
+		Arrays.fill(nativePins, -1);
 		System.out.println("You are running on the GrovePi hardware on the "+model);
 	}
 
@@ -80,30 +89,97 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 		return HardwarePlatformType.GROVE_PI;
 	}
 
+	@Override
+	public Hardware useNativeGpio(Port port, int headerPin) {
+		if (port.isAnalog()) {
+			throw new UnsupportedOperationException("The Pi has no analog inputs, only digital ports can use header pins");
+		}
+		if (!PiGpioRegisters.isHeaderPin(headerPin)) {
+			throw new UnsupportedOperationException("Header pin must be between 0 and "+PiGpioRegisters.MAX_HEADER_PIN+", found "+headerPin);
+		}
+		if (null != deviceOnPort[port.ordinal()]) {
+			throw new UnsupportedOperationException("Native GPIO for "+port+" must be selected before its device is connected");
+		}
+		nativePins[port.ordinal()] = headerPin;
+		return this;
+	}
+
+	public boolean isNativePin(Port port) {
+		return nativePins[port.ordinal()] >= 0;
+	}
+
+	@Override
+	public void coldSetup() {
+		if (hasNativePins()) {
+			nativeGpio = new PiGpioRegisters();
+			if (nativeGpio.open()) {
+				for (Port port : Port.DIGITALS) {
+					int pin = nativePins[port.ordinal()];
+					if (pin >= 0 && null != deviceOnPort[port.ordinal()]) {
+						if (deviceOnPort[port.ordinal()].isInput()) {
+							nativeGpio.configureInput(pin);
+						} else {
+							nativeGpio.configureOutput(pin);
+						}
+					}
+				}
+			} else {
+				nativeGpio = null;
+			}
+		}
+		super.coldSetup();
+	}
+
+	private boolean hasNativePins() {
+		int i = nativePins.length;
+		while (--i>=0) {
+			if (nativePins[i] >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public int read(Port port) { 
-		throw new UnsupportedOperationException("GPIO not yet supported");
+		int pin = nativePins[port.ordinal()];
+		if (pin < 0 || null == nativeGpio) {
+			throw new UnsupportedOperationException("GPIO not yet supported, only ports selected with useNativeGpio can be read directly");
+		}
+		return nativeGpio.read(pin);
 	}
 
 
 	@Override
 	public void write(Port port, int value) {
-		throw new UnsupportedOperationException("GPIO not yet supported");
+		int pin = nativePins[port.ordinal()];
+		if (pin < 0 || null == nativeGpio) {
+			throw new UnsupportedOperationException("GPIO not yet supported, only ports selected with useNativeGpio can be written directly");
+		}
+		nativeGpio.write(pin, value);
+	}
+
+	@Override
+	protected boolean isPolledByPins(HardwareConnection con, boolean analog) {
+		//everything else is polled over I2C from the GrovePi board
+		return !analog && null == con.edges && nativePins[Port.DIGITALS[con.register].ordinal()] >= 0;
 	}
 
 	@Override
 	public boolean hasI2CInputs() {
-		if (super.hasDigitalOrAnalogInputs()) {
-			assert(super.hasI2CInputs()) : "if pi has d/a inputs then it must also have i2c inputs by definition.";
+		boolean boardInputs = (analogInputs.length + digitalInputs.length) > combinedADConnections().length;
+		if (boardInputs) {
+			assert(super.hasI2CInputs()) : "if pi has d/a inputs on the board then it must also have i2c inputs by definition.";
 		}
-		return super.hasI2CInputs() | super.hasDigitalOrAnalogInputs();
+		return super.hasI2CInputs() | boardInputs;
 	}
 
 	//TODO: test override of hasDigitalOrAnalogInputs to false and hasDigitalOrAnalogOutputs to false.
 
 	@Override
 	public boolean isListeningToPins(Object listener) {
-		return false;//TODO: we have no support for this yet
+		//only native header pins are read as pins, board ports arrive as I2C responses
+		return combinedADConnections().length > 0 && super.isListeningToPins(listener);
 	}
 
 	@Override
@@ -119,7 +195,7 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 	}
 
 	@Override
-	protected Hardware internalConnectAnalog(IODevice t, int connection, int customRate, int customAverageMS, boolean everyValue) {
+	protected Hardware internalConnectAnalog(IODevice t, int connection, int customRate, int customAverageMS, boolean everyValue, AnalogFilterChain filters) {
 
 		if (t.isInput()) {
 
@@ -136,7 +212,7 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 			byte[] setup = {GrovePiConstants.START_BYTE, GrovePiConstants.PIN_MODE, (byte)register,GrovePiConstants.INPUT,0x00};				
 			i2cInputs = growI2CConnections(i2cInputs, new I2CConnection(t,
 					GrovePiConstants.BOARD_ADDR,readCmd,(byte)3,register, setup, customRate, customAverageMS, everyValue)); 
-			super.internalConnectAnalog(t, register, customRate, customAverageMS, everyValue);
+			super.internalConnectAnalog(t, register, customRate, customAverageMS, everyValue, filters);
 
 
 			//logger.debug("added device {} to inputs we now have {}",t, i2cInputs.length);
@@ -147,13 +223,17 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 
 			byte[] setup = {GrovePiConstants.START_BYTE, GrovePiConstants.PIN_MODE, (byte)register,GrovePiConstants.OUTPUT,0x00};				
 			i2cOutputs = growI2CConnections(i2cOutputs, new I2CConnection(t,GrovePiConstants.BOARD_ADDR,null,0,register, setup, customRate, customAverageMS, everyValue));
-			super.internalConnectAnalog(t, register, customRate, customAverageMS, everyValue);
+			super.internalConnectAnalog(t, register, customRate, customAverageMS, everyValue, filters);
 		}
 
 		return this;
 	}
 
 	protected Hardware internalConnectDigital(IODevice t, int connection, int customRate, int customAverageMS, boolean everyValue) {
+		if (nativePins[Port.DIGITALS[connection].ordinal()] >= 0) {
+			//header pin, nothing is sent to the board
+			return super.internalConnectDigital(t, connection, customRate, customAverageMS, everyValue);
+		}
 		if (t.isInput()) {
 
 			connection = GrovePiConstants.DIGITAL_PORT_TO_REGISTER[connection];
@@ -188,6 +268,11 @@ public class GrovePiHardwareImpl extends HardwareImpl {
 		}
 	}
 
+	@Override
+	public Hardware connect(ADIODevice t, Port port, GpioEdgeLines lines) {
+		throw new UnsupportedOperationException("GrovePi ports are read through the board firmware, GPIO edge events are not available");
+	}
+
 	/**
 	 * This private method exists so that we can make I2C connections for fake-digital-actually-I2C devices we are hiding as digital.
 	 * @param t the special IO device that is actually I2C underneath
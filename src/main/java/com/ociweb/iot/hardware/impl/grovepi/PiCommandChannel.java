@@ -11,6 +11,7 @@ import com.ociweb.iot.hardware.IODevice;
 import com.ociweb.iot.maker.FogCommandChannel;
 import com.ociweb.iot.maker.FogRuntime;
 import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.schema.GroveRequestSchema;
 import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeConfigManager;
@@ -34,9 +35,60 @@ public class PiCommandChannel extends FogCommandChannel{
 
 	@Override
 	public boolean block(Port port, long duration) { 
+		if (isNative(port)) {
+			return nativeSet(port, -1, duration*MS_TO_NS, -1);
+		}
 		return block((port.isAnalog()?ANALOG_BIT:0)|port.port,duration); 
 	}
 
+	private boolean isNative(Port port) {
+		return ((GrovePiHardwareImpl)builder).isNativePin(port);
+	}
+
+	/**
+	 * Header pins are written by the direct pin output stage, so these go on the pin pipe.
+	 * Any negative value is skipped, as is a zero block duration.
+	 */
+	private boolean nativeSet(Port port, int first, long blockNanos, int last) {
+		assert(null != pinOutput) : "native pins can only be written when an output device is connected";
+		assert(enterBlockOk()) : "Concurrent usage error, ensure this never called concurrently";
+		try {
+			int setSize = Pipe.sizeOf(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110);
+			int blockSize = Pipe.sizeOf(pinOutput, GroveRequestSchema.MSG_BLOCKCONNECTION_220);
+			int msgCount = (first>=0?1:0) + (blockNanos>0?1:0) + (last>=0?1:0);
+			int size = (first>=0?setSize:0) + (blockNanos>0?blockSize:0) + (last>=0?setSize:0);
+
+			if (goHasRoom() && PipeWriter.hasRoomForFragmentOfSize(pinOutput, size)) {
+				if (first>=0) {
+					writeNativeValue(port, first);
+				}
+				if (blockNanos>0) {
+					PipeWriter.tryWriteFragment(pinOutput, GroveRequestSchema.MSG_BLOCKCONNECTION_220);
+					PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_BLOCKCONNECTION_220_FIELD_CONNECTOR_111, port.port);
+					PipeWriter.writeLong(pinOutput, GroveRequestSchema.MSG_BLOCKCONNECTION_220_FIELD_DURATIONNANOS_13, blockNanos);
+					PipeWriter.publishWrites(pinOutput);
+				}
+				if (last>=0) {
+					writeNativeValue(port, last);
+				}
+				builder.releasePinOutTraffic(msgCount, this);
+				return true;
+			} else {
+				return false;
+			}
+		} finally {
+			assert(exitBlockOk()) : "Concurrent usage error, ensure this never called concurrently";
+		}
+	}
+
+	private void writeNativeValue(Port port, int value) {
+		PipeWriter.tryWriteFragment(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110);
+		PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_CONNECTOR_111, port.port);
+		PipeWriter.writeInt(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_VALUE_112, value);
+		PipeWriter.writeLong(pinOutput, GroveRequestSchema.MSG_DIGITALSET_110_FIELD_ISSUEDNS_115, builder.nanoTime());
+		PipeWriter.publishWrites(pinOutput);
+	}
+
 	private boolean block(int connector, long duration) { 
 
 		assert(enterBlockOk()) : "Concurrent usage error, ensure this never called concurrently";
@@ -96,6 +148,9 @@ public class PiCommandChannel extends FogCommandChannel{
 
 	@Override
 	public boolean digitalPulse(Port port, long durationNanos) {
+		if (isNative(port)) {
+			return nativeSet(port, 1, durationNanos, 0);
+		}
 		assert(enterBlockOk()) : "Concurrent usage error, ensure this never called concurrently";
 		try {
 			if (port.isAnalog()) {
@@ -200,6 +255,10 @@ public class PiCommandChannel extends FogCommandChannel{
 
 		IODevice connectedDevice = builder.getConnectedDevice(port);
 
+		if (isNative(port)) {
+			return nativeSet(port, value, 0, -1);
+		}
+
 		if (connectedDevice == Grove_FourDigitDisplay.instance){
 			return setFourDigitDisplayValue(port, value);
 		}
@@ -246,6 +305,9 @@ public class PiCommandChannel extends FogCommandChannel{
 
 	@Override
 	public boolean setValueAndBlock(Port port, int value, long msDuration) {
+		if (isNative(port)) {
+			return nativeSet(port, value, msDuration*MS_TO_NS, -1);
+		}
 		assert(enterBlockOk()) : "Concurrent usage error, ensure this never called concurrently";
 		try {
 			int mask = port.isAnalog() ? ANALOG_BIT : 0;
@@ -0,0 +1,171 @@
+package com.ociweb.iot.hardware.impl.test;
+
+import java.util.Arrays;
+
+import com.ociweb.iot.maker.Port;
+
+/**
+ * Virtual endpoints produced by {@link SyntheticHardware} to find how a graph scales with its inputs.
+ *
+ * Analog and digital endpoints are declared as channels behind a port, as they would be on a sensor
+ * concentrator. Each channel has its own connector and its own filter, average and batch state in
+ * the listeners, which report it under the port it sits behind. I2C endpoints are the registers of
+ * a device. Every endpoint of a declaration reports once per period.
+ */
+public class LoadProfile {
+
+    public static final int ANALOG  = 1;
+    public static final int DIGITAL = 2;
+    public static final int I2C     = 3;
+
+    private static final int MAX_I2C_ADDRESS = 127;
+    private static final int MAX_REGISTERS = 1<<16;
+    private static final int ANALOG_RANGE = 1023;
+
+    /**
+     * Sine wave over 360 samples in the range of a Grove analog input, each endpoint a little out of phase.
+     */
+    public static final TestValueGenerator SINE = new TestValueGenerator() {
+        @Override
+        public long value(int endpoint, long sample) {
+            double radians = ((sample+endpoint)%360) * Math.PI / 180.0;
+            return Math.round(ANALOG_RANGE * (Math.sin(radians) + 1.0) / 2.0);
+        }
+    };
+
+    /**
+     * Counts up by one each sample, digital endpoints toggle.
+     */
+    public static final TestValueGenerator RAMP = new TestValueGenerator() {
+        @Override
+        public long value(int endpoint, long sample) {
+            return sample+endpoint;
+        }
+    };
+
+    /**
+     * Repeatable noise, the same endpoint and sample always give the same value.
+     */
+    public static final TestValueGenerator NOISE = new TestValueGenerator() {
+        @Override
+        public long value(int endpoint, long sample) {
+            long x = (sample<<20) ^ endpoint ^ 0x9E3779B97F4A7C15L;
+            x ^= x>>>33;
+            x *= 0xFF51AFD7ED558CCDL;
+            x ^= x>>>33;
+            return x;
+        }
+    };
+
+    /**
+     * One declaration of endpoints which share a rate and a generator.
+     */
+    public static class Endpoints {
+        public final int kind;
+        public final Port port;        //null for I2C
+        public final int address;      //I2C only
+        public final int first;        //first connector, or register for I2C
+        public final int count;
+        public final int rateMS;
+        public final int bytes;        //I2C response length
+        public final TestValueGenerator generator;
+
+        Endpoints(int kind, Port port, int address, int first, int count, int rateMS, int bytes, TestValueGenerator generator) {
+            this.kind = kind;
+            this.port = port;
+            this.address = address;
+            this.first = first;
+            this.count = count;
+            this.rateMS = rateMS;
+            this.bytes = bytes;
+            this.generator = generator;
+        }
+    }
+
+    private Endpoints[] endpoints = new Endpoints[0];
+    private int analogConnectors;
+    private int digitalConnectors;
+
+    /**
+     * Adds analog channels behind the port, each reports every rateMS.
+     */
+    public LoadProfile analog(Port port, int channels, int rateMS, TestValueGenerator generator) {
+        if (!port.isAnalog()) {
+            throw new UnsupportedOperationException(port+" is not an analog port");
+        }
+        validate(channels, rateMS, generator);
+        add(new Endpoints(ANALOG, port, 0, analogConnectors, channels, rateMS, 0, generator));
+        analogConnectors += channels;
+        return this;
+    }
+
+    /**
+     * Adds digital channels behind the port, each reports every rateMS.
+     */
+    public LoadProfile digital(Port port, int channels, int rateMS, TestValueGenerator generator) {
+        if (port.isAnalog()) {
+            throw new UnsupportedOperationException(port+" is not a digital port");
+        }
+        validate(channels, rateMS, generator);
+        add(new Endpoints(DIGITAL, port, 0, digitalConnectors, channels, rateMS, 0, generator));
+        digitalConnectors += channels;
+        return this;
+    }
+
+    /**
+     * Adds a device whose registers from 0 each respond with bytes every rateMS.
+     */
+    public LoadProfile i2c(int address, int registers, int rateMS, int bytes, TestValueGenerator generator) {
+        if (address < 0 || address > MAX_I2C_ADDRESS) {
+            throw new UnsupportedOperationException("I2C address must be from 0 to "+MAX_I2C_ADDRESS);
+        }
+        if (registers > MAX_REGISTERS) {
+            throw new UnsupportedOperationException("A device may have at most "+MAX_REGISTERS+" registers");
+        }
+        if (bytes < 1 || bytes > 8) {
+            throw new UnsupportedOperationException("I2C responses must be from 1 to 8 bytes");
+        }
+        validate(registers, rateMS, generator);
+        add(new Endpoints(I2C, null, address, 0, registers, rateMS, bytes, generator));
+        return this;
+    }
+
+    private static void validate(int count, int rateMS, TestValueGenerator generator) {
+        if (count <= 0) {
+            throw new UnsupportedOperationException("At least one endpoint must be declared");
+        }
+        if (rateMS <= 0) {
+            throw new UnsupportedOperationException("Rate must be at least 1 ms");
+        }
+        if (null == generator) {
+            throw new UnsupportedOperationException("A generator is required");
+        }
+    }
+
+    private void add(Endpoints e) {
+        endpoints = Arrays.copyOf(endpoints, endpoints.length+1);
+        endpoints[endpoints.length-1] = e;
+    }
+
+    public Endpoints[] endpoints() {
+        return endpoints;
+    }
+
+    public int analogConnectors() {
+        return analogConnectors;
+    }
+
+    public int digitalConnectors() {
+        return digitalConnectors;
+    }
+
+    public boolean hasI2C() {
+        for (Endpoints e : endpoints) {
+            if (I2C == e.kind) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
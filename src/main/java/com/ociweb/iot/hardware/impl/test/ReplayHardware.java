@@ -0,0 +1,107 @@
+package com.ociweb.iot.hardware.impl.test;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.gl.api.MsgRuntime;
+import com.ociweb.gl.impl.schema.TrafficAckSchema;
+import com.ociweb.gl.impl.schema.TrafficReleaseSchema;
+import com.ociweb.iot.hardware.I2CConnection;
+import com.ociweb.iot.hardware.impl.SerialInputSchema;
+import com.ociweb.pronghorn.iot.replay.InputReplayStage;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.iot.schema.ImageSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Test hardware whose inputs come from a capture recorded with
+ * {@link com.ociweb.iot.maker.Hardware#recordInputs(String)} instead of being polled. Everything
+ * after the input stages, replication, windows and listeners, is built exactly as on the device.
+ * Outputs go to the same mock backings as {@link TestHardware}.
+ */
+public class ReplayHardware extends TestHardware {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayHardware.class);
+
+    public static final int MAX_SPEED = InputReplayStage.MAX_SPEED;
+
+    private static final I2CConnection[] NO_I2C_INPUTS = new I2CConnection[0];
+
+    private final String capturePath;
+    private final int speed;
+
+    private Pipe<GroveResponseSchema> pinOutput;
+    private Pipe<I2CResponseSchema> i2cOutput;
+    private Pipe<SerialInputSchema> serialOutput;
+    private Pipe<ImageSchema> imageOutput;
+    private int imageReaders;
+    private InputReplayStage replayStage;
+
+    /**
+     * @param speed Multiple of the recorded rate, or {@link #MAX_SPEED}.
+     */
+    public ReplayHardware(GraphManager gm, String[] args, String capturePath, int speed) {
+        super(gm, args);
+        if (speed < 0) {
+            throw new UnsupportedOperationException("Replay speed must be positive or MAX_SPEED");
+        }
+        this.capturePath = capturePath;
+        this.speed = speed;
+    }
+
+    /**
+     * @return true once every recorded message has been sent to the listeners.
+     */
+    public boolean isReplayComplete() {
+        return null == replayStage || replayStage.isComplete();
+    }
+
+    @Override
+    public void buildStages(MsgRuntime runtime) {
+        super.buildStages(runtime);
+        if (null == pinOutput && null == i2cOutput && null == serialOutput && null == imageOutput) {
+            logger.warn("Nothing listens to the inputs, {} will not be replayed", capturePath);
+            return;
+        }
+        replayStage = new InputReplayStage(gm, pinOutput, i2cOutput, serialOutput, imageOutput,
+                                           getFramePool(), imageReaders, this, capturePath, speed);
+    }
+
+    /**
+     * Recorded responses take the place of polling, so no bus has inputs to read.
+     */
+    @Override
+    public I2CConnection[] getI2CInputs(int bus) {
+        return NO_I2C_INPUTS;
+    }
+
+    @Override
+    protected void createADInputStage(Pipe<GroveResponseSchema> masterResponsePipe) {
+        pinOutput = masterResponsePipe;
+    }
+
+    @Override
+    protected void createI2COutputInputStage(MsgRuntime<?,?> runtime, Pipe<I2CCommandSchema>[] i2cPipes,
+            Pipe<TrafficReleaseSchema>[] masterI2CgoOut, Pipe<TrafficAckSchema>[] masterI2CackIn, Pipe<I2CResponseSchema> masterI2CResponsePipe) {
+        i2cOutput = masterI2CResponsePipe;
+        if (i2cPipes.length > 0) {
+            //writes still go to the mock backing
+            super.createI2COutputInputStage(runtime, i2cPipes, masterI2CgoOut, masterI2CackIn, null);
+        }
+    }
+
+    @Override
+    protected void createUARTInputStage(Pipe<SerialInputSchema> masterUARTPipe) {
+        serialOutput = masterUARTPipe;
+    }
+
+    @Override
+    protected void createImageInputStage(Pipe<ImageSchema> masterImagePipe, int readers) {
+        imageOutput = masterImagePipe;
+        imageReaders = readers;
+    }
+
+}
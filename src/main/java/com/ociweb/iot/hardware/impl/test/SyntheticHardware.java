@@ -0,0 +1,147 @@
+package com.ociweb.iot.hardware.impl.test;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.gl.api.MsgRuntime;
+import com.ociweb.gl.impl.schema.TrafficAckSchema;
+import com.ociweb.gl.impl.schema.TrafficReleaseSchema;
+import com.ociweb.iot.hardware.HardwareConnection;
+import com.ociweb.iot.hardware.I2CConnection;
+import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.SyntheticInputStage;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Test hardware whose inputs are the virtual endpoints of a {@link LoadProfile}, used to measure how
+ * a graph scales with hundreds or thousands of inputs. Everything after the input stages is built
+ * exactly as on the device. Devices connected by the app are not polled, outputs go to the same
+ * mock backings as {@link TestHardware}.
+ */
+public class SyntheticHardware extends TestHardware {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticHardware.class);
+
+    private static final int AVERAGE_WINDOW_MS = 1000;
+    private static final I2CConnection[] NO_I2C_INPUTS = new I2CConnection[0];
+
+    private final LoadProfile profile;
+    private final Port[] analogPorts;   //by connector
+    private final Port[] digitalPorts;
+    private final HardwareConnection[] analogConnections;
+    private final HardwareConnection[] digitalConnections;
+
+    private Pipe<GroveResponseSchema> pinOutput;
+    private Pipe<I2CResponseSchema> i2cOutput;
+    private SyntheticInputStage inputStage;
+
+    public SyntheticHardware(GraphManager gm, String[] args, LoadProfile profile) {
+        super(gm, args);
+        this.profile = profile;
+        this.analogPorts = new Port[profile.analogConnectors()];
+        this.digitalPorts = new Port[profile.digitalConnectors()];
+        int connectors = connectorCount();
+        this.analogConnections = new HardwareConnection[connectors];
+        this.digitalConnections = new HardwareConnection[connectors];
+
+        for (LoadProfile.Endpoints e : profile.endpoints()) {
+            if (LoadProfile.I2C != e.kind) {
+                Port[] ports = LoadProfile.ANALOG == e.kind ? analogPorts : digitalPorts;
+                HardwareConnection[] connections = LoadProfile.ANALOG == e.kind ? analogConnections : digitalConnections;
+                //every value is sent so the listeners see the full load
+                HardwareConnection con = new HardwareConnection(null, e.port.port, e.rateMS, Math.max(e.rateMS, AVERAGE_WINDOW_MS), true);
+                for (int c = e.first; c < e.first+e.count; c++) {
+                    ports[c] = e.port;
+                    connections[c] = con;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return samples sent to the listeners so far.
+     */
+    public long sentSamples() {
+        return null == inputStage ? 0 : inputStage.sentSamples();
+    }
+
+    /**
+     * @return samples skipped because the graph could not keep up with the profile.
+     */
+    public long missedSamples() {
+        return null == inputStage ? 0 : inputStage.missedSamples();
+    }
+
+    @Override
+    public void buildStages(MsgRuntime runtime) {
+        super.buildStages(runtime);
+        if (null == pinOutput && null == i2cOutput) {
+            logger.warn("Nothing listens to the inputs, no load will be generated");
+            return;
+        }
+        inputStage = new SyntheticInputStage(gm, pinOutput, i2cOutput, this, profile);
+    }
+
+    @Override
+    public int connectorCount() {
+        return Math.max(super.connectorCount(), Math.max(profile.analogConnectors(), profile.digitalConnectors()));
+    }
+
+    @Override
+    public Port analogPort(int connector) {
+        return connector < analogPorts.length ? analogPorts[connector] : null;
+    }
+
+    @Override
+    public Port digitalPort(int connector) {
+        return connector < digitalPorts.length ? digitalPorts[connector] : null;
+    }
+
+    @Override
+    public HardwareConnection[] analogConnectors() {
+        return analogConnections;
+    }
+
+    @Override
+    public HardwareConnection[] digitalConnectors() {
+        return digitalConnections;
+    }
+
+    @Override
+    public boolean hasDigitalOrAnalogInputs() {
+        return analogPorts.length+digitalPorts.length > 0;
+    }
+
+    @Override
+    public boolean hasI2CInputs() {
+        return profile.hasI2C();
+    }
+
+    /**
+     * Generated responses take the place of polling, so no bus has inputs to read.
+     */
+    @Override
+    public I2CConnection[] getI2CInputs(int bus) {
+        return NO_I2C_INPUTS;
+    }
+
+    @Override
+    protected void createADInputStage(Pipe<GroveResponseSchema> masterResponsePipe) {
+        pinOutput = masterResponsePipe;
+    }
+
+    @Override
+    protected void createI2COutputInputStage(MsgRuntime<?,?> runtime, Pipe<I2CCommandSchema>[] i2cPipes,
+            Pipe<TrafficReleaseSchema>[] masterI2CgoOut, Pipe<TrafficAckSchema>[] masterI2CackIn, Pipe<I2CResponseSchema> masterI2CResponsePipe) {
+        i2cOutput = masterI2CResponsePipe;
+        if (i2cPipes.length > 0) {
+            //writes still go to the mock backing
+            super.createI2COutputInputStage(runtime, i2cPipes, masterI2CgoOut, masterI2CackIn, null);
+        }
+    }
+
+}
@@ -56,6 +56,11 @@ public class TestHardware extends HardwareImpl {
 		}
 		return i2cBackingInternal;		
 	}
+
+	@Override
+	protected I2CBacking createI2CBacking(int bus) {
+		return new TestI2CBacking().configure((byte) bus);
+	}
     
     public void enableTelemetry(boolean enable) {
     	if (!isInUnitTest && enable) {
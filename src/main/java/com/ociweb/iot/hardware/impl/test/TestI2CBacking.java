@@ -44,8 +44,8 @@ public class TestI2CBacking implements I2CBacking{
 
 		lastWriteLength  = new int[MAX_BACK_SIZE];
 
-		responses = new byte[MAX_ADDRESS][];
-		responseLengths = new int[MAX_ADDRESS];
+		responses = new byte[MAX_ADDRESS+1][];
+		responseLengths = new int[MAX_ADDRESS+1];
 	}
 
 
@@ -0,0 +1,15 @@
+package com.ociweb.iot.hardware.impl.test;
+
+/**
+ * Values produced by the virtual endpoints of a {@link LoadProfile}.
+ */
+public interface TestValueGenerator {
+
+    /**
+     * @param endpoint Index of the endpoint within its declaration.
+     * @param sample Number of samples the endpoint has produced before this one.
+     * @return The value, analog endpoints use the low 32 bits, digital the low bit and I2C the low bytes.
+     */
+    long value(int endpoint, long sample);
+
+}
@@ -0,0 +1,21 @@
+package com.ociweb.iot.impl;
+
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Port;
+
+public interface AnalogBatchListenerBase {
+
+    /**
+     * Invoked once per port with every sample of that port which was waiting when the
+     * listener was last scheduled. Values are the raw readings, no noise filter or
+     * moving average is applied and repeated values are not suppressed.
+     *
+     * The arrays are reused by the {@link FogRuntime}, copy any values to be kept after returning.
+     *
+     * @param port {@link Port} of the analog device.
+     * @param times UNIX timestamp (milliseconds since the epoch) of each sample.
+     * @param values Value of each sample.
+     * @param count Number of samples, the arrays may be longer.
+     */
+    void analogBatch(Port port, long[] times, int[] values, int count);
+}
@@ -0,0 +1,21 @@
+package com.ociweb.iot.impl;
+
+import com.ociweb.iot.maker.FogRuntime;
+
+public interface I2CBatchListenerBase {
+
+    /**
+     * Invoked once per address and register with every response which was waiting when the
+     * listener was last scheduled. Response i is found in data from offsets[i] up to offsets[i+1].
+     *
+     * The arrays are reused by the {@link FogRuntime}, copy any values to be kept after returning.
+     *
+     * @param addr I2C address of the device.
+     * @param register Register identifier of the connection.
+     * @param times UNIX timestamp (milliseconds since the epoch) of each response.
+     * @param data Bytes of every response one after the other.
+     * @param offsets Start of each response in data followed by the end of the last one.
+     * @param count Number of responses, the arrays may be longer.
+     */
+    void i2cBatch(int addr, int register, long[] times, byte[] data, int[] offsets, int count);
+}
@@ -2,4 +2,12 @@ package com.ociweb.iot.impl;
 
 public interface I2CListenerBase {
 	   public void i2cEvent(int addr, int register, long time, byte[] backing, int position, int length, int mask);
+
+	   /**
+	    * Same event with the monotonic nanoTime taken just before the bytes were read, see
+	    * {@link com.ociweb.iot.maker.Hardware#toEpochNS(long)}. The default ignores it.
+	    */
+	   public default void i2cEvent(int addr, int register, long time, long acquiredNS, byte[] backing, int position, int length, int mask) {
+		   i2cEvent(addr, register, time, backing, position, length, mask);
+	   }
 }
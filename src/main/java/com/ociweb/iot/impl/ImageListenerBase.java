@@ -1,5 +1,7 @@
 package com.ociweb.iot.impl;
 
+import com.ociweb.iot.camera.ImageFrame;
+
 /**
  * Listener for responding to image-receive events on a hardware system
  * equipped with a camera or other image-generating systems.
@@ -28,4 +30,26 @@ public interface ImageListenerBase {
      * @param frameRowBytes A byte array containing a row of image data.
      */
     void onFrameRow(byte[] frameRowBytes);
+
+    /**
+     * Invoked when the hardware delivers whole frames from a frame pool, see
+     * Hardware useImageFrameHandles. The frame is read in place, nothing is copied.
+     *
+     * The default implementation passes the frame on row by row to
+     * {@link #onFrameStart(int, int, long)} and {@link #onFrameRow(byte[])},
+     * listeners of compressed formats such as MJPEG must override it.
+     *
+     * @param frame Handle to the frame, valid until it is released.
+     *
+     * @return True if the listener is finished with the frame, false if it is kept
+     *         and will be given back later with {@link ImageFrame#release()}.
+     */
+    default boolean onFrame(ImageFrame frame) {
+        onFrameStart(frame.width(), frame.height(), frame.timestamp());
+        int rows = frame.height();
+        for (int r = 0; r < rows; r++) {
+            onFrameRow(frame.readRow(r));
+        }
+        return true;
+    }
 }
@@ -0,0 +1,27 @@
+package com.ociweb.iot.impl;
+
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Hardware;
+import com.ociweb.iot.maker.Port;
+
+public interface WindowListenerBase {
+
+    /**
+     * Invoked each time a window declared with {@link Hardware#window(Port, int, int)} closes.
+     * Percentiles are taken by nearest rank over the samples of the window, every value is
+     * zero when the window holds no samples.
+     *
+     * @param port {@link Port} of the windowed device.
+     * @param time UNIX timestamp (milliseconds since the epoch) of the end of the window.
+     * @param count Number of samples in the window.
+     * @param min Smallest sample.
+     * @param max Largest sample.
+     * @param mean Mean of the samples, rounded toward zero.
+     * @param p50 Median sample.
+     * @param p90 90th percentile.
+     * @param p99 99th percentile.
+     *
+     * @see FogRuntime#registerListener(com.ociweb.gl.api.Behavior)
+     */
+    void windowEvent(Port port, long time, int count, int min, int max, int mean, int p50, int p90, int p99);
+}
@@ -0,0 +1,13 @@
+package com.ociweb.iot.maker;
+
+import com.ociweb.gl.api.Behavior;
+import com.ociweb.iot.impl.AnalogBatchListenerBase;
+
+/**
+ * Functional interface for blocks of raw analog samples, registered with
+ * {@link FogRuntime#registerListener(Behavior)}.
+ */
+@FunctionalInterface
+public interface AnalogBatchListener extends Behavior, AnalogBatchListenerBase {
+
+}
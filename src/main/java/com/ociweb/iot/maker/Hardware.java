@@ -1,9 +1,14 @@
 package com.ociweb.iot.maker;
 
 import com.ociweb.gl.api.Builder;
+import com.ociweb.iot.camera.CameraFormat;
+import com.ociweb.iot.filter.AnalogFilterChain;
 import com.ociweb.iot.hardware.ADIODevice;
+import com.ociweb.iot.hardware.GpioEdgeLines;
 import com.ociweb.iot.hardware.I2CIODevice;
 import com.ociweb.iot.hardware.IODevice;
+import com.ociweb.iot.store.TimeSeriesStore;
+import com.ociweb.pronghorn.iot.timing.LatencyHistogram;
 
 /**
  * Base interface for an IoT device's hardware.
@@ -22,10 +27,45 @@ public interface Hardware extends Builder {
      *
      * @param triggerRateMillis Number of milliseconds between image capture events.
      *
-     * @throws RuntimeException if the trigger rate is less than 1,250.
+     * @throws RuntimeException if the trigger rate is less than 1, or when the graph is built
+     *         if it is less than 1,250 and frame handles are not in use.
      */
     public void setImageTriggerRate(int triggerRateMillis) throws RuntimeException;
 
+    /**
+     * Captures camera frames into a fixed pool of buffers and passes only a handle to
+     * each image listener, so frames are never copied row by row through the pipes.
+     * Required for {@link #setImageTriggerRate(int)} rates below 1,250, unless the camera
+     * format already delivers frames by handle.
+     * When every pooled frame is still held by a listener new captures are skipped.
+     *
+     * @param frames Number of frames in the pool.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware useImageFrameHandles(int frames);
+
+    /**
+     * Streams from the camera at the given resolution and pixel format instead of
+     * capturing 1080p RGB24 frames one at a time. The camera may choose the nearest
+     * resolution it supports. {@link CameraFormat#MJPEG} frames are always delivered
+     * by frame handle.
+     *
+     * @param width Frame width in pixels.
+     * @param height Frame height in pixels.
+     * @param format Pixel format, use {@link CameraFormat#GREY} when color is not needed.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware useCamera(int width, int height, CameraFormat format);
+
+    /**
+     * @param buffers Number of buffers the camera keeps queued, with frame handles this is also the pool size.
+     *
+     * @see #useCamera(int, int, CameraFormat)
+     */
+    Hardware useCamera(int width, int height, CameraFormat format, int buffers);
+
     /**
      * Connects a new {@link IODevice} to this hardware on a given {@link Port}.
      *
@@ -47,6 +87,18 @@ public interface Hardware extends Builder {
      * @return  A reference to this hardware instance.
      */
     Hardware connect(ADIODevice device, Port port, int customRateMS, int customAvgWinMS);
+    /**
+     * Connects an analog device with its own chain of noise filters, applied to every sample
+     * before the moving average. Filters which drop a sample also suppress its event.
+     *
+     * @param device {@link IODevice} to connect.
+     * @param port {@link Port} to connect the device to.
+     * @param customRateMS Optional rate in milliseconds to update the device data.
+     * @param customAvgWinMS Optional rate in milliseconds to sample device data.
+     * @param filters Filters to apply in order, replaces the default 3 sample median.
+     * @return  A reference to this hardware instance.
+     */
+    Hardware connect(ADIODevice device, Port port, int customRateMS, int customAvgWinMS, AnalogFilterChain filters);
     /**
      * 
      * @param device {@link IODevice} to connect.
@@ -72,6 +124,101 @@ public interface Hardware extends Builder {
      */
     Hardware connect(ADIODevice device, Port port);
 
+    /**
+     * Connects a digital input whose pins are wired to Linux GPIO lines. The input is not polled,
+     * the kernel reports every edge with a microsecond accurate timestamp.
+     *
+     * @param device Button, rotary encoder or other digital {@link IODevice} to connect.
+     * @param port Digital {@link Port} reported in the events of this device.
+     * @param lines One GPIO line for each pin the device uses.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware connect(ADIODevice device, Port port, GpioEdgeLines lines);
+
+    /**
+     * Summarizes the samples of a connected input over sliding windows. Each time the window has
+     * moved by the slide a {@link WindowListener} receives the count, min, max, mean and percentiles
+     * of the samples taken in the last windowMS, computed once for every listener.
+     *
+     * @param port {@link Port} of a connected input.
+     * @param windowMS Length of each window in milliseconds.
+     * @param slideMS Milliseconds between summaries, no larger than the window.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware window(Port port, int windowMS, int slideMS);
+
+    /**
+     * Summarizes the samples of a connected input over tumbling windows, each sample is counted
+     * in exactly one window.
+     *
+     * @param port {@link Port} of a connected input.
+     * @param windowMS Length of each window in milliseconds.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware window(Port port, int windowMS);
+
+    /**
+     * Records every sample of the connected inputs in compressed, memory mapped files on the device
+     * so history can be queried without a network. Once the size or age limit is reached the oldest
+     * samples are deleted. I2C responses longer than 8 bytes are not recorded.
+     *
+     * @param directory Folder for the store files, samples already there are kept and can be queried.
+     * @param maxBytes Disk space the store may use, at least 2MB.
+     * @param retentionMS Age after which samples are deleted, 0 keeps them until space runs out.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware useTimeSeriesStore(String directory, long maxBytes, long retentionMS);
+
+    /**
+     * @return The store declared with {@link #useTimeSeriesStore(String, long, long)}, or null.
+     */
+    TimeSeriesStore getTimeSeriesStore();
+
+    /**
+     * Records every message from the inputs of this device to a capture file. The capture can be
+     * replayed with {@link FogRuntime#replay(FogApp, String, int)} on any machine to reproduce what
+     * the listeners saw, at the recorded rate or faster. Serial and camera input are recorded
+     * when something listens to them.
+     *
+     * @param path Capture file, replaced if it exists.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware recordInputs(String path);
+
+    /**
+     * Reads and writes a digital port through a Raspberry Pi header pin instead of the GrovePi
+     * board, using the memory mapped GPIO registers. Must be called before the device on the
+     * port is connected.
+     *
+     * @param port Digital {@link Port} to use for the pin.
+     * @param headerPin BCM number of the pin, 0 to 27.
+     *
+     * @return A reference to this hardware instance.
+     *
+     * @throws UnsupportedOperationException if this hardware is not a Raspberry Pi.
+     */
+    Hardware useNativeGpio(Port port, int headerPin);
+
+    /**
+     * Samples analog ports continuously with the kernel's buffered ADC capture instead of reading
+     * each value on the poll schedule. Samples are read from the driver in blocks and published
+     * in batches, each carrying the ns since the previous sample as its PrevDuration. The ports
+     * must also be connected as analog inputs.
+     *
+     * @param sampleRateHz Samples per second on every captured port, rates into the kHz are supported.
+     * @param ports Analog {@link Port}s to capture.
+     *
+     * @return A reference to this hardware instance.
+     *
+     * @throws UnsupportedOperationException if this hardware has no buffered ADC.
+     */
+    Hardware useAnalogCapture(int sampleRateHz, Port ... ports);
+
     /**
      * calls connectI2C to connect the I2C IODevice
      * @param device
@@ -87,6 +234,19 @@ public interface Hardware extends Builder {
      */
     
     Hardware connect(I2CIODevice device, int customRateMS);
+
+    /**
+     * Connects an I2C device on one of several buses. Each bus is polled and written by its own
+     * stage so slow transfers on one adapter never delay another. Output devices on different
+     * buses must have different addresses.
+     *
+     * @param device {@link I2CIODevice} to connect.
+     * @param customRateMS Rate in milliseconds to poll the device.
+     * @param bus Number of the I2C adapter, eg 3 for /dev/i2c-3.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware connect(I2CIODevice device, int customRateMS, int bus);
   
  
     
@@ -98,13 +258,106 @@ public interface Hardware extends Builder {
     Hardware useI2C();
 
     /**
-     * Asks this hardware instance to enable I2C communications.
+     * Asks this hardware instance to enable I2C communications. The first bus selected replaces
+     * the default bus, every later call adds another bus with its own polling stage.
      *
      * @param bus I2C bus to use.
      *
      * @return A reference to this hardware instance.
      */
     Hardware useI2C(int bus);
+
+    /**
+     * Enables or disables merging of I2C polls which read adjacent registers on the same
+     * address at the same rate into a single burst read. This is on by default and
+     * should only be turned off for devices which do not auto-increment their register pointer.
+     *
+     * @param enabled true to coalesce reads.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware useI2CReadCoalescing(boolean enabled);
+
+    /**
+     * Sets how failed I2C transfers are retried. A failed transfer never holds the bus, the other
+     * devices keep being polled and it is tried again on a later cycle. The wait before each new
+     * attempt doubles up to the max backoff. Polls and device setup are retried for as long as
+     * the device fails, writes are dropped after the given number of attempts.
+     * The defaults are 2ms, 1000ms and 8 attempts.
+     *
+     * @param initialBackoffMS Milliseconds to wait after the first failure.
+     * @param maxBackoffMS Largest wait between attempts in milliseconds.
+     * @param writeAttempts Attempts made before a write is dropped.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware useI2CRetry(int initialBackoffMS, int maxBackoffMS, int writeAttempts);
+
+    /**
+     * Converts the AcquiredNS timestamp carried by sensor responses to nanoseconds since the epoch.
+     * AcquiredNS is taken from the monotonic clock just before the device is read so the difference
+     * between two samples is exact, while this mapping follows the wall clock and is measured again
+     * every few seconds in case the system time was set.
+     *
+     * @param acquiredNS Monotonic nanosecond timestamp of a sample.
+     *
+     * @return Nanoseconds since the epoch, accurate to about a millisecond.
+     */
+    long toEpochNS(long acquiredNS);
+
+    /**
+     * Selects how the polling stages wait between scheduled samples. The default
+     * {@link PrecisionWait#PARK} keeps jitter low while leaving the core free for other stages.
+     *
+     * @param mode wait strategy used by each polling stage.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware usePrecisionWait(PrecisionWait mode);
+
+    /**
+     * Records, for each listener and connection, the time from reading a sample to calling
+     * the listener and, for each pin, the time from the command channel to the pin write.
+     * Off by default so no histograms are allocated or updated.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware enableLatencyHistograms();
+
+    /**
+     * @return Copy of every latency histogram, empty unless {@link #enableLatencyHistograms()} was called.
+     */
+    LatencyHistogram[] getLatencyStatistics();
+
+    /**
+     * Polls quiet inputs less often. Once an input has not changed for the stable window
+     * its poll period is doubled, and doubled again after each further quiet window up to
+     * the max backoff. Any change returns it and every input linked to it to the declared rate.
+     * Rotary encoders and buttons are always polled at their declared rate.
+     *
+     * @param stableWindowMS Milliseconds without change before the poll period is doubled.
+     * @param maxBackoff Largest multiple of the declared period, must be a power of two no larger than 64.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware useAdaptivePolling(int stableWindowMS, int maxBackoff);
+
+    /**
+     * @param analogThreshold Analog readings within this distance of the last change are treated as unchanged.
+     *
+     * @see #useAdaptivePolling(int, int)
+     */
+    Hardware useAdaptivePolling(int stableWindowMS, int maxBackoff, int analogThreshold);
+
+    /**
+     * Links analog and digital inputs so activity on any of them returns all of them to their
+     * declared poll rates. I2C inputs on the same address are always linked.
+     *
+     * @param ports Connected input ports to link.
+     *
+     * @return A reference to this hardware instance.
+     */
+    Hardware linkAdaptivePolling(Port ... ports);
     
     Hardware useSerial(Baud baud);
     
@@ -0,0 +1,13 @@
+package com.ociweb.iot.maker;
+
+import com.ociweb.gl.api.Behavior;
+import com.ociweb.iot.impl.I2CBatchListenerBase;
+
+/**
+ * Functional interface for blocks of I2C responses, registered with
+ * {@link FogRuntime#registerListener(Behavior)}.
+ */
+@FunctionalInterface
+public interface I2CBatchListener extends Behavior, I2CBatchListenerBase {
+
+}
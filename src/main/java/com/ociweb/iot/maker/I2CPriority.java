@@ -0,0 +1,31 @@
+package com.ociweb.iot.maker;
+
+/**
+ * How long the I2C writes of a command channel may wait once released. A write whose deadline
+ * comes before the next scheduled poll is sent first, otherwise it is only sent when it can
+ * finish before that poll is due.
+ */
+public enum I2CPriority {
+
+    /**
+     * Actuators which must react quickly, may delay polling.
+     */
+    URGENT(2_000_000L),
+
+    /**
+     * Most devices, the default.
+     */
+    NORMAL(20_000_000L),
+
+    /**
+     * Bulk transfers such as full display refreshes, sent in the gaps between polls.
+     */
+    BACKGROUND(250_000_000L);
+
+    public final long deadlineNS;
+
+    private I2CPriority(long deadlineNS) {
+        this.deadlineNS = deadlineNS;
+    }
+
+}
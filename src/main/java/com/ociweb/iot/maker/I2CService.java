@@ -32,6 +32,13 @@ public class I2CService {
 		}
 	}
 	
+	/**
+	 * @see FogCommandChannel#setI2CPriority(I2CPriority)
+	 */
+	public void setPriority(I2CPriority priority) {
+		cmd.setI2CPriority(priority);
+	}
+
 	public boolean block(Port port, long durationMilli) {
 		return cmd.block(port,durationMilli);
 	}
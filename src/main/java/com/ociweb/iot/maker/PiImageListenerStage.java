@@ -1,8 +1,11 @@
 package com.ociweb.iot.maker;
 
 import com.ociweb.iot.camera.Camera;
+import com.ociweb.iot.camera.CameraFormat;
+import com.ociweb.iot.camera.FramePool;
 import com.ociweb.iot.camera.ProxyCam;
 import com.ociweb.iot.camera.RaspiCam;
+import com.ociweb.iot.camera.StreamingCamera;
 import com.ociweb.pronghorn.pipe.PipeWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,12 +17,19 @@ import com.ociweb.pronghorn.stage.scheduling.GraphManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 
 /**
  * Time-based image listener backing for Raspberry Pi hardware.
  *
- * This stage passes image frames line-by-line to its consumers.
+ * This stage passes image frames line-by-line to its consumers, or when given a
+ * {@link FramePool} captures each frame into the pool and passes only its handle.
+ *
+ * When a {@link CameraFormat} is given the camera is opened as a {@link StreamingCamera}
+ * at the requested resolution and format. In frame handle mode the camera's own mapped
+ * buffers become the pool, each buffer is given back to the camera once every listener
+ * has released it.
  *
  * TODO: For total integration
  * - Build a new schema. --Done
@@ -50,19 +60,68 @@ public class PiImageListenerStage extends PronghornStage {
     private Camera camera;
     private int cameraFd;
 
+    // Streaming camera system, used when a format was requested.
+    private final CameraFormat format;
+    private final int streamBufferCount;
+    private StreamingCamera streamCamera;
+    private int streamFd;
+    private ByteBuffer[] streamBuffers;
+    private boolean[] streamBuffersHeld; // dequeued and published by handle, waiting on listeners
+
     // Image buffer information; we only process one image at a time.
     private byte[] frameBytes = null;
     private int frameBytesPublishHead = -1;
+    private int frameLength;
+    private int frameWidth;
+    private int frameHeight;
+    private int rowSize;
+
+    // Frame handle mode, null when frames are sent row by row.
+    private final FramePool framePool;
+    private final int frameReaders;
+    private long droppedFrames;
 
     public static final int FRAME_WIDTH = 1920;
     public static final int FRAME_HEIGHT = 1080;
     public static final int ROW_SIZE = FRAME_WIDTH * 3;
+    public static final int DEFAULT_STREAM_BUFFERS = 4;
 
     public PiImageListenerStage(GraphManager graphManager, Pipe<ImageSchema> output, int triggerRateMilliseconds) {
+        this(graphManager, output, triggerRateMilliseconds, null, 0);
+    }
+
+    /**
+     * @param framePool Pool to capture into, frames are then passed by handle.
+     * @param frameReaders Number of listeners which must release each frame.
+     */
+    public PiImageListenerStage(GraphManager graphManager, Pipe<ImageSchema> output, int triggerRateMilliseconds,
+                                FramePool framePool, int frameReaders) {
+        this(graphManager, output, triggerRateMilliseconds, framePool, frameReaders, FRAME_WIDTH, FRAME_HEIGHT, null, 0);
+    }
+
+    /**
+     * @param width Requested frame width in pixels.
+     * @param height Requested frame height in pixels.
+     * @param format Pixel format to stream, or null for the synchronous 1080p RGB24 camera.
+     * @param streamBufferCount Number of buffers the streaming camera should keep queued.
+     */
+    public PiImageListenerStage(GraphManager graphManager, Pipe<ImageSchema> output, int triggerRateMilliseconds,
+                                FramePool framePool, int frameReaders,
+                                int width, int height, CameraFormat format, int streamBufferCount) {
         super(graphManager, NONE, output);
 
         // Attach to our output pipe.
         this.output = output;
+        this.framePool = framePool;
+        this.frameReaders = frameReaders;
+        this.frameWidth = width;
+        this.frameHeight = height;
+        this.format = format;
+        this.streamBufferCount = streamBufferCount;
+
+        if (null != format && format.isCompressed() && null == framePool) {
+            throw new UnsupportedOperationException(format+" frames can only be delivered by frame handle");
+        }
 
         // Add this listener to the graph.
         GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, triggerRateMilliseconds * 1000000L, this);
@@ -70,8 +129,6 @@ public class PiImageListenerStage extends PronghornStage {
 
     @Override
     public void startup() {
-        // TODO: Open camera here.
-        frameBytes = new byte[1080 * 1920 * 3];
 
         // Get a file for the default camera device.
         File cameraFile = Paths.get(RaspiCam.DEFAULT_CAMERA_DEVICE).toFile();
@@ -92,6 +149,11 @@ public class PiImageListenerStage extends PronghornStage {
             }
         }
 
+        if (null != format) {
+            startupStream();
+            return;
+        }
+
         // Open camera interface.
         if (v4l2Available) {
             camera = new RaspiCam();
@@ -100,9 +162,49 @@ public class PiImageListenerStage extends PronghornStage {
             camera = new ProxyCam();
             cameraFd = camera.open("./images", FRAME_WIDTH, FRAME_HEIGHT);
         }
+        frameWidth = FRAME_WIDTH;
+        frameHeight = FRAME_HEIGHT;
+        rowSize = ROW_SIZE;
+
+        // Configure byte array for camera frames, not needed when capturing into the pool.
+        if (null == framePool) {
+            frameBytes = new byte[camera.getFrameSizeBytes(cameraFd)];
+            frameLength = frameBytes.length;
+        } else {
+            frameBytes = null;
+            framePool.allocate(camera.getFrameSizeBytes(cameraFd));
+        }
+    }
+
+    private void startupStream() {
+
+        // Open streaming camera interface.
+        String device;
+        if (v4l2Available) {
+            streamCamera = new RaspiCam();
+            device = RaspiCam.DEFAULT_CAMERA_DEVICE;
+        } else {
+            streamCamera = new ProxyCam();
+            device = "./images";
+        }
+        streamFd = streamCamera.openStream(device, frameWidth, frameHeight, format, streamBufferCount);
+        if (streamFd < 0) {
+            throw new UnsupportedOperationException("Unable to stream "+format+" frames from "+device);
+        }
 
-        // Configure byte array for camera frames.
-        frameBytes = new byte[camera.getFrameSizeBytes(cameraFd)];
+        // The camera may have picked the nearest resolution it supports.
+        frameWidth = streamCamera.getStreamWidth(streamFd);
+        frameHeight = streamCamera.getStreamHeight(streamFd);
+        rowSize = format.rowBytes(frameWidth);
+        streamBuffers = streamCamera.getStreamBuffers(streamFd);
+        logger.info("Camera streaming {} at {}x{} with {} buffers", format, frameWidth, frameHeight, streamBuffers.length);
+
+        if (null == framePool) {
+            frameBytes = new byte[format.frameBytes(frameWidth, frameHeight)];
+        } else {
+            framePool.wrap(streamBuffers);
+            streamBuffersHeld = new boolean[streamBuffers.length];
+        }
     }
 
     @Override
@@ -111,12 +213,28 @@ public class PiImageListenerStage extends PronghornStage {
 			Pipe.publishEOF(output);
 		}
 
+		if (droppedFrames > 0) {
+		    logger.info("{} frames were skipped because every pooled frame was still held by listeners", droppedFrames);
+		}
+
 		// Close camera.
-        camera.close(cameraFd);
+		if (null != streamCamera) {
+		    streamCamera.closeStream(streamFd);
+		} else {
+		    camera.close(cameraFd);
+		}
     }
 
     @Override
     public void run() {
+        if (null != framePool) {
+            if (null != streamCamera) {
+                publishStreamHandle();
+            } else {
+                publishFrameHandle();
+            }
+            return;
+        }
 
         // Only execute while we have room to write our output.
         if (Pipe.hasRoomForWrite(output)) {
@@ -125,15 +243,15 @@ public class PiImageListenerStage extends PronghornStage {
             if (frameBytesPublishHead == -1) {
 
                 // Attempt a frame capture.
-                if (camera.readFrame(cameraFd, frameBytes, 0) != -1) {
+                if (readFrame()) {
 
                     // If a frame was available, reset head to the beginning.
                     frameBytesPublishHead = 0;
 
                     // Publish frame start.
                     if (PipeWriter.tryWriteFragment(output, ImageSchema.MSG_FRAMESTART_1)) {
-                        PipeWriter.writeInt(output, ImageSchema.MSG_FRAMESTART_1_FIELD_WIDTH_101, FRAME_WIDTH);
-                        PipeWriter.writeInt(output, ImageSchema.MSG_FRAMESTART_1_FIELD_HEIGHT_201, FRAME_HEIGHT);
+                        PipeWriter.writeInt(output, ImageSchema.MSG_FRAMESTART_1_FIELD_WIDTH_101, frameWidth);
+                        PipeWriter.writeInt(output, ImageSchema.MSG_FRAMESTART_1_FIELD_HEIGHT_201, frameHeight);
                         PipeWriter.writeLong(output, ImageSchema.MSG_FRAMESTART_1_FIELD_TIMESTAMP_301, System.currentTimeMillis());
                         PipeWriter.publishWrites(output);
                     }
@@ -141,18 +259,94 @@ public class PiImageListenerStage extends PronghornStage {
 
             // Otherwise, write a frame part if there's space.
             } else if (PipeWriter.tryWriteFragment(output, ImageSchema.MSG_FRAMECHUNK_2) &&
-                       PipeWriter.hasRoomForFragmentOfSize(output, ROW_SIZE)) {
-                PipeWriter.writeBytes(output, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102, frameBytes, frameBytesPublishHead, ROW_SIZE);
+                       PipeWriter.hasRoomForFragmentOfSize(output, rowSize)) {
+                PipeWriter.writeBytes(output, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102, frameBytes, frameBytesPublishHead, rowSize);
                 PipeWriter.publishWrites(output);
 
                 // Progress head.
-                frameBytesPublishHead += ROW_SIZE;
+                frameBytesPublishHead += rowSize;
 
                 // If the head exceeds the size of the frame bytes, we're done writing.
-                if (frameBytesPublishHead >= frameBytes.length) {
+                if (frameBytesPublishHead >= frameLength) {
                     frameBytesPublishHead = -1;
                 }
             }
         }
     }
+
+    /**
+     * Fills frameBytes for row by row publishing.
+     */
+    private boolean readFrame() {
+        if (null == streamCamera) {
+            return camera.readFrame(cameraFd, frameBytes, 0) != -1;
+        }
+
+        // Copy straight out of the mapped buffer and give it back at once.
+        int index = streamCamera.dequeue(streamFd);
+        if (index < 0) {
+            return false;
+        }
+        ByteBuffer buffer = streamBuffers[index];
+        frameLength = Math.min(frameBytes.length, streamCamera.getBytesUsed(streamFd, index));
+        buffer.clear();
+        buffer.get(frameBytes, 0, frameLength);
+        streamCamera.requeue(streamFd, index);
+        return true;
+    }
+
+    private void publishFrameHandle() {
+
+        if (Pipe.hasRoomForWrite(output, Pipe.sizeOf(output, ImageSchema.MSG_FRAMEHANDLE_3))) {
+
+            // When listeners still hold every frame this capture is skipped, never blocked on.
+            int frameId = framePool.acquire();
+            if (frameId < 0) {
+                droppedFrames++;
+                return;
+            }
+
+            int length = camera.readFrame(cameraFd, framePool.fillBuffer(frameId));
+            if (length <= 0) {
+                framePool.abandon(frameId);
+                return;
+            }
+
+            framePool.publish(frameId, frameReaders);
+            ImageSchema.publishFrameHandle(output, frameId, length, frameWidth, frameHeight, System.currentTimeMillis());
+        }
+    }
+
+    private void publishStreamHandle() {
+
+        // Give buffers back to the camera once every listener has released them.
+        int i = streamBuffersHeld.length;
+        while (--i>=0) {
+            if (streamBuffersHeld[i] && framePool.isFree(i)) {
+                streamBuffersHeld[i] = false;
+                streamCamera.requeue(streamFd, i);
+            }
+        }
+
+        if (Pipe.hasRoomForWrite(output, Pipe.sizeOf(output, ImageSchema.MSG_FRAMEHANDLE_3))) {
+
+            // Frames are dropped by the camera itself while listeners hold every buffer.
+            int index = streamCamera.dequeue(streamFd);
+            if (index < 0) {
+                return;
+            }
+
+            if (!framePool.claim(index)) {
+                // Can only happen if the camera reused a buffer we did not requeue.
+                logger.warn("Camera returned buffer {} while it was still held", index);
+                droppedFrames++;
+                return;
+            }
+
+            framePool.publish(index, frameReaders);
+            streamBuffersHeld[index] = true;
+            ImageSchema.publishFrameHandle(output, index, streamCamera.getBytesUsed(streamFd, index),
+                                           frameWidth, frameHeight, System.currentTimeMillis());
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package com.ociweb.iot.maker;
+
+/**
+ * How the polling stages wait for the next scheduled sample.
+ */
+public enum PrecisionWait {
+
+    /**
+     * parkNanos for most of the wait with the overshoot measured and spun out. Low CPU, the default.
+     */
+    PARK,
+
+    /**
+     * Busy spin for the whole wait. Lowest jitter but holds a full core, only for isolated cores.
+     */
+    SPIN,
+
+    /**
+     * Linux timerfd for most of the wait with the overshoot measured and spun out.
+     */
+    TIMERFD;
+
+}
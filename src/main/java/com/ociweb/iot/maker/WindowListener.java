@@ -0,0 +1,13 @@
+package com.ociweb.iot.maker;
+
+import com.ociweb.gl.api.Behavior;
+import com.ociweb.iot.impl.WindowListenerBase;
+
+/**
+ * Functional interface for window summaries registered with the
+ * {@link FogRuntime}, used in place of the raw samples of the windowed ports.
+ */
+@FunctionalInterface
+public interface WindowListener extends Behavior, WindowListenerBase {
+
+}
@@ -47,6 +47,15 @@ public class FogBitmap implements Externalizable {
         return layout.bmpSize() + layout.messageSize();
     }
 
+    public FogBitmapLayout getLayout() {
+        return layout;
+    }
+
+    // Backing store, used by FogBmpConverter and FogPixelScanner for bulk operations
+    public byte[] getBmp() {
+        return bmp;
+    }
+
     public int getWidth() {
         return layout.getWidth();
     }
@@ -72,6 +72,38 @@ public class FogBitmapLayout implements Externalizable {
         return height * width * pixelWidth;
     }
 
+    // Components per pixel, from the color space
+    public byte getComponentCount() {
+        return componentCount;
+    }
+
+    // Bytes used to store each component
+    public byte getComponentWidth() {
+        return componentWidth;
+    }
+
+    // Bytes used to store each pixel
+    public int getPixelWidth() {
+        return pixelWidth;
+    }
+
+    // Bytes used to store each row
+    public int getRowWidth() {
+        return rowWidth;
+    }
+
+    // Largest value a component may hold
+    public int getValueMask() {
+        return valueMask;
+    }
+
+    // True if bitmaps of both layouts store pixels with identical bytes
+    public boolean isPixelCompatible(FogBitmapLayout other) {
+        return colorSpace == other.colorSpace
+                && componentDepth == other.componentDepth
+                && componentWidth == other.componentWidth;
+    }
+
     // Mutators
 
     @Override
@@ -152,7 +184,7 @@ public class FogBitmapLayout implements Externalizable {
         int i = address(x, y, z);
         switch (componentWidth) {
             case 1:
-                return bmp[i];
+                return bmp[i] & 0xFF;
             case 2:
                 return ((bmp[i] & 0xFF) << 8) | (bmp[i+1] & 0xFF);
             case 3:
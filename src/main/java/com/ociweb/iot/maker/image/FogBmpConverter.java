@@ -1,8 +1,488 @@
 package com.ociweb.iot.maker.image;
 
+/**
+ * FogBmpConverter performs bulk operations directly over the backing arrays of FogBitmaps:
+ * copy, fill, scale, rotate, color space conversion with dithering and alpha blending.
+ *
+ * When both bitmaps store pixels the same way rows are moved with System.arraycopy.
+ * Otherwise each row is unpacked into ints, converted and packed again using loops
+ * specialized for the component width. Conversions between color spaces and depths are
+ * computed at 8 bits per component.
+ *
+ * Instances hold reusable row buffers so they are not thread safe, keep one per behavior.
+ */
 public class FogBmpConverter {
-    // blend mode (per pixel and spacial calc)
-    // transform (x,y) from one rect to another
-    // significant bits on componentDepth
-    // ColorSpace conversion (per pixel and spacial calc)
+
+    // 4x4 ordered dither matrix
+    private static final int[] BAYER = {
+             0,  8,  2, 10,
+            12,  4, 14,  6,
+             3, 11,  1,  9,
+            15,  7, 13,  5
+    };
+
+    private int[] srcRow = new int[0];
+    private int[] dstRow = new int[0];
+
+    // Row packing
+
+    /**
+     * Reads count components starting at byte pos into out.
+     */
+    public static void unpack(byte[] bmp, int pos, int componentWidth, int[] out, int count) {
+        switch (componentWidth) {
+            case 1:
+                for (int i = 0; i < count; i++) {
+                    out[i] = bmp[pos + i] & 0xFF;
+                }
+                break;
+            case 2:
+                for (int i = 0; i < count; i++, pos += 2) {
+                    out[i] = ((bmp[pos] & 0xFF) << 8) | (bmp[pos+1] & 0xFF);
+                }
+                break;
+            case 4:
+                for (int i = 0; i < count; i++, pos += 4) {
+                    out[i] = ((bmp[pos] & 0xFF) << 24) | ((bmp[pos+1] & 0xFF) << 16) | ((bmp[pos+2] & 0xFF) << 8) | (bmp[pos+3] & 0xFF);
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    int value = 0;
+                    for (int j = 0; j < componentWidth; j++) {
+                        value = (value << 8) | (bmp[pos++] & 0xFF);
+                    }
+                    out[i] = value;
+                }
+        }
+    }
+
+    /**
+     * Writes count components from in to the bitmap starting at byte pos.
+     */
+    public static void pack(int[] in, int count, byte[] bmp, int pos, int componentWidth, int valueMask) {
+        switch (componentWidth) {
+            case 1:
+                for (int i = 0; i < count; i++) {
+                    bmp[pos + i] = (byte) (in[i] & valueMask);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < count; i++, pos += 2) {
+                    int value = in[i] & valueMask;
+                    bmp[pos] = (byte) (value >> 8);
+                    bmp[pos+1] = (byte) value;
+                }
+                break;
+            case 4:
+                for (int i = 0; i < count; i++, pos += 4) {
+                    int value = in[i] & valueMask;
+                    bmp[pos] = (byte) (value >> 24);
+                    bmp[pos+1] = (byte) (value >> 16);
+                    bmp[pos+2] = (byte) (value >> 8);
+                    bmp[pos+3] = (byte) value;
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    int value = in[i] & valueMask;
+                    for (int j = componentWidth - 1; j >= 0; j--) {
+                        bmp[pos + j] = (byte) value;
+                        value >>= 8;
+                    }
+                    pos += componentWidth;
+                }
+        }
+    }
+
+    // Copy and fill
+
+    public void copyRow(FogBitmap src, int srcY, FogBitmap dst, int dstY) {
+        copyRect(src, 0, srcY, src.getWidth(), 1, dst, 0, dstY);
+    }
+
+    /**
+     * Copies a rect, converting color space and depth when the layouts differ.
+     * The rect is clipped to both bitmaps.
+     */
+    public void copyRect(FogBitmap src, int srcX, int srcY, int width, int height, FogBitmap dst, int dstX, int dstY) {
+        FogBitmapLayout srcLayout = src.getLayout();
+        FogBitmapLayout dstLayout = dst.getLayout();
+        width = Math.min(width, Math.min(srcLayout.getWidth() - srcX, dstLayout.getWidth() - dstX));
+        height = Math.min(height, Math.min(srcLayout.getHeight() - srcY, dstLayout.getHeight() - dstY));
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (srcLayout.isPixelCompatible(dstLayout)) {
+            byte[] s = src.getBmp();
+            byte[] d = dst.getBmp();
+            int bytes = width * srcLayout.getPixelWidth();
+            int srcPos = srcLayout.address(srcX, srcY, 0);
+            int dstPos = dstLayout.address(dstX, dstY, 0);
+            int srcStride = srcLayout.getRowWidth();
+            int dstStride = dstLayout.getRowWidth();
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(s, srcPos, d, dstPos, bytes);
+                srcPos += srcStride;
+                dstPos += dstStride;
+            }
+        } else {
+            for (int row = 0; row < height; row++) {
+                convertRow(src, srcX, srcY + row, dst, dstX, dstY + row, width);
+            }
+        }
+    }
+
+    /**
+     * Converts the whole of src into dst, which must be the same size.
+     * Converting to fewer than 8 bits per component is dithered.
+     */
+    public void convert(FogBitmap src, FogBitmap dst) {
+        if (src.getWidth() != dst.getWidth() || src.getHeight() != dst.getHeight()) {
+            throw new UnsupportedOperationException("convert requires bitmaps of the same size, use scale first");
+        }
+        copyRect(src, 0, 0, src.getWidth(), src.getHeight(), dst, 0, 0);
+    }
+
+    /**
+     * Fills a rect with one color, components are given in the bitmap's own depth.
+     */
+    public void fill(FogBitmap dst, int x, int y, int width, int height, int... components) {
+        FogBitmapLayout layout = dst.getLayout();
+        if (components.length != layout.getComponentCount()) {
+            throw new UnsupportedOperationException("fill requires "+layout.getComponentCount()+" components");
+        }
+        width = Math.min(width, layout.getWidth() - x);
+        height = Math.min(height, layout.getHeight() - y);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        byte[] bmp = dst.getBmp();
+        int start = layout.address(x, y, 0);
+        pack(components, components.length, bmp, start, layout.getComponentWidth(), layout.getValueMask());
+
+        // Double the filled span until the row is complete, then copy the row down.
+        int total = width * layout.getPixelWidth();
+        int filled = layout.getPixelWidth();
+        while (filled < total) {
+            int count = Math.min(filled, total - filled);
+            System.arraycopy(bmp, start, bmp, start + filled, count);
+            filled += count;
+        }
+        int stride = layout.getRowWidth();
+        for (int row = 1; row < height; row++) {
+            System.arraycopy(bmp, start, bmp, start + (row * stride), total);
+        }
+    }
+
+    // Geometry
+
+    /**
+     * Nearest neighbour scale of src to the size of dst, both must store pixels the same way.
+     */
+    public void scale(FogBitmap src, FogBitmap dst) {
+        FogBitmapLayout srcLayout = src.getLayout();
+        FogBitmapLayout dstLayout = dst.getLayout();
+        requireCompatible(srcLayout, dstLayout);
+
+        byte[] s = src.getBmp();
+        byte[] d = dst.getBmp();
+        int pixelWidth = srcLayout.getPixelWidth();
+        int srcWidth = srcLayout.getWidth();
+        int srcHeight = srcLayout.getHeight();
+        int dstWidth = dstLayout.getWidth();
+        int dstHeight = dstLayout.getHeight();
+        int srcStride = srcLayout.getRowWidth();
+
+        // 16.16 fixed point step across the source, sampling pixel centers.
+        int stepX = (int) (((long) srcWidth << 16) / dstWidth);
+        int dstPos = 0;
+        for (int dy = 0; dy < dstHeight; dy++) {
+            int rowStart = (int) ((((long) dy << 1) + 1) * srcHeight / (dstHeight << 1)) * srcStride;
+            int fx = stepX >> 1;
+            if (1 == pixelWidth) {
+                for (int dx = 0; dx < dstWidth; dx++) {
+                    d[dstPos++] = s[rowStart + (fx >>> 16)];
+                    fx += stepX;
+                }
+            } else {
+                for (int dx = 0; dx < dstWidth; dx++) {
+                    System.arraycopy(s, rowStart + (fx >>> 16) * pixelWidth, d, dstPos, pixelWidth);
+                    dstPos += pixelWidth;
+                    fx += stepX;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rotates src clockwise into dst, which must already have the rotated size.
+     */
+    public void rotate(FogBitmap src, FogBitmap dst, FogFixedRotation rotation) {
+        FogBitmapLayout srcLayout = src.getLayout();
+        FogBitmapLayout dstLayout = dst.getLayout();
+        requireCompatible(srcLayout, dstLayout);
+
+        int w = srcLayout.getWidth();
+        int h = srcLayout.getHeight();
+        boolean quarter = (rotation == FogFixedRotation.two || rotation == FogFixedRotation.four);
+        if (dstLayout.getWidth() != (quarter ? h : w) || dstLayout.getHeight() != (quarter ? w : h)) {
+            throw new UnsupportedOperationException("rotate requires the destination to have the rotated size");
+        }
+
+        byte[] s = src.getBmp();
+        byte[] d = dst.getBmp();
+        int pixelWidth = srcLayout.getPixelWidth();
+        int dstStride = dstLayout.getRowWidth();
+
+        // Each source row is walked in order, the destination moves by a fixed step per pixel.
+        int srcPos = 0;
+        for (int y = 0; y < h; y++) {
+            int dstPos;
+            int step;
+            switch (rotation) {
+                case two:   // (x,y) -> (h-1-y, x)
+                    dstPos = (h - 1 - y) * pixelWidth;
+                    step = dstStride;
+                    break;
+                case three: // (x,y) -> (w-1-x, h-1-y)
+                    dstPos = ((h - 1 - y) * dstStride) + ((w - 1) * pixelWidth);
+                    step = -pixelWidth;
+                    break;
+                case four:  // (x,y) -> (y, w-1-x)
+                    dstPos = ((w - 1) * dstStride) + (y * pixelWidth);
+                    step = -dstStride;
+                    break;
+                default:
+                    dstPos = y * dstStride;
+                    step = pixelWidth;
+            }
+            if (1 == pixelWidth) {
+                for (int x = 0; x < w; x++) {
+                    d[dstPos] = s[srcPos++];
+                    dstPos += step;
+                }
+            } else {
+                for (int x = 0; x < w; x++) {
+                    System.arraycopy(s, srcPos, d, dstPos, pixelWidth);
+                    srcPos += pixelWidth;
+                    dstPos += step;
+                }
+            }
+        }
+    }
+
+    // Blending
+
+    /**
+     * Draws an rgba rect over dst using its alpha, dst may be gray, rgb or rgba.
+     */
+    public void blend(FogBitmap src, int srcX, int srcY, int width, int height, FogBitmap dst, int dstX, int dstY) {
+        FogBitmapLayout srcLayout = src.getLayout();
+        FogBitmapLayout dstLayout = dst.getLayout();
+        if (srcLayout.getColorSpace() != FogColorSpace.rgba) {
+            throw new UnsupportedOperationException("blend requires an rgba source");
+        }
+        width = Math.min(width, Math.min(srcLayout.getWidth() - srcX, dstLayout.getWidth() - dstX));
+        height = Math.min(height, Math.min(srcLayout.getHeight() - srcY, dstLayout.getHeight() - dstY));
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        int srcDepth = srcLayout.getComponentDepth();
+        int dstDepth = dstLayout.getComponentDepth();
+        int dstCount = dstLayout.getComponentCount();
+        ensureRows(width * 4, width * dstCount);
+
+        for (int row = 0; row < height; row++) {
+            int srcPos = srcLayout.address(srcX, srcY + row, 0);
+            int dstPos = dstLayout.address(dstX, dstY + row, 0);
+            unpack(src.getBmp(), srcPos, srcLayout.getComponentWidth(), srcRow, width * 4);
+            unpack(dst.getBmp(), dstPos, dstLayout.getComponentWidth(), dstRow, width * dstCount);
+
+            for (int p = 0, s = 0, o = 0; p < width; p++, s += 4, o += dstCount) {
+                int a = to8(srcRow[s+3], srcDepth);
+                if (0 == a) {
+                    continue;
+                }
+                int inv = 255 - a;
+                int r = to8(srcRow[s], srcDepth);
+                int g = to8(srcRow[s+1], srcDepth);
+                int b = to8(srcRow[s+2], srcDepth);
+                if (1 == dstCount) {
+                    dstRow[o] = from8(mix(luminance(r, g, b), to8(dstRow[o], dstDepth), a, inv), dstDepth);
+                } else {
+                    dstRow[o]   = from8(mix(r, to8(dstRow[o],   dstDepth), a, inv), dstDepth);
+                    dstRow[o+1] = from8(mix(g, to8(dstRow[o+1], dstDepth), a, inv), dstDepth);
+                    dstRow[o+2] = from8(mix(b, to8(dstRow[o+2], dstDepth), a, inv), dstDepth);
+                    if (4 == dstCount) {
+                        dstRow[o+3] = from8(a + ((to8(dstRow[o+3], dstDepth) * inv + 127) / 255), dstDepth);
+                    }
+                }
+            }
+            pack(dstRow, width * dstCount, dst.getBmp(), dstPos, dstLayout.getComponentWidth(), dstLayout.getValueMask());
+        }
+    }
+
+    // Device formats
+
+    /**
+     * Packs a gray bitmap into display pages, each byte holding 8 vertical pixels with the
+     * top pixel in the low bit. Pixels at or above half intensity are lit.
+     *
+     * @return number of bytes written to out.
+     */
+    public static int packPages(FogBitmap bmp, int[] out) {
+        FogBitmapLayout layout = bmp.getLayout();
+        requireGrayBytes(layout);
+        byte[] b = bmp.getBmp();
+        int width = layout.getWidth();
+        int pages = layout.getHeight() >> 3;
+        int threshold = 1 << (layout.getComponentDepth() - 1);
+        int index = 0;
+        for (int page = 0; page < pages; page++) {
+            int top = page * 8 * width;
+            for (int col = 0; col < width; col++) {
+                int value = 0;
+                int pos = top + col;
+                for (int bit = 0; bit < 8; bit++) {
+                    if ((b[pos] & 0xFF) >= threshold) {
+                        value |= 1 << bit;
+                    }
+                    pos += width;
+                }
+                out[index++] = value;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Packs a gray bitmap into 4 bit pixels, two per byte with the left pixel in the high nibble.
+     *
+     * @return number of bytes written to out.
+     */
+    public static int packNibbles(FogBitmap bmp, int[] out) {
+        FogBitmapLayout layout = bmp.getLayout();
+        requireGrayBytes(layout);
+        byte[] b = bmp.getBmp();
+        int shift = layout.getComponentDepth() - 4;
+        int length = layout.getWidth() * layout.getHeight();
+        int index = 0;
+        if (0 == shift) {
+            for (int i = 0; i < length; i += 2) {
+                out[index++] = ((b[i] & 0x0F) << 4) | (b[i+1] & 0x0F);
+            }
+        } else {
+            for (int i = 0; i < length; i += 2) {
+                out[index++] = (nibble(b[i] & 0xFF, shift) << 4) | nibble(b[i+1] & 0xFF, shift);
+            }
+        }
+        return index;
+    }
+
+    // Per pixel conversion, used once per row by copyRect
+
+    private void convertRow(FogBitmap src, int srcX, int srcY, FogBitmap dst, int dstX, int dstY, int width) {
+        FogBitmapLayout srcLayout = src.getLayout();
+        FogBitmapLayout dstLayout = dst.getLayout();
+        int srcCount = srcLayout.getComponentCount();
+        int dstCount = dstLayout.getComponentCount();
+        int srcDepth = srcLayout.getComponentDepth();
+        int dstDepth = dstLayout.getComponentDepth();
+        boolean dither = dstDepth < 8 && dstDepth < srcDepth;
+        ensureRows(width * srcCount, width * dstCount);
+
+        int dstPos = dstLayout.address(dstX, dstY, 0);
+        unpack(src.getBmp(), srcLayout.address(srcX, srcY, 0), srcLayout.getComponentWidth(), srcRow, width * srcCount);
+
+        int ditherRow = (dstY & 3) << 2;
+        for (int p = 0, s = 0, o = 0; p < width; p++, s += srcCount, o += dstCount) {
+            int r = to8(srcRow[s], srcDepth);
+            int g = r;
+            int b = r;
+            int a = 255;
+            if (srcCount >= 3) {
+                g = to8(srcRow[s+1], srcDepth);
+                b = to8(srcRow[s+2], srcDepth);
+                if (4 == srcCount) {
+                    a = to8(srcRow[s+3], srcDepth);
+                }
+            }
+            int threshold = dither ? BAYER[ditherRow | ((dstX + p) & 3)] : -1;
+            if (1 == dstCount) {
+                dstRow[o] = quantize(srcCount >= 3 ? luminance(r, g, b) : r, dstDepth, threshold);
+            } else {
+                dstRow[o]   = quantize(r, dstDepth, threshold);
+                dstRow[o+1] = quantize(g, dstDepth, threshold);
+                dstRow[o+2] = quantize(b, dstDepth, threshold);
+                if (4 == dstCount) {
+                    dstRow[o+3] = from8(a, dstDepth);
+                }
+            }
+        }
+        pack(dstRow, width * dstCount, dst.getBmp(), dstPos, dstLayout.getComponentWidth(), dstLayout.getValueMask());
+    }
+
+    private void ensureRows(int srcLength, int dstLength) {
+        if (srcRow.length < srcLength) {
+            srcRow = new int[srcLength];
+        }
+        if (dstRow.length < dstLength) {
+            dstRow = new int[dstLength];
+        }
+    }
+
+    private static int luminance(int r, int g, int b) {
+        return ((77 * r) + (150 * g) + (29 * b)) >> 8;
+    }
+
+    private static int mix(int src, int dst, int alpha, int inverse) {
+        return ((src * alpha) + (dst * inverse) + 127) / 255;
+    }
+
+    private static int to8(int value, int depth) {
+        if (8 == depth) {
+            return value;
+        }
+        return depth > 8 ? value >>> (depth - 8) : (value * 255) / ((1 << depth) - 1);
+    }
+
+    private static int from8(int value, int depth) {
+        if (8 == depth) {
+            return value;
+        }
+        return depth > 8 ? value << (depth - 8) : value >> (8 - depth);
+    }
+
+    /**
+     * Reduces an 8 bit value to depth bits, rounding up where it passes the dither threshold (0-15), or truncating for -1.
+     */
+    private static int quantize(int value, int depth, int threshold) {
+        if (threshold < 0) {
+            return from8(value, depth);
+        }
+        int levels = (1 << depth) - 1;
+        int scaled = value * levels;
+        int base = scaled / 255;
+        int remainder = scaled - (base * 255);
+        return (base < levels && remainder > (threshold * 16) + 8) ? base + 1 : base;
+    }
+
+    private static int nibble(int value, int shift) {
+        return shift > 0 ? value >> shift : (to8(value, 4 + shift) >> 4);
+    }
+
+    private static void requireCompatible(FogBitmapLayout a, FogBitmapLayout b) {
+        if (!a.isPixelCompatible(b)) {
+            throw new UnsupportedOperationException("bitmaps must share color space and depth, use convert first");
+        }
+    }
+
+    private static void requireGrayBytes(FogBitmapLayout layout) {
+        if (layout.getColorSpace() != FogColorSpace.gray || layout.getComponentWidth() != 1) {
+            throw new UnsupportedOperationException("display packing requires a gray bitmap of at most 8 bit depth");
+        }
+    }
 }
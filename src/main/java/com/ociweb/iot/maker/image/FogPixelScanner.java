@@ -0,0 +1,30 @@
+package com.ociweb.iot.maker.image;
+
+/**
+ * FogPixelScanner walks the pixels of a bmp row by row, passing each
+ * FogPixelConsumer the index of the pixel in the backing array so no
+ * address is recomputed per pixel.
+ */
+public class FogPixelScanner {
+
+    public static void scan(FogBitmap bmp, FogPixelConsumer consumer) {
+        scan(bmp, 0, 0, bmp.getWidth(), bmp.getHeight(), consumer);
+    }
+
+    public static void scan(FogBitmap bmp, int x, int y, int width, int height, FogPixelConsumer consumer) {
+        FogBitmapLayout layout = bmp.getLayout();
+        int endX = Math.min(x + width, layout.getWidth());
+        int endY = Math.min(y + height, layout.getHeight());
+        int pixelWidth = layout.getPixelWidth();
+        int rowWidth = layout.getRowWidth();
+
+        for (int row = Math.max(0, y); row < endY; row++) {
+            int startX = Math.max(0, x);
+            int i = (row * rowWidth) + (startX * pixelWidth);
+            for (int col = startX; col < endX; col++) {
+                consumer.consume(bmp, i, col, row);
+                i += pixelWidth;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.ociweb.iot.store;
+
+import java.util.Arrays;
+
+/**
+ * Open chunk of one series, compressed as samples arrive. Timestamps are stored as the change
+ * of the delta between them so a steady poll rate costs one bit per sample. Values are stored
+ * as the XOR with the previous value, only the bits which changed are written and an unchanged
+ * value costs one bit.
+ *
+ * The first value is written in full, the first time is held in the block header.
+ */
+class SeriesChunk {
+
+    //largest encoding of one sample, a full timestamp and a value with new leading and trailing counts
+    static final int MAX_SAMPLE_BITS = 4+64 + 2+6+6+64;
+
+    final int key;
+    final byte[] bits;
+    long openedNS;
+
+    private long bitPos;
+    private int count;
+    private long firstUS;
+    private long lastUS;
+    private long prevDelta;
+    private long prevValue;
+    private int prevLeading = -1;
+    private int prevTrailing;
+
+    SeriesChunk(int key, int bytes) {
+        this.key = key;
+        this.bits = new byte[bytes];
+    }
+
+    boolean isEmpty() {
+        return 0 == count;
+    }
+
+    boolean hasRoom() {
+        return bitPos + MAX_SAMPLE_BITS <= (bits.length<<3);
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstUS() {
+        return firstUS;
+    }
+
+    long lastUS() {
+        return lastUS;
+    }
+
+    int byteLength() {
+        return (int)((bitPos+7)>>>3);
+    }
+
+    void clear() {
+        Arrays.fill(bits, 0, byteLength(), (byte)0);
+        bitPos = 0;
+        count = 0;
+        prevDelta = 0;
+        prevLeading = -1;
+        prevTrailing = 0;
+    }
+
+    /**
+     * Caller must have checked {@link #hasRoom()}, times must not go backwards.
+     */
+    void append(long timeUS, long value) {
+        if (0 == count) {
+            firstUS = timeUS;
+            write(value, 64);
+        } else {
+            long delta = timeUS - lastUS;
+            long dod = delta - prevDelta;
+            if (0 == dod) {
+                write(0, 1);
+            } else if (dod >= -64 && dod < 64) {
+                write(0b10, 2);
+                write(dod, 7);
+            } else if (dod >= -256 && dod < 256) {
+                write(0b110, 3);
+                write(dod, 9);
+            } else if (dod >= -2048 && dod < 2048) {
+                write(0b1110, 4);
+                write(dod, 12);
+            } else {
+                write(0b1111, 4);
+                write(dod, 64);
+            }
+            prevDelta = delta;
+
+            long xor = value ^ prevValue;
+            if (0 == xor) {
+                write(0, 1);
+            } else {
+                int leading = Long.numberOfLeadingZeros(xor);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    //fits in the window of meaningful bits used last time
+                    write(0b10, 2);
+                    write(xor >>> prevTrailing, 64-prevLeading-prevTrailing);
+                } else {
+                    int length = 64-leading-trailing;
+                    write(0b11, 2);
+                    write(leading, 6);
+                    write(length-1, 6);
+                    write(xor >>> trailing, length);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+        }
+        prevValue = value;
+        lastUS = timeUS;
+        count++;
+    }
+
+    //low n bits of v, most significant first
+    private void write(long v, int n) {
+        while (n > 0) {
+            int idx = (int)(bitPos>>>3);
+            int free = 8 - (int)(bitPos&7);
+            int take = Math.min(free, n);
+            int chunk = (int)((v >>> (n-take)) & ((1<<take)-1));
+            bits[idx] |= (byte)(chunk << (free-take));
+            bitPos += take;
+            n -= take;
+        }
+    }
+
+}
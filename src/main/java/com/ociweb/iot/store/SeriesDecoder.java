@@ -0,0 +1,96 @@
+package com.ociweb.iot.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads back the samples of one sealed block, see {@link SeriesChunk} for the encoding.
+ * Reads use absolute positions so many decoders may share a buffer.
+ */
+class SeriesDecoder {
+
+    private ByteBuffer buffer;
+    private int base;
+    private long bitPos;
+    private int remaining;
+    private boolean started;
+
+    private long prevDelta;
+    private int prevLeading;
+    private int prevTrailing;
+
+    long time;
+    long value;
+
+    void reset(ByteBuffer buffer, int payloadOffset, int count, long firstUS) {
+        this.buffer = buffer;
+        this.base = payloadOffset;
+        this.bitPos = 0;
+        this.remaining = count;
+        this.started = false;
+        this.prevDelta = 0;
+        this.prevLeading = 0;
+        this.prevTrailing = 0;
+        this.time = firstUS;
+    }
+
+    /**
+     * @return false once every sample of the block has been read.
+     */
+    boolean next() {
+        if (remaining <= 0) {
+            return false;
+        }
+        remaining--;
+        if (!started) {
+            started = true;
+            value = read(64);
+            return true;
+        }
+
+        long dod;
+        if (0 == read(1)) {
+            dod = 0;
+        } else if (0 == read(1)) {
+            dod = signed(read(7), 7);
+        } else if (0 == read(1)) {
+            dod = signed(read(9), 9);
+        } else if (0 == read(1)) {
+            dod = signed(read(12), 12);
+        } else {
+            dod = read(64);
+        }
+        prevDelta += dod;
+        time += prevDelta;
+
+        if (0 != read(1)) {
+            if (0 != read(1)) {
+                prevLeading = (int)read(6);
+                int length = (int)read(6)+1;
+                prevTrailing = 64-prevLeading-length;
+            }
+            int length = 64-prevLeading-prevTrailing;
+            value ^= read(length) << prevTrailing;
+        }
+        return true;
+    }
+
+    private long read(int n) {
+        long result = 0;
+        while (n > 0) {
+            int idx = (int)(bitPos>>>3);
+            int avail = 8 - (int)(bitPos&7);
+            int take = Math.min(avail, n);
+            int b = 0xFF & buffer.get(base+idx);
+            int chunk = (b >>> (avail-take)) & ((1<<take)-1);
+            result = (result<<take) | chunk;
+            bitPos += take;
+            n -= take;
+        }
+        return result;
+    }
+
+    private static long signed(long v, int bits) {
+        return (v << (64-bits)) >> (64-bits);
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.ociweb.iot.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * One memory mapped file of sealed blocks, written front to back and never rewritten.
+ *
+ * Each block is the series key, sample count, first and last time in microseconds and the length
+ * of the compressed payload followed by the payload. The count is written after everything else
+ * so a block cut short by a power loss reads as the end of the segment.
+ */
+class StoreSegment {
+
+    static final int MAGIC = 0x464C5453; //FLTS
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int BLOCK_HEADER_BYTES = 28;
+
+    private static final int KEY_OFFSET = 0;
+    private static final int COUNT_OFFSET = 4;
+    private static final int FIRST_OFFSET = 8;
+    private static final int LAST_OFFSET = 16;
+    private static final int LENGTH_OFFSET = 24;
+
+    final File file;
+    final long sequence;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+
+    //index of the sealed blocks, readers may be on other threads so they read the block count first
+    private int[]  blockOffset = new int[64];
+    private int[]  blockKey = new int[64];
+    private long[] blockFirst = new long[64];
+    private long[] blockLast = new long[64];
+    private volatile int blocks;
+
+    private StoreSegment(File file, long sequence, FileChannel channel, MappedByteBuffer buffer) {
+        this.file = file;
+        this.sequence = sequence;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static StoreSegment create(File file, long sequence, int bytes) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(bytes);
+        FileChannel channel = raf.getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        StoreSegment segment = new StoreSegment(file, sequence, channel, buffer);
+        segment.position = HEADER_BYTES;
+        return segment;
+    }
+
+    /**
+     * Maps an existing segment and rebuilds its index.
+     *
+     * @return null if the file is not a segment of this version.
+     */
+    static StoreSegment open(File file, long sequence) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        long size = channel.size();
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            channel.close();
+            return null;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (MAGIC != buffer.getInt(0) || VERSION != buffer.getInt(4)) {
+            channel.close();
+            return null;
+        }
+        StoreSegment segment = new StoreSegment(file, sequence, channel, buffer);
+        int pos = HEADER_BYTES;
+        while (pos + BLOCK_HEADER_BYTES <= size) {
+            int count = buffer.getInt(pos+COUNT_OFFSET);
+            int length = buffer.getInt(pos+LENGTH_OFFSET);
+            if (count <= 0 || length <= 0 || pos + BLOCK_HEADER_BYTES + length > size) {
+                break;
+            }
+            segment.index(pos, buffer.getInt(pos+KEY_OFFSET), buffer.getLong(pos+FIRST_OFFSET), buffer.getLong(pos+LAST_OFFSET));
+            pos += BLOCK_HEADER_BYTES + length;
+        }
+        segment.position = pos;
+        return segment;
+    }
+
+    boolean hasRoom(int payloadBytes) {
+        return position + BLOCK_HEADER_BYTES + payloadBytes <= buffer.capacity();
+    }
+
+    int bytesUsed() {
+        return position;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    long lastUS() {
+        int b = blocks;
+        long last = Long.MIN_VALUE;
+        while (--b >= 0) {
+            last = Math.max(last, blockLast[b]);
+        }
+        return last;
+    }
+
+    /**
+     * Copies the chunk into the mapped file, caller must have checked {@link #hasRoom(int)}.
+     */
+    void write(SeriesChunk chunk) {
+        int pos = position;
+        int length = chunk.byteLength();
+        buffer.putInt(pos+KEY_OFFSET, chunk.key);
+        buffer.putLong(pos+FIRST_OFFSET, chunk.firstUS());
+        buffer.putLong(pos+LAST_OFFSET, chunk.lastUS());
+        buffer.putInt(pos+LENGTH_OFFSET, length);
+        int payload = pos+BLOCK_HEADER_BYTES;
+        for (int i = 0; i < length; i++) {
+            buffer.put(payload+i, chunk.bits[i]);
+        }
+        buffer.putInt(pos+COUNT_OFFSET, chunk.count());
+        position = payload+length;
+        index(pos, chunk.key, chunk.firstUS(), chunk.lastUS());
+    }
+
+    private void index(int offset, int key, long firstUS, long lastUS) {
+        int b = blocks;
+        if (b == blockOffset.length) {
+            blockOffset = Arrays.copyOf(blockOffset, b<<1);
+            blockKey = Arrays.copyOf(blockKey, b<<1);
+            blockFirst = Arrays.copyOf(blockFirst, b<<1);
+            blockLast = Arrays.copyOf(blockLast, b<<1);
+        }
+        blockOffset[b] = offset;
+        blockKey[b] = key;
+        blockFirst[b] = firstUS;
+        blockLast[b] = lastUS;
+        blocks = b+1;
+    }
+
+    int blocks() {
+        return blocks;
+    }
+
+    boolean overlaps(int block, int key, long fromUS, long toUS) {
+        return blockKey[block] == key && blockLast[block] >= fromUS && blockFirst[block] <= toUS;
+    }
+
+    void decode(int block, SeriesDecoder decoder) {
+        int offset = blockOffset[block];
+        decoder.reset(buffer, offset+BLOCK_HEADER_BYTES, buffer.getInt(offset+COUNT_OFFSET), blockFirst[block]);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+}
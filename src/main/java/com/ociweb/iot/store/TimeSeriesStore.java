@@ -0,0 +1,382 @@
+package com.ociweb.iot.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.hardware.impl.KeyIndex;
+import com.ociweb.iot.maker.Port;
+
+/**
+ * Append only store of sensor samples kept in memory mapped segment files on the device.
+ *
+ * Each series is compressed in an open chunk of {@link #CHUNK_BYTES} in memory, when the chunk is
+ * full or has been open too long it is sealed and copied once to the end of the current segment.
+ * Nothing is written twice, the only other writes are the segment headers. When a segment is full
+ * a new one is started and the oldest segments are deleted to stay within the size and age limits.
+ *
+ * Samples are appended by a single stage. Queries may run on any thread and see every sealed chunk,
+ * samples still in an open chunk become visible once it is sealed.
+ */
+public class TimeSeriesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    static final int CHUNK_BYTES = 512;
+
+    private static final int MIN_SEGMENT_BYTES = 1<<20;
+    private static final int MAX_SEGMENT_BYTES = 16<<20;
+    private static final String SUFFIX = ".fts";
+
+    private static final int KIND_DIGITAL = 1;
+    private static final int KIND_ANALOG  = 2;
+    private static final int KIND_I2C     = 3;
+
+    private final File directory;
+    private final long maxBytes;
+    private final long retentionUS;
+    private final int segmentBytes;
+
+    private volatile StoreSegment[] segments = new StoreSegment[0];
+    private StoreSegment current;
+    private long nextSequence;
+
+    //open chunks, by the index of their key
+    private final KeyIndex chunkIndex = new KeyIndex(16);
+    private SeriesChunk[] chunks = new SeriesChunk[16];
+    private int chunkCount;
+
+    private long outOfOrder;
+
+    /**
+     * @param directory Folder holding the segment files, created if missing.
+     * @param maxBytes Largest total size of the segment files.
+     * @param retentionMS Segments whose newest sample is older than this are deleted, 0 to keep them until space runs out.
+     */
+    public TimeSeriesStore(String directory, long maxBytes, long retentionMS) {
+        if (maxBytes < MIN_SEGMENT_BYTES*2L) {
+            throw new UnsupportedOperationException("The store needs at least "+(MIN_SEGMENT_BYTES*2)+" bytes");
+        }
+        if (retentionMS < 0) {
+            throw new UnsupportedOperationException("Retention must not be negative");
+        }
+        this.directory = new File(directory);
+        this.maxBytes = maxBytes;
+        this.retentionUS = retentionMS*1000;
+        this.segmentBytes = (int)Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES, maxBytes/4));
+    }
+
+    public static int digitalKey(Port port) {
+        return digitalKey(port.port);
+    }
+
+    public static int analogKey(Port port) {
+        return analogKey(port.port);
+    }
+
+    /**
+     * @return Key of the series for a digital connector, the same as its port unless the hardware has more connectors than ports.
+     */
+    public static int digitalKey(int connector) {
+        return (KIND_DIGITAL<<24) | connector;
+    }
+
+    public static int analogKey(int connector) {
+        return (KIND_ANALOG<<24) | connector;
+    }
+
+    /**
+     * @return Key of the series holding the first 8 bytes of each response read from this register.
+     */
+    public static int i2cKey(int address, int register) {
+        return (KIND_I2C<<24) | ((0xFF&address)<<16) | (0xFFFF&register);
+    }
+
+    /**
+     * Maps the existing segments, new samples are added to the last one while it has room.
+     *
+     * @return false if the directory could not be used.
+     */
+    public boolean open() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Unable to create time series directory {}", directory);
+            return false;
+        }
+        try {
+            File[] files = directory.listFiles();
+            StoreSegment[] found = new StoreSegment[files.length];
+            int count = 0;
+            for (File file : files) {
+                long sequence = sequenceOf(file);
+                if (sequence >= 0) {
+                    StoreSegment segment = StoreSegment.open(file, sequence);
+                    if (null != segment) {
+                        found[count++] = segment;
+                        nextSequence = Math.max(nextSequence, sequence+1);
+                    } else {
+                        logger.warn("Skipping unreadable time series segment {}", file);
+                    }
+                }
+            }
+            found = Arrays.copyOf(found, count);
+            Arrays.sort(found, (a,b) -> Long.compare(a.sequence, b.sequence));
+            segments = found;
+            if (count > 0 && found[count-1].hasRoom(CHUNK_BYTES)) {
+                current = found[count-1]; //carry on where the last run stopped
+            } else {
+                rollover(Long.MIN_VALUE);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("Unable to open time series store in {}", directory, e);
+            return false;
+        }
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length()-SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Adds a sample to its series. Must only be called from the one writing stage.
+     *
+     * @param nowNS Monotonic time used to decide when the chunk has been open too long.
+     */
+    public void append(int key, long timeUS, long value, long nowNS) {
+        if (null == current) {
+            return;
+        }
+        SeriesChunk chunk = chunk(key);
+        if (!chunk.isEmpty()) {
+            if (timeUS < chunk.lastUS()) {
+                outOfOrder++;
+                return;
+            }
+            if (!chunk.hasRoom()) {
+                seal(chunk);
+            }
+        }
+        if (chunk.isEmpty()) {
+            chunk.openedNS = nowNS;
+        }
+        chunk.append(timeUS, value);
+    }
+
+    /**
+     * Seals every chunk opened before the given age so recent samples become visible to queries.
+     */
+    public void flushOlderThan(long nowNS, long maxAgeNS) {
+        int c = chunkCount;
+        while (--c >= 0) {
+            SeriesChunk chunk = chunks[c];
+            if (!chunk.isEmpty() && nowNS-chunk.openedNS >= maxAgeNS) {
+                seal(chunk);
+            }
+        }
+    }
+
+    /**
+     * @return Samples dropped because they were older than the last sample of their series.
+     */
+    public long outOfOrderSamples() {
+        return outOfOrder;
+    }
+
+    public void close() {
+        int c = chunkCount;
+        while (--c >= 0) {
+            if (!chunks[c].isEmpty()) {
+                seal(chunks[c]);
+            }
+        }
+        StoreSegment[] all = segments;
+        for (StoreSegment segment : all) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close time series segment {}", segment.file, e);
+            }
+        }
+        current = null;
+    }
+
+    private SeriesChunk chunk(int key) {
+        int c = chunkIndex.add(key);
+        if (c < chunkCount) {
+            return chunks[c];
+        }
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount<<1);
+        }
+        SeriesChunk chunk = new SeriesChunk(key, CHUNK_BYTES);
+        chunks[chunkCount++] = chunk;
+        return chunk;
+    }
+
+    private void seal(SeriesChunk chunk) {
+        if (null == current) {
+            return;
+        }
+        if (!current.hasRoom(chunk.byteLength())) {
+            try {
+                rollover(chunk.lastUS());
+            } catch (IOException e) {
+                logger.warn("Unable to start a new time series segment, samples are dropped", e);
+                chunk.clear();
+                return;
+            }
+        }
+        current.write(chunk);
+        chunk.clear();
+    }
+
+    private void rollover(long nowUS) throws IOException {
+        if (null != current) {
+            current.force();
+        }
+        File file = new File(directory, String.format("%016x", nextSequence)+SUFFIX);
+        StoreSegment segment = StoreSegment.create(file, nextSequence++, segmentBytes);
+
+        StoreSegment[] old = segments;
+        StoreSegment[] all = Arrays.copyOf(old, old.length+1);
+        all[old.length] = segment;
+        current = segment;
+        segments = retain(all, nowUS);
+    }
+
+    //drops the oldest segments over the size or age limit, never the current one
+    private StoreSegment[] retain(StoreSegment[] all, long nowUS) {
+        long total = 0;
+        for (StoreSegment segment : all) {
+            total += segment.capacity();
+        }
+        int drop = 0;
+        while (drop < all.length-1) {
+            StoreSegment oldest = all[drop];
+            boolean expired = retentionUS > 0 && Long.MIN_VALUE != nowUS && oldest.lastUS() < nowUS-retentionUS;
+            if (total <= maxBytes && !expired) {
+                break;
+            }
+            total -= oldest.capacity();
+            try {
+                oldest.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close time series segment {}", oldest.file, e);
+            }
+            if (!oldest.file.delete()) {
+                logger.warn("Unable to delete time series segment {}", oldest.file);
+            }
+            drop++;
+        }
+        return 0 == drop ? all : Arrays.copyOfRange(all, drop, all.length);
+    }
+
+    /**
+     * Copies the samples of a series in time order. When the arrays fill up call again starting
+     * one microsecond after the last time returned.
+     *
+     * @param fromUS First time to include in microseconds since the epoch.
+     * @param toUS Last time to include.
+     * @param times Filled with the time of each sample.
+     * @param values Filled with the value of each sample.
+     *
+     * @return Number of samples copied.
+     */
+    public int range(int key, long fromUS, long toUS, long[] times, long[] values) {
+        int limit = Math.min(times.length, values.length);
+        int count = 0;
+        SeriesDecoder decoder = new SeriesDecoder();
+        StoreSegment[] all = segments;
+        for (StoreSegment segment : all) {
+            int blocks = segment.blocks();
+            for (int b = 0; b < blocks; b++) {
+                if (segment.overlaps(b, key, fromUS, toUS)) {
+                    segment.decode(b, decoder);
+                    while (decoder.next()) {
+                        long t = decoder.time;
+                        if (t > toUS) {
+                            break;
+                        }
+                        if (t >= fromUS) {
+                            if (count == limit) {
+                                return count;
+                            }
+                            times[count] = t;
+                            values[count] = decoder.value;
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Summarizes a series in buckets of equal length, bucket i covers fromUS+i*bucketUS up to the
+     * start of the next. Buckets without samples have a count of zero.
+     *
+     * @return Number of buckets filled, at most the length of the arrays.
+     */
+    public int downsample(int key, long fromUS, long toUS, long bucketUS,
+                          long[] mins, long[] maxs, long[] means, int[] counts) {
+        if (bucketUS <= 0) {
+            throw new UnsupportedOperationException("Bucket length must be positive");
+        }
+        int buckets = (int)Math.min(Math.min(Math.min(mins.length, maxs.length), Math.min(means.length, counts.length)),
+                                    (toUS-fromUS)/bucketUS + 1);
+        if (buckets <= 0) {
+            return 0;
+        }
+        Arrays.fill(counts, 0, buckets, 0);
+        Arrays.fill(means, 0, buckets, 0);
+        long lastUS = Math.min(toUS, fromUS + buckets*bucketUS - 1);
+
+        SeriesDecoder decoder = new SeriesDecoder();
+        StoreSegment[] all = segments;
+        for (StoreSegment segment : all) {
+            int blocks = segment.blocks();
+            for (int b = 0; b < blocks; b++) {
+                if (segment.overlaps(b, key, fromUS, lastUS)) {
+                    segment.decode(b, decoder);
+                    while (decoder.next()) {
+                        long t = decoder.time;
+                        if (t > lastUS) {
+                            break;
+                        }
+                        if (t >= fromUS) {
+                            int i = (int)((t-fromUS)/bucketUS);
+                            long v = decoder.value;
+                            if (0 == counts[i]) {
+                                mins[i] = maxs[i] = v;
+                            } else {
+                                mins[i] = Math.min(mins[i], v);
+                                maxs[i] = Math.max(maxs[i], v);
+                            }
+                            means[i] += v; //sum until all samples are counted
+                            counts[i]++;
+                        }
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < buckets; i++) {
+            if (counts[i] > 0) {
+                means[i] /= counts[i];
+            }
+        }
+        return buckets;
+    }
+
+}
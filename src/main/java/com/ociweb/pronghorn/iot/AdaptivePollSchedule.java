@@ -0,0 +1,174 @@
+package com.ociweb.pronghorn.iot;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.pronghorn.util.math.PMath;
+import com.ociweb.pronghorn.util.math.ScriptedSchedule;
+
+/**
+ * Poll schedule whose rates follow the activity of each connection. A connection whose value
+ * has not moved for the stable window has its poll period doubled, and doubled again after each
+ * further quiet window until the max backoff is reached. Any change puts the connection and every
+ * connection linked to it straight back to its declared rate.
+ *
+ * The script is built once from the declared rates and never changes, a backed off connection
+ * skips its slots until its longer period has passed. The polling stage asks {@link #isDue(int, long)}
+ * before each read so nothing is allocated while polling and the script length does not depend
+ * on the backoff.
+ *
+ * Not thread safe, owned by the single polling stage which samples it.
+ */
+public class AdaptivePollSchedule {
+
+	private static final Logger logger = LoggerFactory.getLogger(AdaptivePollSchedule.class);
+
+	/**
+	 * Largest allowed max backoff, a quiet input is still polled at least this often relative to its declared rate.
+	 */
+	public static final int MAX_BACKOFF = 64;
+
+	private final long[] basePeriods;
+	private final long[] periods;
+	private final int[]  backoff;    //shift applied to the base period
+	private final int[]  maxShift;
+	private final int[]  threshold;
+	private final int[]  lastValue;
+	private final long[] lastChange;
+	private final long[] lastPoll;
+	private final int[]  link;       //ring of linked connections, self when not linked
+	private final long   stableWindowNS;
+
+	private final ScriptedSchedule schedule;
+
+	/**
+	 * @param basePeriods Declared poll period of each connection in ns, index matches the stage's connections.
+	 * @param stableWindowNS Time without change before the poll period is doubled.
+	 * @param maxBackoff Largest multiple of the declared period, a power of two no larger than {@link #MAX_BACKOFF}.
+	 */
+	public AdaptivePollSchedule(long[] basePeriods, long stableWindowNS, int maxBackoff) {
+		if (maxBackoff<1 || maxBackoff>MAX_BACKOFF || Integer.bitCount(maxBackoff)!=1) {
+			throw new UnsupportedOperationException("Max backoff must be a power of two no larger than "+MAX_BACKOFF+", found "+maxBackoff);
+		}
+		int count = basePeriods.length;
+		this.basePeriods = Arrays.copyOf(basePeriods, count);
+		this.periods = Arrays.copyOf(basePeriods, count);
+		this.backoff = new int[count];
+		this.maxShift = new int[count];
+		this.threshold = new int[count];
+		this.lastValue = new int[count];
+		this.lastChange = new long[count];
+		this.lastPoll = new long[count];
+		this.link = new int[count];
+		this.stableWindowNS = stableWindowNS;
+
+		int shift = Integer.numberOfTrailingZeros(maxBackoff);
+		int i = count;
+		while (--i>=0) {
+			maxShift[i] = shift;
+			link[i] = i;
+			lastChange[i] = Long.MIN_VALUE; //no value seen yet
+		}
+		this.schedule = PMath.buildScriptedSchedule(basePeriods);
+	}
+
+	/**
+	 * Connection is always polled at its declared rate, eg rotary encoders and buttons.
+	 */
+	public void pin(int idx) {
+		maxShift[idx] = 0;
+		setBackoff(idx, 0);
+	}
+
+	/**
+	 * Values within this distance of the last change are treated as unchanged, used to ignore analog noise.
+	 */
+	public void setThreshold(int idx, int value) {
+		threshold[idx] = value;
+	}
+
+	/**
+	 * Links two connections so activity on either returns both to their declared rates.
+	 */
+	public void link(int a, int b) {
+		//already on the same ring
+		int j = a;
+		do {
+			if (j == b) {
+				return;
+			}
+			j = link[j];
+		} while (j != a);
+		//splice the two rings together
+		int t = link[a];
+		link[a] = link[b];
+		link[b] = t;
+	}
+
+	/**
+	 * Records the value just read for one connection.
+	 *
+	 * @return true if the value changed.
+	 */
+	public boolean sample(int idx, int value, long nowNS) {
+		lastPoll[idx] = nowNS;
+		if (Long.MIN_VALUE == lastChange[idx] || Math.abs(value-lastValue[idx]) > threshold[idx]) {
+			lastValue[idx] = value;
+			active(idx, nowNS);
+			return true;
+		}
+		if (backoff[idx]<maxShift[idx] && nowNS-lastChange[idx] >= stableWindowNS) {
+			setBackoff(idx, backoff[idx]+1);
+			lastChange[idx] = nowNS; //next doubling needs another full quiet window
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the connection and everything linked to it to the declared rate.
+	 */
+	public void active(int idx, long nowNS) {
+		int j = idx;
+		do {
+			lastChange[j] = nowNS;
+			setBackoff(j, 0);
+			j = link[j];
+		} while (j != idx);
+	}
+
+	private void setBackoff(int idx, int shift) {
+		if (backoff[idx] != shift) {
+			backoff[idx] = shift;
+			periods[idx] = basePeriods[idx]<<shift;
+			if (logger.isDebugEnabled()) {
+				logger.debug("adaptive poll period of connection {} now {} ns", idx, periods[idx]);
+			}
+		}
+	}
+
+	/**
+	 * True when the slot of this connection in the script should be read. A backed off connection
+	 * skips slots until its period has passed, half a declared period early so jitter in the
+	 * schedule can not push it one slot late.
+	 */
+	public boolean isDue(int idx, long nowNS) {
+		return 0 == backoff[idx] || nowNS-lastPoll[idx] >= periods[idx]-(basePeriods[idx]>>1);
+	}
+
+	/**
+	 * Script over the declared rates, fixed for the life of the stage.
+	 */
+	public ScriptedSchedule schedule() {
+		return schedule;
+	}
+
+	/**
+	 * Current multiple of the declared period for one connection.
+	 */
+	public int backoff(int idx) {
+		return 1<<backoff[idx];
+	}
+
+}
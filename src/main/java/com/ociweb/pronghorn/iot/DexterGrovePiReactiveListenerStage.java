@@ -40,6 +40,7 @@ public class DexterGrovePiReactiveListenerStage extends ReactiveIoTListenerStage
 			int addr = PipeReader.readInt(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11);
 			int register = PipeReader.readInt(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14);
 			long time = PipeReader.readLong(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13);
+			long acquiredNS = PipeReader.readLong(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15);
 
 			byte[] backing = PipeReader.readBytesBackingArray(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
 			int position = PipeReader.readBytesPosition(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
@@ -91,7 +92,7 @@ public class DexterGrovePiReactiveListenerStage extends ReactiveIoTListenerStage
 				int tempValue = (((int)tempArray[0])<<8) | (0xFF&((int)tempArray[1]));
 				((RotaryListenerBase)listener).rotaryEvent(Port.DIGITALS[register], time, tempValue, 0, 0);
 			} else if (listener instanceof I2CListenerBase){ //must be last so we only do this if one of the more specific conditions were not met first.
-				super.commonI2CEventProcessing((I2CListenerBase)listener, addr, register, time, backing, position, length, mask);;
+				super.commonI2CEventProcessing((I2CListenerBase)listener, addr, register, time, acquiredNS, backing, position, length, mask);;
 				logger.debug("Creating I2C event");
 			}
 		}
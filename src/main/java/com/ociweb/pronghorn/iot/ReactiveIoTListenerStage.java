@@ -1,6 +1,7 @@
 package com.ociweb.pronghorn.iot;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,25 +11,37 @@ import com.ociweb.gl.impl.stage.ReactiveListenerStage;
 import com.ociweb.gl.impl.stage.ReactiveManagerPipeConsumer;
 import com.ociweb.gl.impl.stage.ReactiveOperator;
 import com.ociweb.gl.impl.stage.ReactiveOperators;
+import com.ociweb.iot.filter.AnalogFilter;
+import com.ociweb.iot.filter.AnalogFilterChain;
+import com.ociweb.iot.camera.ImageFrame;
 import com.ociweb.iot.hardware.HardwareConnection;
 import com.ociweb.iot.hardware.HardwareImpl;
+import com.ociweb.iot.hardware.impl.KeyIndex;
 import com.ociweb.iot.hardware.impl.SerialInputSchema;
+import com.ociweb.iot.impl.AnalogBatchListenerBase;
 import com.ociweb.iot.impl.AnalogListenerBase;
 import com.ociweb.iot.impl.DigitalListenerBase;
+import com.ociweb.iot.impl.I2CBatchListenerBase;
 import com.ociweb.iot.impl.I2CListenerBase;
 import com.ociweb.iot.impl.ImageListenerBase;
 import com.ociweb.iot.impl.RotaryListenerBase;
 import com.ociweb.iot.impl.SerialListenerBase;
+import com.ociweb.iot.impl.WindowListenerBase;
+import com.ociweb.iot.maker.AnalogBatchListener;
 import com.ociweb.iot.maker.AnalogListener;
 import com.ociweb.iot.maker.DigitalListener;
+import com.ociweb.iot.maker.I2CBatchListener;
 import com.ociweb.iot.maker.I2CListener;
 import com.ociweb.iot.maker.ListenerFilterIoT;
 import com.ociweb.iot.maker.Port;
 import com.ociweb.iot.maker.RotaryListener;
 import com.ociweb.iot.maker.SerialListener;
+import com.ociweb.iot.maker.WindowListener;
 import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
 import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
 import com.ociweb.pronghorn.iot.schema.ImageSchema;
+import com.ociweb.pronghorn.iot.schema.SensorWindowSchema;
+import com.ociweb.pronghorn.iot.timing.LatencyHistogram;
 import com.ociweb.pronghorn.pipe.DataInputBlobReader;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeReader;
@@ -39,18 +52,15 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
   
     private static final Logger logger = LoggerFactory.getLogger(ReactiveIoTListenerStage.class); 
     
+    private static final Port[] PORTS = Port.values(); //by ordinal, values() returns a new copy on every call
+    
     protected MAvgRollerLong[] rollingMovingAveragesAnalog;
     protected MAvgRollerLong[] rollingMovingAveragesDigital;    
     private boolean startupCompleted;
     
-    protected int[] oversampledAnalogValues;
+    //per port chain of noise filters applied before the moving average, null when every raw value is sent
+    protected AnalogFilterChain[] analogFilters;
 
-    private static final int MAX_PORTS = 10;
-    
-    //for analog values returns the one with the longest run within the last n samples
-    protected static final int OVERSAMPLE = 3; //  (COUNT), SAMPLE1, ... SAMPLEn
-    protected static final int OVERSAMPLE_STEP = OVERSAMPLE+1;
-    
     protected int[] lastDigitalValues;
     protected long[] lastDigitalTimes;
     
@@ -69,11 +79,43 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
     private int[] includedI2Cs;//if null then all values are accepted
     private int[] excludedI2Cs;//if null then no values are excluded
 		
+    /////////////////////
+    //Dispatch tables, the port filters are resolved once in startup
+    /////////////////////
+    private boolean[] analogConnectorAccepted; //by connector, true if its port passes the filters
+    private boolean[] digitalConnectorAccepted;
+    private Object dispatchTarget;             //last listener dispatched to and the kinds of events it takes
+    private int dispatchFlags;
+    private static final int LISTENS_ANALOG  = 1;
+    private static final int LISTENS_DIGITAL = 2;
+    private static final int LISTENS_ROTARY  = 4;
+    private static final int LISTENS_ANALOG_BATCH = 8;
+    
+    /////////////////////
+    //Batch delivery, samples are gathered while the pipe is drained then handed over once per port or I2C register
+    /////////////////////
+    private static final int INITIAL_BATCH_SIZE = 64;
+    private long[][] analogBatchTimes;    //by connector
+    private int[][] analogBatchValues;
+    private int[] analogBatchCounts;
+    private final KeyIndex i2cBatchKeys = new KeyIndex(16); //address and register of each I2C batch
+    private long[][] i2cBatchTimes;
+    private byte[][] i2cBatchData;
+    private int[][] i2cBatchOffsets;
+    private int[] i2cBatchCounts;
+    
     /////////////////////
     private Number stageRate;
     
     private DataInputBlobReader serialStremReader; //must be held as we accumulate serial data.
     private byte[] imageFrameRowBytes;
+    private ImageFrame[] imageFrames; //handles into the hardware frame pool, one set per listener stage
+
+    //sample to listener latency, null unless enabled, each histogram is created on the first sample of its connection
+    private final String latencyName;
+    private LatencyHistogram[] analogLatency;  //by connector
+    private LatencyHistogram[] digitalLatency; //by connector
+    private LatencyHistogram[] i2cLatency;     //by address
     
    
     
@@ -113,6 +155,22 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 					((ReactiveIoTListenerStage)r).consumeResponseMessage(target, input);										
 				}        		                	 
 	        })
+        .addOperator(AnalogBatchListenerBase.class,
+        		GroveResponseSchema.instance,
+	       		 new ReactiveOperator() {
+				@Override
+				public void apply(int index, Object target, Pipe input, ReactiveListenerStage r) {
+					((ReactiveIoTListenerStage)r).consumeResponseMessage(target, input);										
+				}        		                	 
+	        })
+        .addOperator(I2CBatchListenerBase.class, 
+        		I2CResponseSchema.instance,
+	       		 new ReactiveOperator() {
+				@Override
+				public void apply(int index, Object target, Pipe input, ReactiveListenerStage r) {
+					((ReactiveIoTListenerStage)r).consumeI2CMessage(target, input);										
+				}        		                	 
+	        })
         .addOperator(RotaryListenerBase.class, 
         		GroveResponseSchema.instance,
 	       		 new ReactiveOperator() {
@@ -128,6 +186,14 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 				public void apply(int index, Object target, Pipe input, ReactiveListenerStage r) {
 					((ReactiveIoTListenerStage)r).consumeI2CMessage(target, input);										
 				}        		                	 
+	        })
+        .addOperator(WindowListenerBase.class, 
+        		SensorWindowSchema.instance,
+	       		 new ReactiveOperator() {
+				@Override
+				public void apply(int index, Object target, Pipe input, ReactiveListenerStage r) {
+					((ReactiveIoTListenerStage)r).consumeWindowMessage(target, input);										
+				}        		                	 
 	        });    	
     }
     
@@ -155,8 +221,18 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
         if (listener instanceof RotaryListener) {
         	toStringDetails = toStringDetails + "RotaryListener\n";
         }
+        if (listener instanceof AnalogBatchListener) {
+        	toStringDetails = toStringDetails + "AnalogBatchListener\n";
+        }
+        if (listener instanceof I2CBatchListener) {
+        	toStringDetails = toStringDetails + "I2CBatchListener\n";
+        }
+        if (listener instanceof WindowListener) {
+        	toStringDetails = toStringDetails + "WindowListener\n";
+        }
         
         this.builder = hardware;
+        this.latencyName = null==nameId ? listener.getClass().getSimpleName() : nameId;
                    
         //allow for shutdown upon shutdownRequest we have new content
         GraphManager.addNota(graphManager, GraphManager.PRODUCER, GraphManager.PRODUCER, this);
@@ -164,109 +240,107 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
     }
 
 
-	private void setupMovingAverages(HardwareImpl hardware, MAvgRollerLong[] target, HardwareConnection[] con) {
+	private void setupMovingAverages(MAvgRollerLong[] target, HardwareConnection[] con) {
         int i = con.length;
         while (--i >= 0) {            
-              target[hardware.convertToPort(con[i].register)] = new MAvgRollerLong(con[i].movingAverageWindowMS/con[i].responseMS);
+        	if (null != con[i]) {
+        		target[i] = new MAvgRollerLong(con[i].movingAverageWindowMS/con[i].responseMS);
+        	}
         }        
     }
 
     
-    protected int findStableReading(int tempValue, int connector) { 
-        return findMedian(updateRunLenghtOfActiveValue(tempValue, connector));
-    }
-
-    
-    private int findMedian(int offset) {
-        assert(3 == OVERSAMPLE);//ONLY WORKS FOR 3
-        
-        int a = oversampledAnalogValues[offset+1];
-        int b = oversampledAnalogValues[offset+2];
-        int c = oversampledAnalogValues[offset+3];
-        
-        //TODO: what if we returned the floor?
-        
-        if (a>b) {
-            if (b>c) {
-                return b;
-            } else {
-                return c;
-            }
-        } else {
-            //b > a
-            if (a>c) {
-                return a;
-            } else {
-                return c;
-            }
-        }
-        
-    }
-
-    private int updateRunLenghtOfActiveValue(int tempValue, int connector) {
-
-        //store this value with the oversamples
-        int offset = connector*OVERSAMPLE_STEP;
-        int pos =       oversampledAnalogValues[offset];                           
-        
-        if (--pos<=0) {
-            pos = OVERSAMPLE;
-        }
-        oversampledAnalogValues[offset]     = pos;
-        oversampledAnalogValues[offset+pos] = tempValue;
-        return offset;
-    }
-    
-    
     @Override
     public void startup() {
     	
-        //Init all the moving averages to the right size
-        rollingMovingAveragesAnalog = new MAvgRollerLong[MAX_PORTS];
-        rollingMovingAveragesDigital = new MAvgRollerLong[MAX_PORTS];
+        //all per connector state is sized by the hardware, it may have more connectors than ports
+        final int connectors = builder.connectorCount();
+        HardwareConnection[] analogInputs = builder.analogConnectors();
+        HardwareConnection[] digitalInputs = builder.digitalConnectors();
         
-        HardwareConnection[] analogInputs = builder.getAnalogInputs();
-        HardwareConnection[] digitalInputs = builder.getDigitalInputs();
+        //Init all the moving averages to the right size
+        rollingMovingAveragesAnalog = new MAvgRollerLong[connectors];
+        rollingMovingAveragesDigital = new MAvgRollerLong[connectors];
         
-		setupMovingAverages(builder, rollingMovingAveragesAnalog, analogInputs);
+		setupMovingAverages(rollingMovingAveragesAnalog, analogInputs);
               
-        setupMovingAverages(builder, rollingMovingAveragesDigital, builder.getDigitalInputs());
+        setupMovingAverages(rollingMovingAveragesDigital, digitalInputs);
           
-        lastDigitalValues = new int[MAX_PORTS];
-        lastAnalogValues = new int[MAX_PORTS];
+        lastDigitalValues = new int[connectors];
+        lastAnalogValues = new int[connectors];
         
-        sendEveryAnalogValue = new boolean[MAX_PORTS];
-        sendEveryDigitalValue = new boolean[MAX_PORTS];
+        sendEveryAnalogValue = new boolean[connectors];
+        sendEveryDigitalValue = new boolean[connectors];
+        analogFilters = new AnalogFilterChain[connectors];
         
         int a = analogInputs.length;
         while (--a>=0) {        	
         	HardwareConnection con = analogInputs[a];
-        	//System.out.println("seems wrong to covert this: "+con.register);
-        	sendEveryAnalogValue[builder.convertToPort(con.register)] = con.sendEveryValue;
+        	if (null != con) {
+        		sendEveryAnalogValue[a] = con.sendEveryValue;
+        		//each stage gets its own filter state
+        		if (null != con.filters) {
+        			analogFilters[a] = con.filters.newInstance();
+        		} else if (!con.sendEveryValue) {
+        			analogFilters[a] = AnalogFilterChain.defaultChain();
+        		}
+        	}
         }
         
         int d = digitalInputs.length;
         while (--d>=0) {        	
-        	HardwareConnection con = digitalInputs[d];
-        	//System.out.println("seems wrong to covert this: "+con.register);
-        	sendEveryDigitalValue[builder.convertToPort(con.register)] = con.sendEveryValue;        	
+        	if (null != digitalInputs[d]) {
+        		sendEveryDigitalValue[d] = digitalInputs[d].sendEveryValue;
+        	}
         }
         
         
-        lastDigitalTimes = new long[MAX_PORTS];
-        lastAnalogTimes = new long[MAX_PORTS];
-                    
-        oversampledAnalogValues = new int[MAX_PORTS*OVERSAMPLE_STEP];
+        lastDigitalTimes = new long[connectors];
+        lastAnalogTimes = new long[connectors];
         
         stageRate = (Number)GraphManager.getNota(graphManager, this.stageId,  GraphManager.SCHEDULE_RATE, null);
         
         timeProcessWindow = (null==stageRate? 0 : (int)(stageRate.longValue()/MS_to_NS));
+        
+        if (listener instanceof AnalogBatchListenerBase) {
+        	analogBatchTimes = new long[connectors][];
+        	analogBatchValues = new int[connectors][];
+        	analogBatchCounts = new int[connectors];
+        }
+        
+        analogConnectorAccepted = buildConnectorFilter(connectors, true);
+        digitalConnectorAccepted = buildConnectorFilter(connectors, false);
+        
+        if (builder.isLatencyHistogramsEnabled()) {
+        	analogLatency = new LatencyHistogram[connectors];
+        	digitalLatency = new LatencyHistogram[connectors];
+        	i2cLatency = new LatencyHistogram[128];
+        }
                         
         //Do last so we complete all the initializations first
         super.startup();
     }
     
+    private boolean[] buildConnectorFilter(int connectors, boolean analog) {
+    	boolean[] result = new boolean[connectors];
+    	int i = connectors;
+    	while (--i>=0) {
+    		Port port = analog ? builder.analogPort(i) : builder.digitalPort(i);
+    		result[i] = null != port && isIncluded(port, includedPorts) && isNotExcluded(port, excludedPorts);
+    	}
+    	return result;
+    }
+    
+    private static int listenerFlags(Object listener) {
+    	return (listener instanceof AnalogListenerBase  ? LISTENS_ANALOG  : 0)
+    		 | (listener instanceof DigitalListenerBase ? LISTENS_DIGITAL : 0)
+    		 | (listener instanceof RotaryListenerBase  ? LISTENS_ROTARY  : 0)
+    		 | (listener instanceof AnalogBatchListenerBase ? LISTENS_ANALOG_BATCH : 0);
+    }
+    
     protected void consumeI2CMessage(Object listener, Pipe<I2CResponseSchema> p) {
+    	
+    	final boolean batch = listener instanceof I2CBatchListenerBase;
 
         while (PipeReader.tryReadFragment(p)) {                
                     
@@ -274,11 +348,17 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
                     switch (msgIdx) {   
                         case I2CResponseSchema.MSG_RESPONSE_10:
                         	processI2CMessage(listener, p);
+                        	if (batch) {
+                        		addI2CBatchResponse(p);
+                        	}
                             break;
                         case -1:
                             
                             requestShutdown();
                             PipeReader.releaseReadLock(p);
+                            if (batch) {
+                            	sendI2CBatches((I2CBatchListenerBase)listener);
+                            }
                             return;
                            
                         default:
@@ -288,9 +368,117 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
                     //done reading message off pipe
                     PipeReader.releaseReadLock(p);
         }
+        if (batch) {
+        	sendI2CBatches((I2CBatchListenerBase)listener);
+        }
+    }
+    
+    /**
+     * @param port null for the I2C address idx
+     */
+    private void recordLatency(LatencyHistogram[] histograms, int idx, Port port, long acquiredNS) {
+    	LatencyHistogram h = histograms[idx];
+    	if (null == h) {
+    		h = histograms[idx] = builder.newLatencyHistogram(latencyName+" "+(null==port ? "i2c 0x"+Integer.toHexString(idx) : port.toString()));
+    	}
+    	h.record(builder.nanoTime()-acquiredNS);
+    }
+    
+    private void addI2CBatchResponse(Pipe<I2CResponseSchema> p) {
+    	int addr = PipeReader.readInt(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11);
+    	if (!(isIncluded(addr, includedI2Cs) && isNotExcluded(addr, excludedI2Cs))) {
+    		return;
+    	}
+    	int register = PipeReader.readInt(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14);
+    	int b = i2cBatchIndex(addr, register);
+    	int count = i2cBatchCounts[b];
+    	int length = PipeReader.readBytesLength(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
+    	int start = i2cBatchOffsets[b][count];
+    	
+    	if (count+1 == i2cBatchTimes[b].length) {
+    		i2cBatchTimes[b] = Arrays.copyOf(i2cBatchTimes[b], 2*i2cBatchTimes[b].length);
+    		i2cBatchOffsets[b] = Arrays.copyOf(i2cBatchOffsets[b], 2*i2cBatchOffsets[b].length);
+    	}
+    	if (start+length > i2cBatchData[b].length) {
+    		i2cBatchData[b] = Arrays.copyOf(i2cBatchData[b], 2*(start+length));
+    	}
+    	
+    	i2cBatchTimes[b][count] = PipeReader.readLong(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13);
+    	Pipe.copyBytesFromToRing(PipeReader.readBytesBackingArray(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+    			                 PipeReader.readBytesPosition(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+    			                 PipeReader.readBytesMask(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+    			                 i2cBatchData[b], start, Integer.MAX_VALUE, length);
+    	i2cBatchOffsets[b][count+1] = start+length;
+    	i2cBatchCounts[b] = count+1;
+    }
+    
+    /**
+     * Batch for this address and register, created the first time the register responds.
+     */
+    private int i2cBatchIndex(int addr, int register) {
+    	int b = i2cBatchKeys.add((addr<<16) | (0xFFFF & register));
+    	if (null == i2cBatchCounts) {
+    		i2cBatchTimes = new long[4][];
+    		i2cBatchData = new byte[4][];
+    		i2cBatchOffsets = new int[4][];
+    		i2cBatchCounts = new int[4];
+    	} else if (b == i2cBatchCounts.length) {
+    		i2cBatchTimes = Arrays.copyOf(i2cBatchTimes, b<<1);
+    		i2cBatchData = Arrays.copyOf(i2cBatchData, b<<1);
+    		i2cBatchOffsets = Arrays.copyOf(i2cBatchOffsets, b<<1);
+    		i2cBatchCounts = Arrays.copyOf(i2cBatchCounts, b<<1);
+    	}
+    	if (null != i2cBatchTimes[b]) {
+    		return b;
+    	}
+    	i2cBatchTimes[b] = new long[INITIAL_BATCH_SIZE];
+    	i2cBatchData[b] = new byte[INITIAL_BATCH_SIZE*8];
+    	i2cBatchOffsets[b] = new int[INITIAL_BATCH_SIZE];
+    	return b;
+    }
+    
+    private void sendI2CBatches(I2CBatchListenerBase listener) {
+    	int b = i2cBatchKeys.size();
+    	while (--b>=0) {
+    		int count = i2cBatchCounts[b];
+    		if (count > 0) {
+    			int key = i2cBatchKeys.key(b);
+    			listener.i2cBatch(key>>16, (short)key, i2cBatchTimes[b], i2cBatchData[b], i2cBatchOffsets[b], count);
+    			i2cBatchCounts[b] = 0;
+    		}
+    	}
+    }
+    
+    private void addAnalogBatchSample(int connector, long time, int value) {
+    	int count = analogBatchCounts[connector];
+    	if (null == analogBatchTimes[connector]) {
+    		//only connectors which report get a batch, there may be thousands of them
+    		analogBatchTimes[connector] = new long[INITIAL_BATCH_SIZE];
+    		analogBatchValues[connector] = new int[INITIAL_BATCH_SIZE];
+    	} else if (count == analogBatchTimes[connector].length) {
+    		analogBatchTimes[connector] = Arrays.copyOf(analogBatchTimes[connector], 2*count);
+    		analogBatchValues[connector] = Arrays.copyOf(analogBatchValues[connector], 2*count);
+    	}
+    	analogBatchTimes[connector][count] = time;
+    	analogBatchValues[connector][count] = value;
+    	analogBatchCounts[connector] = count+1;
+    }
+    
+    private void sendAnalogBatches(AnalogBatchListenerBase listener) {
+    	int c = analogBatchCounts.length;
+    	while (--c>=0) {
+    		int count = analogBatchCounts[c];
+    		if (count > 0) {
+    			listener.analogBatch(builder.analogPort(c), analogBatchTimes[c], analogBatchValues[c], count);
+    			analogBatchCounts[c] = 0;
+    		}
+    	}
     }
 
 	protected void processI2CMessage(Object listener, Pipe<I2CResponseSchema> p) {
+			if (!(listener instanceof I2CListenerBase)) {
+				return; //only takes batches
+			}
 
 			int addr = PipeReader.readInt(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11);
 			long time = PipeReader.readLong(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13);
@@ -301,7 +489,13 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 			int length = PipeReader.readBytesLength(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
 			int mask = PipeReader.readBytesMask(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
 		    
-		    commonI2CEventProcessing((I2CListenerBase) listener, addr, register, time, backing, position, length, mask);
+			long acquiredNS = PipeReader.readLong(p, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15);
+		    
+			if (null != i2cLatency && isIncluded(addr, includedI2Cs) && isNotExcluded(addr, excludedI2Cs)) {
+				recordLatency(i2cLatency, 0x7F & addr, null, acquiredNS);
+			}
+		    
+		    commonI2CEventProcessing((I2CListenerBase) listener, addr, register, time, acquiredNS, backing, position, length, mask);
 
 	}
 
@@ -374,6 +568,23 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 					listener.onFrameRow(imageFrameRowBytes);
 					break;
 
+				case ImageSchema.MSG_FRAMEHANDLE_3:
+
+					if (null == imageFrames) {
+						imageFrames = builder.getFramePool().newFrames();
+					}
+					ImageFrame frame = imageFrames[PipeReader.readInt(inputPipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_FRAMEID_401)];
+					frame.attach(PipeReader.readInt(inputPipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_WIDTH_101),
+							     PipeReader.readInt(inputPipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_HEIGHT_201),
+							     PipeReader.readLong(inputPipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_TIMESTAMP_301),
+							     PipeReader.readInt(inputPipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_LENGTH_501));
+
+					// Frame stays in the pool until the listener is done with it.
+					if (listener.onFrame(frame)) {
+						frame.release();
+					}
+					break;
+
 				case -1:
 					//requestShutdown();
 					break;
@@ -384,47 +595,78 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
     
 
     protected void consumeResponseMessage(Object listener, Pipe<GroveResponseSchema> p) {
-        while (PipeReader.tryReadFragment(p)) {                
+    	if (listener != dispatchTarget) {
+    		dispatchFlags = listenerFlags(listener);
+    		dispatchTarget = listener;
+    	}
+    	final int flags = dispatchFlags;
+    	
+        while (Pipe.hasContentToRead(p)) {                
             
-            int msgIdx = PipeReader.getMsgIdx(p);
+            int msgIdx = Pipe.takeMsgIdx(p);
             switch (msgIdx) {   
 
                 case GroveResponseSchema.MSG_ANALOGSAMPLE_30:
-                    if (listener instanceof AnalogListenerBase) {                        
-                        commonAnalogEventProcessing(Port.ANALOGS[PipeReader.readInt(p, GroveResponseSchema.MSG_ANALOGSAMPLE_30_FIELD_CONNECTOR_31)],
-                        				            PipeReader.readLong(p, GroveResponseSchema.MSG_ANALOGSAMPLE_30_FIELD_TIME_11), 
-                        				            PipeReader.readInt(p, GroveResponseSchema.MSG_ANALOGSAMPLE_30_FIELD_VALUE_32), 
-                        				            (AnalogListenerBase)listener);
-                        
+                {
+                    int connector = Pipe.takeInt(p);
+                    long time = Pipe.takeLong(p);
+                    int value = Pipe.takeInt(p);
+                    Pipe.takeLong(p); //PrevDuration is not used
+                    long acquiredNS = Pipe.takeLong(p);
+                    Pipe.takeLong(p); //TransferNS is not used
+                    if (0 != (LISTENS_ANALOG & flags) && analogConnectorAccepted[connector]) {                        
+                        if (null != analogLatency) {
+                            recordLatency(analogLatency, connector, builder.analogPort(connector), acquiredNS);
+                        }
+                        analogEventProcessing(connector, builder.analogPort(connector), time, value, (AnalogListenerBase)listener);
                     }   
+                    if (0 != (LISTENS_ANALOG_BATCH & flags) && analogConnectorAccepted[connector]) {
+                        addAnalogBatchSample(connector, time, value);
+                    }
+                }
                 break;               
                 case GroveResponseSchema.MSG_DIGITALSAMPLE_20:
-                    
-                    if (listener instanceof DigitalListenerBase) {
-                        commonDigitalEventProcessing(Port.DIGITALS[PipeReader.readInt(p, GroveResponseSchema.MSG_DIGITALSAMPLE_20_FIELD_CONNECTOR_21)], 
-                        		                     PipeReader.readLong(p, GroveResponseSchema.MSG_DIGITALSAMPLE_20_FIELD_TIME_11), 
-                        		                     PipeReader.readInt(p, GroveResponseSchema.MSG_DIGITALSAMPLE_20_FIELD_VALUE_22), 
-                        		                     (DigitalListenerBase)listener);
+                {
+                    int connector = Pipe.takeInt(p);
+                    long time = Pipe.takeLong(p);
+                    int value = Pipe.takeInt(p);
+                    Pipe.takeLong(p); //PrevDuration is not used
+                    long acquiredNS = Pipe.takeLong(p);
+                    Pipe.takeLong(p); //TransferNS is not used
+                    if (0 != (LISTENS_DIGITAL & flags) && digitalConnectorAccepted[connector]) {
+                        if (null != digitalLatency) {
+                            recordLatency(digitalLatency, connector, builder.digitalPort(connector), acquiredNS);
+                        }
+                        digitalEventProcessing(connector, builder.digitalPort(connector), time, value, (DigitalListenerBase)listener);
                     }   
+                }
                 break; 
                 case GroveResponseSchema.MSG_ENCODER_70:
-                    
-                    if (listener instanceof RotaryListenerBase) {    
-                        int connector = PipeReader.readInt(p, GroveResponseSchema.MSG_ENCODER_70_FIELD_CONNECTOR_71);
-                        long time = PipeReader.readLong(p, GroveResponseSchema.MSG_ENCODER_70_FIELD_TIME_11);
-                        int value = PipeReader.readInt(p, GroveResponseSchema.MSG_ENCODER_70_FIELD_VALUE_72);
-                        int delta = PipeReader.readInt(p, GroveResponseSchema.MSG_ENCODER_70_FIELD_DELTA_73);
-                        int speed = PipeReader.readInt(p, GroveResponseSchema.MSG_ENCODER_70_FIELD_SPEED_74);
-                        long duration = PipeReader.readLong(p, GroveResponseSchema.MSG_ENCODER_70_FIELD_PREVDURATION_75);
-                        
-                        ((RotaryListenerBase)listener).rotaryEvent(Port.DIGITALS[connector], time, value, delta, speed);
-                                            
+                {
+                    int connector = Pipe.takeInt(p);
+                    long time = Pipe.takeLong(p);
+                    int value = Pipe.takeInt(p);
+                    int delta = Pipe.takeInt(p);
+                    int speed = Pipe.takeInt(p);
+                    Pipe.takeLong(p); //PrevDuration is not used
+                    long acquiredNS = Pipe.takeLong(p);
+                    Pipe.takeLong(p); //TransferNS is not used
+                    if (0 != (LISTENS_ROTARY & flags)) {    
+                        if (null != digitalLatency) {
+                            recordLatency(digitalLatency, connector, builder.digitalPort(connector), acquiredNS);
+                        }
+                        ((RotaryListenerBase)listener).rotaryEvent(builder.digitalPort(connector), time, value, delta, speed);
                     }   
+                }
                 break;
                 case -1:
                 {    
                     requestShutdown();
-                    PipeReader.releaseReadLock(p);
+                    Pipe.confirmLowLevelRead(p, Pipe.EOF_SIZE);
+                    Pipe.releaseReadLock(p);
+                    if (0 != (LISTENS_ANALOG_BATCH & flags)) {
+                        sendAnalogBatches((AnalogBatchListenerBase)listener);
+                    }
                     return;
                 }   
                 default:
@@ -432,14 +674,59 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
             }               
             
             //done reading message off pipe
-            PipeReader.releaseReadLock(p);
+            Pipe.confirmLowLevelRead(p, Pipe.sizeOf(p, msgIdx));
+            Pipe.releaseReadLock(p);
+        }
+        if (0 != (LISTENS_ANALOG_BATCH & flags)) {
+            sendAnalogBatches((AnalogBatchListenerBase)listener);
         }
     }
     
 
-	protected void commonI2CEventProcessing(I2CListenerBase listener, int addr, int register, long time, byte[] backing, int position, int length, int mask) {
+    protected void consumeWindowMessage(Object listener, Pipe<SensorWindowSchema> p) {
+    	
+        while (Pipe.hasContentToRead(p)) {                
+            
+            int msgIdx = Pipe.takeMsgIdx(p);
+            switch (msgIdx) {   
+                case SensorWindowSchema.MSG_SUMMARY_10:
+                {
+                    Port port = PORTS[Pipe.takeInt(p)];
+                    long time = Pipe.takeLong(p);
+                    Pipe.takeLong(p); //StartNS is not used
+                    Pipe.takeLong(p); //EndNS is not used
+                    int count = Pipe.takeInt(p);
+                    int min = Pipe.takeInt(p);
+                    int max = Pipe.takeInt(p);
+                    int mean = Pipe.takeInt(p);
+                    int p50 = Pipe.takeInt(p);
+                    int p90 = Pipe.takeInt(p);
+                    int p99 = Pipe.takeInt(p);
+                    if (isIncluded(port, includedPorts) && isNotExcluded(port, excludedPorts)) {
+                        ((WindowListenerBase)listener).windowEvent(port, time, count, min, max, mean, p50, p90, p99);
+                    }
+                }
+                break;
+                case -1:
+                {    
+                    requestShutdown();
+                    Pipe.confirmLowLevelRead(p, Pipe.EOF_SIZE);
+                    Pipe.releaseReadLock(p);
+                    return;
+                }   
+                default:
+                    throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+            }               
+            
+            //done reading message off pipe
+            Pipe.confirmLowLevelRead(p, Pipe.sizeOf(p, msgIdx));
+            Pipe.releaseReadLock(p);
+        }
+    }
+
+	protected void commonI2CEventProcessing(I2CListenerBase listener, int addr, int register, long time, long acquiredNS, byte[] backing, int position, int length, int mask) {
 		if (isIncluded(addr, includedI2Cs) && isNotExcluded(addr, excludedI2Cs)) {
-			listener.i2cEvent(addr, register, time, backing, position, length, mask);
+			listener.i2cEvent(addr, register, time, acquiredNS, backing, position, length, mask);
 		}
 	}
 	    
@@ -447,20 +734,23 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 	protected void commonDigitalEventProcessing(Port port, long time, int value, DigitalListenerBase dListener) {
 		
 		if (isIncluded(port, includedPorts) && isNotExcluded(port, excludedPorts)) {
+			digitalEventProcessing(port.port, port, time, value, dListener);
+		}
+	}
 
-			if (sendEveryDigitalValue[port.port]) {
-				dListener.digitalEvent(port, time, 0==lastDigitalTimes[port.port] ? -1 : time-lastDigitalTimes[port.port], value);				
-				if(value!=lastDigitalValues[port.port]){  
-					lastDigitalValues[port.port] = value;
-			    	lastDigitalTimes[port.port] = time;
-				}
-				
-			} else {			
-				if(value!=lastDigitalValues[port.port]){  
-					dListener.digitalEvent(port, time, 0==lastDigitalTimes[port.port] ? -1 : time-lastDigitalTimes[port.port], value);
-				    lastDigitalValues[port.port] = value;
-				    lastDigitalTimes[port.port] = time;
-				}
+	private void digitalEventProcessing(int connector, Port port, long time, int value, DigitalListenerBase dListener) {
+		if (sendEveryDigitalValue[connector]) {
+			dListener.digitalEvent(port, time, 0==lastDigitalTimes[connector] ? -1 : time-lastDigitalTimes[connector], value);				
+			if(value!=lastDigitalValues[connector]){  
+				lastDigitalValues[connector] = value;
+		    	lastDigitalTimes[connector] = time;
+			}
+			
+		} else {			
+			if(value!=lastDigitalValues[connector]){  
+				dListener.digitalEvent(port, time, 0==lastDigitalTimes[connector] ? -1 : time-lastDigitalTimes[connector], value);
+			    lastDigitalValues[connector] = value;
+			    lastDigitalTimes[connector] = time;
 			}
 		}
 	}
@@ -468,47 +758,59 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 	protected void commonAnalogEventProcessing(Port port, long time, int value, AnalogListenerBase aListener) {
 		
 		if (isIncluded(port, includedPorts) && isNotExcluded(port, excludedPorts)) {
+			analogEventProcessing(port.port, port, time, value, aListener);
+		}
+	}
+
+	private void analogEventProcessing(int connector, Port port, long time, int value, AnalogListenerBase aListener) {
+		
+		AnalogFilterChain filters = analogFilters[connector];
+		int runningValue = value;
+		if (null != filters) {
+			long filtered = filters.apply(value);
+			if (AnalogFilter.DROP == filtered) {
+				return; //suppressed by decimation or deadband
+			}
+			runningValue = (int)filtered;
+		}
+		
+		int mean = runningValue;
+		//logger.debug(port+" send every value "+sendEveryAnalogValue[connector]);
+		
+		if (null!=rollingMovingAveragesAnalog[connector]) {
+			MAvgRollerLong.roll(rollingMovingAveragesAnalog[connector], runningValue);                                                
 			
-			int runningValue = sendEveryAnalogValue[port.port] ? value : findStableReading(value, port.port);             
-			
-			int mean = runningValue;
-			//logger.debug(port+" send every value "+sendEveryAnalogValue[port.port]);
-			
-			if (null!=rollingMovingAveragesAnalog[port.port]) {
-				MAvgRollerLong.roll(rollingMovingAveragesAnalog[port.port], runningValue);                                                
-				
-				if (MAvgRollerLong.isValid(rollingMovingAveragesAnalog[port.port])) {
-					mean = (int)MAvgRollerLong.mean(rollingMovingAveragesAnalog[port.port]);
-				}
-			} else {
-				logger.info("warning this port "+port+" is attempting to use moving average but no moving average was set up.\n Was this port connected in declare connections?");
+			if (MAvgRollerLong.isValid(rollingMovingAveragesAnalog[connector])) {
+				mean = (int)MAvgRollerLong.mean(rollingMovingAveragesAnalog[connector]);
+			}
+		} else {
+			logger.info("warning this port "+port+" is attempting to use moving average but no moving average was set up.\n Was this port connected in declare connections?");
+		}
+		
+		if (sendEveryAnalogValue[connector]) {
+			//set time first so this is 0 the moment it shows up
+			//since we send every read we can send the age as greater and geater values as long as it does not change.
+			if(runningValue!=lastAnalogValues[connector]){ 
+				lastAnalogTimes[connector] = time;   
+				lastAnalogValues[connector] = runningValue;
 			}
+			aListener.analogEvent(port, time, 0==lastAnalogTimes[connector] ? Long.MAX_VALUE : time-lastAnalogTimes[connector], mean, runningValue);
 			
-			if (sendEveryAnalogValue[port.port]) {
-				//set time first so this is 0 the moment it shows up
-				//since we send every read we can send the age as greater and geater values as long as it does not change.
-				if(runningValue!=lastAnalogValues[port.port]){ 
-					lastAnalogTimes[port.port] = time;   
-					lastAnalogValues[port.port] = runningValue;
-				}
-				aListener.analogEvent(port, time, 0==lastAnalogTimes[port.port] ? Long.MAX_VALUE : time-lastAnalogTimes[port.port], mean, runningValue);
-				
-			} else {								
-				if(runningValue!=lastAnalogValues[port.port]){ 
-										
-					//the duration here is the duration of how long the previous value was held.
-					aListener.analogEvent(port, time, 0==lastAnalogTimes[port.port] ? Long.MAX_VALUE : time-lastAnalogTimes[port.port], mean, runningValue);
-				   
-					lastAnalogValues[port.port] = runningValue;
-				    lastAnalogTimes[port.port] = time;
-				}
+		} else {								
+			if(runningValue!=lastAnalogValues[connector]){ 
+									
+				//the duration here is the duration of how long the previous value was held.
+				aListener.analogEvent(port, time, 0==lastAnalogTimes[connector] ? Long.MAX_VALUE : time-lastAnalogTimes[connector], mean, runningValue);
+			   
+				lastAnalogValues[connector] = runningValue;
+			    lastAnalogTimes[connector] = time;
 			}
 		}
 	}
 	
 	@Override
 	public ListenerFilterIoT includePorts(Port ... ports) {
-		if (!startupCompleted && (listener instanceof AnalogListener || listener instanceof DigitalListener)) {
+		if (!startupCompleted && (listener instanceof AnalogListener || listener instanceof DigitalListener || listener instanceof AnalogBatchListener || listener instanceof WindowListener)) {
 			includedPorts = ports;
 			return this;
 		} else {
@@ -522,7 +824,7 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 
 	@Override
 	public ListenerFilterIoT excludePorts(Port ... ports) {
-		if (!startupCompleted && (listener instanceof AnalogListener || listener instanceof DigitalListener)) {
+		if (!startupCompleted && (listener instanceof AnalogListener || listener instanceof DigitalListener || listener instanceof AnalogBatchListener || listener instanceof WindowListener)) {
 			excludedPorts = ports;
 			return this;
 		} else {
@@ -536,7 +838,7 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 
 	@Override
 	public ListenerFilterIoT includeI2CConnections(int ... addresses) {
-		if (!startupCompleted && listener instanceof I2CListener) {
+		if (!startupCompleted && (listener instanceof I2CListener || listener instanceof I2CBatchListener)) {
 			includedI2Cs = addresses;
 			return this;
 		} else {
@@ -551,7 +853,7 @@ public class ReactiveIoTListenerStage extends ReactiveListenerStage<HardwareImpl
 	
 	@Override
 	public ListenerFilterIoT excludeI2CConnections(int... addresses) {
-		if (!startupCompleted && listener instanceof I2CListener) {
+		if (!startupCompleted && (listener instanceof I2CListener || listener instanceof I2CBatchListener)) {
 			excludedI2Cs = addresses;
 			return this;
 	    } else {
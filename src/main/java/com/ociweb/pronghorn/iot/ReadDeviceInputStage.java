@@ -5,12 +5,18 @@ import static com.ociweb.iot.grove.simple_digital.SimpleDigitalTwig.RotaryEncode
 
 import java.util.Arrays;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.ociweb.iot.hardware.HardwareConnection;
 import com.ociweb.iot.hardware.HardwareImpl;
 import com.ociweb.iot.hardware.IODevice;
 import com.ociweb.iot.hardware.impl.Util;
 import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.gpio.GpioEdgeReader;
+import com.ociweb.pronghorn.iot.iio.IioCaptureReader;
 import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.timing.PrecisionWaitStrategy;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.stage.PronghornStage;
 import com.ociweb.pronghorn.stage.scheduling.GraphManager;
@@ -18,10 +24,10 @@ import com.ociweb.pronghorn.util.math.ScriptedSchedule;
 
 public class ReadDeviceInputStage extends PronghornStage {
 
+	private static final Logger logger = LoggerFactory.getLogger(ReadDeviceInputStage.class);
+
 	private static final short activeBits = 4; //we have a max of 16 physical ports to use on the groveShield
-	private static final short activeSize = (short)(1<<activeBits);
-	private static final short activeIdxMask = (short)activeSize-1;
-	private short activeIdx;
+	private final int activeSize; //at least the physical ports, more if the hardware has more connectors
 
 	//script defines which port must be read or write on each cycle
 	//when the rotary encoder is used it is checked on every cycle
@@ -45,14 +51,19 @@ public class ReadDeviceInputStage extends PronghornStage {
 	private int scheduleIdx = 0;
    
 	protected static final long MS_TO_NS = 1_000_000;
+	private static final long DRAIN_RATE_NS = 1_000_000;
 
 	private final Pipe<GroveResponseSchema> responsePipe;    
 	final HardwareImpl hardware;
-	private final ScriptedSchedule schedule;
+	private ScriptedSchedule schedule;
+	private final AdaptivePollSchedule adaptive; //null when every connection polls at its declared rate
+	private final GpioEdgeReader edges; //null when no input is driven by GPIO edge events
+	private final IioCaptureReader capture; //null when no analog input uses the buffered ADC
 	private HardwareConnection[] adConnections;
 
 	private long blockStartTime = 0;
 	private Number rate;
+	private final PrecisionWaitStrategy waiter;
 	
 	public ReadDeviceInputStage(GraphManager graphManager, Pipe<GroveResponseSchema> resposnePipe, HardwareImpl hardware) {
 		super(graphManager, NONE, resposnePipe);
@@ -60,10 +71,15 @@ public class ReadDeviceInputStage extends PronghornStage {
 		this.responsePipe = resposnePipe;
 		this.hardware = hardware;
 
+		this.activeSize = Math.max(1<<activeBits, hardware.connectorCount());
 		this.adConnections = hardware.combinedADConnections();
-		this.schedule = hardware.buildADPollSchedule();
+		this.adaptive = hardware.buildAdaptiveADSchedule();
+		this.schedule = null==adaptive ? hardware.buildADPollSchedule() : adaptive.schedule();
+		this.waiter = hardware.newWaitStrategy("AD poll");
+		this.edges = hardware.newEdgeReader();
+		this.capture = hardware.newAnalogCapture();
 		
-		assert(null!=schedule) : "should not have been called, there are no inputs configured";
+		assert(null!=schedule || null!=edges || null!=capture) : "should not have been called, there are no inputs configured";
 
 		if (null != this.schedule) {
 			long computedRate = (this.schedule.commonClock);
@@ -84,6 +100,9 @@ public class ReadDeviceInputStage extends PronghornStage {
 			} while (computedRate>2_000_000); //must not poll any slower than once every 2ms.
 	
 			GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, computedRate, this); 
+		} else {
+			//only edge events or captured blocks, these are timestamped when read so draining them is not time critical
+			GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, DRAIN_RATE_NS, this);
 		}
 		
 		GraphManager.addNota(graphManager, GraphManager.PRODUCER, GraphManager.PRODUCER, this);   
@@ -157,13 +176,40 @@ public class ReadDeviceInputStage extends PronghornStage {
 
 		//hardware.endPinConfiguration(); //TODO: questionalble, should move else where.
 
+		if (null!=edges && !edges.start()) {
+			logger.warn("edge driven inputs will not report any values");
+		}
+		if (null!=capture && !capture.start()) {
+			logger.warn("captured analog inputs will not report any values");
+		}
+
 		blockStartTime = hardware.nanoTime();//critical Pronghorn contract ensure this start is called by the same thread as run
 	}
 
+	@Override
+	public void shutdown() {
+		if (null!=edges) {
+			edges.stop();
+		}
+		if (null!=capture) {
+			capture.stop();
+		}
+	}
+
 
 	@Override
 	public void run() {
 		
+		if (null!=edges) {
+			edges.drain(responsePipe);
+		}
+		if (null!=capture) {
+			capture.drain(responsePipe);
+		}
+		if (null==schedule) {
+			return;
+		}
+		
 		do{
 		    long waitTime = blockStartTime - hardware.nanoTime();
 		    long longRate = rate.longValue();
@@ -179,32 +225,17 @@ public class ReadDeviceInputStage extends PronghornStage {
      		
      		
 			inProgressIdx = schedule.script[scheduleIdx];			
-			if(inProgressIdx != -1) {
+			//backed off connections skip their slots until their longer period has passed
+			if(inProgressIdx != -1 && (null==adaptive || adaptive.isDue(inProgressIdx, hardware.nanoTime()))) {
 				
 				if (!Pipe.hasRoomForWrite(responsePipe)) {
 					return;//try again later, no room on output pipe.
 				}
 				
 				//only check time AFTER we know that there is room on the outgoing pipe.
-				int overhead = 40;//40ns
-				long wait = (blockStartTime - hardware.nanoTime()) - overhead;
-				if (wait>0) {
-					//we must wait a little longer to ensure we 
-					//do not hit the time target too early.
-					try {
-						Thread.sleep(wait/1_000_000, (int)(wait%1_000_000));
-                        long dif;
-                        while ((dif = (blockStartTime - hardware.nanoTime()))>0) {
-                        	if (dif>100) {
-                        		Thread.yield();
-                        	}
-                        }
-						
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
-						requestShutdown();
-						return;
-					}
+				if (!waiter.waitUntil(blockStartTime)) {
+					requestShutdown();
+					return;
 				}
 			
 				HardwareConnection hc = adConnections[inProgressIdx];
@@ -218,19 +249,31 @@ public class ReadDeviceInputStage extends PronghornStage {
 					readRotaryEncoder(connector, Port.DIGITALS[connector], hardware.currentTimeMillis()); //TODO: hack for now, needs more testing.
 				} else if (1 == hc.twig.range()) {
 					//digital read
+					long acquiredNS = hardware.nanoTime();
 					int fieldValue = hardware.read(Port.DIGITALS[connector]);
+					long transferNS = hardware.nanoTime()-acquiredNS;
 					//low level write
-					writeBit(responsePipe, connector, hardware.currentTimeMillis(), fieldValue);
+					writeBit(responsePipe, connector, hardware.currentTimeMillis(), fieldValue, acquiredNS, transferNS);
+					if (null!=adaptive) {
+						adaptive.sample(inProgressIdx, fieldValue, hardware.nanoTime());
+					}
 										
 				} else {
 					//analog read
 					int i = hc.twig.pinsUsed();
+					int total = 0;
 					while (--i>=0) {
 						//int intValue = hardware.read(Port.DIGITALS[connector]); //was this way before
+						long acquiredNS = hardware.nanoTime();
 						int intValue = hardware.read(Port.ANALOGS[connector+i]);
+						long transferNS = hardware.nanoTime()-acquiredNS;
    				    
 						//low level write
-						writeInt(responsePipe, connector+i, hardware.currentTimeMillis(), intValue);
+						writeInt(responsePipe, connector+i, hardware.currentTimeMillis(), intValue, acquiredNS, transferNS);
+						total += intValue;
+					}
+					if (null!=adaptive) {
+						adaptive.sample(inProgressIdx, total, hardware.nanoTime());
 					}
 				}
 								
@@ -246,6 +289,7 @@ public class ReadDeviceInputStage extends PronghornStage {
 	private void readRotaryEncoder(int j, Port port, long timeMS) {
 		byte rotaryPoll=3;
 		int maxCycles = 80; //what if stuck in middle must detect.
+		long acquiredNS = hardware.nanoTime();
 		do {
 			//TODO: how do we know we have these two on the same clock?
 			int r1  = hardware.read(port); 
@@ -268,6 +312,7 @@ public class ReadDeviceInputStage extends PronghornStage {
 
 			}
 		} while ((rotaryPoll!=0x3 ) && --maxCycles>=0); //TODO: keep going until we get 111111 ??
+		long transferNS = hardware.nanoTime()-acquiredNS;
 
 
 		if (0==maxCycles) {
@@ -276,7 +321,7 @@ public class ReadDeviceInputStage extends PronghornStage {
 
 		if (frequentScriptLastPublished[j]!=rotationState[j] && Pipe.hasRoomForWrite(responsePipe)) {
 			int speed = (int)Math.min( (cycles - rotationLastCycle[j]), Integer.MAX_VALUE);
-			writeRotation(responsePipe, port.port, hardware.currentTimeMillis(), rotationState[j], rotationState[j]-frequentScriptLastPublished[j], speed);
+			writeRotation(responsePipe, port.port, hardware.currentTimeMillis(), rotationState[j], rotationState[j]-frequentScriptLastPublished[j], speed, acquiredNS, transferNS);
 
 			frequentScriptLastPublished[j] = rotationState[j];
 			rotationLastCycle[j] = cycles;
@@ -284,7 +329,7 @@ public class ReadDeviceInputStage extends PronghornStage {
 	}
 
 
-	private void writeRotation(Pipe<GroveResponseSchema> responsePipe, int connector, long time, int value, int delta, int speed) {
+	private void writeRotation(Pipe<GroveResponseSchema> responsePipe, int connector, long time, int value, int delta, int speed, long acquiredNS, long transferNS) {
         int size = Pipe.addMsgIdx(responsePipe, GroveResponseSchema.MSG_ENCODER_70);
         Pipe.addIntValue(connector, responsePipe);
         Pipe.addLongValue(time, responsePipe);
@@ -294,6 +339,8 @@ public class ReadDeviceInputStage extends PronghornStage {
         
         long duration = 0;
         Pipe.addLongValue(duration, responsePipe);        
+        Pipe.addLongValue(acquiredNS, responsePipe);
+        Pipe.addLongValue(transferNS, responsePipe);
         
         Pipe.publishWrites(responsePipe);
         Pipe.confirmLowLevelWrite(responsePipe, size);
@@ -302,7 +349,7 @@ public class ReadDeviceInputStage extends PronghornStage {
 
    	
 
-	private void writeBit(Pipe<GroveResponseSchema> responsePipe, int connector, long time, int bitValue) {
+	private void writeBit(Pipe<GroveResponseSchema> responsePipe, int connector, long time, int bitValue, long acquiredNS, long transferNS) {
 	    
 	    int size = Pipe.addMsgIdx(responsePipe, GroveResponseSchema.MSG_DIGITALSAMPLE_20);
         Pipe.addIntValue(connector, responsePipe);
@@ -311,6 +358,8 @@ public class ReadDeviceInputStage extends PronghornStage {
         
         long duration = 0;
         Pipe.addLongValue(duration, responsePipe);        
+        Pipe.addLongValue(acquiredNS, responsePipe);
+        Pipe.addLongValue(transferNS, responsePipe);
         
         Pipe.publishWrites(responsePipe);
         Pipe.confirmLowLevelWrite(responsePipe, size);
@@ -319,7 +368,7 @@ public class ReadDeviceInputStage extends PronghornStage {
 
  
 
-	private void writeInt(Pipe<GroveResponseSchema> responsePipe, int connector, long time, int intValue) {
+	private void writeInt(Pipe<GroveResponseSchema> responsePipe, int connector, long time, int intValue, long acquiredNS, long transferNS) {
 	    int size = Pipe.addMsgIdx(responsePipe, GroveResponseSchema.MSG_ANALOGSAMPLE_30);
         Pipe.addIntValue(connector, responsePipe);
         Pipe.addLongValue(time, responsePipe);
@@ -327,6 +376,8 @@ public class ReadDeviceInputStage extends PronghornStage {
         
         long duration = 0;
         Pipe.addLongValue(duration, responsePipe);            
+        Pipe.addLongValue(acquiredNS, responsePipe);
+        Pipe.addLongValue(transferNS, responsePipe);
         
         Pipe.publishWrites(responsePipe);
         Pipe.confirmLowLevelWrite(responsePipe, size);
@@ -0,0 +1,309 @@
+package com.ociweb.pronghorn.iot;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.SensorWindowSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Summarizes the samples of each windowed port over tumbling or sliding windows. Every sample is
+ * placed by its AcquiredNS so the windows follow the time the device was read, not when the sample
+ * reached this stage. Each port keeps its samples in primitive rings which grow if a window holds
+ * more than expected.
+ *
+ * A window is closed once a later sample of its port has arrived or once the clock has passed its
+ * end by the allowed lateness, so ports which only report on change still close their windows.
+ * Connectors which share a port, like the channels of a concentrator, are summarized together.
+ */
+public class SensorWindowStage extends PronghornStage {
+
+	private static final Logger logger = LoggerFactory.getLogger(SensorWindowStage.class);
+
+	private static final long LATENESS_NS = 5_000_000; //samples may still be on their way through the replicator
+	private static final long MIN_RATE_NS = 1_000_000;
+	private static final long MS_TO_NS = 1_000_000;
+	private static final int INITIAL_RING_BITS = 6;
+
+	private final Pipe<GroveResponseSchema> input;
+	private final Pipe<SensorWindowSchema> output;
+	private final HardwareImpl hardware;
+
+	private final Port[] ports;
+	private final long[] windowNS;
+	private final long[] slideNS;
+	private final int[] windowByPort; //by Port ordinal, -1 when the port is not windowed
+
+	private long[][] ringTime;
+	private int[][]  ringValue;
+	private int[]    ringMask;
+	private long[]   ringHead;
+	private long[]   ringTail;
+
+	private long[] nextEndNS;
+	private long[] closedEndNS;
+	private long[] latestNS;
+	private int[]  scratch;
+
+	private long lateSamples;
+	private long lateReported;
+
+	/**
+	 * @param ports Windowed ports, each may appear only once.
+	 * @param windowMS Length of the window for each port.
+	 * @param slideMS Time between summaries for each port, equal to the window for tumbling windows.
+	 */
+	public SensorWindowStage(GraphManager graphManager, Pipe<GroveResponseSchema> input, Pipe<SensorWindowSchema> output,
+			                 HardwareImpl hardware, Port[] ports, int[] windowMS, int[] slideMS) {
+		super(graphManager, input, output);
+		this.input = input;
+		this.output = output;
+		this.hardware = hardware;
+		this.ports = ports;
+		this.windowNS = new long[ports.length];
+		this.slideNS = new long[ports.length];
+		this.windowByPort = new int[Port.values().length];
+		Arrays.fill(windowByPort, -1);
+
+		long minSlideNS = Long.MAX_VALUE;
+		int w = ports.length;
+		while (--w>=0) {
+			windowNS[w] = windowMS[w]*MS_TO_NS;
+			slideNS[w] = slideMS[w]*MS_TO_NS;
+			windowByPort[ports[w].ordinal()] = w;
+			minSlideNS = Math.min(minSlideNS, slideNS[w]);
+		}
+
+		GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, Math.max(MIN_RATE_NS, minSlideNS>>2), this);
+		GraphManager.addNota(graphManager, GraphManager.DOT_BACKGROUND, "lightsteelblue", this);
+	}
+
+	@Override
+	public void startup() {
+		int windows = ports.length;
+		ringTime = new long[windows][];
+		ringValue = new int[windows][];
+		ringMask = new int[windows];
+		ringHead = new long[windows];
+		ringTail = new long[windows];
+		nextEndNS = new long[windows];
+		closedEndNS = new long[windows];
+		latestNS = new long[windows];
+		scratch = new int[1<<INITIAL_RING_BITS];
+
+		long now = hardware.nanoTime();
+		int w = windows;
+		while (--w>=0) {
+			ringTime[w] = new long[1<<INITIAL_RING_BITS];
+			ringValue[w] = new int[1<<INITIAL_RING_BITS];
+			ringMask[w] = (1<<INITIAL_RING_BITS)-1;
+			//the first summary covers a full window
+			nextEndNS[w] = now + windowNS[w];
+			closedEndNS[w] = now;
+			latestNS[w] = Long.MIN_VALUE;
+		}
+	}
+
+	@Override
+	public void run() {
+
+		while (Pipe.hasContentToRead(input)) {
+
+			int msgIdx = Pipe.takeMsgIdx(input);
+			switch (msgIdx) {
+				case GroveResponseSchema.MSG_ANALOGSAMPLE_30:
+				{
+					int connector = Pipe.takeInt(input);
+					Pipe.takeLong(input); //Time
+					int value = Pipe.takeInt(input);
+					Pipe.takeLong(input); //PrevDuration
+					long acquiredNS = Pipe.takeLong(input);
+					Pipe.takeLong(input); //TransferNS
+					add(hardware.analogPort(connector), acquiredNS, value);
+				}
+				break;
+				case GroveResponseSchema.MSG_DIGITALSAMPLE_20:
+				{
+					int connector = Pipe.takeInt(input);
+					Pipe.takeLong(input); //Time
+					int value = Pipe.takeInt(input);
+					Pipe.takeLong(input); //PrevDuration
+					long acquiredNS = Pipe.takeLong(input);
+					Pipe.takeLong(input); //TransferNS
+					add(hardware.digitalPort(connector), acquiredNS, value);
+				}
+				break;
+				case GroveResponseSchema.MSG_ENCODER_70:
+				{
+					int connector = Pipe.takeInt(input);
+					Pipe.takeLong(input); //Time
+					int value = Pipe.takeInt(input);
+					Pipe.takeInt(input); //Delta
+					Pipe.takeInt(input); //Speed
+					Pipe.takeLong(input); //PrevDuration
+					long acquiredNS = Pipe.takeLong(input);
+					Pipe.takeLong(input); //TransferNS
+					add(hardware.digitalPort(connector), acquiredNS, value);
+				}
+				break;
+				case -1:
+				{
+					Pipe.confirmLowLevelRead(input, Pipe.EOF_SIZE);
+					Pipe.releaseReadLock(input);
+					requestShutdown();
+					return;
+				}
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			Pipe.confirmLowLevelRead(input, Pipe.sizeOf(input, msgIdx));
+			Pipe.releaseReadLock(input);
+		}
+
+		long now = hardware.nanoTime();
+		int w = ports.length;
+		while (--w>=0) {
+			long watermark = Math.max(latestNS[w], now - LATENESS_NS);
+			while (nextEndNS[w] <= watermark) {
+				if (!Pipe.hasRoomForWrite(output)) {
+					return; //try again later, the samples stay in the ring
+				}
+				publishWindow(w);
+			}
+		}
+
+		long late = lateSamples;
+		if (late != lateReported) {
+			logger.warn("{} samples arrived after their window was closed", late-lateReported);
+			lateReported = late;
+		}
+	}
+
+	private void add(Port port, long acquiredNS, int value) {
+		if (null == port) {
+			return; //connector has no port so it can not be windowed
+		}
+		int w = windowByPort[port.ordinal()];
+		if (w < 0) {
+			return;
+		}
+		if (acquiredNS <= closedEndNS[w]) {
+			lateSamples++;
+			return;
+		}
+		long head = ringHead[w];
+		if (head - ringTail[w] > ringMask[w]) {
+			grow(w);
+		}
+		int i = ringMask[w] & (int)head;
+		ringTime[w][i] = acquiredNS;
+		ringValue[w][i] = value;
+		ringHead[w] = head+1;
+		if (acquiredNS > latestNS[w]) {
+			latestNS[w] = acquiredNS;
+		}
+	}
+
+	private void grow(int w) {
+		int oldMask = ringMask[w];
+		int size = (oldMask+1)<<1;
+		long[] times = new long[size];
+		int[] values = new int[size];
+		long tail = ringTail[w];
+		long head = ringHead[w];
+		int j = 0;
+		for (long t = tail; t < head; t++) {
+			int i = oldMask & (int)t;
+			times[j] = ringTime[w][i];
+			values[j] = ringValue[w][i];
+			j++;
+		}
+		ringTime[w] = times;
+		ringValue[w] = values;
+		ringMask[w] = size-1;
+		ringTail[w] = 0;
+		ringHead[w] = j;
+	}
+
+	private void publishWindow(int w) {
+		long endNS = nextEndNS[w];
+		long startNS = endNS - windowNS[w];
+		int mask = ringMask[w];
+		long[] times = ringTime[w];
+		int[] values = ringValue[w];
+
+		//samples older than this window are not needed by any later one
+		long tail = ringTail[w];
+		long head = ringHead[w];
+		while (tail < head && times[mask & (int)tail] <= startNS) {
+			tail++;
+		}
+		ringTail[w] = tail;
+
+		int count = 0;
+		int min = 0;
+		int max = 0;
+		long sum = 0;
+		for (long t = tail; t < head; t++) {
+			int i = mask & (int)t;
+			if (times[i] > endNS) {
+				break;
+			}
+			int value = values[i];
+			if (0 == count) {
+				min = max = value;
+			} else {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			sum += value;
+			if (count == scratch.length) {
+				scratch = Arrays.copyOf(scratch, count<<1);
+			}
+			scratch[count++] = value;
+		}
+
+		int mean = 0;
+		int p50 = 0;
+		int p90 = 0;
+		int p99 = 0;
+		if (count > 0) {
+			mean = (int)(sum / count);
+			Arrays.sort(scratch, 0, count);
+			p50 = scratch[rank(50, count)];
+			p90 = scratch[rank(90, count)];
+			p99 = scratch[rank(99, count)];
+		}
+
+		int size = Pipe.addMsgIdx(output, SensorWindowSchema.MSG_SUMMARY_10);
+		Pipe.addIntValue(ports[w].ordinal(), output);
+		Pipe.addLongValue(hardware.toEpochNS(endNS)/MS_TO_NS, output);
+		Pipe.addLongValue(startNS, output);
+		Pipe.addLongValue(endNS, output);
+		Pipe.addIntValue(count, output);
+		Pipe.addIntValue(min, output);
+		Pipe.addIntValue(max, output);
+		Pipe.addIntValue(mean, output);
+		Pipe.addIntValue(p50, output);
+		Pipe.addIntValue(p90, output);
+		Pipe.addIntValue(p99, output);
+		Pipe.confirmLowLevelWrite(output, size);
+		Pipe.publishWrites(output);
+
+		closedEndNS[w] = endNS;
+		nextEndNS[w] = endNS + slideNS[w];
+	}
+
+	//nearest rank, the smallest value with at least percent of the samples at or below it
+	private static int rank(int percent, int count) {
+		return (percent*count + 99)/100 - 1;
+	}
+
+}
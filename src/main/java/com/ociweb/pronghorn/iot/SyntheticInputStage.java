@@ -0,0 +1,187 @@
+package com.ociweb.pronghorn.iot;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+import com.ociweb.iot.hardware.impl.test.LoadProfile;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Publishes the samples of every virtual endpoint in a {@link LoadProfile} on the pipes the hardware
+ * input stages would have used. Each declaration sends all of its endpoints once per period.
+ *
+ * AcquiredNS is the time the sample was due, so any delay in sending it shows up downstream as
+ * latency. When the graph can not keep up the periods which were missed entirely are skipped and
+ * counted instead of being sent late.
+ */
+public class SyntheticInputStage extends PronghornStage {
+
+	private static final long MS_TO_NS = 1_000_000;
+	private static final long MIN_RATE_NS = 100_000;
+	private static final long MAX_RATE_NS = 1_000_000;
+	private static final int MAX_BATCH = 4096; //samples sent per run before yielding
+
+	private final Pipe<GroveResponseSchema> pinOutput;
+	private final Pipe<I2CResponseSchema> i2cOutput;
+	private final HardwareImpl hardware;
+	private final LoadProfile.Endpoints[] endpoints;
+
+	private final long[] periodNS;
+	private final long[] dueNS;
+	private final long[] period;   //periods started by each declaration
+	private final int[]  cursor;   //endpoints of the current period already sent
+	private final byte[] i2cBytes = new byte[8];
+	private int firstGroup;
+
+	private long sent;
+	private long missed;
+	private volatile long sentSamples;
+	private volatile long missedSamples;
+
+	public SyntheticInputStage(GraphManager graphManager,
+			                   Pipe<GroveResponseSchema> pinOutput, Pipe<I2CResponseSchema> i2cOutput,
+			                   HardwareImpl hardware, LoadProfile profile) {
+		super(graphManager, NONE, outputs(pinOutput, i2cOutput));
+		this.pinOutput = pinOutput;
+		this.i2cOutput = i2cOutput;
+		this.hardware = hardware;
+		this.endpoints = profile.endpoints();
+		this.periodNS = new long[endpoints.length];
+		this.dueNS = new long[endpoints.length];
+		this.period = new long[endpoints.length];
+		this.cursor = new int[endpoints.length];
+
+		long minPeriodNS = Long.MAX_VALUE;
+		int e = endpoints.length;
+		while (--e>=0) {
+			periodNS[e] = endpoints[e].rateMS*MS_TO_NS;
+			minPeriodNS = Math.min(minPeriodNS, periodNS[e]);
+		}
+		GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, Math.max(MIN_RATE_NS, Math.min(MAX_RATE_NS, minPeriodNS>>2)), this);
+		GraphManager.addNota(graphManager, GraphManager.PRODUCER, GraphManager.PRODUCER, this);
+		GraphManager.addNota(graphManager, GraphManager.DOT_BACKGROUND, "darksalmon", this);
+	}
+
+	private static Pipe[] outputs(Pipe ... pipes) {
+		int count = 0;
+		for (Pipe p : pipes) {
+			if (null != p) {
+				count++;
+			}
+		}
+		Pipe[] result = new Pipe[count];
+		count = 0;
+		for (Pipe p : pipes) {
+			if (null != p) {
+				result[count++] = p;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return samples published so far.
+	 */
+	public long sentSamples() {
+		return sentSamples;
+	}
+
+	/**
+	 * @return samples skipped because the graph fell a whole period behind.
+	 */
+	public long missedSamples() {
+		return missedSamples;
+	}
+
+	@Override
+	public void startup() {
+		long now = hardware.nanoTime();
+		int e = endpoints.length;
+		while (--e>=0) {
+			dueNS[e] = now;
+		}
+	}
+
+	@Override
+	public void run() {
+		long now = hardware.nanoTime();
+		long timeMS = hardware.currentTimeMillis();
+		int batch = MAX_BATCH;
+		int i = endpoints.length;
+		while (--i>=0) {
+			batch = send(firstGroup, now, timeMS, batch);
+			if (batch <= 0) {
+				break; //resume with this declaration so the others are not starved
+			}
+			firstGroup = (firstGroup+1) % endpoints.length;
+		}
+		sentSamples = sent;
+		missedSamples = missed;
+	}
+
+	/**
+	 * @return batch remaining, 0 when this run must stop.
+	 */
+	private int send(int e, long now, long timeMS, int batch) {
+		LoadProfile.Endpoints group = endpoints[e];
+		Pipe<?> output = LoadProfile.I2C == group.kind ? i2cOutput : pinOutput;
+		if (null == output) {
+			return batch; //nothing listens to this kind of input
+		}
+		while (now >= dueNS[e]) {
+			while (cursor[e] < group.count) {
+				if (--batch < 0 || !publish(group, cursor[e], period[e], dueNS[e], timeMS)) {
+					return 0;
+				}
+				cursor[e]++;
+				sent++;
+			}
+			cursor[e] = 0;
+			period[e]++;
+			dueNS[e] += periodNS[e];
+			long behind = (now-dueNS[e])/periodNS[e];
+			if (behind > 0) {
+				missed += behind*group.count;
+				period[e] += behind;
+				dueNS[e] += behind*periodNS[e];
+			}
+		}
+		return batch;
+	}
+
+	private boolean publish(LoadProfile.Endpoints group, int endpoint, long sample, long acquiredNS, long timeMS) {
+		long value = group.generator.value(endpoint, sample);
+		switch (group.kind) {
+			case LoadProfile.ANALOG:
+				return publishPin(GroveResponseSchema.MSG_ANALOGSAMPLE_30, group.first+endpoint, timeMS, (int)value, acquiredNS);
+			case LoadProfile.DIGITAL:
+				return publishPin(GroveResponseSchema.MSG_DIGITALSAMPLE_20, group.first+endpoint, timeMS, (int)(1&value), acquiredNS);
+			default:
+				int i = group.bytes;
+				while (--i>=0) {
+					i2cBytes[i] = (byte)value;
+					value >>= 8;
+				}
+				return I2CResponseSchema.publishResponse(i2cOutput, group.address, timeMS, group.first+endpoint, i2cBytes, 0, group.bytes, acquiredNS, 0);
+		}
+	}
+
+	private boolean publishPin(int msgIdx, int connector, long timeMS, int value, long acquiredNS) {
+		if (!Pipe.hasRoomForWrite(pinOutput)) {
+			return false;
+		}
+		int size = Pipe.addMsgIdx(pinOutput, msgIdx);
+		Pipe.addIntValue(connector, pinOutput);
+		Pipe.addLongValue(timeMS, pinOutput);
+		Pipe.addIntValue(value, pinOutput);
+		Pipe.addLongValue(0, pinOutput); //PrevDuration
+		Pipe.addLongValue(acquiredNS, pinOutput);
+		Pipe.addLongValue(0, pinOutput); //TransferNS
+		Pipe.confirmLowLevelWrite(pinOutput, size);
+		Pipe.publishWrites(pinOutput);
+		return true;
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.ociweb.pronghorn.iot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+import com.ociweb.iot.store.TimeSeriesStore;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Appends every sensor response to the {@link TimeSeriesStore}. Samples are stored by their
+ * AcquiredNS converted to microseconds since the epoch. I2C responses are stored as the first
+ * 8 bytes read, packed big endian, longer responses are not stored.
+ */
+public class TimeSeriesStoreStage extends PronghornStage {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStoreStage.class);
+
+	private static final long RATE_NS = 2_000_000;
+	private static final long FLUSH_AGE_NS = 1_000_000_000; //recent samples become visible to queries within a second
+	private static final int MAX_I2C_BYTES = 8;
+
+	private final Pipe<GroveResponseSchema> pinInput;
+	private final Pipe<I2CResponseSchema> i2cInput;
+	private final HardwareImpl hardware;
+	private final TimeSeriesStore store;
+
+	private int openInputs;
+	private boolean opened;
+	private long skippedI2C;
+	private long skippedReported;
+
+	/**
+	 * @param pinInput Digital, analog and encoder responses, may be null.
+	 * @param i2cInput I2C responses, may be null.
+	 */
+	public TimeSeriesStoreStage(GraphManager graphManager, Pipe<GroveResponseSchema> pinInput, Pipe<I2CResponseSchema> i2cInput,
+			                    HardwareImpl hardware, TimeSeriesStore store) {
+		super(graphManager, inputs(pinInput, i2cInput), NONE);
+		this.pinInput = pinInput;
+		this.i2cInput = i2cInput;
+		this.hardware = hardware;
+		this.store = store;
+		GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, RATE_NS, this);
+		GraphManager.addNota(graphManager, GraphManager.DOT_BACKGROUND, "lightsteelblue", this);
+	}
+
+	private static Pipe[] inputs(Pipe<GroveResponseSchema> pinInput, Pipe<I2CResponseSchema> i2cInput) {
+		if (null == pinInput) {
+			return new Pipe[] {i2cInput};
+		}
+		if (null == i2cInput) {
+			return new Pipe[] {pinInput};
+		}
+		return new Pipe[] {pinInput, i2cInput};
+	}
+
+	@Override
+	public void startup() {
+		openInputs = (null==pinInput ? 0 : 1) + (null==i2cInput ? 0 : 1);
+		opened = store.open();
+	}
+
+	@Override
+	public void run() {
+		long now = hardware.nanoTime();
+		if (null != pinInput) {
+			consumePins(now);
+		}
+		if (null != i2cInput) {
+			consumeI2C(now);
+		}
+		if (opened) {
+			store.flushOlderThan(now, FLUSH_AGE_NS);
+		}
+
+		long skipped = skippedI2C;
+		if (skipped != skippedReported) {
+			logger.warn("{} I2C responses longer than {} bytes were not stored", skipped-skippedReported, MAX_I2C_BYTES);
+			skippedReported = skipped;
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		if (opened) {
+			store.close();
+			opened = false;
+		}
+	}
+
+	private void consumePins(long now) {
+		while (Pipe.hasContentToRead(pinInput)) {
+
+			int msgIdx = Pipe.takeMsgIdx(pinInput);
+			switch (msgIdx) {
+				case GroveResponseSchema.MSG_ANALOGSAMPLE_30:
+				{
+					int connector = Pipe.takeInt(pinInput);
+					Pipe.takeLong(pinInput); //Time
+					int value = Pipe.takeInt(pinInput);
+					Pipe.takeLong(pinInput); //PrevDuration
+					long acquiredNS = Pipe.takeLong(pinInput);
+					Pipe.takeLong(pinInput); //TransferNS
+					append(TimeSeriesStore.analogKey(connector), acquiredNS, value, now);
+				}
+				break;
+				case GroveResponseSchema.MSG_DIGITALSAMPLE_20:
+				{
+					int connector = Pipe.takeInt(pinInput);
+					Pipe.takeLong(pinInput); //Time
+					int value = Pipe.takeInt(pinInput);
+					Pipe.takeLong(pinInput); //PrevDuration
+					long acquiredNS = Pipe.takeLong(pinInput);
+					Pipe.takeLong(pinInput); //TransferNS
+					append(TimeSeriesStore.digitalKey(connector), acquiredNS, value, now);
+				}
+				break;
+				case GroveResponseSchema.MSG_ENCODER_70:
+				{
+					int connector = Pipe.takeInt(pinInput);
+					Pipe.takeLong(pinInput); //Time
+					int value = Pipe.takeInt(pinInput);
+					Pipe.takeInt(pinInput); //Delta
+					Pipe.takeInt(pinInput); //Speed
+					Pipe.takeLong(pinInput); //PrevDuration
+					long acquiredNS = Pipe.takeLong(pinInput);
+					Pipe.takeLong(pinInput); //TransferNS
+					append(TimeSeriesStore.digitalKey(connector), acquiredNS, value, now);
+				}
+				break;
+				case -1:
+				{
+					Pipe.confirmLowLevelRead(pinInput, Pipe.EOF_SIZE);
+					Pipe.releaseReadLock(pinInput);
+					inputClosed();
+					return;
+				}
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			Pipe.confirmLowLevelRead(pinInput, Pipe.sizeOf(pinInput, msgIdx));
+			Pipe.releaseReadLock(pinInput);
+		}
+	}
+
+	private void consumeI2C(long now) {
+		while (PipeReader.tryReadFragment(i2cInput)) {
+
+			int msgIdx = PipeReader.getMsgIdx(i2cInput);
+			switch (msgIdx) {
+				case I2CResponseSchema.MSG_RESPONSE_10:
+				{
+					int length = PipeReader.readBytesLength(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
+					if (length > MAX_I2C_BYTES) {
+						skippedI2C++;
+						break;
+					}
+					byte[] backing = PipeReader.readBytesBackingArray(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
+					int position = PipeReader.readBytesPosition(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
+					int mask = PipeReader.readBytesMask(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12);
+					long value = 0;
+					for (int i = 0; i < length; i++) {
+						value = (value<<8) | (0xFF & backing[mask & (position+i)]);
+					}
+					int addr = PipeReader.readInt(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11);
+					int register = PipeReader.readInt(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14);
+					long acquiredNS = PipeReader.readLong(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15);
+					append(TimeSeriesStore.i2cKey(addr, register), acquiredNS, value, now);
+				}
+				break;
+				case -1:
+				{
+					PipeReader.releaseReadLock(i2cInput);
+					inputClosed();
+					return;
+				}
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			PipeReader.releaseReadLock(i2cInput);
+		}
+	}
+
+	private void append(int key, long acquiredNS, long value, long now) {
+		if (opened) {
+			store.append(key, hardware.toEpochNS(acquiredNS)/1000, value, now);
+		}
+	}
+
+	private void inputClosed() {
+		if (--openInputs <= 0) {
+			requestShutdown();
+		}
+	}
+
+}
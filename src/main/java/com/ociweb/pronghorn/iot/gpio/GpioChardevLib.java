@@ -0,0 +1,44 @@
+package com.ociweb.pronghorn.iot.gpio;
+
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.Pointer;
+
+/**
+ * JNI library wrapper for the Linux GPIO character device (uapi/linux/gpio.h, v1 ABI).
+ */
+public interface GpioChardevLib {
+    //C Library instance.
+    GpioChardevLib instance = LibraryLoader.create(GpioChardevLib.class).load("c");
+
+    //_IOWR(0xB4, 0x04, struct gpioevent_request)
+    int GPIO_GET_LINEEVENT_IOCTL = 0xC030B404;
+    //_IOWR(0xB4, 0x08, struct gpiohandle_data)
+    int GPIOHANDLE_GET_LINE_VALUES_IOCTL = 0xC040B408;
+
+    int GPIOHANDLE_REQUEST_INPUT = 0x01;
+    int GPIOEVENT_REQUEST_BOTH_EDGES = 0x03;
+    int GPIOEVENT_EVENT_RISING_EDGE = 0x01;
+
+    //struct gpioevent_request { u32 lineoffset; u32 handleflags; u32 eventflags; char consumer_label[32]; int fd; }
+    int EVENT_REQUEST_SIZE = 48;
+    int EVENT_REQUEST_LABEL = 12;
+    int EVENT_REQUEST_FD = 44;
+    //struct gpioevent_data { u64 timestamp; u32 id; }
+    int EVENT_DATA_SIZE = 16;
+    //struct gpiohandle_data { u8 values[64]; }
+    int HANDLE_DATA_SIZE = 64;
+
+    short POLLIN = 0x0001;
+    int CLOCK_MONOTONIC = 1;
+
+    //Filesystem constants.
+    int O_RDONLY = 0;
+
+    //Native Methods///////////////////////////////////////////////////////////
+    int open(String path, int flags);
+    int close(int fd);
+    int ioctl(int fd, int cmd, Pointer data);
+    int read(int fd, byte[] buffer, int count);
+    int poll(Pointer fds, long nfds, int timeout);
+    int clock_gettime(int clockid, Pointer ts);
+}
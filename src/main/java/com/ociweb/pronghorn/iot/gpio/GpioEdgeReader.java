@@ -0,0 +1,309 @@
+package com.ociweb.pronghorn.iot.gpio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.hardware.HardwareConnection;
+import com.ociweb.iot.hardware.impl.Util;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+
+/**
+ * Reads digital inputs from line events of the Linux GPIO character device. A dedicated thread
+ * blocks in poll() on every requested line and records each edge with the timestamp taken by the
+ * kernel interrupt handler. The polling stage drains the recorded events into GroveResponseSchema
+ * with {@link #drain(Pipe)}, so idle inputs cost nothing and edge timing does not depend on the
+ * stage schedule.
+ *
+ * Each digital sample carries the ns since the previous edge on that line as its PrevDuration,
+ * each encoder step the ns since the previous step.
+ */
+public class GpioEdgeReader implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(GpioEdgeReader.class);
+
+	private static final int RING_BITS = 10;
+	private static final int RING_SIZE = 1<<RING_BITS;
+	private static final int RING_MASK = RING_SIZE-1;
+	private static final int POLL_TIMEOUT_MS = 100; //how quickly stop is noticed
+	private static final long MS_TO_NS = 1_000_000;
+
+	private final HardwareConnection[] inputs;
+
+	//one entry per requested line
+	private int[] lineFd;
+	private int[] lineInput;
+	private int[] lineRole;
+	private long[] lastEdgeNS;
+
+	//per input, only used by rotary encoders
+	private final int[] levels;
+	private final int[] rotaryRolling;
+	private final int[] rotationState;
+	private final long[] lastStepNS;
+
+	//events waiting to be drained, written only by the reader thread
+	private final int[]  ringMsg = new int[RING_SIZE];
+	private final int[]  ringConnector = new int[RING_SIZE];
+	private final int[]  ringValue = new int[RING_SIZE];
+	private final int[]  ringDelta = new int[RING_SIZE];
+	private final int[]  ringSpeed = new int[RING_SIZE];
+	private final long[] ringTime = new long[RING_SIZE];
+	private final long[] ringDuration = new long[RING_SIZE];
+	private final long[] ringAcquired = new long[RING_SIZE];
+	private volatile long head;
+	private volatile long tail;
+	private volatile long dropped;
+	private long droppedReported;
+
+	private GpioChardevLib c;
+	private Pointer pollFds;
+	private final byte[] eventBytes = new byte[GpioChardevLib.EVENT_DATA_SIZE];
+	private final ByteBuffer event = ByteBuffer.wrap(eventBytes).order(ByteOrder.nativeOrder());
+	private long monotonicToEpochNS;
+	private int clockKind = -1; //0 monotonic, 1 realtime, found from the first event
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * @param inputs One connection per device, on the first port of the device.
+	 */
+	public GpioEdgeReader(HardwareConnection[] inputs) {
+		this.inputs = inputs;
+		this.levels = new int[inputs.length];
+		this.rotaryRolling = new int[inputs.length];
+		this.rotationState = new int[inputs.length];
+		this.lastStepNS = new long[inputs.length];
+	}
+
+	/**
+	 * Requests every line and starts the reader thread.
+	 *
+	 * @return false if the lines could not be requested, no events will be produced.
+	 */
+	public boolean start() {
+		int lineCount = 0;
+		for (int i = 0; i < inputs.length; i++) {
+			lineCount += inputs[i].edges.offsets.length;
+		}
+		lineFd = new int[lineCount];
+		lineInput = new int[lineCount];
+		lineRole = new int[lineCount];
+		lastEdgeNS = new long[lineCount];
+
+		try {
+			c = GpioChardevLib.instance;
+			jnr.ffi.Runtime runtime = jnr.ffi.Runtime.getRuntime(c);
+			Pointer request = Memory.allocateDirect(runtime, GpioChardevLib.EVENT_REQUEST_SIZE);
+			Pointer values = Memory.allocateDirect(runtime, GpioChardevLib.HANDLE_DATA_SIZE);
+			pollFds = Memory.allocateDirect(runtime, 8 * lineCount);
+
+			int k = 0;
+			for (int i = 0; i < inputs.length; i++) {
+				int[] offsets = inputs[i].edges.offsets;
+				int chipFd = c.open(inputs[i].edges.chip, GpioChardevLib.O_RDONLY);
+				if (chipFd < 0) {
+					logger.warn("unable to open {}", inputs[i].edges.chip);
+					closeLines(k);
+					return false;
+				}
+				for (int role = 0; role < offsets.length; role++) {
+					request.setMemory(0, GpioChardevLib.EVENT_REQUEST_SIZE, (byte)0);
+					request.putInt(0, offsets[role]);
+					request.putInt(4, GpioChardevLib.GPIOHANDLE_REQUEST_INPUT);
+					request.putInt(8, GpioChardevLib.GPIOEVENT_REQUEST_BOTH_EDGES);
+					request.putString(GpioChardevLib.EVENT_REQUEST_LABEL, "foglight", 31, StandardCharsets.US_ASCII);
+					if (c.ioctl(chipFd, GpioChardevLib.GPIO_GET_LINEEVENT_IOCTL, request) < 0) {
+						logger.warn("unable to request edge events for line {} on {}", offsets[role], inputs[i].edges.chip);
+						c.close(chipFd);
+						closeLines(k);
+						return false;
+					}
+					int fd = request.getInt(GpioChardevLib.EVENT_REQUEST_FD);
+					lineFd[k] = fd;
+					lineInput[k] = i;
+					lineRole[k] = role;
+					pollFds.putInt(8*k, fd);
+					pollFds.putShort(8*k+4, GpioChardevLib.POLLIN);
+					pollFds.putShort(8*k+6, (short)0);
+
+					//starting level so encoders know their position before the first edge
+					if (c.ioctl(fd, GpioChardevLib.GPIOHANDLE_GET_LINE_VALUES_IOCTL, values) >= 0) {
+						setLevel(i, role, offsets.length, values.getByte(0));
+					}
+					k++;
+				}
+				c.close(chipFd);
+				rotaryRolling[i] = levels[i];
+			}
+
+			Pointer spec = Memory.allocateDirect(runtime, 2 * runtime.longSize());
+			c.clock_gettime(GpioChardevLib.CLOCK_MONOTONIC, spec);
+			long monotonicNS = spec.getNativeLong(0) * 1_000_000_000L + spec.getNativeLong(runtime.longSize());
+			monotonicToEpochNS = System.currentTimeMillis() * MS_TO_NS - monotonicNS;
+
+		} catch (Throwable t) {
+			logger.warn("GPIO character device is not available on this platform", t);
+			return false;
+		}
+
+		running = true;
+		thread = new Thread(this, "GPIO edges");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+		return true;
+	}
+
+	public void stop() {
+		running = false;
+		if (null != thread) {
+			try {
+				thread.join(POLL_TIMEOUT_MS * 2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		final int lines = lineFd.length;
+		try {
+			while (running) {
+				int ready = c.poll(pollFds, lines, POLL_TIMEOUT_MS);
+				if (ready > 0) {
+					for (int k = 0; k < lines; k++) {
+						if (0 != (GpioChardevLib.POLLIN & pollFds.getShort(8*k+6))) {
+							if (GpioChardevLib.EVENT_DATA_SIZE == c.read(lineFd[k], eventBytes, GpioChardevLib.EVENT_DATA_SIZE)) {
+								edge(k, event.getLong(0), event.getInt(8));
+							}
+						}
+						pollFds.putShort(8*k+6, (short)0);
+					}
+				}
+			}
+		} finally {
+			closeLines(lines);
+		}
+	}
+
+	private void closeLines(int count) {
+		int k = count;
+		while (--k>=0) {
+			c.close(lineFd[k]);
+		}
+	}
+
+	private void edge(int line, long timestampNS, int id) {
+		int input = lineInput[line];
+		int value = GpioChardevLib.GPIOEVENT_EVENT_RISING_EDGE == id ? 1 : 0;
+		long timeMS = toEpochMS(timestampNS);
+		long acquiredNS = toMonotonicNS(timestampNS);
+
+		int pins = inputs[input].edges.offsets.length;
+		if (1 == pins) {
+			long duration = 0 == lastEdgeNS[line] ? 0 : timestampNS - lastEdgeNS[line];
+			lastEdgeNS[line] = timestampNS;
+			record(GroveResponseSchema.MSG_DIGITALSAMPLE_20, inputs[input].register, timeMS, value, 0, 0, duration, acquiredNS);
+		} else {
+			setLevel(input, lineRole[line], pins, value);
+			int poll = levels[input];
+			if (poll != (0x3 & rotaryRolling[input])) {
+				rotaryRolling[input] = (rotaryRolling[input]<<2) | poll;
+				int key = 0xFF & rotaryRolling[input];
+				int step = key < Util.rotaryMap.length ? Util.rotaryMap[key] : 0;
+				if (0 != step) {
+					rotationState[input] += step;
+					long duration = 0 == lastStepNS[input] ? 0 : timestampNS - lastStepNS[input];
+					lastStepNS[input] = timestampNS;
+					int speedMicros = (int)Math.min(duration/1000, Integer.MAX_VALUE);
+					record(GroveResponseSchema.MSG_ENCODER_70, inputs[input].register, timeMS, rotationState[input], step, speedMicros, duration, acquiredNS);
+				}
+			}
+		}
+	}
+
+	//first line of an encoder is the high bit, matching the polled encoder read
+	private void setLevel(int input, int role, int pins, int value) {
+		int bit = 1 << (pins-1-role);
+		levels[input] = 0 != value ? (levels[input] | bit) : (levels[input] & ~bit);
+	}
+
+	private long toEpochMS(long timestampNS) {
+		if (clockKind < 0) {
+			//kernels before 5.7 stamp line events with CLOCK_REALTIME, later ones with CLOCK_MONOTONIC
+			long wallNS = System.currentTimeMillis() * MS_TO_NS;
+			clockKind = Math.abs(wallNS - timestampNS) < 60_000L * MS_TO_NS ? 1 : 0;
+		}
+		return (1 == clockKind ? timestampNS : timestampNS + monotonicToEpochNS) / MS_TO_NS;
+	}
+
+	//System.nanoTime is CLOCK_MONOTONIC on Linux so monotonic event stamps are used as they are
+	private long toMonotonicNS(long timestampNS) {
+		return 1 == clockKind ? timestampNS - monotonicToEpochNS : timestampNS;
+	}
+
+	private void record(int msgIdx, int connector, long time, int value, int delta, int speed, long duration, long acquiredNS) {
+		long h = head;
+		if (h - tail >= RING_SIZE) {
+			dropped++;
+			return;
+		}
+		int i = RING_MASK & (int)h;
+		ringMsg[i] = msgIdx;
+		ringConnector[i] = connector;
+		ringTime[i] = time;
+		ringValue[i] = value;
+		ringDelta[i] = delta;
+		ringSpeed[i] = speed;
+		ringDuration[i] = duration;
+		ringAcquired[i] = acquiredNS;
+		head = h+1;
+	}
+
+	/**
+	 * Writes waiting events to the pipe, called only by the stage which produces on the pipe.
+	 *
+	 * @return number of events written.
+	 */
+	public int drain(Pipe<GroveResponseSchema> responsePipe) {
+		long h = head;
+		long t = tail;
+		int count = 0;
+		while (t < h && Pipe.hasRoomForWrite(responsePipe)) {
+			int i = RING_MASK & (int)t;
+			int size = Pipe.addMsgIdx(responsePipe, ringMsg[i]);
+			Pipe.addIntValue(ringConnector[i], responsePipe);
+			Pipe.addLongValue(ringTime[i], responsePipe);
+			Pipe.addIntValue(ringValue[i], responsePipe);
+			if (GroveResponseSchema.MSG_ENCODER_70 == ringMsg[i]) {
+				Pipe.addIntValue(ringDelta[i], responsePipe);
+				Pipe.addIntValue(ringSpeed[i], responsePipe);
+			}
+			Pipe.addLongValue(ringDuration[i], responsePipe);
+			Pipe.addLongValue(ringAcquired[i], responsePipe);
+			Pipe.addLongValue(0, responsePipe); //stamped by the kernel as the edge arrived, no transfer
+			Pipe.publishWrites(responsePipe);
+			Pipe.confirmLowLevelWrite(responsePipe, size);
+			tail = ++t;
+			count++;
+		}
+		long d = dropped;
+		if (d != droppedReported) {
+			logger.warn("{} GPIO edges dropped, response pipe is backed up", d-droppedReported);
+			droppedReported = d;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.ociweb.pronghorn.iot.gpio;
+
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.Pointer;
+
+/**
+ * JNI library wrapper for mapping the Raspberry Pi GPIO registers through /dev/gpiomem.
+ */
+public interface GpioMemLib {
+    //C Library instance.
+    GpioMemLib instance = LibraryLoader.create(GpioMemLib.class).load("c");
+
+    //Filesystem constants.
+    int O_RDWR = 00000002;
+    int O_SYNC = 04010000;
+
+    //Memory mapping constants.
+    int PROT_READ = 0x1;
+    int PROT_WRITE = 0x2;
+    int MAP_SHARED = 0x01;
+
+    //Native Methods///////////////////////////////////////////////////////////
+    int open(String path, int flags);
+    int close(int fd);
+    Pointer mmap(Pointer addr, long length, int prot, int flags, int fd, long offset);
+    int munmap(Pointer addr, long length);
+}
@@ -0,0 +1,113 @@
+package com.ociweb.pronghorn.iot.gpio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jnr.ffi.Pointer;
+
+/**
+ * Direct access to the Raspberry Pi GPIO block mapped from /dev/gpiomem, which needs no root
+ * privileges. Reads and writes are single register accesses so they take well under a microsecond,
+ * compared to a full I2C round trip through the GrovePi firmware.
+ *
+ * Pins use BCM numbering, only the header pins 0 to 27 are allowed.
+ */
+public class PiGpioRegisters {
+
+	private static final Logger logger = LoggerFactory.getLogger(PiGpioRegisters.class);
+
+	public static final String DEVICE = "/dev/gpiomem";
+	public static final int MAX_HEADER_PIN = 27;
+
+	private static final int BLOCK_SIZE = 4096;
+
+	//register byte offsets, see BCM2835 ARM Peripherals section 6.1
+	private static final int GPFSEL0 = 0x00;
+	private static final int GPSET0  = 0x1C;
+	private static final int GPCLR0  = 0x28;
+	private static final int GPLEV0  = 0x34;
+
+	private static final int FSEL_INPUT  = 0b000;
+	private static final int FSEL_OUTPUT = 0b001;
+
+	private GpioMemLib c;
+	private Pointer base;
+
+	/**
+	 * @return false if the registers could not be mapped, eg when not running on a Pi.
+	 */
+	public boolean open() {
+		try {
+			c = GpioMemLib.instance;
+			int fd = c.open(DEVICE, GpioMemLib.O_RDWR | GpioMemLib.O_SYNC);
+			if (fd < 0) {
+				logger.warn("unable to open {}", DEVICE);
+				return false;
+			}
+			Pointer mapped = c.mmap(null, BLOCK_SIZE, GpioMemLib.PROT_READ | GpioMemLib.PROT_WRITE, GpioMemLib.MAP_SHARED, fd, 0);
+			c.close(fd); //the mapping stays valid
+			if (null == mapped || -1 == mapped.address()) {
+				logger.warn("unable to map {}", DEVICE);
+				return false;
+			}
+			base = mapped;
+			return true;
+		} catch (Throwable t) {
+			logger.warn("GPIO registers are not available on this platform", t);
+			return false;
+		}
+	}
+
+	public boolean isOpen() {
+		return null != base;
+	}
+
+	public void close() {
+		if (null != base) {
+			c.munmap(base, BLOCK_SIZE);
+			base = null;
+		}
+	}
+
+	public static boolean isHeaderPin(int pin) {
+		return pin >= 0 && pin <= MAX_HEADER_PIN;
+	}
+
+	public void configureInput(int pin) {
+		select(pin, FSEL_INPUT);
+	}
+
+	public void configureOutput(int pin) {
+		select(pin, FSEL_OUTPUT);
+	}
+
+	//10 pins of 3 bits in each select register, the only read-modify-write so it is synchronized
+	private synchronized void select(int pin, int function) {
+		int offset = GPFSEL0 + ((pin / 10) << 2);
+		int shift = (pin % 10) * 3;
+		int value = base.getInt(offset);
+		base.putInt(offset, (value & ~(0b111 << shift)) | (function << shift));
+	}
+
+	/**
+	 * @return 1 if the pin is high, 0 if low.
+	 */
+	public int read(int pin) {
+		return (base.getInt(GPLEV0) >>> pin) & 1;
+	}
+
+	/**
+	 * Level of every header pin, bit n is BCM pin n.
+	 */
+	public int readAll() {
+		return base.getInt(GPLEV0);
+	}
+
+	/**
+	 * Set and clear are separate write only registers so no locking is needed between pins.
+	 */
+	public void write(int pin, int value) {
+		base.putInt(0 != value ? GPSET0 : GPCLR0, 1 << pin);
+	}
+
+}
@@ -47,4 +47,45 @@ public interface I2CBacking {
      * @throws IllegalStateException if this method is invoked before {@link #configure(byte)}.
      */
     boolean write(byte address, byte[] message, int length);
+
+    /**
+     * Sends every message in the batch, in order, as one combined transaction where the
+     * backing supports it. Read results are placed back into the batch data at the
+     * position of each read. If a read fails its first byte is set to -2.
+     *
+     * The default implementation sends the messages one at a time using
+     * {@link #write(byte, byte[], int)} and {@link #read(byte, byte[], int)}.
+     *
+     * @param batch Messages to send.
+     *
+     * @return True if every message was transferred, and false otherwise.
+     *
+     * @throws IllegalStateException if this method is invoked before {@link #configure(byte)}.
+     */
+    default boolean transfer(I2CTransferBatch batch) {
+        boolean success = true;
+        byte[] data = batch.data();
+        byte[] scratch = batch.scratch();
+        int count = batch.count();
+        for (int i = 0; i < count; i++) {
+            int pos = batch.position(i);
+            int len = batch.length(i);
+            if (batch.isRead(i)) {
+                scratch[0] = -2;
+                byte[] result = read(batch.address(i), scratch, len);
+                if (result.length >= len) {
+                    System.arraycopy(result, 0, data, pos, len);
+                } else {
+                    if (len > 0) {
+                        data[pos] = -2;
+                    }
+                    success = false;
+                }
+            } else {
+                System.arraycopy(data, pos, scratch, 0, len);
+                success &= write(batch.address(i), scratch, len);
+            }
+        }
+        return success;
+    }
 }
@@ -0,0 +1,131 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+/**
+ * Orders the transactions of one I2C bus by deadline. Scheduled polls are due at the start of
+ * their block and released writes at the time allowed by the priority of their channel. A write
+ * is started only if its deadline comes before the next poll, or if the time the bus needs for
+ * it ends before the poll is due. Writes are never split, each one is a single transaction.
+ *
+ * The cost of a transaction is learned from the transfers actually made on the bus.
+ *
+ * Counters are written by the single stage thread which owns the arbiter and may be read
+ * from any thread for reporting.
+ */
+public class I2CBusArbiter {
+
+    private static final long DEFAULT_OVERHEAD_NS = 200_000;  //ioctl and start condition
+    private static final long DEFAULT_BYTE_NS = 90_000;       //9 clocks at 100kHz
+    private static final int  SMOOTHING_SHIFT = 3;            //each new sample weighs 1/8
+    private static final long DEFAULT_TOLERANCE_NS = 500_000;
+
+    public final int bus;
+
+    private long overheadNS = DEFAULT_OVERHEAD_NS;
+    private long byteNS = DEFAULT_BYTE_NS;
+    private final long toleranceNS;
+
+    private volatile long polls;
+    private volatile long missedPollDeadlines;
+    private volatile long maxPollLatenessNS;
+    private volatile long commands;
+    private volatile long missedCommandDeadlines;
+    private volatile long deferredCommands;
+
+    public I2CBusArbiter(int bus) {
+        this(bus, DEFAULT_TOLERANCE_NS);
+    }
+
+    /**
+     * @param toleranceNS How late a transaction may start before its deadline counts as missed.
+     */
+    public I2CBusArbiter(int bus, long toleranceNS) {
+        this.bus = bus;
+        this.toleranceNS = toleranceNS;
+    }
+
+    /**
+     * Estimated bus time for a transfer of one or more messages.
+     */
+    public long estimateNS(int messages, int bytes) {
+        return messages*overheadNS + bytes*byteNS;
+    }
+
+    /**
+     * Learns from a completed transfer.
+     */
+    public void recordTransfer(int messages, int bytes, long durationNS) {
+        if (bytes <= 2*messages) {
+            long perMessage = durationNS / Math.max(1, messages);
+            overheadNS += (perMessage - overheadNS) >> SMOOTHING_SHIFT;
+        } else {
+            long perByte = Math.max(0, durationNS - messages*overheadNS) / bytes;
+            byteNS += (perByte - byteNS) >> SMOOTHING_SHIFT;
+        }
+    }
+
+    /**
+     * Decides if a write may start now, messages and bytes include anything already batched with it.
+     *
+     * @param nextPollNS When the next poll block is due, Long.MAX_VALUE if nothing is polled.
+     * @param deadlineNS When the write is due.
+     */
+    public boolean admit(long nowNS, long nextPollNS, int messages, int bytes, long deadlineNS) {
+        if (deadlineNS <= nextPollNS || nowNS + estimateNS(messages, bytes) <= nextPollNS) {
+            return true;
+        }
+        deferredCommands++;
+        return false;
+    }
+
+    public void commandStarted(long nowNS, long deadlineNS) {
+        commands++;
+        if (nowNS - deadlineNS > toleranceNS) {
+            missedCommandDeadlines++;
+        }
+    }
+
+    public void pollStarted(long nowNS, long dueNS) {
+        polls++;
+        long late = nowNS - dueNS;
+        if (late > toleranceNS) {
+            missedPollDeadlines++;
+        }
+        if (late > maxPollLatenessNS) {
+            maxPollLatenessNS = late;
+        }
+    }
+
+    public long polls() {
+        return polls;
+    }
+
+    public long missedPollDeadlines() {
+        return missedPollDeadlines;
+    }
+
+    public long maxPollLatenessNS() {
+        return maxPollLatenessNS;
+    }
+
+    public long commands() {
+        return commands;
+    }
+
+    public long missedCommandDeadlines() {
+        return missedCommandDeadlines;
+    }
+
+    /**
+     * Times a write was held back so a poll could start on time.
+     */
+    public long deferredCommands() {
+        return deferredCommands;
+    }
+
+    @Override
+    public String toString() {
+        return "I2C bus "+bus+" polls "+polls+" missed "+missedPollDeadlines+" max late "+maxPollLatenessNS
+               +"ns, commands "+commands+" missed "+missedCommandDeadlines+" deferred "+deferredCommands;
+    }
+
+}
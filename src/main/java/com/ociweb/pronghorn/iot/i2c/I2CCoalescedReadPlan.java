@@ -0,0 +1,168 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.hardware.I2CConnection;
+
+/**
+ * Built once at graph construction time from the declared I2C inputs. Connections which
+ * read adjacent registers on the same address at the same rate are merged into a single
+ * burst read so the bus is only turned around once. The plan remembers where each original
+ * connection lives inside the burst so the response can be split back into one
+ * I2CResponseSchema message per connection, exactly as if each had been read on its own.
+ *
+ * Only connections whose read command is a single register byte are candidates, this is the
+ * common register pointer then auto-increment read used by the LSM9DS1, HTS221, LPS25H, ADXL345 etc.
+ * Connections with longer read commands (eg GrovePi firmware commands) or which drain a device
+ * FIFO are always left alone.
+ */
+public class I2CCoalescedReadPlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(I2CCoalescedReadPlan.class);
+
+    public static final int MAX_BURST_BYTES = 64;
+
+    /**
+     * Connections to be polled, merged connections are replaced by a single synthetic connection.
+     */
+    public final I2CConnection[] reads;
+
+    /**
+     * For each read the original connections it covers, in register order.
+     */
+    public final I2CConnection[][] members;
+
+    /**
+     * For each read the byte offset of each member inside the burst.
+     */
+    public final int[][] offsets;
+
+    private I2CCoalescedReadPlan(I2CConnection[] reads, I2CConnection[][] members, int[][] offsets) {
+        this.reads = reads;
+        this.members = members;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Plan where every connection is read on its own, used when coalescing is turned off.
+     */
+    public static I2CCoalescedReadPlan direct(I2CConnection[] inputs) {
+        I2CConnection[][] members = new I2CConnection[inputs.length][];
+        int[][] offsets = new int[inputs.length][];
+        int i = inputs.length;
+        while (--i>=0) {
+            members[i] = new I2CConnection[]{inputs[i]};
+            offsets[i] = new int[]{0};
+        }
+        return new I2CCoalescedReadPlan(inputs, members, offsets);
+    }
+
+    public static I2CCoalescedReadPlan build(I2CConnection[] inputs) {
+        return build(inputs, MAX_BURST_BYTES);
+    }
+
+    public static I2CCoalescedReadPlan build(I2CConnection[] inputs, int maxBurstBytes) {
+
+        I2CConnection[] sorted = Arrays.copyOf(inputs, inputs.length);
+        Arrays.sort(sorted, new Comparator<I2CConnection>() {
+            @Override
+            public int compare(I2CConnection a, I2CConnection b) {
+                int result = Integer.compare(0xFF&a.address, 0xFF&b.address);
+                if (0 == result) {
+                    result = Integer.compare(a.responseMS, b.responseMS);
+                }
+                if (0 == result) {
+                    result = Long.compare(a.delayAfterRequestNS, b.delayAfterRequestNS);
+                }
+                if (0 == result) {
+                    result = Integer.compare(startRegister(a), startRegister(b));
+                }
+                return result;
+            }
+        });
+
+        I2CConnection[] reads = new I2CConnection[inputs.length];
+        I2CConnection[][] members = new I2CConnection[inputs.length][];
+        int[][] offsets = new int[inputs.length][];
+        int count = 0;
+
+        int i = 0;
+        while (i < sorted.length) {
+            I2CConnection first = sorted[i];
+            int runEnd = i+1;
+            int nextRegister = startRegister(first) + first.readBytes;
+            int totalBytes = first.readBytes;
+
+            if (isCandidate(first)) {
+                while (runEnd < sorted.length
+                        && isCandidate(sorted[runEnd])
+                        && sorted[runEnd].address == first.address
+                        && sorted[runEnd].responseMS == first.responseMS
+                        && sorted[runEnd].delayAfterRequestNS == first.delayAfterRequestNS
+                        && startRegister(sorted[runEnd]) == nextRegister
+                        && totalBytes + sorted[runEnd].readBytes <= maxBurstBytes) {
+
+                    totalBytes += sorted[runEnd].readBytes;
+                    nextRegister += sorted[runEnd].readBytes;
+                    runEnd++;
+                }
+            }
+
+            int memberCount = runEnd-i;
+            I2CConnection[] group = new I2CConnection[memberCount];
+            int[] groupOffsets = new int[memberCount];
+            int offset = 0;
+            for (int j = 0; j < memberCount; j++) {
+                group[j] = sorted[i+j];
+                groupOffsets[j] = offset;
+                offset += group[j].readBytes;
+            }
+
+            if (1 == memberCount) {
+                reads[count] = first;
+            } else {
+                reads[count] = new I2CConnection(first.twig, first.address, first.readCmd, totalBytes, first.register,
+                                                 null, first.responseMS, first.movingAverageWindowMS, first.sendEveryValue);
+                logger.info("I2C reads coalesced for address {} connections {} into one burst of {} bytes",
+                            first.address, Arrays.toString(group), totalBytes);
+            }
+            members[count] = group;
+            offsets[count] = groupOffsets;
+            count++;
+            i = runEnd;
+        }
+
+        return new I2CCoalescedReadPlan(Arrays.copyOf(reads, count),
+                                        Arrays.copyOf(members, count),
+                                        Arrays.copyOf(offsets, count));
+    }
+
+    /**
+     * Total number of response messages produced by one pass over every read in this plan.
+     */
+    public int responseCount() {
+        int total = 0;
+        int i = members.length;
+        while (--i>=0) {
+            total += members[i].length;
+        }
+        return total;
+    }
+
+    private static boolean isCandidate(I2CConnection con) {
+        return null != con.readCmd && 1 == con.readCmd.length && con.readBytes > 0 && null == con.fifo;
+    }
+
+    private static int startRegister(I2CConnection con) {
+        return isCandidate(con) ? 0xFF & con.readCmd[0] : -1;
+    }
+
+    @Override
+    public String toString() {
+        return reads.length+" reads covering "+responseCount()+" connections";
+    }
+}
@@ -0,0 +1,125 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+import com.ociweb.pronghorn.pipe.Pipe;
+
+/**
+ * Writes handed from the stage which owns the command channels to the stage of another I2C bus.
+ * Single producer, single consumer, each side is one stage thread.
+ *
+ * The payload is copied in when offered so the command pipe can be released at once, no objects
+ * are created after construction unless a write is larger than any seen before.
+ * Connection blocking is applied by the offering stage before writes are handed over.
+ * The consumer marks the writes it has put on the bus so the offering stage can hold the
+ * acknowledgement of their release until then.
+ */
+public class I2CCommandQueue {
+
+    private static final int DEFAULT_SLOTS_BITS = 6;
+    private static final int DEFAULT_SLOT_BYTES = 64;
+
+    public final int bus;
+
+    private final int mask;
+    private final byte[] addresses;
+    private final int[] lengths;
+    private final long[] deadlines;
+    private final byte[][] payloads;
+    private volatile long head;
+    private volatile long tail;
+    private volatile long sent;
+
+    public I2CCommandQueue(int bus) {
+        this(bus, DEFAULT_SLOTS_BITS);
+    }
+
+    public I2CCommandQueue(int bus, int slotsBits) {
+        this.bus = bus;
+        int slots = 1<<slotsBits;
+        this.mask = slots-1;
+        this.addresses = new byte[slots];
+        this.lengths = new int[slots];
+        this.deadlines = new long[slots];
+        this.payloads = new byte[slots][];
+        int i = slots;
+        while (--i>=0) {
+            payloads[i] = new byte[DEFAULT_SLOT_BYTES];
+        }
+    }
+
+    public boolean hasRoom() {
+        return head-tail <= mask;
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Copies one write from the ring, caller must have checked {@link #hasRoom()}.
+     *
+     * @param deadlineNS When the write is due, from the priority of its channel.
+     */
+    public void offer(byte address, byte[] backing, int pos, int ringMask, int len, long deadlineNS) {
+        long h = head;
+        assert(h-tail <= mask) : "queue is full";
+        int i = mask & (int)h;
+        if (payloads[i].length < len) {
+            payloads[i] = new byte[len*2];
+        }
+        Pipe.copyBytesFromToRing(backing, pos, ringMask, payloads[i], 0, Integer.MAX_VALUE, len);
+        addresses[i] = address;
+        lengths[i] = len;
+        deadlines[i] = deadlineNS;
+        head = h+1;
+    }
+
+    /**
+     * Slot of the oldest waiting write, only valid when the queue is not empty.
+     * The slot is reused once {@link #release()} is called.
+     */
+    public int peek() {
+        return mask & (int)tail;
+    }
+
+    public byte address(int slot) {
+        return addresses[slot];
+    }
+
+    public byte[] payload(int slot) {
+        return payloads[slot];
+    }
+
+    public int length(int slot) {
+        return lengths[slot];
+    }
+
+    public long deadline(int slot) {
+        return deadlines[slot];
+    }
+
+    public void release() {
+        tail = tail+1;
+    }
+
+    /**
+     * Position just after the latest write offered, for the offering stage.
+     */
+    public long position() {
+        return head;
+    }
+
+    /**
+     * Called by the consumer once every released write has reached the bus or been dropped.
+     */
+    public void markSent() {
+        sent = tail;
+    }
+
+    /**
+     * True once every write offered before this position has reached the bus or been dropped.
+     */
+    public boolean isSent(long position) {
+        return sent-position >= 0;
+    }
+
+}
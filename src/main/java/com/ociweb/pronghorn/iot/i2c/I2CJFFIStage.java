@@ -1,6 +1,6 @@
 package com.ociweb.pronghorn.iot.i2c;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,8 +11,11 @@ import com.ociweb.gl.impl.schema.TrafficReleaseSchema;
 import com.ociweb.gl.impl.stage.AbstractTrafficOrderedStage;
 import com.ociweb.iot.hardware.HardwareImpl;
 import com.ociweb.iot.hardware.I2CConnection;
+import com.ociweb.iot.hardware.I2CFifo;
+import com.ociweb.pronghorn.iot.AdaptivePollSchedule;
 import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
 import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.iot.timing.PrecisionWaitStrategy;
 import com.ociweb.pronghorn.network.mqtt.MQTTClientGraphBuilder;
 import com.ociweb.pronghorn.pipe.Pipe;
 import com.ociweb.pronghorn.pipe.PipeReader;
@@ -30,29 +33,61 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
     
     private static final Logger logger = LoggerFactory.getLogger(I2CJFFIStage.class);
     private ScriptedSchedule schedule;
+    private AdaptivePollSchedule adaptive; //null when every read polls at its declared rate
     
     private I2CConnection[] inputs = null;
+    private I2CCoalescedReadPlan plan;
+    private I2CConnection[] reads = null;
+    private int responseSize;
     
     private byte[] workingBuffer;
     
+    //reads without a request delay and bursts of commands are each sent to the backing as one transfer
+    private final I2CTransferBatch pollBatch = new I2CTransferBatch();
+    private final I2CTransferBatch commandBatch = new I2CTransferBatch();
+    private final int[] pollBatchReads = new int[I2CTransferBatch.MAX_MESSAGES];
+    private final int[] pollBatchMsgs = new int[I2CTransferBatch.MAX_MESSAGES];
+    
     private int inProgressIdx = 0;
     private int scheduleIdx = 0;
     
     private long blockStartTime = 0;
+    private final PrecisionWaitStrategy waiter;
     
     private boolean awaitingResponse = false;
     
-    private static final int MAX_ADDR = 127;
+    public static final int MAX_ADDR = 127;
+    private static final long FORWARD_RATE_NS = 1_000_000; //how often a bus without inputs checks for handed over writes
+    
+    private final int bus;
+    private final I2CCommandQueue[] routes;  //by address, writes for devices on other buses, null with a single bus
+    private final I2CCommandQueue forwarded; //writes handed over by the stage owning the command channels
+    private final I2CCommandQueue[] routeQueues; //each queue found in routes once
+    
+    //a release is only acknowledged once its writes are on the bus, the last fragment is counted down when they are
+    private final boolean[] releaseHeld;        //by command pipe
+    private final long[][] heldRoutePositions;  //by command pipe then route queue, writes handed over before the hold
+    
+    //writes are only started when they can not push the next poll past its deadline
+    private final I2CBusArbiter arbiter;
+    private final long[] pipeDeadlineNS;  //by command pipe, from the priority of the channel
+    private final long[] waitingSince;    //by command pipe, when its next write was first held, zero if not waiting
+    private final int[] expectedBytes;    //by command pipe, length of its last write used to estimate the next
+    private static final int DEFAULT_EXPECTED_BYTES = 32;
+    
+    //failed transfers are tried again on a later cycle, slots are the reads, then the setup of each input, then the writes
+    private final I2CRetryBackoff retry;
+    private final int commandSlot;
+    private int pendingSetups;
+    private byte[] heldWrite = new byte[64]; //write which did not fit in a batch, kept until sent or abandoned
+    private byte heldAddress;
+    private int heldLength;
     
     private final boolean processInputs;
     private Number rate;
-    private long timeOut = 0;
-    private final int writeTime = 10; //it often takes 1 full ms just to contact the linux driver so this value must be a minimum of 3ms.
     
     //NOTE: on the pi without any RATE value this stage is run every .057 ms, this is how long 1 run takes to complete for the clock., 2 analog sensors.
     
-    public static final AtomicBoolean instanceCreated = new AtomicBoolean(false);
-    
     public I2CJFFIStage(GraphManager graphManager, 
     		MsgRuntime<?,?> runtime,
     		Pipe<TrafficReleaseSchema>[] goPipe,
@@ -60,23 +95,77 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
             Pipe<TrafficAckSchema>[] ackPipe,
             Pipe<I2CResponseSchema> i2cResponsePipe,
             HardwareImpl hardware) {
+        this(graphManager, runtime, goPipe, i2cPayloadPipes, ackPipe, i2cResponsePipe, hardware, hardware.getI2CBuses()[0], null);
+    }
+    
+    /**
+     * Stage for the default bus which owns the command channels, writes to addresses found in routes
+     * are handed to the stage of their bus.
+     */
+    public I2CJFFIStage(GraphManager graphManager, 
+    		MsgRuntime<?,?> runtime,
+    		Pipe<TrafficReleaseSchema>[] goPipe,
+            Pipe<I2CCommandSchema>[] i2cPayloadPipes,
+            Pipe<TrafficAckSchema>[] ackPipe,
+            Pipe<I2CResponseSchema> i2cResponsePipe,
+            HardwareImpl hardware, int bus, I2CCommandQueue[] routes) {
+        this(graphManager, runtime, goPipe, i2cPayloadPipes, ackPipe, i2cResponsePipe, hardware, bus, routes, null);
+    }
+    
+    /**
+     * Stage for one more bus, it polls the inputs on that bus and sends the writes handed over by the default bus stage.
+     */
+    public I2CJFFIStage(GraphManager graphManager, 
+    		MsgRuntime<?,?> runtime,
+            Pipe<I2CResponseSchema> i2cResponsePipe,
+            HardwareImpl hardware, I2CCommandQueue forwarded) {
+        this(graphManager, runtime, new Pipe[0], new Pipe[0], new Pipe[0], i2cResponsePipe, hardware, forwarded.bus, null, forwarded);
+    }
+    
+    private I2CJFFIStage(GraphManager graphManager, 
+    		MsgRuntime<?,?> runtime,
+    		Pipe<TrafficReleaseSchema>[] goPipe,
+            Pipe<I2CCommandSchema>[] i2cPayloadPipes,
+            Pipe<TrafficAckSchema>[] ackPipe,
+            Pipe<I2CResponseSchema> i2cResponsePipe,
+            HardwareImpl hardware, int bus, I2CCommandQueue[] routes, I2CCommandQueue forwarded) {
         super(graphManager, runtime, hardware, i2cPayloadPipes, goPipe, ackPipe, i2cResponsePipe);
         
-        assert(!instanceCreated.getAndSet(true)) : "Only one i2c manager can be running at a time";
-        
         this.fromCommandChannels = i2cPayloadPipes;
         this.i2cResponsePipe = i2cResponsePipe;
+        this.bus = bus;
+        this.routes = routes;
+        this.forwarded = forwarded;
+        this.routeQueues = distinctQueues(routes);
+        this.releaseHeld = new boolean[i2cPayloadPipes.length];
+        this.heldRoutePositions = new long[i2cPayloadPipes.length][routeQueues.length];
+        
+        this.arbiter = hardware.newI2CArbiter(bus);
+        int p = i2cPayloadPipes.length;
+        this.pipeDeadlineNS = new long[p];
+        this.waitingSince = new long[p];
+        this.expectedBytes = new int[p];
+        while (--p>=0) {
+            this.pipeDeadlineNS[p] = hardware.getI2CPriority(i2cPayloadPipes[p]).deadlineNS;
+            this.expectedBytes[p] = DEFAULT_EXPECTED_BYTES;
+        }
         
         //force all commands to happen upon publish and release
         this.supportsBatchedPublish = false;
         this.supportsBatchedRelease = false;
         
-        this.inputs = hardware.getI2CInputs();
+        this.inputs = hardware.getI2CInputs(bus);
+        this.plan = hardware.buildI2CReadPlan(bus);
+        this.waiter = hardware.newWaitStrategy("I2C poll bus "+bus);
+        this.reads = plan.reads;
+        this.commandSlot = reads.length+inputs.length;
+        this.retry = hardware.newI2CRetryBackoff(commandSlot+1);
         
-        if (((HardwareImpl)this.hardware).hasI2CInputs()) {
-            this.schedule = ((HardwareImpl)this.hardware).buildI2CPollSchedule();
+        if (hardware.hasI2CInputs(bus)) {
+            this.adaptive = ((HardwareImpl)this.hardware).buildAdaptiveI2CSchedule(reads);
+            this.schedule = null==adaptive ? ((HardwareImpl)this.hardware).buildI2CPollSchedule(reads) : adaptive.schedule();
             
-            logger.info("I2C Schedule: {} ", this.schedule);
+            logger.info("I2C Schedule: {} for {}", this.schedule, this.plan);
             
         } else {
             logger.debug("skipped buildI2CPollSchedule has no i2c inputs" );
@@ -107,23 +196,40 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
         
         }else{
             logger.debug("Schedule is null");
+            if (null!=forwarded) {
+                GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, FORWARD_RATE_NS, this);
+            }
         }
         
         rate = (Number)GraphManager.getNota(graphManager, this.stageId,  GraphManager.SCHEDULE_RATE, null);
         
-        processInputs = hardware.hasI2CInputs() && hasListeners();
+        processInputs = hardware.hasI2CInputs(bus) && hasListeners();
         
 		GraphManager.addNota(graphManager, GraphManager.DOT_BACKGROUND, "darksalmon", this);
 
     }
     
+    private static I2CCommandQueue[] distinctQueues(I2CCommandQueue[] routes) {
+        I2CCommandQueue[] result = new I2CCommandQueue[0];
+        if (null != routes) {
+            for (I2CCommandQueue route : routes) {
+                if (null != route && !Arrays.asList(result).contains(route)) {
+                    result = Arrays.copyOf(result, result.length+1);
+                    result[result.length-1] = route;
+                }
+            }
+        }
+        return result;
+    }
+    
     @Override
     public void startup(){
         super.startup();
         
         workingBuffer = new byte[2048]; //TODO: find a way to eliminate this temp storage.
+        responseSize = Pipe.sizeOf(I2CResponseSchema.instance, I2CResponseSchema.MSG_RESPONSE_10);
         
-        logger.debug("Polling "+this.inputs.length+" i2cInput(s)");
+        logger.debug("Polling "+this.inputs.length+" i2cInput(s) on bus "+bus);
         
         for (int i = 0; i < inputs.length; i++) {
             setupSingleInput(i);
@@ -139,70 +245,104 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
         }
     }
     
+    /**
+     * One attempt to set up an input, if the device does not answer it is tried again from run
+     * once its backoff has passed.
+     */
     private void setupSingleInput(int i) {
         if (null != inputs[i].setup) {
             assert(hardware!=null);
-            I2CBacking i2cBacking = ((HardwareImpl)hardware).getI2CBacking();
+            I2CBacking i2cBacking = ((HardwareImpl)hardware).getI2CBacking(bus);
             I2CConnection connection = inputs[i];
             assert(i2cBacking!=null);
-            timeOut = hardware.nanoTime() + (writeTime*35_000_000);
-            while(!i2cBacking.write(connection.address,
-                    connection.setup,
-                    connection.setup.length) && hardware.nanoTime()<timeOut){
-            	
-            		};
-                    if (hardware.nanoTime()>timeOut) {
-                        logger.warn("on setup failed to get I2C bus master, waited 35ms");
-                        //timeout trying to get the i2c bus
-                        return;
-                    }
-                    
-                    if(connection.readBytesAtStartUp > 0){ // doing i2c read at start up
-                        
-                        long delayAfterRequestNS = connection.delayAfterRequestNS;
-                        long delayUntil = hardware.nanoTime()+delayAfterRequestNS;
-                        
-                        if (delayAfterRequestNS>0) {
-                            try {
-                            	//some slow platforms will not sleep long enough so we spin yield below
-                                Thread.sleep(delayAfterRequestNS/1_000_000,(int) (delayAfterRequestNS%1_000_000));
-                                long dif;
-                                while ((dif = (delayUntil-hardware.nanoTime()))>0) {
-                                	if (dif>100) {
-                                		Thread.yield();
-                                	}
-                                }
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                requestShutdown();
-                                return;
-                            }
-            				
-                        }
-                        
-                        PipeWriter.presumeWriteFragment(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10);
-                        PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11, connection.address);
-                        PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13, hardware.currentTimeMillis());
-                        PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14, connection.setup[0]);
-                        
-                        workingBuffer[0] = -2;//this is the non-read case read did not populate the array.
-                        byte[] temp = i2cBacking.read(connection.address, workingBuffer, connection.readBytesAtStartUp);                        
-                        PipeWriter.writeBytes(i2cResponsePipe, 
-                        		  I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12, 
-                        		  temp, 0, connection.readBytesAtStartUp, Integer.MAX_VALUE);
-                        
-                        
-                        PipeWriter.publishWrites(i2cResponsePipe);
-                        
-                    }
+            int slot = reads.length+i;
+            
+            if (!i2cBacking.write(connection.address, connection.setup, connection.setup.length)) {
+                if (1 == retry.failed(slot, hardware.nanoTime())) {
+                    pendingSetups++;
+                    logger.warn("setup of I2C address {} on bus {} failed, will retry", connection.address, bus);
+                }
+                return;
+            }
+            if (retry.succeeded(slot)) {
+                pendingSetups--;
+                logger.info("setup of I2C address {} on bus {} recovered", connection.address, bus);
+            }
+            
+            if(connection.readBytesAtStartUp > 0){ // doing i2c read at start up
+                
+                long delayAfterRequestNS = connection.delayAfterRequestNS;
+                long delayUntil = hardware.nanoTime()+delayAfterRequestNS;
+                
+                if (delayAfterRequestNS>0 && !waiter.waitUntil(delayUntil)) {
+                    requestShutdown();
+                    return;
+                }
+                
+                PipeWriter.presumeWriteFragment(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10);
+                PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11, connection.address);
+                PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13, hardware.currentTimeMillis());
+                PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14, connection.setup[0]);
+                
+                workingBuffer[0] = -2;//this is the non-read case read did not populate the array.
+                long acquiredNS = hardware.nanoTime();
+                byte[] temp = i2cBacking.read(connection.address, workingBuffer, connection.readBytesAtStartUp);                        
+                long transferNS = hardware.nanoTime()-acquiredNS;
+                PipeWriter.writeBytes(i2cResponsePipe, 
+                		  I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12, 
+                		  temp, 0, connection.readBytesAtStartUp, Integer.MAX_VALUE);
+                PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15, acquiredNS);
+                PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TRANSFERNS_16, transferNS);
+                
+                PipeWriter.publishWrites(i2cResponsePipe);
+            }
         }
         logger.debug("I2C setup {} complete",inputs[i].address);
     }
     
+    private void retryPendingSetups() {
+        long now = hardware.nanoTime();
+        for (int i = 0; i < inputs.length && pendingSetups > 0; i++) {
+            int slot = reads.length+i;
+            if (retry.isWaiting(slot) && retry.isReady(slot, now)
+                && (!hasListeners() || Pipe.hasRoomForWrite(i2cResponsePipe, responseSize))) {
+                setupSingleInput(i);
+            }
+        }
+    }
+    
+    /**
+     * False while the read is backing off after a failure, or is polled at a backed off rate and skips this slot.
+     */
+    private boolean isPolled(int readIdx, long now) {
+        return retry.isReady(readIdx, now) && (null==adaptive || adaptive.isDue(readIdx, now));
+    }
+    
+    private void pollFailed(int readIdx, long now) {
+        if (1 == retry.failed(readIdx, now)) {
+            logger.warn("read of I2C address {} on bus {} failed, will retry", reads[readIdx].address, bus);
+        }
+    }
+    
+    private void pollSucceeded(int readIdx) {
+        if (retry.succeeded(readIdx)) {
+            logger.info("read of I2C address {} on bus {} recovered", reads[readIdx].address, bus);
+        }
+    }
+    
     
     @Override
     public void run() {
         
+        if (pendingSetups > 0) {
+            retryPendingSetups();
+        }
+        if (null!=forwarded) {
+            sendForwardedCommands(((HardwareImpl)hardware).getI2CBacking(bus));
+        } else if (retry.isWaiting(commandSlot)) {
+            sendHeldCommands(((HardwareImpl)hardware).getI2CBacking(bus));
+        }
+        
         long prcRelease = hardware.nanoTime();
         
         
@@ -220,33 +360,45 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
                         }
                         return; //Enough time has not elapsed to start next block on schedule
                     } else {
-                    	int padding = 200; //ns
-                        long block = ((hardware.nanoTime()-blockStartTime)) - padding;
-                        if (block > 0) {
-                            try {
-                                Thread.sleep(block/1_000_000,(int)(block%1_000_000));
-                                long dif;
-                                while ((dif = (blockStartTime-hardware.nanoTime()))>0) {
-                                	if (dif>100) {
-                                		Thread.yield();
-                                	}
-                                }
-                            } catch (InterruptedException e) {
-                                requestShutdown();
-                                return;
-                            }//some slow platforms will NOT sleep long enough above so we spin below.
+                        //the arbiter only starts writes which finish before the block is due
+                        processReleasedCommands(waitTime);
+                        if (!waiter.waitUntil(blockStartTime)) {
+                            requestShutdown();
+                            return;
                         }
                     }
                 }
                 
-                I2CBacking i2cBacking = ((HardwareImpl)hardware).getI2CBacking();
+                I2CBacking i2cBacking = ((HardwareImpl)hardware).getI2CBacking(bus);
+                arbiter.pollStarted(hardware.nanoTime(), blockStartTime);
                 
                 do{
                     inProgressIdx = schedule.script[scheduleIdx];
                     
                     if(inProgressIdx != -1) {
                         
-                        if (!PipeWriter.hasRoomForWrite(i2cResponsePipe)) {
+                        if (null != this.reads[inProgressIdx].fifo) {
+                            if (!Pipe.hasRoomForWrite(i2cResponsePipe, responseSize)) {
+                                logger.warn("outgoing pipe is backed up, unable to drain FIFO {}", i2cResponsePipe);
+                                return;
+                            }
+                            if (retry.isReady(inProgressIdx, hardware.nanoTime())) {
+                                sendFifoRead(i2cBacking, inProgressIdx);
+                            }
+                            scheduleIdx = (scheduleIdx+1) % schedule.script.length;
+                            continue;
+                        }
+                        
+                        if (0 == this.reads[inProgressIdx].delayAfterRequestNS) {
+                            int consumed = sendPollBatch(i2cBacking);
+                            if (consumed > 0) {
+                                scheduleIdx = (scheduleIdx+consumed) % schedule.script.length;
+                                continue;
+                            }
+                            //zero means the response pipe is full, handled below
+                        }
+                        
+                        if (!Pipe.hasRoomForWrite(i2cResponsePipe, responseSize*plan.members[inProgressIdx].length)) {
                             if (hardware.nanoTime()>prcRelease) {
                                 //we are going to miss the schedule due to backup in the pipes, this is common when the unit tests run or the user has put in a break point.
                                 processReleasedCommands(rate.longValue());//if this backup runs long term we never release the commands so we must do it now.
@@ -255,57 +407,38 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
                             return;//oops the pipe is full so we can not read, postpone this work until the pipe is cleared.
                         }
                         
-                        I2CConnection connection = this.inputs[inProgressIdx];
-                        timeOut = hardware.nanoTime() + (writeTime*35_000_000);///I2C allows for clients to abandon master after 35 ms
+                        I2CConnection connection = this.reads[inProgressIdx];
+                        long now = hardware.nanoTime();
                         
                         //          logger.info("i2c request read from address: {} register: {} ",connection.address, connection.readCmd[0]);//+Arrays.toString(Arrays.copyOfRange(connection.readCmd, 0, connection.readCmd.length)));
                         
-                        //Write the request to read
+                        //Write the request to read, a device which fails is skipped until its backoff has passed
                         
-                        while(!i2cBacking.write((byte)connection.address, connection.readCmd, connection.readCmd.length) && hardware.nanoTime()<timeOut){}
-                        
-                        if (hardware.nanoTime()>timeOut) {
-                            logger.warn("on write failed to get I2C bus master, waited 35ms");
-                            //timeout trying to get the i2c bus
-                            return;
+                        if (!isPolled(inProgressIdx, now)) {
+                            scheduleIdx = (scheduleIdx+1) % schedule.script.length;
+                            continue;
+                        }
+                        if (!i2cBacking.write((byte)connection.address, connection.readCmd, connection.readCmd.length)) {
+                            pollFailed(inProgressIdx, now);
+                            scheduleIdx = (scheduleIdx+1) % schedule.script.length;
+                            continue;
                         }
                         
-                        long delayAfterRequestNS = this.inputs[inProgressIdx].delayAfterRequestNS;
+                        long delayAfterRequestNS = connection.delayAfterRequestNS;
                         long delayUntil = hardware.nanoTime()+delayAfterRequestNS;
                         
-                        if (delayAfterRequestNS>0) {
-                            try {
-                            	//some slow platforms will not sleep long enough so we spin yield below
-                                Thread.sleep(delayAfterRequestNS/1_000_000,(int) (delayAfterRequestNS%1_000_000));
-                                long dif;
-                                while ((dif = (delayUntil-hardware.nanoTime()))>0) {
-                                	if (dif>100) {
-                                		Thread.yield();
-                                	}
-                                }
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                requestShutdown();
-                                return;
-                            }
-                            
-                            
+                        if (delayAfterRequestNS>0 && !waiter.waitUntil(delayUntil)) {
+                            requestShutdown();
+                            return;
                         }
 
                         //logger.info("i2c reading result {} delay before read {} ",Arrays.toString(Arrays.copyOfRange(temp, 0, this.inputs[inProgressIdx].readBytes )),this.inputs[inProgressIdx].delayAfterRequestNS);
                         
-                        PipeWriter.presumeWriteFragment(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10);
-                        PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11, this.inputs[inProgressIdx].address);
-                        PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13, hardware.currentTimeMillis());
-                        PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14, this.inputs[inProgressIdx].register);
-                        
                         workingBuffer[0] = -2;
-                        byte[] temp = i2cBacking.read(this.inputs[inProgressIdx].address, workingBuffer, this.inputs[inProgressIdx].readBytes);                       
-                        PipeWriter.writeBytes(i2cResponsePipe, 
-                        		   I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12, 
-                        		   temp, 0, this.inputs[inProgressIdx].readBytes, Integer.MAX_VALUE);
-                        
-                        PipeWriter.publishWrites(i2cResponsePipe);
+                        long acquiredNS = hardware.nanoTime();
+                        byte[] temp = i2cBacking.read(connection.address, workingBuffer, connection.readBytes);
+                        publishResponses(inProgressIdx, temp, 0, hardware.currentTimeMillis(), acquiredNS, hardware.nanoTime()-acquiredNS);
+                        pollSucceeded(inProgressIdx);
                         
                         
                     } else {
@@ -332,6 +465,369 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
         }
     }
     
+    /**
+     * Sends the run of reads starting at scheduleIdx which need no delay between request and
+     * response as a single transfer, stopping at the end of the block or at the first read
+     * which needs a delay. Reads backing off after a failure are skipped for this block.
+     * 
+     * @return script entries consumed, zero if the response pipe has no room
+     */
+    private int sendPollBatch(I2CBacking i2cBacking) {
+        pollBatch.clear();
+        int count = 0;
+        int consumed = 0;
+        int responses = 0;
+        int idx = scheduleIdx;
+        int entry;
+        long now = hardware.nanoTime();
+        while (-1 != (entry = schedule.script[idx]) && count < pollBatchReads.length) {
+            I2CConnection connection = this.reads[entry];
+            if (connection.delayAfterRequestNS > 0 || null != connection.fifo) {
+                break;
+            }
+            if (isPolled(entry, now)) {
+                int members = plan.members[entry].length;
+                if (!pollBatch.hasRoom(2, connection.readCmd.length+connection.readBytes)
+                    || !Pipe.hasRoomForWrite(i2cResponsePipe, responseSize*(responses+members))) {
+                    break;
+                }
+                pollBatch.addWrite(connection.address, connection.readCmd, 0, Integer.MAX_VALUE, connection.readCmd.length);
+                pollBatchReads[count] = entry;
+                pollBatchMsgs[count] = pollBatch.addRead(connection.address, connection.readBytes);
+                count++;
+                responses += members;
+            }
+            consumed++;
+            idx = (idx+1) % schedule.script.length;
+        }
+        
+        if (count > 0) {
+            long start = hardware.nanoTime();
+            if (i2cBacking.transfer(pollBatch)) {
+                long transferNS = hardware.nanoTime()-start;
+                arbiter.recordTransfer(pollBatch.count(), pollBatch.dataLength(), transferNS);
+                long time = hardware.currentTimeMillis();
+                byte[] data = pollBatch.data();
+                for (int i = 0; i < count; i++) {
+                    publishResponses(pollBatchReads[i], data, pollBatch.position(pollBatchMsgs[i]), time, start, transferNS);
+                    pollSucceeded(pollBatchReads[i]);
+                }
+            } else if (1 == count) {
+                pollFailed(pollBatchReads[0], start);
+            } else {
+                //one device failing aborts the whole transfer, each read is sent alone so only the failing ones back off
+                for (int i = 0; i < count; i++) {
+                    sendSingleRead(i2cBacking, pollBatchReads[i], start);
+                }
+            }
+        }
+        return consumed;
+    }
+    
+    private void sendSingleRead(I2CBacking i2cBacking, int readIdx, long now) {
+        I2CConnection connection = this.reads[readIdx];
+        pollBatch.clear();
+        pollBatch.addWrite(connection.address, connection.readCmd, 0, Integer.MAX_VALUE, connection.readCmd.length);
+        int msg = pollBatch.addRead(connection.address, connection.readBytes);
+        long acquiredNS = hardware.nanoTime();
+        if (i2cBacking.transfer(pollBatch)) {
+            long transferNS = hardware.nanoTime()-acquiredNS;
+            publishResponses(readIdx, pollBatch.data(), pollBatch.position(msg), hardware.currentTimeMillis(), acquiredNS, transferNS);
+            pollSucceeded(readIdx);
+        } else {
+            pollFailed(readIdx, now);
+        }
+    }
+    
+    /**
+     * Reads the fill level of the device FIFO then takes every waiting frame, each transfer
+     * holds as many frames as one I2C_RDWR call allows and is published as one response.
+     * The first byte of each response is the number of frames still waiting after it.
+     */
+    private void sendFifoRead(I2CBacking i2cBacking, int readIdx) {
+        I2CConnection connection = this.reads[readIdx];
+        I2CFifo fifo = connection.fifo;
+        long now = hardware.nanoTime();
+        
+        pollBatch.clear();
+        pollBatch.addWrite(connection.address, connection.readCmd, 0, Integer.MAX_VALUE, connection.readCmd.length);
+        int levelMsg = pollBatch.addRead(connection.address, 1);
+        if (!i2cBacking.transfer(pollBatch)) {
+            pollFailed(readIdx, now);
+            return;
+        }
+        int level = fifo.levelMask & pollBatch.data()[pollBatch.position(levelMsg)];
+        long time = hardware.currentTimeMillis();
+        
+        while (level > 0 && Pipe.hasRoomForWrite(i2cResponsePipe, responseSize)) {
+            int frames = Math.min(level, fifo.maxFramesPerTransfer);
+            pollBatch.clear();
+            for (int f = 0; f < frames; f++) {
+                for (int r = 0; r < fifo.frameRegisters.length; r++) {
+                    pollBatch.addWrite(connection.address, fifo.frameRegisters, r, Integer.MAX_VALUE, 1);
+                    pollBatch.addRead(connection.address, fifo.frameReadBytes[r]);
+                }
+            }
+            long start = hardware.nanoTime();
+            if (!i2cBacking.transfer(pollBatch)) {
+                pollFailed(readIdx, start);
+                return;
+            }
+            long transferNS = hardware.nanoTime()-start;
+            arbiter.recordTransfer(pollBatch.count(), pollBatch.dataLength(), transferNS);
+            level -= frames;
+            
+            //frames are gathered behind the count of those still waiting
+            workingBuffer[0] = (byte)level;
+            int length = 1;
+            byte[] data = pollBatch.data();
+            for (int m = 0; m < pollBatch.count(); m++) {
+                if (pollBatch.isRead(m)) {
+                    System.arraycopy(data, pollBatch.position(m), workingBuffer, length, pollBatch.length(m));
+                    length += pollBatch.length(m);
+                }
+            }
+            
+            PipeWriter.presumeWriteFragment(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10);
+            PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11, connection.address);
+            PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13, time);
+            PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14, connection.register);
+            PipeWriter.writeBytes(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12, workingBuffer, 0, length, Integer.MAX_VALUE);
+            PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15, start);
+            PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TRANSFERNS_16, transferNS);
+            PipeWriter.publishWrites(i2cResponsePipe);
+        }
+        pollSucceeded(readIdx);
+    }
+    
+    /**
+     * One read may cover many connections, each gets its own response as if it was read alone.
+     * 
+     * @param acquiredNS nanoTime taken just before the transfer started
+     * @param transferNS how long the transfer took
+     */
+    private void publishResponses(int readIdx, byte[] source, int sourcePos, long time, long acquiredNS, long transferNS) {
+        I2CConnection[] members = plan.members[readIdx];
+        int[] offsets = plan.offsets[readIdx];
+        if (null!=adaptive) {
+            int hash = 1;
+            int i = reads[readIdx].readBytes;
+            while (--i>=0) {
+                hash = 31*hash + source[sourcePos+i];
+            }
+            adaptive.sample(readIdx, hash, hardware.nanoTime());
+        }
+        for (int m = 0; m < members.length; m++) {
+            PipeWriter.presumeWriteFragment(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10);
+            PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11, members[m].address);
+            PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13, time);
+            PipeWriter.writeInt(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14, members[m].register);
+            PipeWriter.writeBytes(i2cResponsePipe, 
+            		   I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12, 
+            		   source, sourcePos+offsets[m], members[m].readBytes, Integer.MAX_VALUE);
+            PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15, acquiredNS);
+            PipeWriter.writeLong(i2cResponsePipe, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TRANSFERNS_16, transferNS);
+            PipeWriter.publishWrites(i2cResponsePipe);
+        }
+    }
+    
+    /**
+     * Sends the batched writes as one transfer, on failure they are held and tried again later.
+     * 
+     * @return true if no writes are held
+     */
+    private boolean flushCommands(I2CBacking i2cBacking) {
+        if (retry.isWaiting(commandSlot)) {
+            return false;
+        }
+        if (!commandBatch.isEmpty()) {
+            long start = hardware.nanoTime();
+            if (!i2cBacking.transfer(commandBatch)) {
+                return commandsFailed(start);
+            }
+            arbiter.recordTransfer(commandBatch.count(), commandBatch.dataLength(), hardware.nanoTime()-start);
+            commandBatch.clear();
+        }
+        return true;
+    }
+    
+    /**
+     * Adds a write to the batch, if it does not fit it is held and sent on its own.
+     */
+    private void sendCommand(I2CBacking i2cBacking, byte addr, byte[] backing, int pos, int mask, int len) {
+        if (!commandBatch.hasRoom(1, len)) {
+            flushCommands(i2cBacking);
+        }
+        if (!retry.isWaiting(commandSlot) && commandBatch.hasRoom(1, len)) {
+            commandBatch.addWrite(addr, backing, pos, mask, len);
+            return;
+        }
+        //too large for any batch or the batch failed, must grow if calls are needing more room.
+        if (heldWrite.length < len) {
+            heldWrite = new byte[len*2];
+        }
+        Pipe.copyBytesFromToRing(backing, pos, mask, heldWrite, 0, Integer.MAX_VALUE, len);
+        heldAddress = addr;
+        heldLength = len;
+        if (!retry.isWaiting(commandSlot)) {
+            long now = hardware.nanoTime();
+            if (i2cBacking.write(heldAddress, heldWrite, heldLength)) {
+                heldLength = 0;
+            } else {
+                commandsFailed(now);
+            }
+        }
+    }
+    
+    /**
+     * Tries the held writes again once their backoff has passed.
+     * 
+     * @return true if no writes are held
+     */
+    private boolean sendHeldCommands(I2CBacking i2cBacking) {
+        if (!retry.isWaiting(commandSlot)) {
+            return true;
+        }
+        long now = hardware.nanoTime();
+        if (!retry.isReady(commandSlot, now)) {
+            return false;
+        }
+        if (!commandBatch.isEmpty()) {
+            if (!i2cBacking.transfer(commandBatch)) {
+                return commandsFailed(now);
+            }
+            commandBatch.clear();
+        }
+        if (heldLength > 0) {
+            if (!i2cBacking.write(heldAddress, heldWrite, heldLength)) {
+                return commandsFailed(now);
+            }
+            heldLength = 0;
+        }
+        if (retry.succeeded(commandSlot)) {
+            logger.info("I2C writes on bus {} recovered", bus);
+        }
+        return true;
+    }
+    
+    /**
+     * @return true if the held writes were dropped after their last attempt
+     */
+    private boolean commandsFailed(long now) {
+        int failures = retry.failed(commandSlot, now);
+        if (1 == failures) {
+            logger.warn("I2C write on bus {} failed, will retry", bus);
+        }
+        if (failures < retry.maxAttempts) {
+            return false;
+        }
+        logger.warn("dropped I2C writes on bus {} after {} attempts", bus, failures);
+        commandBatch.clear();
+        heldLength = 0;
+        retry.abandon(commandSlot);
+        return true;
+    }
+    
+    /**
+     * Sends the writes handed over for this bus, batched like the writes of the command channels.
+     */
+    private void sendForwardedCommands(I2CBacking i2cBacking) {
+        long nextPoll = nextPollDue();
+        while (sendHeldCommands(i2cBacking) && !forwarded.isEmpty()) {
+            int slot = forwarded.peek();
+            int len = forwarded.length(slot);
+            long now = hardware.nanoTime();
+            if (!arbiter.admit(now, nextPoll, commandBatch.count()+1, commandBatch.dataLength()+len, forwarded.deadline(slot))) {
+                break;
+            }
+            arbiter.commandStarted(now, forwarded.deadline(slot));
+            sendCommand(i2cBacking, forwarded.address(slot), forwarded.payload(slot), 0, Integer.MAX_VALUE, len);
+            forwarded.release();
+        }
+        if (flushCommands(i2cBacking)) {
+            forwarded.markSent();
+        }
+    }
+    
+    /**
+     * When the next poll block must start, writes may not run past it unless they are due first.
+     */
+    private long nextPollDue() {
+        return processInputs ? blockStartTime : Long.MAX_VALUE;
+    }
+    
+    private long writeDeadline(int activePipe, long now) {
+        if (0 == waitingSince[activePipe]) {
+            waitingSince[activePipe] = now;
+        }
+        return waitingSince[activePipe] + pipeDeadlineNS[activePipe];
+    }
+    
+    /**
+     * False when the next fragment is a write which would delay the next poll and is not yet due.
+     */
+    private boolean isAdmitted(int activePipe, Pipe<I2CCommandSchema> pipe) {
+        if (!PipeReader.peekMsg(pipe, I2CCommandSchema.MSG_COMMAND_7)) {
+            return true;
+        }
+        long now = hardware.nanoTime();
+        long deadline = writeDeadline(activePipe, now);
+        if (arbiter.admit(now, nextPollDue(), commandBatch.count()+1, commandBatch.dataLength()+expectedBytes[activePipe], deadline)) {
+            arbiter.commandStarted(now, deadline);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * False when the next fragment is a write for another bus whose queue is full.
+     */
+    private boolean hasRouteRoom(Pipe<I2CCommandSchema> pipe) {
+        if (null==routes || !PipeReader.peekMsg(pipe, I2CCommandSchema.MSG_COMMAND_7)) {
+            return true;
+        }
+        I2CCommandQueue route = routes[MAX_ADDR & PipeReader.peekInt(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_ADDRESS_12)];
+        return null==route || route.hasRoom();
+    }
+    
+    /**
+     * False when the next fragment blocks a channel or connection and the writes before it could not
+     * be sent, it is left on the pipe so its delay only starts once they are retried successfully.
+     */
+    private boolean isSentBeforeBlock(Pipe<I2CCommandSchema> pipe, I2CBacking i2cBacking) {
+        return PipeReader.peekMsg(pipe, I2CCommandSchema.MSG_COMMAND_7) || flushCommands(i2cBacking);
+    }
+    
+    /**
+     * Holds the acknowledgement of the release on this pipe until every write taken so far,
+     * here or handed to another bus, has been sent.
+     */
+    private void holdRelease(int activePipe) {
+        releaseHeld[activePipe] = true;
+        long[] positions = heldRoutePositions[activePipe];
+        int q = routeQueues.length;
+        while (--q>=0) {
+            positions[q] = routeQueues[q].position();
+        }
+    }
+    
+    /**
+     * True once the writes a held release waits on have reached the bus or been dropped after their last attempt.
+     */
+    private boolean isHeldReleaseSent(int activePipe, I2CBacking i2cBacking) {
+        if (!sendHeldCommands(i2cBacking) || !flushCommands(i2cBacking)) {
+            return false;
+        }
+        long[] positions = heldRoutePositions[activePipe];
+        int q = routeQueues.length;
+        while (--q>=0) {
+            if (!routeQueues[q].isSent(positions[q])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     private boolean hasListeners() {
         return i2cResponsePipe != null;
     }
@@ -357,99 +853,122 @@ public class I2CJFFIStage extends AbstractTrafficOrderedStage {
 //				PipeReader.hasContentToRead(pipe),
 //				pipe
 //				);
-I2CBacking i2cBacking = ((HardwareImpl)hardware).getI2CBacking();
-
-while ( hasReleaseCountRemaining(activePipe)
-        && isChannelUnBlocked(activePipe)
-        && PipeReader.hasContentToRead(pipe)
-        && isConnectionUnBlocked(PipeReader.peekInt(pipe, 1)) //peek next connection and check that it is not blocking for some time
-        && PipeReader.tryReadFragment(pipe)){
-    
-    int msgIdx = PipeReader.getMsgIdx(pipe);
-    
-    switch(msgIdx){
-        case I2CCommandSchema.MSG_COMMAND_7:
-        {
-            int connection = PipeReader.readInt(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_CONNECTOR_11);
-            assert isConnectionUnBlocked(connection): "expected command to not be blocked";
-            
-            int addr = PipeReader.readInt(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_ADDRESS_12);
-            
-            byte[] backing = PipeReader.readBytesBackingArray(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
-            int len  = PipeReader.readBytesLength(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
-            int pos = PipeReader.readBytesPosition(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
-            int mask = PipeReader.readBytesMask(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
-            
-            //must grow if calls are needing more room.
-            if (workingBuffer.length < len) {
-            	workingBuffer = new byte[len*2];
+        I2CBacking i2cBacking = ((HardwareImpl)hardware).getI2CBacking(bus);
+        
+        if (releaseHeld[activePipe]) {
+            if (!isHeldReleaseSent(activePipe, i2cBacking)) {
+                return; //nothing more is taken from this pipe until its release is acknowledged
             }
+            releaseHeld[activePipe] = false;
+            decReleaseCount(activePipe);
+        }
 
-            Pipe.copyBytesFromToRing(backing, pos, mask, 
-            		                 workingBuffer, 0, Integer.MAX_VALUE, 
-            		                 len);
-            
-            if (debugCommands) {
-                logger.info("{} pipe {} send addr {} command {} {}",Appendables.appendEpochTime(new StringBuilder(), System.currentTimeMillis())
-                		              ,activePipe, addr, Appendables.appendArray(new StringBuilder(), '[', backing, pos, mask, ']', len), pipe);
-            }
+        while ( hasReleaseCountRemaining(activePipe)
+                && sendHeldCommands(i2cBacking) //writes wait behind any held after a failure
+                && isChannelUnBlocked(activePipe)
+                && PipeReader.hasContentToRead(pipe)
+                && isConnectionUnBlocked(PipeReader.peekInt(pipe, 1)) //peek next connection and check that it is not blocking for some time
+                && hasRouteRoom(pipe)
+                && isSentBeforeBlock(pipe, i2cBacking)
+                && isAdmitted(activePipe, pipe)
+                && PipeReader.tryReadFragment(pipe)){
             
-            //    logger.info("i2c request write to address: {} register: {}  ",addr, workingBuffer[0]);//+Arrays.toString(Arrays.copyOfRange(connection.readCmd, 0, connection.readCmd.length)));
+            int msgIdx = PipeReader.getMsgIdx(pipe);
             
+            switch(msgIdx){
+                case I2CCommandSchema.MSG_COMMAND_7:
+                {
+                    int connection = PipeReader.readInt(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_CONNECTOR_11);
+                    assert isConnectionUnBlocked(connection): "expected command to not be blocked";
+                    
+                    int addr = PipeReader.readInt(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_ADDRESS_12);
+                    
+                    byte[] backing = PipeReader.readBytesBackingArray(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
+                    int len  = PipeReader.readBytesLength(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
+                    int pos = PipeReader.readBytesPosition(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
+                    int mask = PipeReader.readBytesMask(pipe, I2CCommandSchema.MSG_COMMAND_7_FIELD_BYTEARRAY_2);
+                    
+                    if (debugCommands) {
+                        logger.info("{} pipe {} send addr {} command {} {}",Appendables.appendEpochTime(new StringBuilder(), System.currentTimeMillis())
+                        		              ,activePipe, addr, Appendables.appendArray(new StringBuilder(), '[', backing, pos, mask, ']', len), pipe);
+                    }
+                    
+                    //    logger.info("i2c request write to address: {} register: {}  ",addr, workingBuffer[0]);//+Arrays.toString(Arrays.copyOfRange(connection.readCmd, 0, connection.readCmd.length)));
+                    
+                    
+                    long deadline = writeDeadline(activePipe, hardware.nanoTime());
+                    expectedBytes[activePipe] = len;
+                    waitingSince[activePipe] = 0;
+                    
+                    I2CCommandQueue route = null==routes ? null : routes[MAX_ADDR & addr];
+                    if (null != route) {
+                        //device is on another bus, its stage sends the write
+                        route.offer((byte) addr, backing, pos, mask, len, deadline);
+                        break;
+                    }
+                    
+                    sendCommand(i2cBacking, (byte) addr, backing, pos, mask, len);
+                    
+                }
+                break;
+                
+                case I2CCommandSchema.MSG_BLOCKCHANNEL_22:
+                {
+                    hardware.blockChannelDuration(PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCHANNEL_22_FIELD_DURATIONNANOS_13), goPipeId(activePipe));
+                    if (debugCommands) {
+                        logger.info("CommandChannel blocked for {} millis ",PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCHANNEL_22_FIELD_DURATIONNANOS_13));
+                    }
+                }
+                break;
+                
+                case I2CCommandSchema.MSG_BLOCKCONNECTION_20:
+                {
+                    int connection = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTION_20_FIELD_CONNECTOR_11);
+                    assert isConnectionUnBlocked(connection): "expected command to not be blocked";
+                    
+                    int addr = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTION_20_FIELD_ADDRESS_12);
+                    long duration = PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCONNECTION_20_FIELD_DURATIONNANOS_13);
+                    
+                    blockConnectionDuration(connection, duration);
+                    if (debugCommands) {
+                        logger.info("I2C addr {} {} blocked for {} nanos  {}", addr, connection, duration, pipe);
+                    }
+                }
+                break;
+                
+                case I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21:
+                {
+                    int connection = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21_FIELD_CONNECTOR_11);
+                    int addr = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21_FIELD_ADDRESS_12);
+                    long time = PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21_FIELD_TIMEMS_14);
+                    blockConnectionUntil(connection, time);
+                    if (debugCommands) {
+                        logger.info("I2C addr {} {} blocked until {} millis {}", addr, connection, time, pipe);
+                    }
+                }
+                
+                break;
+                case -1 :
+                    requestShutdown();
+                    
+            }
+            PipeReader.releaseReadLock(pipe);
             
-            timeOut = hardware.currentTimeMillis() + writeTime;
-            
-            while(!i2cBacking.write((byte) addr, workingBuffer, len) && hardware.currentTimeMillis()<timeOut){}
-            
-        }
-        break;
-        
-        case I2CCommandSchema.MSG_BLOCKCHANNEL_22:
-        {
-            hardware.blockChannelDuration(PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCHANNEL_22_FIELD_DURATIONNANOS_13), goPipeId(activePipe));
-            if (debugCommands) {
-                logger.info("CommandChannel blocked for {} millis ",PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCHANNEL_22_FIELD_DURATIONNANOS_13));
+            //a release is all in the pipe before it is granted so an empty pipe means its last fragment was taken,
+            //batched, held or handed over writes must reach the bus before the channel is told it is done
+            if (!PipeReader.hasContentToRead(pipe)) {
+                holdRelease(activePipe);
+                if (!isHeldReleaseSent(activePipe, i2cBacking)) {
+                    return;
+                }
+                releaseHeld[activePipe] = false;
             }
-        }
-        break;
-        
-        case I2CCommandSchema.MSG_BLOCKCONNECTION_20:
-        {
-            int connection = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTION_20_FIELD_CONNECTOR_11);
-            assert isConnectionUnBlocked(connection): "expected command to not be blocked";
             
-            int addr = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTION_20_FIELD_ADDRESS_12);
-            long duration = PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCONNECTION_20_FIELD_DURATIONNANOS_13);
+            //only do now after we know its not blocked and was completed
+            decReleaseCount(activePipe);
             
-            blockConnectionDuration(connection, duration);
-            if (debugCommands) {
-                logger.info("I2C addr {} {} blocked for {} nanos  {}", addr, connection, duration, pipe);
-            }
-        }
-        break;
-        
-        case I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21:
-        {
-            int connection = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21_FIELD_CONNECTOR_11);
-            int addr = PipeReader.readInt(pipe, I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21_FIELD_ADDRESS_12);
-            long time = PipeReader.readLong(pipe, I2CCommandSchema.MSG_BLOCKCONNECTIONUNTIL_21_FIELD_TIMEMS_14);
-            blockConnectionUntil(connection, time);
-            if (debugCommands) {
-                logger.info("I2C addr {} {} blocked until {} millis {}", addr, connection, time, pipe);
-            }
         }
-        
-        break;
-        case -1 :
-            requestShutdown();
-            
-    }
-    PipeReader.releaseReadLock(pipe);
-    
-    //only do now after we know its not blocked and was completed
-    decReleaseCount(activePipe);
-    
-}
+        flushCommands(i2cBacking);
 
     }
     
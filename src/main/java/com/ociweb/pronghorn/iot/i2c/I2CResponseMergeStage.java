@@ -0,0 +1,57 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.pipe.PipeWriter;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Joins the responses of each I2C bus stage into the single pipe replicated to the listeners.
+ * Inputs are visited in turn so a busy bus can not hold back the others.
+ */
+public class I2CResponseMergeStage extends PronghornStage {
+
+    private final Pipe<I2CResponseSchema>[] inputs;
+    private final Pipe<I2CResponseSchema> output;
+
+    public I2CResponseMergeStage(GraphManager graphManager, Pipe<I2CResponseSchema>[] inputs, Pipe<I2CResponseSchema> output) {
+        super(graphManager, inputs, output);
+        this.inputs = inputs;
+        this.output = output;
+    }
+
+    @Override
+    public void run() {
+        boolean moved;
+        do {
+            moved = false;
+            int i = inputs.length;
+            while (--i>=0) {
+                Pipe<I2CResponseSchema> input = inputs[i];
+                if (Pipe.hasRoomForWrite(output) && PipeReader.tryReadFragment(input)) {
+                    if (I2CResponseSchema.MSG_RESPONSE_10 == PipeReader.getMsgIdx(input)) {
+                        PipeWriter.presumeWriteFragment(output, I2CResponseSchema.MSG_RESPONSE_10);
+                        PipeWriter.writeInt(output, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11, PipeReader.readInt(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11));
+                        PipeWriter.writeLong(output, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13, PipeReader.readLong(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13));
+                        PipeWriter.writeInt(output, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14, PipeReader.readInt(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14));
+                        PipeWriter.writeBytes(output, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12,
+                                              PipeReader.readBytesBackingArray(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+                                              PipeReader.readBytesPosition(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+                                              PipeReader.readBytesLength(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+                                              PipeReader.readBytesMask(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12));
+                        PipeWriter.writeLong(output, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15, PipeReader.readLong(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15));
+                        PipeWriter.writeLong(output, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TRANSFERNS_16, PipeReader.readLong(input, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TRANSFERNS_16));
+                        PipeWriter.publishWrites(output);
+                    } else {
+                        requestShutdown();
+                    }
+                    PipeReader.releaseReadLock(input);
+                    moved = true;
+                }
+            }
+        } while (moved);
+    }
+
+}
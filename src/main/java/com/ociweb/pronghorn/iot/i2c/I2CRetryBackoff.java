@@ -0,0 +1,97 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+/**
+ * Retry state for the transactions of one I2C bus stage. A failed transaction is not retried
+ * in a loop, the stage moves on and tries it again on a later cycle once its backoff has passed.
+ * The backoff doubles after each consecutive failure up to the max so an unplugged device costs
+ * one attempt per max backoff instead of holding the bus.
+ *
+ * Each slot is one transaction the stage sends over and over, such as one scheduled read.
+ * Counters are written by the single stage thread and may be read from any thread for reporting.
+ */
+public class I2CRetryBackoff {
+
+    private final long initialNS;
+    private final long maxNS;
+    public final int maxAttempts;
+
+    private final long[] retryAt;
+    private final int[] failures;
+
+    private volatile long failedTransfers;
+    private volatile long abandoned;
+
+    /**
+     * @param initialNS Wait after the first failure.
+     * @param maxNS Largest wait between attempts.
+     * @param maxAttempts Attempts made before a transaction which can be dropped, like a write, is abandoned.
+     */
+    public I2CRetryBackoff(int slots, long initialNS, long maxNS, int maxAttempts) {
+        this.initialNS = initialNS;
+        this.maxNS = maxNS;
+        this.maxAttempts = maxAttempts;
+        this.retryAt = new long[slots];
+        this.failures = new int[slots];
+    }
+
+    /**
+     * True when the last attempt on this slot failed and it has not yet succeeded or been abandoned.
+     */
+    public boolean isWaiting(int slot) {
+        return failures[slot] > 0;
+    }
+
+    /**
+     * True if the slot may be attempted now.
+     */
+    public boolean isReady(int slot, long nowNS) {
+        return 0 == failures[slot] || nowNS - retryAt[slot] >= 0;
+    }
+
+    /**
+     * @return true if the slot had been failing until now.
+     */
+    public boolean succeeded(int slot) {
+        boolean recovered = failures[slot] > 0;
+        failures[slot] = 0;
+        return recovered;
+    }
+
+    /**
+     * Schedules the next attempt.
+     *
+     * @return consecutive failures of this slot including this one.
+     */
+    public int failed(int slot, long nowNS) {
+        failedTransfers++;
+        int f = ++failures[slot];
+        //shift is bounded so the doubling can not overflow
+        long wait = Math.min(maxNS, initialNS << Math.min(f-1, Long.numberOfLeadingZeros(initialNS)-1));
+        retryAt[slot] = nowNS + wait;
+        return f;
+    }
+
+    public boolean isExhausted(int slot) {
+        return failures[slot] >= maxAttempts;
+    }
+
+    /**
+     * Gives up on the transaction in this slot, the next one starts with no backoff.
+     */
+    public void abandon(int slot) {
+        abandoned++;
+        failures[slot] = 0;
+    }
+
+    public long failedTransfers() {
+        return failedTransfers;
+    }
+
+    /**
+     * Transactions dropped after failing every attempt.
+     */
+    public long abandoned() {
+        return abandoned;
+    }
+
+}
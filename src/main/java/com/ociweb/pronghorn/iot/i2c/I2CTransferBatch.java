@@ -0,0 +1,127 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+/**
+ * Reusable, pre-allocated list of I2C messages which are sent to the bus together by
+ * {@link I2CBacking#transfer(I2CTransferBatch)}. Writes copy their payload in when added,
+ * reads reserve space which is populated by the transfer.
+ *
+ * No objects are created once the batch is constructed so it can be filled and sent
+ * from inside the run loop of a stage.
+ */
+public class I2CTransferBatch {
+
+    /**
+     * Linux limit on messages in a single I2C_RDWR call, see I2C_RDWR_IOCTL_MAX_MSGS.
+     */
+    public static final int MAX_MESSAGES = 42;
+    public static final int DEFAULT_DATA_SIZE = 2048;
+
+    private final byte[] addresses;
+    private final boolean[] isRead;
+    private final int[] positions;
+    private final int[] lengths;
+    private final byte[] data;
+    private final byte[] scratch;
+
+    private int count;
+    private int dataLength;
+
+    public I2CTransferBatch() {
+        this(MAX_MESSAGES, DEFAULT_DATA_SIZE);
+    }
+
+    public I2CTransferBatch(int maxMessages, int dataSize) {
+        this.addresses = new byte[maxMessages];
+        this.isRead = new boolean[maxMessages];
+        this.positions = new int[maxMessages];
+        this.lengths = new int[maxMessages];
+        this.data = new byte[dataSize];
+        this.scratch = new byte[dataSize];
+    }
+
+    public void clear() {
+        count = 0;
+        dataLength = 0;
+    }
+
+    public boolean isEmpty() {
+        return 0 == count;
+    }
+
+    /**
+     * @return true if messageCount more messages holding dataBytes in total still fit.
+     */
+    public boolean hasRoom(int messageCount, int dataBytes) {
+        return count+messageCount <= addresses.length && dataLength+dataBytes <= data.length;
+    }
+
+    /**
+     * Appends a write, the payload is copied from the ring so the source may be released after this call.
+     */
+    public int addWrite(byte address, byte[] source, int sourcePos, int sourceMask, int length) {
+        assert(hasRoom(1, length)) : "check hasRoom before adding";
+        int pos = dataLength;
+        int i = length;
+        while (--i>=0) {
+            data[pos+i] = source[sourceMask & (sourcePos+i)];
+        }
+        return add(address, false, length);
+    }
+
+    /**
+     * Appends a read of length bytes, after the transfer the result is found at {@link #position(int)}.
+     */
+    public int addRead(byte address, int length) {
+        assert(hasRoom(1, length)) : "check hasRoom before adding";
+        return add(address, true, length);
+    }
+
+    private int add(byte address, boolean read, int length) {
+        int idx = count++;
+        addresses[idx] = address;
+        isRead[idx] = read;
+        positions[idx] = dataLength;
+        lengths[idx] = length;
+        dataLength += length;
+        return idx;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int dataLength() {
+        return dataLength;
+    }
+
+    public byte address(int idx) {
+        return addresses[idx];
+    }
+
+    public boolean isRead(int idx) {
+        return isRead[idx];
+    }
+
+    public int position(int idx) {
+        return positions[idx];
+    }
+
+    public int length(int idx) {
+        return lengths[idx];
+    }
+
+    /**
+     * Backing array for all payloads, use {@link #position(int)} and {@link #length(int)} to find a message.
+     */
+    public byte[] data() {
+        return data;
+    }
+
+    /**
+     * Working space for backings which must move one message at a time to or from offset zero.
+     */
+    byte[] scratch() {
+        return scratch;
+    }
+
+}
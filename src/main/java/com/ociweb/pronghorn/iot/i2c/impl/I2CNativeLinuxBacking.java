@@ -4,6 +4,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ociweb.pronghorn.iot.i2c.I2CBacking;
+import com.ociweb.pronghorn.iot.i2c.I2CTransferBatch;
+
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
 
 /**
  * Native I2C backing implementation for a GrovePi using ioctl.h.
@@ -30,6 +34,21 @@ public class I2CNativeLinuxBacking implements I2CBacking {
     //Most recent address we've handled in order to restrict duplicat IOCTL calls.
     private byte lastAddress = (byte) -127;
 
+    //True when the adapter accepts I2C_RDWR so a whole batch can go in one ioctl.
+    private boolean supportsRdwr = false;
+
+    //Native i2c_msg array, shared payload buffer and i2c_rdwr_ioctl_data, grown as needed.
+    private jnr.ffi.Runtime runtime;
+    private Pointer nativeMsgs;
+    private Pointer nativeData;
+    private Pointer nativeRdwr;
+    private int nativeMsgsCapacity;
+    private int nativeDataCapacity;
+
+    //struct i2c_msg { __u16 addr; __u16 flags; __u16 len; __u8 *buf; }
+    private int msgStructSize;
+    private int msgBufOffset;
+
     /**
      * Configures I2C to communicate with the specified byte address.
      *
@@ -42,8 +61,12 @@ public class I2CNativeLinuxBacking implements I2CBacking {
         return checkNewAddress(address);
     }
 
+    private static boolean isValidAddress(byte address) {
+        return address > 0 && address <= I2C_MAX_ADDRESSES;
+    }
+
     private boolean checkNewAddress(byte address) {
-        if (address > 0 && address <= I2C_MAX_ADDRESSES) {
+        if (isValidAddress(address)) {
             /**
              * IOCTL will return -1 if it fails for any reason.
              */
@@ -82,6 +105,8 @@ public class I2CNativeLinuxBacking implements I2CBacking {
             logger.debug("Successfully opened {}", device);
         }
 
+        configureRdwr();
+
         //Close the file when the application shuts down.
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
@@ -126,4 +151,85 @@ public class I2CNativeLinuxBacking implements I2CBacking {
         return -1 != c.write(i2cFile, message, length);
 
     }
-}
\ No newline at end of file
+
+    private void configureRdwr() {
+        runtime = jnr.ffi.Runtime.getRuntime(c);
+
+        Pointer funcs = Memory.allocateDirect(runtime, runtime.longSize());
+        supportsRdwr = c.ioctl(i2cFile, UnixIoctlLib.I2C_FUNCS, funcs) >= 0
+                       && 0 != (funcs.getNativeLong(0) & UnixIoctlLib.I2C_FUNC_I2C);
+
+        if (supportsRdwr) {
+            int addressSize = runtime.addressSize();
+            msgBufOffset = 8; //three shorts then padding to pointer alignment on both 32 and 64 bit
+            msgStructSize = msgBufOffset + addressSize;
+            nativeRdwr = Memory.allocateDirect(runtime, addressSize * 2); //pointer then __u32 count, padded
+            allocateNative(I2CTransferBatch.MAX_MESSAGES, I2CTransferBatch.DEFAULT_DATA_SIZE);
+            logger.debug("I2C_RDWR is supported, batches will be sent in a single ioctl");
+        } else {
+            logger.debug("I2C_RDWR is not supported by this adapter, batches will be sent one message at a time");
+        }
+    }
+
+    private void allocateNative(int messages, int dataSize) {
+        nativeMsgs = Memory.allocateDirect(runtime, messages * msgStructSize);
+        nativeData = Memory.allocateDirect(runtime, dataSize);
+        nativeMsgsCapacity = messages;
+        nativeDataCapacity = dataSize;
+    }
+
+    @Override
+    public boolean transfer(I2CTransferBatch batch) {
+        if (!configured) {
+            throw new IllegalStateException("Bus is not configured yet.");
+        }
+
+        if (!supportsRdwr) {
+            return I2CBacking.super.transfer(batch);
+        }
+
+        final int count = batch.count();
+        if (0 == count) {
+            return true;
+        }
+        final int dataLength = batch.dataLength();
+        if (count > nativeMsgsCapacity || dataLength > nativeDataCapacity) {
+            allocateNative(Math.max(count, nativeMsgsCapacity), Math.max(dataLength, nativeDataCapacity));
+        }
+
+        final byte[] data = batch.data();
+        final long dataAddress = nativeData.address();
+
+        for (int i = 0; i < count; i++) {
+            byte address = batch.address(i);
+            if (!isValidAddress(address)) {
+                throw new RuntimeException(
+                        "I2C Device 0x" + Integer.toHexString(address) + " is outside of the possible I2C address range.");
+            }
+            int base = i * msgStructSize;
+            nativeMsgs.putShort(base, address);
+            nativeMsgs.putShort(base + 2, (short) (batch.isRead(i) ? UnixIoctlLib.I2C_M_RD : 0));
+            nativeMsgs.putShort(base + 4, (short) batch.length(i));
+            nativeMsgs.putAddress(base + msgBufOffset, dataAddress + batch.position(i));
+        }
+
+        //writes and reads share one buffer so a single copy each way covers the whole batch
+        nativeData.put(0, data, 0, dataLength);
+
+        nativeRdwr.putAddress(0, nativeMsgs.address());
+        nativeRdwr.putInt(runtime.addressSize(), count);
+
+        if (c.ioctl(i2cFile, UnixIoctlLib.I2C_RDWR, nativeRdwr) >= 0) {
+            nativeData.get(0, data, 0, dataLength);
+            return true;
+        } else {
+            int i = count;
+            while (--i >= 0) {
+                if (batch.isRead(i) && batch.length(i) > 0) {
+                    data[batch.position(i)] = -2;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.ociweb.pronghorn.iot.i2c.impl;
 
 import jnr.ffi.LibraryLoader;
+import jnr.ffi.Pointer;
 
 /**
  * JNI library wrapper for IOCTL operations on a UNIX system
@@ -14,12 +15,21 @@ public interface UnixIoctlLib {
     //I2C constants.
     int I2C_SLAVE = 0x0703;
     int I2C_SLAVE_FORCE = 0x0706;
+    int I2C_FUNCS = 0x0705;
+    int I2C_RDWR = 0x0707;
+
+    //I2C_FUNCS bit for adapters which accept plain I2C_RDWR messages.
+    long I2C_FUNC_I2C = 0x00000001;
+
+    //i2c_msg flag marking a read.
+    int I2C_M_RD = 0x0001;
 
     //Filesystem constants.
     int O_RDWR = 00000002;
 
     //Native Methods///////////////////////////////////////////////////////////
     int ioctl(int fd, int cmd, long address);
+    int ioctl(int fd, int cmd, Pointer data);
     int open(String path, int flags);
     int close(int fd);
     int read(int fd, byte[] buffer, int count);
@@ -0,0 +1,420 @@
+package com.ociweb.pronghorn.iot.iio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+
+/**
+ * Continuous ADC capture through the Linux IIO buffered interface. The chosen voltage channels
+ * are enabled as scan elements, a trigger is attached at the requested sampling frequency and
+ * a dedicated thread reads whole blocks of binary scans from /dev/iio:deviceN. The polling stage
+ * drains the decoded samples into GroveResponseSchema with {@link #drain(Pipe)}, many samples
+ * per publish.
+ *
+ * Each analog sample carries the ns since the previous scan as its PrevDuration. When the device
+ * offers a timestamp scan element its kernel time is used, otherwise the scans of each block are
+ * spaced back from the time the block was read.
+ */
+public class IioCaptureReader implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(IioCaptureReader.class);
+
+	private static final String SYS_IIO = "/sys/bus/iio/devices";
+	private static final String HRTIMER_TRIGGERS = "/sys/kernel/config/iio/triggers/hrtimer";
+	private static final int RING_BITS = 13;
+	private static final int RING_SIZE = 1<<RING_BITS;
+	private static final int RING_MASK = RING_SIZE-1;
+	private static final int BLOCKS_PER_SECOND = 100; //scans read together, also the kernel watermark
+	private static final int BLOCKS_BUFFERED = 8;     //kernel buffer length in blocks
+	private static final int VALUE_BITS = 10;         //same 0-1023 range as the polled analog read
+	private static final long MS_TO_NS = 1_000_000;
+
+	private final String device;
+	private final int[] channels;
+	private final int[] connectors;
+	private final int sampleRateHz;
+	private final Path base;
+
+	//scan layout, one entry per requested channel
+	private final int[] offset;
+	private final int[] bytes;
+	private final int[] shift;
+	private final int[] realBits;
+	private final boolean[] signed;
+	private final boolean[] bigEndian;
+	private int valueShift;
+	private int timestampOffset = -1; //-1 when the device has no timestamp element
+	private boolean timestampBigEndian;
+	private int scanBytes;
+
+	private String triggerName;
+	private InputStream input;
+	private long periodNS;
+	private long lastScanNS;
+	private long toEpochNS = Long.MIN_VALUE; //found from the first timestamped scan
+	private long monotonicToEpochNS;
+
+	//samples waiting to be drained, written only by the reader thread
+	private final int[]  ringConnector = new int[RING_SIZE];
+	private final int[]  ringValue = new int[RING_SIZE];
+	private final long[] ringTime = new long[RING_SIZE];
+	private final long[] ringDuration = new long[RING_SIZE];
+	private final long[] ringAcquired = new long[RING_SIZE];
+	private volatile long head;
+	private volatile long tail;
+	private volatile long dropped;
+	private long droppedReported;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * @param device IIO device name, eg iio:device1.
+	 * @param channels in_voltageN index of each captured channel.
+	 * @param connectors Analog connector reported in the events of each channel.
+	 * @param sampleRateHz Scans per second.
+	 */
+	public IioCaptureReader(String device, int[] channels, int[] connectors, int sampleRateHz) {
+		assert(channels.length == connectors.length);
+		this.device = device;
+		this.channels = channels;
+		this.connectors = connectors;
+		this.sampleRateHz = sampleRateHz;
+		this.base = Paths.get(SYS_IIO, device);
+		this.offset = new int[channels.length];
+		this.bytes = new int[channels.length];
+		this.shift = new int[channels.length];
+		this.realBits = new int[channels.length];
+		this.signed = new boolean[channels.length];
+		this.bigEndian = new boolean[channels.length];
+	}
+
+	/**
+	 * Enables the scan elements, attaches the trigger, turns on the buffer and starts the reader thread.
+	 *
+	 * @return false if buffered capture could not be set up, no samples will be produced.
+	 */
+	public boolean start() {
+		try {
+			write(base.resolve("buffer/enable"), "0");
+			disableAllScanElements();
+			int i = channels.length;
+			while (--i>=0) {
+				write(scanElement("in_voltage"+channels[i]+"_en"), "1");
+			}
+			boolean timestamped = Files.exists(scanElement("in_timestamp_en"));
+			if (timestamped) {
+				write(scanElement("in_timestamp_en"), "1");
+			}
+			buildScanLayout(timestamped);
+
+			if (!attachTrigger()) {
+				logger.warn("no IIO trigger is available for {}, create an hrtimer trigger or enable configfs", device);
+				return false;
+			}
+
+			int blockScans = Math.max(1, sampleRateHz/BLOCKS_PER_SECOND);
+			write(base.resolve("buffer/length"), Integer.toString(blockScans*BLOCKS_BUFFERED));
+			Path watermark = base.resolve("buffer/watermark");
+			if (Files.exists(watermark)) {
+				write(watermark, Integer.toString(blockScans));
+			}
+			periodNS = 1_000_000_000L/sampleRateHz;
+			write(base.resolve("buffer/enable"), "1");
+
+			input = new FileInputStream("/dev/"+device);
+			monotonicToEpochNS = System.currentTimeMillis()*MS_TO_NS - System.nanoTime();
+			running = true;
+			thread = new Thread(this, "IIO capture");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MAX_PRIORITY);
+			thread.start();
+			return true;
+
+		} catch (IOException e) {
+			logger.warn("buffered capture is not available for {}", device, e);
+			disable();
+			return false;
+		}
+	}
+
+	public void stop() {
+		running = false;
+		if (null != thread) {
+			try {
+				thread.join(1000/BLOCKS_PER_SECOND * 4);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+		disable();
+	}
+
+	private void disable() {
+		try {
+			if (null != input) {
+				input.close();
+				input = null;
+			}
+			write(base.resolve("buffer/enable"), "0");
+			if (null != triggerName) {
+				write(base.resolve("trigger/current_trigger"), "");
+			}
+		} catch (IOException e) {
+			logger.warn("unable to disable buffered capture on {}", device, e);
+		}
+	}
+
+	private void disableAllScanElements() throws IOException {
+		try (DirectoryStream<Path> elements = Files.newDirectoryStream(base.resolve("scan_elements"), "*_en")) {
+			for (Path p : elements) {
+				write(p, "0");
+			}
+		}
+	}
+
+	/**
+	 * Scan elements are stored in index order, each aligned to its own storage size
+	 * and the whole scan padded to the largest element.
+	 */
+	private void buildScanLayout(boolean timestamped) throws IOException {
+		int count = channels.length;
+		int[] index = new int[count];
+		int i = count;
+		while (--i>=0) {
+			index[i] = Integer.parseInt(read(scanElement("in_voltage"+channels[i]+"_index")));
+			parseType(i, read(scanElement("in_voltage"+channels[i]+"_type")));
+		}
+		valueShift = Math.max(0, realBits[0]-VALUE_BITS);
+
+		int pos = 0;
+		int largest = 1;
+		boolean[] placed = new boolean[count];
+		for (int n = 0; n < count; n++) {
+			int next = -1;
+			for (int j = 0; j < count; j++) {
+				if (!placed[j] && (next<0 || index[j]<index[next])) {
+					next = j;
+				}
+			}
+			placed[next] = true;
+			pos = align(pos, bytes[next]);
+			offset[next] = pos;
+			pos += bytes[next];
+			largest = Math.max(largest, bytes[next]);
+		}
+		if (timestamped) {
+			//timestamp always has the highest index
+			timestampBigEndian = read(scanElement("in_timestamp_type")).startsWith("be");
+			pos = align(pos, 8);
+			timestampOffset = pos;
+			pos += 8;
+			largest = 8;
+		}
+		scanBytes = align(pos, largest);
+	}
+
+	//eg le:u12/16>>0
+	private void parseType(int i, String type) {
+		int colon = type.indexOf(':');
+		int slash = type.indexOf('/');
+		int shiftAt = type.indexOf(">>");
+		bigEndian[i] = type.startsWith("be");
+		signed[i] = 's' == type.charAt(colon+1);
+		realBits[i] = Integer.parseInt(type.substring(colon+2, slash));
+		int storageEnd = shiftAt;
+		int repeat = type.indexOf('X', slash);
+		if (repeat>=0 && repeat<shiftAt) {
+			storageEnd = repeat;
+		}
+		bytes[i] = Integer.parseInt(type.substring(slash+1, storageEnd))/8;
+		shift[i] = Integer.parseInt(type.substring(shiftAt+2).trim());
+	}
+
+	private static int align(int pos, int size) {
+		return (pos + size-1) / size * size;
+	}
+
+	/**
+	 * Uses an hrtimer trigger made through configfs, or the device's own sampling clock.
+	 */
+	private boolean attachTrigger() throws IOException {
+		String name = "foglight-"+device.replace(':', '-');
+		Path hrtimers = Paths.get(HRTIMER_TRIGGERS);
+		if (Files.isDirectory(hrtimers)) {
+			Path made = hrtimers.resolve(name);
+			if (!Files.exists(made)) {
+				Files.createDirectory(made);
+			}
+			Path trigger = findTrigger(name);
+			if (null != trigger) {
+				write(trigger.resolve("sampling_frequency"), Integer.toString(sampleRateHz));
+				write(base.resolve("trigger/current_trigger"), name);
+				triggerName = name;
+				return true;
+			}
+		}
+		Path ownClock = base.resolve("sampling_frequency");
+		if (Files.exists(ownClock)) {
+			write(ownClock, Integer.toString(sampleRateHz));
+			return true;
+		}
+		return false;
+	}
+
+	private static Path findTrigger(String name) throws IOException {
+		try (DirectoryStream<Path> triggers = Files.newDirectoryStream(Paths.get(SYS_IIO), "trigger*")) {
+			for (Path p : triggers) {
+				if (name.equals(read(p.resolve("name")))) {
+					return p;
+				}
+			}
+		}
+		return null;
+	}
+
+	private Path scanElement(String name) {
+		return base.resolve("scan_elements").resolve(name);
+	}
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim();
+	}
+
+	private static void write(Path path, String value) throws IOException {
+		Files.write(path, value.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Override
+	public void run() {
+		int blockScans = Math.max(1, sampleRateHz/BLOCKS_PER_SECOND);
+		byte[] block = new byte[scanBytes*blockScans];
+		int filled = 0;
+		try {
+			while (running) {
+				int len = input.read(block, filled, block.length-filled);
+				if (len < 0) {
+					break;
+				}
+				long readNS = System.currentTimeMillis()*MS_TO_NS;
+				filled += len;
+				int scans = filled/scanBytes;
+				for (int s = 0; s < scans; s++) {
+					scan(block, s*scanBytes, readNS - (scans-1-s)*periodNS);
+				}
+				//keep any partial scan for the next read
+				int used = scans*scanBytes;
+				System.arraycopy(block, used, block, 0, filled-used);
+				filled -= used;
+			}
+		} catch (IOException e) {
+			if (running) {
+				logger.warn("buffered capture on {} stopped", device, e);
+			}
+		}
+	}
+
+	private void scan(byte[] block, int at, long estimatedNS) {
+		long scanNS = estimatedNS;
+		if (timestampOffset >= 0) {
+			long kernelNS = decode(block, at+timestampOffset, 8, timestampBigEndian);
+			if (Long.MIN_VALUE == toEpochNS) {
+				//timestamps are realtime unless current_timestamp_clock was changed
+				toEpochNS = Math.abs(estimatedNS - kernelNS) < 60_000L * MS_TO_NS ? 0 : estimatedNS - kernelNS;
+			}
+			scanNS = kernelNS + toEpochNS;
+		}
+		long duration = 0 == lastScanNS ? periodNS : scanNS - lastScanNS;
+		lastScanNS = scanNS;
+		long timeMS = scanNS / MS_TO_NS;
+		long acquiredNS = scanNS - monotonicToEpochNS;
+
+		int i = channels.length;
+		while (--i>=0) {
+			long raw = decode(block, at+offset[i], bytes[i], bigEndian[i]) >>> shift[i];
+			int value = (int)(raw & ((1L<<realBits[i])-1));
+			if (signed[i] && 0 != (value & (1<<(realBits[i]-1)))) {
+				value |= -1<<realBits[i];
+			}
+			record(connectors[i], value>>valueShift, timeMS, duration, acquiredNS);
+		}
+	}
+
+	private static long decode(byte[] block, int at, int size, boolean bigEndian) {
+		long result = 0;
+		if (bigEndian) {
+			for (int i = 0; i < size; i++) {
+				result = (result<<8) | (0xFF & block[at+i]);
+			}
+		} else {
+			int i = size;
+			while (--i>=0) {
+				result = (result<<8) | (0xFF & block[at+i]);
+			}
+		}
+		return result;
+	}
+
+	private void record(int connector, int value, long time, long duration, long acquiredNS) {
+		long h = head;
+		if (h - tail >= RING_SIZE) {
+			dropped++;
+			return;
+		}
+		int i = RING_MASK & (int)h;
+		ringConnector[i] = connector;
+		ringValue[i] = value;
+		ringTime[i] = time;
+		ringDuration[i] = duration;
+		ringAcquired[i] = acquiredNS;
+		head = h+1;
+	}
+
+	/**
+	 * Writes waiting samples to the pipe and publishes them together, called only by the stage
+	 * which produces on the pipe.
+	 *
+	 * @return number of samples written.
+	 */
+	public int drain(Pipe<GroveResponseSchema> responsePipe) {
+		long h = head;
+		long t = tail;
+		int count = 0;
+		while (t < h && Pipe.hasRoomForWrite(responsePipe)) {
+			int i = RING_MASK & (int)t;
+			int size = Pipe.addMsgIdx(responsePipe, GroveResponseSchema.MSG_ANALOGSAMPLE_30);
+			Pipe.addIntValue(ringConnector[i], responsePipe);
+			Pipe.addLongValue(ringTime[i], responsePipe);
+			Pipe.addIntValue(ringValue[i], responsePipe);
+			Pipe.addLongValue(ringDuration[i], responsePipe);
+			Pipe.addLongValue(ringAcquired[i], responsePipe);
+			Pipe.addLongValue(0, responsePipe); //converted on the trigger, no transfer per sample
+			Pipe.confirmLowLevelWrite(responsePipe, size);
+			t++;
+			count++;
+		}
+		if (count > 0) {
+			Pipe.publishWrites(responsePipe);
+			tail = t;
+		}
+		long d = dropped;
+		if (d != droppedReported) {
+			logger.warn("{} analog samples dropped, response pipe is backed up", d-droppedReported);
+			droppedReported = d;
+		}
+		return count;
+	}
+
+}
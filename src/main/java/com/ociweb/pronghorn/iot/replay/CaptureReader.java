@@ -0,0 +1,132 @@
+package com.ociweb.pronghorn.iot.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a capture written by {@link CaptureWriter}.
+ */
+class CaptureReader {
+
+    private final FileChannel channel;
+    private final ByteBuffer in;
+    private boolean endOfFile;
+
+    private long lastTime;
+
+    byte type;
+    long recordNS;
+    long epochMS;
+
+    byte[] bytes = new byte[256];
+
+    CaptureReader(FileChannel channel, int bufferBytes) {
+        this.channel = channel;
+        this.in = ByteBuffer.allocate(bufferBytes);
+        this.in.flip();
+    }
+
+    /**
+     * @return false if this is not a capture of a supported version.
+     */
+    boolean readHeader() throws IOException {
+        if (!fill(InputCapture.HEADER_BYTES)
+            || InputCapture.MAGIC != in.getInt()
+            || InputCapture.VERSION != in.getInt()) {
+            return false;
+        }
+        epochMS = in.getLong();
+        return true;
+    }
+
+    /**
+     * Reads the type and time of the next record, its fields are read next.
+     *
+     * @return false at the end of the capture.
+     */
+    boolean next() throws IOException {
+        fill(1+InputCapture.MAX_VARINT_BYTES);
+        if (!in.hasRemaining()) {
+            return false;
+        }
+        type = in.get();
+        recordNS += readVarLong();
+        return true;
+    }
+
+    int readInt() throws IOException {
+        long v = readVarLong();
+        return (int)(v >>> 1) ^ -(int)(v & 1);
+    }
+
+    long readLong() throws IOException {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    long readTime() throws IOException {
+        return lastTime += readLong();
+    }
+
+    /**
+     * Reads a byte field into {@link #bytes}, which grows as needed.
+     *
+     * @return length of the field.
+     */
+    int readBytes() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt capture, negative length");
+        }
+        if (length > bytes.length) {
+            bytes = new byte[Math.max(length, bytes.length<<1)];
+        }
+        int pos = 0;
+        while (pos < length) {
+            if (!in.hasRemaining() && !fill(1)) {
+                throw new EOFException();
+            }
+            int take = Math.min(length-pos, in.remaining());
+            in.get(bytes, pos, take);
+            pos += take;
+        }
+        return length;
+    }
+
+    private long readVarLong() throws IOException {
+        if (in.remaining() < InputCapture.MAX_VARINT_BYTES) {
+            fill(InputCapture.MAX_VARINT_BYTES);
+        }
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            if (!in.hasRemaining()) {
+                throw new EOFException();
+            }
+            byte b = in.get();
+            result |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    //reads until at least the given bytes are buffered or the file has ended
+    private boolean fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes) {
+            return true;
+        }
+        in.compact();
+        while (!endOfFile && in.position() < bytes) {
+            if (channel.read(in) < 0) {
+                endOfFile = true;
+            }
+        }
+        in.flip();
+        return in.remaining() >= bytes;
+    }
+
+}
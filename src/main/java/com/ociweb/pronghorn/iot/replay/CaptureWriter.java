@@ -0,0 +1,120 @@
+package com.ociweb.pronghorn.iot.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffers capture records and writes them to the file in large blocks, see {@link InputCapture}.
+ * After the first failed write every later record is discarded and {@link #error()} reports why,
+ * so a full disk never stops the stage from consuming its inputs.
+ */
+class CaptureWriter {
+
+    private final FileChannel channel;
+    private final ByteBuffer out;
+
+    private long lastRecordNS = Long.MIN_VALUE;
+    private long lastTime;
+    private IOException error;
+
+    CaptureWriter(FileChannel channel, int bufferBytes) {
+        this.channel = channel;
+        this.out = ByteBuffer.allocate(bufferBytes);
+    }
+
+    void header(long epochMS) {
+        out.putInt(InputCapture.MAGIC);
+        out.putInt(InputCapture.VERSION);
+        out.putLong(epochMS);
+    }
+
+    /**
+     * Starts a record, the fixed size fields of the largest message must fit after it.
+     */
+    void beginRecord(byte type, long recordNS) {
+        if (out.remaining() < 16*InputCapture.MAX_VARINT_BYTES) {
+            flush();
+        }
+        out.put(type);
+        writeVarLong(Long.MIN_VALUE == lastRecordNS ? 0 : recordNS-lastRecordNS);
+        lastRecordNS = recordNS;
+    }
+
+    long lastRecordNS() {
+        return lastRecordNS;
+    }
+
+    void writeInt(int value) {
+        writeVarLong(0xFFFFFFFFL & ((value << 1) ^ (value >> 31)));
+    }
+
+    void writeLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes the Time field as its change from the Time of the previous message.
+     */
+    void writeTime(long time) {
+        writeLong(time-lastTime);
+        lastTime = time;
+    }
+
+    /**
+     * Copies bytes out of a pipe blob ring.
+     */
+    void writeBytes(byte[] backing, int position, int length, int mask) {
+        writeInt(length);
+        for (int i = 0; i < length; i++) {
+            if (!out.hasRemaining()) {
+                flush();
+            }
+            out.put(backing[mask & (position+i)]);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the source, large sources bypass the buffer.
+     */
+    void writeBytes(ByteBuffer source) {
+        writeInt(source.remaining());
+        if (source.remaining() <= out.remaining()) {
+            out.put(source);
+        } else {
+            flush();
+            write(source);
+        }
+    }
+
+    void flush() {
+        out.flip();
+        write(out);
+        out.clear();
+    }
+
+    IOException error() {
+        return error;
+    }
+
+    private void write(ByteBuffer source) {
+        if (null == error) {
+            try {
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+}
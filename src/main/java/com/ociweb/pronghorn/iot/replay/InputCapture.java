@@ -0,0 +1,32 @@
+package com.ociweb.pronghorn.iot.replay;
+
+/**
+ * Layout of an input capture file.
+ *
+ * The file starts with the magic, version and the wall clock time the capture began. Each record
+ * that follows is a type byte, the nanoseconds since the previous record and the fields of one
+ * message. Numbers are zigzag varints, the Time field is stored as the change from the previous
+ * Time and AcquiredNS as its age when the message was recorded. Byte fields are a length then
+ * the bytes. A record cut short at the end of the file is ignored.
+ */
+final class InputCapture {
+
+    static final int MAGIC = 0x464C4943; //FLIC
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    static final byte DIGITAL     = 1;
+    static final byte ANALOG      = 2;
+    static final byte ENCODER     = 3;
+    static final byte I2C         = 4;
+    static final byte SERIAL      = 5;
+    static final byte IMAGE_START = 6;
+    static final byte IMAGE_ROW   = 7;
+    static final byte IMAGE_FRAME = 8; //a pooled frame, stored with its bytes
+
+    static final int MAX_VARINT_BYTES = 10;
+
+    private InputCapture() {
+    }
+
+}
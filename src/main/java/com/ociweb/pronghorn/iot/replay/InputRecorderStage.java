@@ -0,0 +1,317 @@
+package com.ociweb.pronghorn.iot.replay;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.camera.ImageFrame;
+import com.ociweb.iot.hardware.HardwareImpl;
+import com.ociweb.iot.hardware.impl.SerialInputSchema;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.iot.schema.ImageSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Writes every message from the hardware input pipes to a capture file which
+ * {@link InputReplayStage} can feed back through the same listeners. Records are buffered and
+ * written once per run, pooled camera frames are copied out of the pool and released.
+ *
+ * If the file can not be written recording stops with a warning, the inputs keep being consumed
+ * so the sensors are never held up.
+ */
+public class InputRecorderStage extends PronghornStage {
+
+	private static final Logger logger = LoggerFactory.getLogger(InputRecorderStage.class);
+
+	private static final long RATE_NS = 2_000_000;
+	private static final int BUFFER_BYTES = 1<<16;
+
+	private final Pipe<GroveResponseSchema> pinInput;
+	private final Pipe<I2CResponseSchema> i2cInput;
+	private final Pipe<SerialInputSchema> serialInput;
+	private final Pipe<ImageSchema> imageInput;
+	private final HardwareImpl hardware;
+	private final String path;
+
+	private FileChannel channel;
+	private CaptureWriter writer;
+	private ImageFrame[] frames;
+	private int openInputs;
+
+	/**
+	 * Each input may be null when that kind of input is not in use.
+	 */
+	public InputRecorderStage(GraphManager graphManager,
+			                  Pipe<GroveResponseSchema> pinInput, Pipe<I2CResponseSchema> i2cInput,
+			                  Pipe<SerialInputSchema> serialInput, Pipe<ImageSchema> imageInput,
+			                  HardwareImpl hardware, String path) {
+		super(graphManager, inputs(pinInput, i2cInput, serialInput, imageInput), NONE);
+		this.pinInput = pinInput;
+		this.i2cInput = i2cInput;
+		this.serialInput = serialInput;
+		this.imageInput = imageInput;
+		this.hardware = hardware;
+		this.path = path;
+		GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, RATE_NS, this);
+		GraphManager.addNota(graphManager, GraphManager.DOT_BACKGROUND, "lightsteelblue", this);
+	}
+
+	private static Pipe[] inputs(Pipe ... pipes) {
+		int count = 0;
+		for (Pipe p : pipes) {
+			if (null != p) {
+				count++;
+			}
+		}
+		Pipe[] result = new Pipe[count];
+		count = 0;
+		for (Pipe p : pipes) {
+			if (null != p) {
+				result[count++] = p;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void startup() {
+		openInputs = inputs(pinInput, i2cInput, serialInput, imageInput).length;
+		try {
+			RandomAccessFile file = new RandomAccessFile(path, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+			writer = new CaptureWriter(channel, BUFFER_BYTES);
+			writer.header(hardware.currentTimeMillis());
+		} catch (IOException e) {
+			logger.warn("Unable to create input capture {}, nothing will be recorded", path, e);
+			writer = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		if (null != pinInput) {
+			recordPins();
+		}
+		if (null != i2cInput) {
+			recordI2C();
+		}
+		if (null != serialInput) {
+			recordSerial();
+		}
+		if (null != imageInput) {
+			recordImages();
+		}
+		if (null != writer) {
+			writer.flush();
+			if (null != writer.error()) {
+				logger.warn("Unable to write input capture {}, recording has stopped", path, writer.error());
+				closeFile();
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		if (null != writer) {
+			writer.flush();
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				logger.warn("Unable to write input capture {}", path, e);
+			}
+		}
+		closeFile();
+	}
+
+	private void closeFile() {
+		writer = null;
+		if (null != channel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close input capture {}", path, e);
+			}
+			channel = null;
+		}
+	}
+
+	private void recordPins() {
+		while (Pipe.hasContentToRead(pinInput)) {
+
+			int msgIdx = Pipe.takeMsgIdx(pinInput);
+			if (msgIdx < 0) {
+				Pipe.confirmLowLevelRead(pinInput, Pipe.EOF_SIZE);
+				Pipe.releaseReadLock(pinInput);
+				inputClosed();
+				return;
+			}
+			byte type;
+			switch (msgIdx) {
+				case GroveResponseSchema.MSG_ANALOGSAMPLE_30:
+					type = InputCapture.ANALOG;
+					break;
+				case GroveResponseSchema.MSG_DIGITALSAMPLE_20:
+					type = InputCapture.DIGITAL;
+					break;
+				case GroveResponseSchema.MSG_ENCODER_70:
+					type = InputCapture.ENCODER;
+					break;
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			int connector = Pipe.takeInt(pinInput);
+			long time = Pipe.takeLong(pinInput);
+			int value = Pipe.takeInt(pinInput);
+			int delta = 0;
+			int speed = 0;
+			if (InputCapture.ENCODER == type) {
+				delta = Pipe.takeInt(pinInput);
+				speed = Pipe.takeInt(pinInput);
+			}
+			long prevDuration = Pipe.takeLong(pinInput);
+			long acquiredNS = Pipe.takeLong(pinInput);
+			long transferNS = Pipe.takeLong(pinInput);
+
+			if (null != writer) {
+				long now = hardware.nanoTime();
+				writer.beginRecord(type, now);
+				writer.writeInt(connector);
+				writer.writeTime(time);
+				writer.writeInt(value);
+				if (InputCapture.ENCODER == type) {
+					writer.writeInt(delta);
+					writer.writeInt(speed);
+				}
+				writer.writeLong(prevDuration);
+				writer.writeLong(now-acquiredNS);
+				writer.writeLong(transferNS);
+			}
+			Pipe.confirmLowLevelRead(pinInput, Pipe.sizeOf(pinInput, msgIdx));
+			Pipe.releaseReadLock(pinInput);
+		}
+	}
+
+	private void recordI2C() {
+		while (PipeReader.tryReadFragment(i2cInput)) {
+
+			int msgIdx = PipeReader.getMsgIdx(i2cInput);
+			switch (msgIdx) {
+				case I2CResponseSchema.MSG_RESPONSE_10:
+					if (null != writer) {
+						long now = hardware.nanoTime();
+						writer.beginRecord(InputCapture.I2C, now);
+						writer.writeInt(PipeReader.readInt(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ADDRESS_11));
+						writer.writeInt(PipeReader.readInt(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_REGISTER_14));
+						writer.writeTime(PipeReader.readLong(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TIME_13));
+						writer.writeLong(now-PipeReader.readLong(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_ACQUIREDNS_15));
+						writer.writeLong(PipeReader.readLong(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_TRANSFERNS_16));
+						writer.writeBytes(PipeReader.readBytesBackingArray(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+								          PipeReader.readBytesPosition(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+								          PipeReader.readBytesLength(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12),
+								          PipeReader.readBytesMask(i2cInput, I2CResponseSchema.MSG_RESPONSE_10_FIELD_BYTEARRAY_12));
+					}
+					break;
+				case -1:
+					PipeReader.releaseReadLock(i2cInput);
+					inputClosed();
+					return;
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			PipeReader.releaseReadLock(i2cInput);
+		}
+	}
+
+	private void recordSerial() {
+		while (PipeReader.tryReadFragment(serialInput)) {
+
+			int msgIdx = PipeReader.getMsgIdx(serialInput);
+			switch (msgIdx) {
+				case SerialInputSchema.MSG_CHUNKEDSTREAM_1:
+					if (null != writer) {
+						writer.beginRecord(InputCapture.SERIAL, hardware.nanoTime());
+						writer.writeBytes(PipeReader.readBytesBackingArray(serialInput, SerialInputSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2),
+								          PipeReader.readBytesPosition(serialInput, SerialInputSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2),
+								          PipeReader.readBytesLength(serialInput, SerialInputSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2),
+								          PipeReader.readBytesMask(serialInput, SerialInputSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2));
+					}
+					break;
+				case -1:
+					PipeReader.releaseReadLock(serialInput);
+					inputClosed();
+					return;
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			PipeReader.releaseReadLock(serialInput);
+		}
+	}
+
+	private void recordImages() {
+		while (PipeReader.tryReadFragment(imageInput)) {
+
+			int msgIdx = PipeReader.getMsgIdx(imageInput);
+			switch (msgIdx) {
+				case ImageSchema.MSG_FRAMESTART_1:
+					if (null != writer) {
+						writer.beginRecord(InputCapture.IMAGE_START, hardware.nanoTime());
+						writer.writeInt(PipeReader.readInt(imageInput, ImageSchema.MSG_FRAMESTART_1_FIELD_WIDTH_101));
+						writer.writeInt(PipeReader.readInt(imageInput, ImageSchema.MSG_FRAMESTART_1_FIELD_HEIGHT_201));
+						writer.writeLong(PipeReader.readLong(imageInput, ImageSchema.MSG_FRAMESTART_1_FIELD_TIMESTAMP_301));
+					}
+					break;
+				case ImageSchema.MSG_FRAMECHUNK_2:
+					if (null != writer) {
+						writer.beginRecord(InputCapture.IMAGE_ROW, hardware.nanoTime());
+						writer.writeBytes(PipeReader.readBytesBackingArray(imageInput, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102),
+								          PipeReader.readBytesPosition(imageInput, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102),
+								          PipeReader.readBytesLength(imageInput, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102),
+								          PipeReader.readBytesMask(imageInput, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102));
+					}
+					break;
+				case ImageSchema.MSG_FRAMEHANDLE_3:
+				{
+					if (null == frames) {
+						frames = hardware.getFramePool().newFrames();
+					}
+					ImageFrame frame = frames[PipeReader.readInt(imageInput, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_FRAMEID_401)];
+					int width = PipeReader.readInt(imageInput, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_WIDTH_101);
+					int height = PipeReader.readInt(imageInput, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_HEIGHT_201);
+					long timestamp = PipeReader.readLong(imageInput, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_TIMESTAMP_301);
+					frame.attach(width, height, timestamp, PipeReader.readInt(imageInput, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_LENGTH_501));
+					if (null != writer) {
+						writer.beginRecord(InputCapture.IMAGE_FRAME, hardware.nanoTime());
+						writer.writeInt(width);
+						writer.writeInt(height);
+						writer.writeLong(timestamp);
+						writer.writeBytes(frame.buffer());
+					}
+					frame.release();
+				}
+				break;
+				case -1:
+					PipeReader.releaseReadLock(imageInput);
+					inputClosed();
+					return;
+				default:
+					throw new UnsupportedOperationException("Unknown id: "+msgIdx);
+			}
+			PipeReader.releaseReadLock(imageInput);
+		}
+	}
+
+	private void inputClosed() {
+		if (--openInputs <= 0) {
+			requestShutdown();
+		}
+	}
+
+}
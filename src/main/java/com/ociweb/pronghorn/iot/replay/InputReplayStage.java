@@ -0,0 +1,369 @@
+package com.ociweb.pronghorn.iot.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.camera.FramePool;
+import com.ociweb.iot.hardware.HardwareImpl;
+import com.ociweb.iot.hardware.impl.SerialInputSchema;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.iot.schema.I2CResponseSchema;
+import com.ociweb.pronghorn.iot.schema.ImageSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Publishes the messages of a capture written by {@link InputRecorderStage} on the same pipes the
+ * hardware input stages would have used. Messages keep their recorded spacing divided by the speed,
+ * at {@link #MAX_SPEED} each is sent as soon as the pipe has room.
+ *
+ * AcquiredNS is moved onto this run's monotonic clock so windows and rates behave as they did when
+ * recorded, every other field including Time is replayed unchanged. Messages for inputs which have
+ * no pipe in this graph are skipped.
+ */
+public class InputReplayStage extends PronghornStage {
+
+	private static final Logger logger = LoggerFactory.getLogger(InputReplayStage.class);
+
+	public static final int MAX_SPEED = 0;
+
+	private static final long RATE_NS = 500_000;
+	private static final int BUFFER_BYTES = 1<<16;
+	private static final int MAX_BATCH = 4096; //messages sent per run at max speed before yielding
+	private static final int BYTES_PER_PIXEL = 3; //no supported camera format uses more
+
+	private final Pipe<GroveResponseSchema> pinOutput;
+	private final Pipe<I2CResponseSchema> i2cOutput;
+	private final Pipe<SerialInputSchema> serialOutput;
+	private final Pipe<ImageSchema> imageOutput;
+	private final FramePool framePool;
+	private final int imageReaders;
+	private final HardwareImpl hardware;
+	private final String path;
+	private final int speed;
+
+	private FileChannel channel;
+	private CaptureReader reader;
+	private long startNS;
+	private boolean pending; //a record has been read which could not be sent yet
+	private int progress; //bytes or rows of the pending record already sent
+	private volatile boolean complete;
+
+	//fields of the pending record
+	private int connector;
+	private int address;
+	private int register;
+	private long time;
+	private int value;
+	private int delta;
+	private int rotationSpeed;
+	private long prevDuration;
+	private long acquiredAge;
+	private long transferNS;
+	private int width;
+	private int height;
+	private int length;
+
+	private long oversizeFrames;
+
+	/**
+	 * @param speed Multiple of the recorded rate, or {@link #MAX_SPEED}.
+	 * @param framePool Pool for replayed pooled frames, null to send every frame row by row.
+	 * @param imageReaders Listeners on the image pipe, each releases every pooled frame.
+	 */
+	public InputReplayStage(GraphManager graphManager,
+			                Pipe<GroveResponseSchema> pinOutput, Pipe<I2CResponseSchema> i2cOutput,
+			                Pipe<SerialInputSchema> serialOutput, Pipe<ImageSchema> imageOutput,
+			                FramePool framePool, int imageReaders,
+			                HardwareImpl hardware, String path, int speed) {
+		super(graphManager, NONE, outputs(pinOutput, i2cOutput, serialOutput, imageOutput));
+		if (speed < 0) {
+			throw new UnsupportedOperationException("Replay speed must be positive or MAX_SPEED");
+		}
+		this.pinOutput = pinOutput;
+		this.i2cOutput = i2cOutput;
+		this.serialOutput = serialOutput;
+		this.imageOutput = imageOutput;
+		this.framePool = framePool;
+		this.imageReaders = imageReaders;
+		this.hardware = hardware;
+		this.path = path;
+		this.speed = speed;
+		GraphManager.addNota(graphManager, GraphManager.SCHEDULE_RATE, RATE_NS, this);
+		GraphManager.addNota(graphManager, GraphManager.DOT_BACKGROUND, "lightsteelblue", this);
+	}
+
+	private static Pipe[] outputs(Pipe ... pipes) {
+		int count = 0;
+		for (Pipe p : pipes) {
+			if (null != p) {
+				count++;
+			}
+		}
+		Pipe[] result = new Pipe[count];
+		count = 0;
+		for (Pipe p : pipes) {
+			if (null != p) {
+				result[count++] = p;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true once every message of the capture has been sent.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public void startup() {
+		try {
+			channel = new RandomAccessFile(path, "r").getChannel();
+			reader = new CaptureReader(channel, BUFFER_BYTES);
+			if (!reader.readHeader()) {
+				logger.warn("{} is not an input capture, nothing will be replayed", path);
+				finish();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to open input capture {}, nothing will be replayed", path, e);
+			finish();
+		}
+		startNS = hardware.nanoTime();
+	}
+
+	@Override
+	public void run() {
+		if (null == reader) {
+			return;
+		}
+		try {
+			int batch = MAX_BATCH;
+			while (--batch >= 0) {
+				if (!pending) {
+					if (!reader.next()) {
+						logger.info("Replay of {} is complete", path);
+						finish();
+						return;
+					}
+					readFields();
+					pending = true;
+				}
+				if (MAX_SPEED != speed && hardware.nanoTime() < dueNS()) {
+					return;
+				}
+				if (!publish()) {
+					return; //no room, try again later
+				}
+				pending = false;
+				progress = 0;
+			}
+		} catch (EOFException e) {
+			logger.info("Replay of {} is complete, the last message was cut short", path);
+			finish();
+		} catch (IOException e) {
+			logger.warn("Unable to read input capture {}, replay has stopped", path, e);
+			finish();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		finish();
+	}
+
+	private void finish() {
+		reader = null;
+		complete = true;
+		if (null != channel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close input capture {}", path, e);
+			}
+			channel = null;
+		}
+		if (oversizeFrames > 0) {
+			logger.warn("{} frames were larger than the frame pool and were skipped", oversizeFrames);
+			oversizeFrames = 0;
+		}
+	}
+
+	private long dueNS() {
+		return startNS + reader.recordNS/speed;
+	}
+
+	//acquired time on this run's clock, keeping its recorded distance from the record time
+	private long acquiredNS() {
+		long recordNS = MAX_SPEED == speed ? reader.recordNS : dueNS()-startNS;
+		return startNS + recordNS - acquiredAge;
+	}
+
+	private void readFields() throws IOException {
+		switch (reader.type) {
+			case InputCapture.DIGITAL:
+			case InputCapture.ANALOG:
+			case InputCapture.ENCODER:
+				connector = reader.readInt();
+				time = reader.readTime();
+				value = reader.readInt();
+				if (InputCapture.ENCODER == reader.type) {
+					delta = reader.readInt();
+					rotationSpeed = reader.readInt();
+				}
+				prevDuration = reader.readLong();
+				acquiredAge = reader.readLong();
+				transferNS = reader.readLong();
+				break;
+			case InputCapture.I2C:
+				address = reader.readInt();
+				register = reader.readInt();
+				time = reader.readTime();
+				acquiredAge = reader.readLong();
+				transferNS = reader.readLong();
+				length = reader.readBytes();
+				break;
+			case InputCapture.SERIAL:
+			case InputCapture.IMAGE_ROW:
+				length = reader.readBytes();
+				break;
+			case InputCapture.IMAGE_START:
+				width = reader.readInt();
+				height = reader.readInt();
+				time = reader.readLong();
+				break;
+			case InputCapture.IMAGE_FRAME:
+				width = reader.readInt();
+				height = reader.readInt();
+				time = reader.readLong();
+				length = reader.readBytes();
+				break;
+			default:
+				throw new IOException("Unknown record type "+reader.type);
+		}
+	}
+
+	/**
+	 * @return false if the pending record must wait for room.
+	 */
+	private boolean publish() {
+		switch (reader.type) {
+			case InputCapture.DIGITAL:
+				return null == pinOutput || publishPin(GroveResponseSchema.MSG_DIGITALSAMPLE_20);
+			case InputCapture.ANALOG:
+				return null == pinOutput || publishPin(GroveResponseSchema.MSG_ANALOGSAMPLE_30);
+			case InputCapture.ENCODER:
+				return null == pinOutput || publishPin(GroveResponseSchema.MSG_ENCODER_70);
+			case InputCapture.I2C:
+				return null == i2cOutput
+					|| I2CResponseSchema.publishResponse(i2cOutput, address, time, register, reader.bytes, 0, length, acquiredNS(), transferNS);
+			case InputCapture.SERIAL:
+				return null == serialOutput || publishSerial();
+			case InputCapture.IMAGE_START:
+				if (null != imageOutput) {
+					if (!Pipe.hasRoomForWrite(imageOutput)) {
+						return false;
+					}
+					ImageSchema.publishFrameStart(imageOutput, width, height, time);
+				}
+				return true;
+			case InputCapture.IMAGE_ROW:
+				if (null != imageOutput) {
+					if (!Pipe.hasRoomForWrite(imageOutput)) {
+						return false;
+					}
+					ImageSchema.publishFrameChunk(imageOutput, reader.bytes, 0, length);
+				}
+				return true;
+			case InputCapture.IMAGE_FRAME:
+				return null == imageOutput || (null == framePool ? publishFrameRows() : publishFrameHandle());
+			default:
+				return true;
+		}
+	}
+
+	private boolean publishPin(int msgIdx) {
+		if (!Pipe.hasRoomForWrite(pinOutput)) {
+			return false;
+		}
+		int size = Pipe.addMsgIdx(pinOutput, msgIdx);
+		Pipe.addIntValue(connector, pinOutput);
+		Pipe.addLongValue(time, pinOutput);
+		Pipe.addIntValue(value, pinOutput);
+		if (GroveResponseSchema.MSG_ENCODER_70 == msgIdx) {
+			Pipe.addIntValue(delta, pinOutput);
+			Pipe.addIntValue(rotationSpeed, pinOutput);
+		}
+		Pipe.addLongValue(prevDuration, pinOutput);
+		Pipe.addLongValue(acquiredNS(), pinOutput);
+		Pipe.addLongValue(transferNS, pinOutput);
+		Pipe.confirmLowLevelWrite(pinOutput, size);
+		Pipe.publishWrites(pinOutput);
+		return true;
+	}
+
+	//serial data is a stream so a long chunk may be split to fit the pipe
+	private boolean publishSerial() {
+		int chunk = Math.max(1, serialOutput.maxVarLen);
+		while (progress < length) {
+			if (!Pipe.hasRoomForWrite(serialOutput)) {
+				return false;
+			}
+			int bytes = Math.min(chunk, length-progress);
+			SerialInputSchema.publishChunkedStream(serialOutput, reader.bytes, progress, bytes);
+			progress += bytes;
+		}
+		return true;
+	}
+
+	//progress is the number of messages sent, the frame start and then one per row
+	private boolean publishFrameRows() {
+		if (height <= 0) {
+			return true;
+		}
+		int rowBytes = length/height;
+		while (progress <= height) {
+			if (!Pipe.hasRoomForWrite(imageOutput)) {
+				return false;
+			}
+			if (0 == progress) {
+				ImageSchema.publishFrameStart(imageOutput, width, height, time);
+			} else {
+				ImageSchema.publishFrameChunk(imageOutput, reader.bytes, (progress-1)*rowBytes, rowBytes);
+			}
+			progress++;
+		}
+		return true;
+	}
+
+	private boolean publishFrameHandle() {
+		if (!Pipe.hasRoomForWrite(imageOutput)) {
+			return false;
+		}
+		if (0 == framePool.frameBytes()) {
+			framePool.allocate(Math.max(length, width*height*BYTES_PER_PIXEL));
+		}
+		if (length > framePool.frameBytes()) {
+			oversizeFrames++;
+			return true;
+		}
+		int id = framePool.acquire();
+		if (id < 0) {
+			return false; //every frame is still held by a listener
+		}
+		ByteBuffer buffer = framePool.fillBuffer(id);
+		buffer.put(reader.bytes, 0, length);
+		framePool.publish(id, imageReaders);
+		ImageSchema.publishFrameHandle(imageOutput, id, length, width, height, time);
+		return true;
+	}
+
+}
@@ -8,14 +8,14 @@ import com.ociweb.pronghorn.pipe.PipeWriter;
 public class GroveRequestSchema extends MessageSchema<GroveRequestSchema> {
 
 	public final static FieldReferenceOffsetManager FROM = new FieldReferenceOffsetManager(
-		    new int[]{0xc1400003,0x80200000,0x80000001,0xc1200003,0xc1400003,0x80200000,0x90000000,0xc1200003,0xc1400003,0x80200000,0x90000001,0xc1200003,0xc1400003,0x80200002,0x80000003,0xc1200003},
+		    new int[]{0xc1400004,0x80200000,0x80000001,0x90000000,0xc1200004,0xc1400003,0x80200000,0x90000001,0xc1200003,0xc1400003,0x80200000,0x90000002,0xc1200003,0xc1400004,0x80200002,0x80000003,0x90000000,0xc1200004},
 		    (short)0,
-		    new String[]{"DigitalSet","Connector","Value",null,"BlockConnection","Connector","DurationNanos",
-		    null,"BlockConnectionUntil","Connector","TimeMS",null,"AnalogSet","Connector","Value",
+		    new String[]{"DigitalSet","Connector","Value","IssuedNS",null,"BlockConnection","Connector","DurationNanos",
+		    null,"BlockConnectionUntil","Connector","TimeMS",null,"AnalogSet","Connector","Value","IssuedNS",
 		    null},
-		    new long[]{110, 111, 112, 0, 220, 111, 13, 0, 221, 111, 114, 0, 140, 141, 142, 0},
-		    new String[]{"global",null,null,null,"global",null,null,null,"global",null,null,null,"global",
-		    null,null,null},
+		    new long[]{110, 111, 112, 115, 0, 220, 111, 13, 0, 221, 111, 114, 0, 140, 141, 142, 115, 0},
+		    new String[]{"global",null,null,null,null,"global",null,null,null,"global",null,null,null,"global",
+		    null,null,null,null},
 		    "GroveRequest.xml",
 		    new long[]{2, 2, 0},
 		    new int[]{2, 2, 0});
@@ -27,18 +27,20 @@ public class GroveRequestSchema extends MessageSchema<GroveRequestSchema> {
         super(FROM);
     }
     
-    public static final int MSG_DIGITALSET_110 = 0x00000000; //Group/OpenTemplPMap/3
+    public static final int MSG_DIGITALSET_110 = 0x00000000; //Group/OpenTemplPMap/4
     public static final int MSG_DIGITALSET_110_FIELD_CONNECTOR_111 = 0x00000001; //IntegerUnsigned/Copy/0
     public static final int MSG_DIGITALSET_110_FIELD_VALUE_112 = 0x00000002; //IntegerUnsigned/None/1
-    public static final int MSG_BLOCKCONNECTION_220 = 0x00000004; //Group/OpenTemplPMap/3
+    public static final int MSG_DIGITALSET_110_FIELD_ISSUEDNS_115 = 0x00800003; //LongUnsigned/None/0
+    public static final int MSG_BLOCKCONNECTION_220 = 0x00000005; //Group/OpenTemplPMap/3
     public static final int MSG_BLOCKCONNECTION_220_FIELD_CONNECTOR_111 = 0x00000001; //IntegerUnsigned/Copy/0
-    public static final int MSG_BLOCKCONNECTION_220_FIELD_DURATIONNANOS_13 = 0x00800002; //LongUnsigned/None/0
-    public static final int MSG_BLOCKCONNECTIONUNTIL_221 = 0x00000008; //Group/OpenTemplPMap/3
+    public static final int MSG_BLOCKCONNECTION_220_FIELD_DURATIONNANOS_13 = 0x00800002; //LongUnsigned/None/1
+    public static final int MSG_BLOCKCONNECTIONUNTIL_221 = 0x00000009; //Group/OpenTemplPMap/3
     public static final int MSG_BLOCKCONNECTIONUNTIL_221_FIELD_CONNECTOR_111 = 0x00000001; //IntegerUnsigned/Copy/0
-    public static final int MSG_BLOCKCONNECTIONUNTIL_221_FIELD_TIMEMS_114 = 0x00800002; //LongUnsigned/None/1
-    public static final int MSG_ANALOGSET_140 = 0x0000000c; //Group/OpenTemplPMap/3
+    public static final int MSG_BLOCKCONNECTIONUNTIL_221_FIELD_TIMEMS_114 = 0x00800002; //LongUnsigned/None/2
+    public static final int MSG_ANALOGSET_140 = 0x0000000d; //Group/OpenTemplPMap/4
     public static final int MSG_ANALOGSET_140_FIELD_CONNECTOR_141 = 0x00000001; //IntegerUnsigned/Copy/2
     public static final int MSG_ANALOGSET_140_FIELD_VALUE_142 = 0x00000002; //IntegerUnsigned/None/3
+    public static final int MSG_ANALOGSET_140_FIELD_ISSUEDNS_115 = 0x00800003; //LongUnsigned/None/0
 
 
     public static void consume(Pipe<GroveRequestSchema> input) {
@@ -68,6 +70,7 @@ public class GroveRequestSchema extends MessageSchema<GroveRequestSchema> {
     public static void consumeDigitalSet(Pipe<GroveRequestSchema> input) {
         int fieldConnector = PipeReader.readInt(input,MSG_DIGITALSET_110_FIELD_CONNECTOR_111);
         int fieldValue = PipeReader.readInt(input,MSG_DIGITALSET_110_FIELD_VALUE_112);
+        long fieldIssuedNS = PipeReader.readLong(input,MSG_DIGITALSET_110_FIELD_ISSUEDNS_115);
     }
     public static void consumeBlockConnection(Pipe<GroveRequestSchema> input) {
         int fieldConnector = PipeReader.readInt(input,MSG_BLOCKCONNECTION_220_FIELD_CONNECTOR_111);
@@ -80,12 +83,14 @@ public class GroveRequestSchema extends MessageSchema<GroveRequestSchema> {
     public static void consumeAnalogSet(Pipe<GroveRequestSchema> input) {
         int fieldConnector = PipeReader.readInt(input,MSG_ANALOGSET_140_FIELD_CONNECTOR_141);
         int fieldValue = PipeReader.readInt(input,MSG_ANALOGSET_140_FIELD_VALUE_142);
+        long fieldIssuedNS = PipeReader.readLong(input,MSG_ANALOGSET_140_FIELD_ISSUEDNS_115);
     }
 
-    public static void publishDigitalSet(Pipe<GroveRequestSchema> output, int fieldConnector, int fieldValue) {
+    public static void publishDigitalSet(Pipe<GroveRequestSchema> output, int fieldConnector, int fieldValue, long fieldIssuedNS) {
             PipeWriter.presumeWriteFragment(output, MSG_DIGITALSET_110);
             PipeWriter.writeInt(output,MSG_DIGITALSET_110_FIELD_CONNECTOR_111, fieldConnector);
             PipeWriter.writeInt(output,MSG_DIGITALSET_110_FIELD_VALUE_112, fieldValue);
+            PipeWriter.writeLong(output,MSG_DIGITALSET_110_FIELD_ISSUEDNS_115, fieldIssuedNS);
             PipeWriter.publishWrites(output);
     }
     public static void publishBlockConnection(Pipe<GroveRequestSchema> output, int fieldConnector, long fieldDurationNanos) {
@@ -100,10 +105,11 @@ public class GroveRequestSchema extends MessageSchema<GroveRequestSchema> {
             PipeWriter.writeLong(output,MSG_BLOCKCONNECTIONUNTIL_221_FIELD_TIMEMS_114, fieldTimeMS);
             PipeWriter.publishWrites(output);
     }
-    public static void publishAnalogSet(Pipe<GroveRequestSchema> output, int fieldConnector, int fieldValue) {
+    public static void publishAnalogSet(Pipe<GroveRequestSchema> output, int fieldConnector, int fieldValue, long fieldIssuedNS) {
             PipeWriter.presumeWriteFragment(output, MSG_ANALOGSET_140);
             PipeWriter.writeInt(output,MSG_ANALOGSET_140_FIELD_CONNECTOR_141, fieldConnector);
             PipeWriter.writeInt(output,MSG_ANALOGSET_140_FIELD_VALUE_142, fieldValue);
+            PipeWriter.writeLong(output,MSG_ANALOGSET_140_FIELD_ISSUEDNS_115, fieldIssuedNS);
             PipeWriter.publishWrites(output);
     }
 
@@ -8,11 +8,11 @@ import com.ociweb.pronghorn.pipe.PipeWriter;
 public class GroveResponseSchema extends MessageSchema<GroveResponseSchema> {
 
     public final static FieldReferenceOffsetManager FROM = new FieldReferenceOffsetManager(
-            new int[]{0xc0400005,0x80000000,0x90000000,0x80000001,0x90000001,0xc0200005,0xc0400005,0x80000002,0x90000000,0x80000003,0x90000002,0xc0200005,0xc0400007,0x80000004,0x90000000,0x88000005,0x88000006,0x80000007,0x90000003,0xc0200007},
+            new int[]{0xc0400007,0x80000000,0x90000000,0x80000001,0x90000001,0x90000002,0x90000003,0xc0200007,0xc0400007,0x80000002,0x90000000,0x80000003,0x90000004,0x90000002,0x90000003,0xc0200007,0xc0400009,0x80000004,0x90000000,0x88000005,0x88000006,0x80000007,0x90000005,0x90000002,0x90000003,0xc0200009},
             (short)0,
-            new String[]{"DigitalSample","Connector","Time","Value","PrevDuration",null,"AnalogSample","Connector","Time","Value","PrevDuration",null,"Encoder","Connector","Time","Value","Delta","Speed","PrevDuration",null},
-            new long[]{20, 21, 11, 22, 25, 0, 30, 31, 11, 32, 35, 0, 70, 71, 11, 72, 73, 74, 75, 0},
-            new String[]{"global",null,null,null,null,null,"global",null,null,null,null,null,"global",null,null,null,null,null,null,null},
+            new String[]{"DigitalSample","Connector","Time","Value","PrevDuration","AcquiredNS","TransferNS",null,"AnalogSample","Connector","Time","Value","PrevDuration","AcquiredNS","TransferNS",null,"Encoder","Connector","Time","Value","Delta","Speed","PrevDuration","AcquiredNS","TransferNS",null},
+            new long[]{20, 21, 11, 22, 25, 15, 16, 0, 30, 31, 11, 32, 35, 15, 16, 0, 70, 71, 11, 72, 73, 74, 75, 15, 16, 0},
+            new String[]{"global",null,null,null,null,null,null,null,"global",null,null,null,null,null,null,null,"global",null,null,null,null,null,null,null,null,null},
             "GroveResponse.xml",
             new long[]{2, 2, 0},
             new int[]{2, 2, 0});
@@ -30,18 +30,24 @@ public class GroveResponseSchema extends MessageSchema<GroveResponseSchema> {
     public static final int MSG_DIGITALSAMPLE_20_FIELD_TIME_11 = 0x00800002;
     public static final int MSG_DIGITALSAMPLE_20_FIELD_VALUE_22 = 0x00000004;
     public static final int MSG_DIGITALSAMPLE_20_FIELD_PREVDURATION_25 = 0x00800005;
-    public static final int MSG_ANALOGSAMPLE_30 = 0x00000006;
+    public static final int MSG_DIGITALSAMPLE_20_FIELD_ACQUIREDNS_15 = 0x00800007;
+    public static final int MSG_DIGITALSAMPLE_20_FIELD_TRANSFERNS_16 = 0x00800009;
+    public static final int MSG_ANALOGSAMPLE_30 = 0x00000008;
     public static final int MSG_ANALOGSAMPLE_30_FIELD_CONNECTOR_31 = 0x00000001;
     public static final int MSG_ANALOGSAMPLE_30_FIELD_TIME_11 = 0x00800002;
     public static final int MSG_ANALOGSAMPLE_30_FIELD_VALUE_32 = 0x00000004;
     public static final int MSG_ANALOGSAMPLE_30_FIELD_PREVDURATION_35 = 0x00800005;
-    public static final int MSG_ENCODER_70 = 0x0000000c;
+    public static final int MSG_ANALOGSAMPLE_30_FIELD_ACQUIREDNS_15 = 0x00800007;
+    public static final int MSG_ANALOGSAMPLE_30_FIELD_TRANSFERNS_16 = 0x00800009;
+    public static final int MSG_ENCODER_70 = 0x00000010;
     public static final int MSG_ENCODER_70_FIELD_CONNECTOR_71 = 0x00000001;
     public static final int MSG_ENCODER_70_FIELD_TIME_11 = 0x00800002;
     public static final int MSG_ENCODER_70_FIELD_VALUE_72 = 0x00400004;
     public static final int MSG_ENCODER_70_FIELD_DELTA_73 = 0x00400005;
     public static final int MSG_ENCODER_70_FIELD_SPEED_74 = 0x00000006;
     public static final int MSG_ENCODER_70_FIELD_PREVDURATION_75 = 0x00800007;
+    public static final int MSG_ENCODER_70_FIELD_ACQUIREDNS_15 = 0x00800009;
+    public static final int MSG_ENCODER_70_FIELD_TRANSFERNS_16 = 0x0080000b;
 
 
     public static void consume(Pipe<GroveResponseSchema> input) {
@@ -70,12 +76,16 @@ public class GroveResponseSchema extends MessageSchema<GroveResponseSchema> {
         long fieldTime = PipeReader.readLong(input,MSG_DIGITALSAMPLE_20_FIELD_TIME_11);
         int fieldValue = PipeReader.readInt(input,MSG_DIGITALSAMPLE_20_FIELD_VALUE_22);
         long fieldPrevDuration = PipeReader.readLong(input,MSG_DIGITALSAMPLE_20_FIELD_PREVDURATION_25);
+        long fieldAcquiredNS = PipeReader.readLong(input,MSG_DIGITALSAMPLE_20_FIELD_ACQUIREDNS_15);
+        long fieldTransferNS = PipeReader.readLong(input,MSG_DIGITALSAMPLE_20_FIELD_TRANSFERNS_16);
     }
     public static void consumeAnalogSample(Pipe<GroveResponseSchema> input) {
         int fieldConnector = PipeReader.readInt(input,MSG_ANALOGSAMPLE_30_FIELD_CONNECTOR_31);
         long fieldTime = PipeReader.readLong(input,MSG_ANALOGSAMPLE_30_FIELD_TIME_11);
         int fieldValue = PipeReader.readInt(input,MSG_ANALOGSAMPLE_30_FIELD_VALUE_32);
         long fieldPrevDuration = PipeReader.readLong(input,MSG_ANALOGSAMPLE_30_FIELD_PREVDURATION_35);
+        long fieldAcquiredNS = PipeReader.readLong(input,MSG_ANALOGSAMPLE_30_FIELD_ACQUIREDNS_15);
+        long fieldTransferNS = PipeReader.readLong(input,MSG_ANALOGSAMPLE_30_FIELD_TRANSFERNS_16);
     }
     public static void consumeEncoder(Pipe<GroveResponseSchema> input) {
         int fieldConnector = PipeReader.readInt(input,MSG_ENCODER_70_FIELD_CONNECTOR_71);
@@ -84,33 +94,39 @@ public class GroveResponseSchema extends MessageSchema<GroveResponseSchema> {
         int fieldDelta = PipeReader.readInt(input,MSG_ENCODER_70_FIELD_DELTA_73);
         int fieldSpeed = PipeReader.readInt(input,MSG_ENCODER_70_FIELD_SPEED_74);
         long fieldPrevDuration = PipeReader.readLong(input,MSG_ENCODER_70_FIELD_PREVDURATION_75);
+        long fieldAcquiredNS = PipeReader.readLong(input,MSG_ENCODER_70_FIELD_ACQUIREDNS_15);
+        long fieldTransferNS = PipeReader.readLong(input,MSG_ENCODER_70_FIELD_TRANSFERNS_16);
     }
 
-    public static boolean publishDigitalSample(Pipe<GroveResponseSchema> output, int fieldConnector, long fieldTime, int fieldValue, long fieldPrevDuration) {
+    public static boolean publishDigitalSample(Pipe<GroveResponseSchema> output, int fieldConnector, long fieldTime, int fieldValue, long fieldPrevDuration, long fieldAcquiredNS, long fieldTransferNS) {
         boolean result = false;
         if (PipeWriter.tryWriteFragment(output, MSG_DIGITALSAMPLE_20)) {
             PipeWriter.writeInt(output,MSG_DIGITALSAMPLE_20_FIELD_CONNECTOR_21, fieldConnector);
             PipeWriter.writeLong(output,MSG_DIGITALSAMPLE_20_FIELD_TIME_11, fieldTime);
             PipeWriter.writeInt(output,MSG_DIGITALSAMPLE_20_FIELD_VALUE_22, fieldValue);
             PipeWriter.writeLong(output,MSG_DIGITALSAMPLE_20_FIELD_PREVDURATION_25, fieldPrevDuration);
+            PipeWriter.writeLong(output,MSG_DIGITALSAMPLE_20_FIELD_ACQUIREDNS_15, fieldAcquiredNS);
+            PipeWriter.writeLong(output,MSG_DIGITALSAMPLE_20_FIELD_TRANSFERNS_16, fieldTransferNS);
             PipeWriter.publishWrites(output);
             result = true;
         }
         return result;
     }
-    public static boolean publishAnalogSample(Pipe<GroveResponseSchema> output, int fieldConnector, long fieldTime, int fieldValue, long fieldPrevDuration) {
+    public static boolean publishAnalogSample(Pipe<GroveResponseSchema> output, int fieldConnector, long fieldTime, int fieldValue, long fieldPrevDuration, long fieldAcquiredNS, long fieldTransferNS) {
         boolean result = false;
         if (PipeWriter.tryWriteFragment(output, MSG_ANALOGSAMPLE_30)) {
             PipeWriter.writeInt(output,MSG_ANALOGSAMPLE_30_FIELD_CONNECTOR_31, fieldConnector);
             PipeWriter.writeLong(output,MSG_ANALOGSAMPLE_30_FIELD_TIME_11, fieldTime);
             PipeWriter.writeInt(output,MSG_ANALOGSAMPLE_30_FIELD_VALUE_32, fieldValue);
             PipeWriter.writeLong(output,MSG_ANALOGSAMPLE_30_FIELD_PREVDURATION_35, fieldPrevDuration);
+            PipeWriter.writeLong(output,MSG_ANALOGSAMPLE_30_FIELD_ACQUIREDNS_15, fieldAcquiredNS);
+            PipeWriter.writeLong(output,MSG_ANALOGSAMPLE_30_FIELD_TRANSFERNS_16, fieldTransferNS);
             PipeWriter.publishWrites(output);
             result = true;
         }
         return result;
     }
-    public static boolean publishEncoder(Pipe<GroveResponseSchema> output, int fieldConnector, long fieldTime, int fieldValue, int fieldDelta, int fieldSpeed, long fieldPrevDuration) {
+    public static boolean publishEncoder(Pipe<GroveResponseSchema> output, int fieldConnector, long fieldTime, int fieldValue, int fieldDelta, int fieldSpeed, long fieldPrevDuration, long fieldAcquiredNS, long fieldTransferNS) {
         boolean result = false;
         if (PipeWriter.tryWriteFragment(output, MSG_ENCODER_70)) {
             PipeWriter.writeInt(output,MSG_ENCODER_70_FIELD_CONNECTOR_71, fieldConnector);
@@ -119,6 +135,8 @@ public class GroveResponseSchema extends MessageSchema<GroveResponseSchema> {
             PipeWriter.writeInt(output,MSG_ENCODER_70_FIELD_DELTA_73, fieldDelta);
             PipeWriter.writeInt(output,MSG_ENCODER_70_FIELD_SPEED_74, fieldSpeed);
             PipeWriter.writeLong(output,MSG_ENCODER_70_FIELD_PREVDURATION_75, fieldPrevDuration);
+            PipeWriter.writeLong(output,MSG_ENCODER_70_FIELD_ACQUIREDNS_15, fieldAcquiredNS);
+            PipeWriter.writeLong(output,MSG_ENCODER_70_FIELD_TRANSFERNS_16, fieldTransferNS);
             PipeWriter.publishWrites(output);
             result = true;
         }
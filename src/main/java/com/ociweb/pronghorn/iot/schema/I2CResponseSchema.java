@@ -11,11 +11,11 @@ import com.ociweb.pronghorn.pipe.PipeWriter;
 public class I2CResponseSchema extends MessageSchema<I2CResponseSchema> {
 
     public final static FieldReferenceOffsetManager FROM = new FieldReferenceOffsetManager(
-            new int[]{0xc0400005,0x80000000,0x90000000,0x80000001,0xb8000000,0xc0200005},
+            new int[]{0xc0400007,0x80000000,0x90000000,0x80000001,0xb8000000,0x90000001,0x90000002,0xc0200007},
             (short)0,
-            new String[]{"Response","Address","Time","Register","ByteArray",null},
-            new long[]{10, 11, 13, 14, 12, 0},
-            new String[]{"global",null,null,null,null,null},
+            new String[]{"Response","Address","Time","Register","ByteArray","AcquiredNS","TransferNS",null},
+            new long[]{10, 11, 13, 14, 12, 15, 16, 0},
+            new String[]{"global",null,null,null,null,null,null,null},
             "I2CResponseSchema.xml",
             new long[]{2, 2, 0},
             new int[]{2, 2, 0});
@@ -34,6 +34,8 @@ public class I2CResponseSchema extends MessageSchema<I2CResponseSchema> {
     public static final int MSG_RESPONSE_10_FIELD_TIME_13 = 0x00800002;
     public static final int MSG_RESPONSE_10_FIELD_REGISTER_14 = 0x00000004;
     public static final int MSG_RESPONSE_10_FIELD_BYTEARRAY_12 = 0x01c00005;
+    public static final int MSG_RESPONSE_10_FIELD_ACQUIREDNS_15 = 0x00800007;
+    public static final int MSG_RESPONSE_10_FIELD_TRANSFERNS_16 = 0x00800009;
 
 
     public static void consume(Pipe<I2CResponseSchema> input) {
@@ -56,15 +58,19 @@ public class I2CResponseSchema extends MessageSchema<I2CResponseSchema> {
         long fieldTime = PipeReader.readLong(input,MSG_RESPONSE_10_FIELD_TIME_13);
         int fieldRegister = PipeReader.readInt(input,MSG_RESPONSE_10_FIELD_REGISTER_14);
         ByteBuffer fieldByteArray = PipeReader.readBytes(input,MSG_RESPONSE_10_FIELD_BYTEARRAY_12,ByteBuffer.allocate(PipeReader.readBytesLength(input,MSG_RESPONSE_10_FIELD_BYTEARRAY_12)));
+        long fieldAcquiredNS = PipeReader.readLong(input,MSG_RESPONSE_10_FIELD_ACQUIREDNS_15);
+        long fieldTransferNS = PipeReader.readLong(input,MSG_RESPONSE_10_FIELD_TRANSFERNS_16);
     }
 
-    public static boolean publishResponse(Pipe<I2CResponseSchema> output, int fieldAddress, long fieldTime, int fieldRegister, byte[] fieldByteArrayBacking, int fieldByteArrayPosition, int fieldByteArrayLength) {
+    public static boolean publishResponse(Pipe<I2CResponseSchema> output, int fieldAddress, long fieldTime, int fieldRegister, byte[] fieldByteArrayBacking, int fieldByteArrayPosition, int fieldByteArrayLength, long fieldAcquiredNS, long fieldTransferNS) {
         boolean result = false;
         if (PipeWriter.tryWriteFragment(output, MSG_RESPONSE_10)) {
             PipeWriter.writeInt(output,MSG_RESPONSE_10_FIELD_ADDRESS_11, fieldAddress);
             PipeWriter.writeLong(output,MSG_RESPONSE_10_FIELD_TIME_13, fieldTime);
             PipeWriter.writeInt(output,MSG_RESPONSE_10_FIELD_REGISTER_14, fieldRegister);
             PipeWriter.writeBytes(output,MSG_RESPONSE_10_FIELD_BYTEARRAY_12, fieldByteArrayBacking, fieldByteArrayPosition, fieldByteArrayLength);
+            PipeWriter.writeLong(output,MSG_RESPONSE_10_FIELD_ACQUIREDNS_15, fieldAcquiredNS);
+            PipeWriter.writeLong(output,MSG_RESPONSE_10_FIELD_TRANSFERNS_16, fieldTransferNS);
             PipeWriter.publishWrites(output);
             result = true;
         }
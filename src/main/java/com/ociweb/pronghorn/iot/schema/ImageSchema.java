@@ -5,11 +5,11 @@ import com.ociweb.pronghorn.pipe.*;
 public class ImageSchema extends MessageSchema<ImageSchema> {
 
     public final static FieldReferenceOffsetManager FROM = new FieldReferenceOffsetManager(
-            new int[]{0xc0400004,0x80000000,0x80000001,0x90000000,0xc0200004,0xc0400002,0xb8000000,0xc0200002},
+            new int[]{0xc0400004,0x80000000,0x80000001,0x90000000,0xc0200004,0xc0400002,0xb8000000,0xc0200002,0xc0400006,0x80000002,0x80000003,0x80000000,0x80000001,0x90000000,0xc0200006},
             (short)0,
-            new String[]{"FrameStart","Width","Height","Timestamp",null,"FrameChunk","RowBytes",null},
-            new long[]{1, 101, 201, 301, 0, 2, 102, 0},
-            new String[]{"global",null,null,null,null,"global",null,null},
+            new String[]{"FrameStart","Width","Height","Timestamp",null,"FrameChunk","RowBytes",null,"FrameHandle","FrameId","Length","Width","Height","Timestamp",null},
+            new long[]{1, 101, 201, 301, 0, 2, 102, 0, 3, 401, 501, 101, 201, 301, 0},
+            new String[]{"global",null,null,null,null,"global",null,null,"global",null,null,null,null,null,null},
             "ImageSchema.xml",
             new long[]{2, 2, 0},
             new int[]{2, 2, 0});
@@ -31,6 +31,12 @@ public class ImageSchema extends MessageSchema<ImageSchema> {
     public static final int MSG_FRAMESTART_1_FIELD_TIMESTAMP_301 = 0x00800003; //LongUnsigned/None/0
     public static final int MSG_FRAMECHUNK_2 = 0x00000005; //Group/OpenTempl/2
     public static final int MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102 = 0x01c00001; //ByteVector/None/0
+    public static final int MSG_FRAMEHANDLE_3 = 0x00000008; //Group/OpenTempl/6
+    public static final int MSG_FRAMEHANDLE_3_FIELD_FRAMEID_401 = 0x00000001; //IntegerUnsigned/None/2
+    public static final int MSG_FRAMEHANDLE_3_FIELD_LENGTH_501 = 0x00000002; //IntegerUnsigned/None/3
+    public static final int MSG_FRAMEHANDLE_3_FIELD_WIDTH_101 = 0x00000003; //IntegerUnsigned/None/0
+    public static final int MSG_FRAMEHANDLE_3_FIELD_HEIGHT_201 = 0x00000004; //IntegerUnsigned/None/1
+    public static final int MSG_FRAMEHANDLE_3_FIELD_TIMESTAMP_301 = 0x00800005; //LongUnsigned/None/0
 
     public static void consume(Pipe<ImageSchema> input) {
         while (PipeReader.tryReadFragment(input)) {
@@ -42,6 +48,9 @@ public class ImageSchema extends MessageSchema<ImageSchema> {
                 case MSG_FRAMECHUNK_2:
                     consumeFrameChunk(input);
                     break;
+                case MSG_FRAMEHANDLE_3:
+                    consumeFrameHandle(input);
+                    break;
                 case -1:
                     //requestShutdown();
                     break;
@@ -58,6 +67,13 @@ public class ImageSchema extends MessageSchema<ImageSchema> {
     public static void consumeFrameChunk(Pipe<ImageSchema> input) {
         DataInputBlobReader<ImageSchema> fieldRowBytes = PipeReader.inputStream(input, MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102);
     }
+    public static void consumeFrameHandle(Pipe<ImageSchema> input) {
+        int fieldFrameId = PipeReader.readInt(input,MSG_FRAMEHANDLE_3_FIELD_FRAMEID_401);
+        int fieldLength = PipeReader.readInt(input,MSG_FRAMEHANDLE_3_FIELD_LENGTH_501);
+        int fieldWidth = PipeReader.readInt(input,MSG_FRAMEHANDLE_3_FIELD_WIDTH_101);
+        int fieldHeight = PipeReader.readInt(input,MSG_FRAMEHANDLE_3_FIELD_HEIGHT_201);
+        long fieldTimestamp = PipeReader.readLong(input,MSG_FRAMEHANDLE_3_FIELD_TIMESTAMP_301);
+    }
 
     public static void publishFrameStart(Pipe<ImageSchema> output, int fieldWidth, int fieldHeight, long fieldTimestamp) {
         PipeWriter.presumeWriteFragment(output, MSG_FRAMESTART_1);
@@ -71,4 +87,13 @@ public class ImageSchema extends MessageSchema<ImageSchema> {
         PipeWriter.writeBytes(output,MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102, fieldRowBytesBacking, fieldRowBytesPosition, fieldRowBytesLength);
         PipeWriter.publishWrites(output);
     }
+    public static void publishFrameHandle(Pipe<ImageSchema> output, int fieldFrameId, int fieldLength, int fieldWidth, int fieldHeight, long fieldTimestamp) {
+        PipeWriter.presumeWriteFragment(output, MSG_FRAMEHANDLE_3);
+        PipeWriter.writeInt(output,MSG_FRAMEHANDLE_3_FIELD_FRAMEID_401, fieldFrameId);
+        PipeWriter.writeInt(output,MSG_FRAMEHANDLE_3_FIELD_LENGTH_501, fieldLength);
+        PipeWriter.writeInt(output,MSG_FRAMEHANDLE_3_FIELD_WIDTH_101, fieldWidth);
+        PipeWriter.writeInt(output,MSG_FRAMEHANDLE_3_FIELD_HEIGHT_201, fieldHeight);
+        PipeWriter.writeLong(output,MSG_FRAMEHANDLE_3_FIELD_TIMESTAMP_301, fieldTimestamp);
+        PipeWriter.publishWrites(output);
+    }
 }
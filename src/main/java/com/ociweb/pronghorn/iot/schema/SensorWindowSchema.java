@@ -0,0 +1,94 @@
+package com.ociweb.pronghorn.iot.schema;
+
+import com.ociweb.pronghorn.pipe.FieldReferenceOffsetManager;
+import com.ociweb.pronghorn.pipe.MessageSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.pipe.PipeWriter;
+
+public class SensorWindowSchema extends MessageSchema<SensorWindowSchema> {
+
+    public final static FieldReferenceOffsetManager FROM = new FieldReferenceOffsetManager(
+            new int[]{0xc040000c,0x80000000,0x90000000,0x90000001,0x90000002,0x80000001,0x88000002,0x88000003,0x88000004,0x88000005,0x88000006,0x88000007,0xc020000c},
+            (short)0,
+            new String[]{"Summary","Port","Time","StartNS","EndNS","Count","Min","Max","Mean","P50","P90","P99",null},
+            new long[]{10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 0},
+            new String[]{"global",null,null,null,null,null,null,null,null,null,null,null,null},
+            "SensorWindowSchema.xml",
+            new long[]{2, 2, 0},
+            new int[]{2, 2, 0});
+
+
+
+    private SensorWindowSchema() {
+        super(FROM);
+    }
+
+    public static final SensorWindowSchema instance = new SensorWindowSchema();
+
+    public static final int MSG_SUMMARY_10 = 0x00000000;
+    public static final int MSG_SUMMARY_10_FIELD_PORT_11 = 0x00000001;
+    public static final int MSG_SUMMARY_10_FIELD_TIME_12 = 0x00800002;
+    public static final int MSG_SUMMARY_10_FIELD_STARTNS_13 = 0x00800004;
+    public static final int MSG_SUMMARY_10_FIELD_ENDNS_14 = 0x00800006;
+    public static final int MSG_SUMMARY_10_FIELD_COUNT_15 = 0x00000008;
+    public static final int MSG_SUMMARY_10_FIELD_MIN_16 = 0x00400009;
+    public static final int MSG_SUMMARY_10_FIELD_MAX_17 = 0x0040000a;
+    public static final int MSG_SUMMARY_10_FIELD_MEAN_18 = 0x0040000b;
+    public static final int MSG_SUMMARY_10_FIELD_P50_19 = 0x0040000c;
+    public static final int MSG_SUMMARY_10_FIELD_P90_20 = 0x0040000d;
+    public static final int MSG_SUMMARY_10_FIELD_P99_21 = 0x0040000e;
+
+
+    public static void consume(Pipe<SensorWindowSchema> input) {
+        while (PipeReader.tryReadFragment(input)) {
+            int msgIdx = PipeReader.getMsgIdx(input);
+            switch(msgIdx) {
+                case MSG_SUMMARY_10:
+                    consumeSummary(input);
+                break;
+                case -1:
+                   //requestShutdown();
+                break;
+            }
+            PipeReader.releaseReadLock(input);
+        }
+    }
+
+    public static void consumeSummary(Pipe<SensorWindowSchema> input) {
+        int fieldPort = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_PORT_11);
+        long fieldTime = PipeReader.readLong(input,MSG_SUMMARY_10_FIELD_TIME_12);
+        long fieldStartNS = PipeReader.readLong(input,MSG_SUMMARY_10_FIELD_STARTNS_13);
+        long fieldEndNS = PipeReader.readLong(input,MSG_SUMMARY_10_FIELD_ENDNS_14);
+        int fieldCount = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_COUNT_15);
+        int fieldMin = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_MIN_16);
+        int fieldMax = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_MAX_17);
+        int fieldMean = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_MEAN_18);
+        int fieldP50 = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_P50_19);
+        int fieldP90 = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_P90_20);
+        int fieldP99 = PipeReader.readInt(input,MSG_SUMMARY_10_FIELD_P99_21);
+    }
+
+    public static boolean publishSummary(Pipe<SensorWindowSchema> output, int fieldPort, long fieldTime, long fieldStartNS, long fieldEndNS, int fieldCount, int fieldMin, int fieldMax, int fieldMean, int fieldP50, int fieldP90, int fieldP99) {
+        boolean result = false;
+        if (PipeWriter.tryWriteFragment(output, MSG_SUMMARY_10)) {
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_PORT_11, fieldPort);
+            PipeWriter.writeLong(output,MSG_SUMMARY_10_FIELD_TIME_12, fieldTime);
+            PipeWriter.writeLong(output,MSG_SUMMARY_10_FIELD_STARTNS_13, fieldStartNS);
+            PipeWriter.writeLong(output,MSG_SUMMARY_10_FIELD_ENDNS_14, fieldEndNS);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_COUNT_15, fieldCount);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_MIN_16, fieldMin);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_MAX_17, fieldMax);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_MEAN_18, fieldMean);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_P50_19, fieldP50);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_P90_20, fieldP90);
+            PipeWriter.writeInt(output,MSG_SUMMARY_10_FIELD_P99_21, fieldP99);
+            PipeWriter.publishWrites(output);
+            result = true;
+        }
+        return result;
+    }
+
+
+
+}
@@ -0,0 +1,147 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import java.io.IOException;
+
+/**
+ * Latency counts for one connection or command path. As in HdrHistogram each power of two
+ * nanoseconds is split into linear sub buckets, so a percentile is reported no more than 1/8
+ * above the value which was recorded and recording never allocates.
+ *
+ * Values are written by the single stage thread which owns the histogram and may be read
+ * from any thread for reporting. {@link #snapshot()} copies the counts so the percentiles
+ * of one report agree with each other.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1<<SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 40; //up to about 18 minutes
+    public static final int BUCKETS = (MAGNITUDES-SUB_BUCKET_BITS+1)*SUB_BUCKETS;
+
+    private final String name;
+    private final long[] counts;
+
+    private volatile long count;
+    private volatile long totalNS;
+    private volatile long maxNS;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new long[BUCKETS];
+    }
+
+    public void record(long ns) {
+        if (ns < 0) {
+            ns = 0; //clocks of different cores may disagree by a little
+        }
+        counts[bucket(ns)]++;
+        count++;
+        totalNS += ns;
+        if (ns > maxNS) {
+            maxNS = ns;
+        }
+    }
+
+    static int bucket(long ns) {
+        if (ns < SUB_BUCKETS) {
+            return (int) ns;
+        }
+        int shift = 63-Long.numberOfLeadingZeros(ns)-SUB_BUCKET_BITS;
+        int idx = ((shift+1)<<SUB_BUCKET_BITS) | (int) ((ns>>>shift) & (SUB_BUCKETS-1));
+        return Math.min(BUCKETS-1, idx);
+    }
+
+    /**
+     * Largest value which is counted in the bucket.
+     */
+    static long highestInBucket(int idx) {
+        if (idx < SUB_BUCKETS) {
+            return idx;
+        }
+        int shift = (idx>>SUB_BUCKET_BITS)-1;
+        long lowest = (long) (SUB_BUCKETS | (idx & (SUB_BUCKETS-1))) << shift;
+        return lowest + (1L<<shift) - 1;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long maxNS() {
+        return maxNS;
+    }
+
+    public long meanNS() {
+        long c = count;
+        return 0 == c ? 0 : totalNS/c;
+    }
+
+    /**
+     * @param percentile From 0 to 100, eg 99.9
+     * @return Latency in ns which the given share of the recorded values did not exceed, 0 when nothing was recorded.
+     */
+    public long percentileNS(double percentile) {
+        long total = 0;
+        int i = BUCKETS;
+        while (--i>=0) {
+            total += counts[i];
+        }
+        if (0 == total) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total*Math.min(100d, percentile)/100d));
+        long seen = 0;
+        for (i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestInBucket(i), maxNS);
+            }
+        }
+        return maxNS;
+    }
+
+    /**
+     * Copy of the counts so far, later recording does not change it.
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram result = new LatencyHistogram(name);
+        long total = 0;
+        int i = BUCKETS;
+        while (--i>=0) {
+            total += (result.counts[i] = counts[i]);
+        }
+        result.count = total;
+        result.totalNS = totalNS;
+        result.maxNS = maxNS;
+        return result;
+    }
+
+    public <A extends Appendable> A appendTo(A target) {
+        try {
+            target.append(name).append(" count:");
+            target.append(String.valueOf(count));
+            target.append(" meanNS:");
+            target.append(String.valueOf(meanNS()));
+            target.append(" p50NS:");
+            target.append(String.valueOf(percentileNS(50)));
+            target.append(" p99NS:");
+            target.append(String.valueOf(percentileNS(99)));
+            target.append(" p999NS:");
+            target.append(String.valueOf(percentileNS(99.9)));
+            target.append(" maxNS:");
+            target.append(String.valueOf(maxNS));
+            return target;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+
+/**
+ * Sleeps with {@link LockSupport#parkNanos(long)} which is far finer grained than Thread.sleep
+ * on Linux, then spins for the calibrated overshoot.
+ */
+public class ParkWaitStrategy extends PrecisionWaitStrategy {
+
+    public ParkWaitStrategy(HardwareImpl hardware, String name) {
+        super(hardware, name);
+    }
+
+    @Override
+    protected boolean sleep(long ns) {
+        LockSupport.parkNanos(ns);
+        return !Thread.currentThread().isInterrupted();
+    }
+
+}
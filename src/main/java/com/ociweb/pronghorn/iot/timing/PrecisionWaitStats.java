@@ -0,0 +1,137 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import java.io.IOException;
+
+/**
+ * Running totals for one {@link PrecisionWaitStrategy}. Each histogram uses power of two
+ * nanosecond buckets so recording never allocates.
+ *
+ * Jitter is how late the wait returned compared to the requested deadline, this is what the
+ * sampling stage sees. Overshoot is how far the operating system sleep ran past what was
+ * asked for and is what the adaptive strategies calibrate against.
+ *
+ * Values are written by the single stage thread which owns the strategy and may be read
+ * from any thread for reporting.
+ */
+public class PrecisionWaitStats {
+
+    public static final int BUCKETS = 40; //up to about 18 minutes
+
+    private final long[] jitter = new long[BUCKETS];
+    private final long[] overshoot = new long[BUCKETS];
+
+    private volatile long waits;
+    private volatile long maxJitterNS;
+    private volatile long maxOvershootNS;
+    private volatile long sleptNS;
+    private volatile long spunNS;
+
+    private final String name;
+
+    public PrecisionWaitStats(String name) {
+        this.name = name;
+    }
+
+    void recordJitter(long ns) {
+        jitter[bucket(ns)]++;
+        waits++;
+        if (ns > maxJitterNS) {
+            maxJitterNS = ns;
+        }
+    }
+
+    void recordOvershoot(long ns) {
+        overshoot[bucket(ns)]++;
+        if (ns > maxOvershootNS) {
+            maxOvershootNS = ns;
+        }
+    }
+
+    void recordSleep(long ns) {
+        sleptNS += ns;
+    }
+
+    void recordSpin(long ns) {
+        spunNS += ns;
+    }
+
+    private static int bucket(long ns) {
+        return ns <= 0 ? 0 : Math.min(BUCKETS-1, 64-Long.numberOfLeadingZeros(ns));
+    }
+
+    public long waits() {
+        return waits;
+    }
+
+    public long maxJitterNS() {
+        return maxJitterNS;
+    }
+
+    public long maxOvershootNS() {
+        return maxOvershootNS;
+    }
+
+    public long sleptNS() {
+        return sleptNS;
+    }
+
+    public long spunNS() {
+        return spunNS;
+    }
+
+    /**
+     * Count of waits which returned less than 2^idx ns after the deadline (and at least 2^(idx-1)).
+     */
+    public long jitterBucket(int idx) {
+        return jitter[idx];
+    }
+
+    /**
+     * Count of sleeps which overran the requested time by less than 2^idx ns (and at least 2^(idx-1)).
+     */
+    public long overshootBucket(int idx) {
+        return overshoot[idx];
+    }
+
+    /**
+     * Share of the waiting time which was spent busy on the CPU, 0 to 1.
+     */
+    public double spinRatio() {
+        long total = sleptNS + spunNS;
+        return 0 == total ? 0 : spunNS / (double) total;
+    }
+
+    public <A extends Appendable> A appendTo(A target) {
+        try {
+            target.append(name).append(" waits:");
+            target.append(String.valueOf(waits));
+            target.append(" maxJitterNS:");
+            target.append(String.valueOf(maxJitterNS));
+            target.append(" maxOvershootNS:");
+            target.append(String.valueOf(maxOvershootNS));
+            target.append(" spinPct:");
+            target.append(String.valueOf((long) (100 * spinRatio())));
+            appendHistogram(target.append("\n jitter   "), jitter);
+            appendHistogram(target.append("\n overshoot"), overshoot);
+            return target;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendHistogram(Appendable target, long[] buckets) throws IOException {
+        for (int i = 0; i < buckets.length; i++) {
+            if (0 != buckets[i]) {
+                target.append(" <");
+                target.append(String.valueOf(1L<<i));
+                target.append("ns:");
+                target.append(String.valueOf(buckets[i]));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+
+/**
+ * Waits until a deadline on the hardware nanosecond clock. Implementations sleep for as much
+ * of the wait as they can trust the operating system with and then spin for the remainder.
+ * The expected overshoot of the sleep is measured on every call and fed back so the spin at
+ * the end stays short.
+ *
+ * Each polling stage owns its own instance, they are not thread safe.
+ */
+public abstract class PrecisionWaitStrategy {
+
+    //never ask the OS for a sleep shorter than this, it will not be honored
+    protected static final long MIN_SLEEP_NS = 50_000;
+    //spin this long past the calibrated overshoot as a safety margin
+    protected static final long SPIN_MARGIN_NS = 20_000;
+    //calibration starts here and moves 1/8 of the way to each new measurement
+    protected static final long INITIAL_OVERSHOOT_NS = 100_000;
+    protected static final int CALIBRATION_SHIFT = 3;
+
+    protected final HardwareImpl hardware;
+    protected final PrecisionWaitStats stats;
+    private long estimatedOvershootNS = INITIAL_OVERSHOOT_NS;
+
+    protected PrecisionWaitStrategy(HardwareImpl hardware, String name) {
+        this.hardware = hardware;
+        this.stats = new PrecisionWaitStats(name);
+    }
+
+    /**
+     * Blocks until hardware.nanoTime() has reached the deadline.
+     *
+     * @param deadlineNS target time in the hardware nanoTime clock
+     *
+     * @return false if the thread was interrupted, the caller should shut down.
+     */
+    public boolean waitUntil(long deadlineNS) {
+        long now = hardware.nanoTime();
+        long remaining = deadlineNS - now;
+
+        if (remaining > 0) {
+            long sleepNS = remaining - estimatedOvershootNS - SPIN_MARGIN_NS;
+            if (sleepNS >= MIN_SLEEP_NS && canSleep()) {
+                if (!sleep(sleepNS)) {
+                    return false;
+                }
+                long after = hardware.nanoTime();
+                long slept = after - now;
+                long over = Math.max(0, slept - sleepNS);
+                stats.recordSleep(slept);
+                stats.recordOvershoot(over);
+                estimatedOvershootNS += (over - estimatedOvershootNS) >> CALIBRATION_SHIFT;
+                now = after;
+            }
+
+            long spinStart = now;
+            while ((deadlineNS - (now = hardware.nanoTime())) > 0) {
+                //spin out the final stretch, this is where the precision comes from
+            }
+            stats.recordSpin(now - spinStart);
+        }
+        stats.recordJitter(now - deadlineNS);
+        return true;
+    }
+
+    /**
+     * @return false if the thread was interrupted during the sleep.
+     */
+    protected abstract boolean sleep(long ns);
+
+    protected boolean canSleep() {
+        return true;
+    }
+
+    public long estimatedOvershootNS() {
+        return estimatedOvershootNS;
+    }
+
+    public PrecisionWaitStats stats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return stats.toString();
+    }
+}
@@ -0,0 +1,24 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+
+/**
+ * Never gives up the core. Only use this when the polling stage has an isolated core to itself.
+ */
+public class SpinWaitStrategy extends PrecisionWaitStrategy {
+
+    public SpinWaitStrategy(HardwareImpl hardware, String name) {
+        super(hardware, name);
+    }
+
+    @Override
+    protected boolean canSleep() {
+        return false;
+    }
+
+    @Override
+    protected boolean sleep(long ns) {
+        return true;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.Pointer;
+
+/**
+ * JNI library wrapper for the Linux timerfd calls.
+ */
+public interface TimerFdLib {
+    //C Library instance.
+    TimerFdLib instance = LibraryLoader.create(TimerFdLib.class).load("c");
+
+    int CLOCK_MONOTONIC = 1;
+    int TFD_CLOEXEC = 02000000;
+
+    //Native Methods///////////////////////////////////////////////////////////
+    int timerfd_create(int clockid, int flags);
+    int timerfd_settime(int fd, int flags, Pointer newValue, Pointer oldValue);
+    int read(int fd, byte[] buffer, int count);
+    int close(int fd);
+}
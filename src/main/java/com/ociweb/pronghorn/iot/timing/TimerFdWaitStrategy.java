@@ -0,0 +1,71 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.iot.hardware.HardwareImpl;
+
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+
+/**
+ * Sleeps by blocking on a read of a Linux timerfd armed with the relative sleep time. The
+ * kernel hrtimer behind it usually wakes closer to the target than a futex based park.
+ * Falls back to parkNanos when timerfd is not available on this platform.
+ */
+public class TimerFdWaitStrategy extends PrecisionWaitStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerFdWaitStrategy.class);
+
+    private final byte[] expirations = new byte[8];
+    private TimerFdLib c;
+    private int fd = -1;
+    private Pointer spec;
+    private int longSize;
+
+    public TimerFdWaitStrategy(HardwareImpl hardware, String name) {
+        super(hardware, name);
+        try {
+            c = TimerFdLib.instance;
+            fd = c.timerfd_create(TimerFdLib.CLOCK_MONOTONIC, TimerFdLib.TFD_CLOEXEC);
+            if (fd >= 0) {
+                jnr.ffi.Runtime runtime = jnr.ffi.Runtime.getRuntime(c);
+                longSize = runtime.longSize();
+                //struct itimerspec { struct timespec it_interval; struct timespec it_value; }
+                spec = Memory.allocateDirect(runtime, 4 * longSize);
+                final int timer = fd;
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+                    public void run() {
+                        c.close(timer);
+                    }
+                });
+            }
+        } catch (Throwable t) {
+            fd = -1;
+        }
+        if (fd < 0) {
+            logger.warn("timerfd is not available on this platform, parkNanos will be used instead");
+        }
+    }
+
+    @Override
+    protected boolean sleep(long ns) {
+        if (fd >= 0) {
+            spec.putNativeLong(0, 0);
+            spec.putNativeLong(longSize, 0);
+            spec.putNativeLong(2 * longSize, ns / 1_000_000_000L);
+            spec.putNativeLong(3 * longSize, ns % 1_000_000_000L);
+            if (c.timerfd_settime(fd, 0, spec, null) >= 0) {
+                c.read(fd, expirations, expirations.length);
+            } else {
+                LockSupport.parkNanos(ns);
+            }
+        } else {
+            LockSupport.parkNanos(ns);
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+}
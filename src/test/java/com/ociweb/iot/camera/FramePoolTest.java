@@ -0,0 +1,39 @@
+package com.ociweb.iot.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FramePoolTest {
+
+    @Test
+    public void frameIsReusedOnceEveryReaderReleases() {
+
+        FramePool pool = new FramePool(1, 12);
+        ImageFrame[] first = pool.newFrames();
+        ImageFrame[] second = pool.newFrames();
+
+        int id = pool.acquire();
+        assertEquals(0, id);
+        pool.fillBuffer(id).put(new byte[]{1,2,3,4,5,6,7,8,9,10,11,12});
+        pool.publish(id, 2);
+
+        assertEquals(-1, pool.acquire());
+
+        first[id].attach(2, 2, 0, 12);
+        second[id].attach(2, 2, 0, 12);
+        assertTrue(first[id].buffer().isReadOnly());
+        assertEquals(7, first[id].readRow(1)[0]);
+
+        first[id].release();
+        first[id].release(); //second release of the same handle is ignored
+        assertEquals(-1, pool.acquire());
+
+        second[id].release();
+        assertFalse(second[id].isHeld());
+        assertEquals(0, pool.acquire());
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.ociweb.iot.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AnalogFilterChainTest {
+
+    @Test
+    public void medianRejectsSpikes() {
+        AnalogFilterChain chain = new AnalogFilterChain().median(3);
+        assertEquals(10, chain.apply(10));
+        chain.apply(11);
+        assertEquals(11, chain.apply(900));
+        assertEquals(12, chain.apply(12));
+    }
+
+    @Test
+    public void decimationAndDeadbandDrop() {
+        AnalogFilterChain chain = new AnalogFilterChain().decimate(2).deadband(5);
+        assertEquals(100, chain.apply(100));
+        assertEquals(AnalogFilter.DROP, chain.apply(500)); //decimated
+        assertEquals(AnalogFilter.DROP, chain.apply(103)); //inside the band
+        chain.apply(0);
+        assertEquals(110, chain.apply(110));
+    }
+
+    @Test
+    public void newInstanceHasFreshState() {
+        AnalogFilterChain chain = new AnalogFilterChain().ewma(0.5);
+        chain.apply(0);
+        assertEquals(50, chain.apply(100));
+        assertEquals(100, chain.newInstance().apply(100));
+    }
+
+}
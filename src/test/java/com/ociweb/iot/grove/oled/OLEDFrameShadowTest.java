@@ -0,0 +1,39 @@
+package com.ociweb.iot.grove.oled;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OLEDFrameShadowTest {
+
+    @Test
+    public void onlyChangedWindowIsDirty() {
+        OLEDFrameShadow shadow = new OLEDFrameShadow(4, 8);
+        int[] frame = new int[32];
+
+        // unknown display RAM, everything must be sent
+        assertTrue(shadow.findDirty(frame));
+        assertEquals(0, shadow.firstRow);
+        assertEquals(3, shadow.lastRow);
+        shadow.sentAll(frame);
+        assertFalse(shadow.findDirty(frame));
+
+        frame[(1 * 8) + 2] = 0xFF;
+        frame[(2 * 8) + 5] = 0x0F;
+        assertTrue(shadow.findDirty(frame));
+        assertEquals(1, shadow.firstRow);
+        assertEquals(2, shadow.lastRow);
+        assertEquals(2, shadow.firstCol);
+        assertEquals(5, shadow.lastCol);
+        assertEquals(-1, shadow.firstChanged(frame, 0));
+
+        shadow.sent(frame, 1, 2, 5);
+        shadow.sent(frame, 2, 2, 5);
+        assertFalse(shadow.findDirty(frame));
+
+        shadow.invalidate();
+        assertEquals(0, shadow.firstChanged(frame, 0));
+    }
+}
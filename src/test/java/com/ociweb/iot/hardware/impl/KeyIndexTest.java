@@ -0,0 +1,38 @@
+package com.ociweb.iot.hardware.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class KeyIndexTest {
+
+    @Test
+    public void keysKeepTheirIndexAsTheTableGrows() {
+        KeyIndex index = new KeyIndex(4);
+        int keys = 10_000;
+        for (int i = 0; i < keys; i++) {
+            assertEquals(i, index.add(key(i)));
+        }
+        assertEquals(keys, index.size());
+        for (int i = 0; i < keys; i++) {
+            assertEquals(i, index.indexOf(key(i)));
+            assertEquals(i, index.add(key(i)));
+            assertEquals(key(i), index.key(i));
+        }
+        assertEquals(-1, index.indexOf(key(keys)));
+    }
+
+    @Test
+    public void zeroIsAKey() {
+        KeyIndex index = new KeyIndex(0);
+        assertEquals(-1, index.indexOf(0));
+        assertEquals(0, index.add(0));
+        assertEquals(0, index.indexOf(0));
+    }
+
+    //address and register pairs, as the I2C batches use
+    private static int key(int i) {
+        return ((i%128)<<16) | (i/128);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.ociweb.iot.hardware.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ociweb.gl.api.Writable;
+import com.ociweb.iot.hardware.impl.test.TestSerial;
+import com.ociweb.iot.maker.Baud;
+import com.ociweb.iot.maker.FogApp;
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Hardware;
+import com.ociweb.iot.maker.SerialService;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+import com.ociweb.pronghorn.stage.scheduling.ScriptedNonThreadScheduler;
+
+/**
+ * Serial throughput over {@link TestSerial}, which echoes every write back as input.
+ *
+ * readerStage drives the SerialDataReaderStage alone. roundTrip publishes from a command
+ * channel through the SerialDataWriterStage and back through the reader to a listener.
+ *
+ * Run with main, reports chunks of CHUNK_BYTES per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SerialBenchmark {
+
+    private static final int CHUNKS = 32;
+    private static final int CHUNK_BYTES = 64;
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+
+        private final byte[] payload = new byte[CHUNK_BYTES];
+        private TestSerial serial;
+        private Pipe<SerialInputSchema> pipe;
+        private SerialDataReaderStage stage;
+
+        @Setup
+        public void setup() {
+            serial = new TestSerial();
+            pipe = new Pipe<SerialInputSchema>(new PipeConfig<SerialInputSchema>(SerialInputSchema.instance, CHUNKS*2, CHUNK_BYTES*2));
+            pipe.initBuffers();
+            stage = new SerialDataReaderStage(new GraphManager(), pipe, serial);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class GraphState {
+
+        private final Writable chunk = w -> {
+            int i = CHUNK_BYTES;
+            while (--i>=0) {
+                w.writeByte(i);
+            }
+        };
+        private SerialService serial;
+        private ScriptedNonThreadScheduler scheduler;
+        private long received;
+
+        @Setup
+        public void setup() {
+            FogRuntime runtime = new FogRuntime(SerialBenchmark.class.getSimpleName());
+            scheduler = FogRuntime.test(new FogApp() {
+
+                @Override
+                public void declareConnections(Hardware builder) {
+                    builder.useSerial(Baud.B___115200);
+                }
+
+                @Override
+                public void declareBehavior(FogRuntime runtime) {
+                    serial = runtime.newCommandChannel().newSerialService(CHUNKS, CHUNK_BYTES);
+                    runtime.addSerialListener(reader -> {
+                        int length = reader.available();
+                        received += length;
+                        return length;
+                    });
+                }
+            }, runtime);
+            scheduler.startup();
+        }
+
+        @TearDown
+        public void tearDown() {
+            scheduler.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public int readerStage(ReaderState state) {
+        int i = CHUNKS;
+        while (--i>=0) {
+            state.serial.writeFrom(state.payload, 0, CHUNK_BYTES);
+        }
+        int bytes = 0;
+        int chunks = 0;
+        while (chunks < CHUNKS) {
+            state.stage.run();
+            while (PipeReader.tryReadFragment(state.pipe)) {
+                bytes += PipeReader.readBytesLength(state.pipe, SerialInputSchema.MSG_CHUNKEDSTREAM_1_FIELD_BYTEARRAY_2);
+                PipeReader.releaseReadLock(state.pipe);
+                chunks++;
+            }
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public void roundTrip(GraphState state) {
+        long target = state.received + (long)CHUNKS*CHUNK_BYTES;
+        int i = CHUNKS;
+        while (i>0) {
+            if (state.serial.publishSerial(state.chunk)) {
+                i--;
+            } else {
+                state.scheduler.run();
+            }
+        }
+        while (state.received < target) {
+            state.scheduler.run();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SerialBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
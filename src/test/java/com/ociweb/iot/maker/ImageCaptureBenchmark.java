@@ -0,0 +1,133 @@
+package com.ociweb.iot.maker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ociweb.iot.camera.FramePool;
+import com.ociweb.pronghorn.iot.schema.ImageSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.pipe.PipeReader;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Captures 1080p RGB24 frames with the PiImageListenerStage from the ProxyCam it falls back to
+ * when there is no camera. Rows publishes each frame row by row, handles captures into a
+ * {@link FramePool} and publishes the frame handle.
+ *
+ * The ProxyCam reads ./images, when that folder does not exist two generated frames are
+ * written to it for the run and removed afterwards.
+ *
+ * Run with main, reports frames per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImageCaptureBenchmark {
+
+    private static final File IMAGES = new File("./images");
+    private static final int FRAME_BYTES = PiImageListenerStage.ROW_SIZE*PiImageListenerStage.FRAME_HEIGHT;
+
+    @Param({"rows", "handles"})
+    public String delivery;
+
+    private Pipe<ImageSchema> pipe;
+    private PiImageListenerStage stage;
+    private FramePool framePool;
+    private File[] generated;
+
+    @Setup
+    public void setup() throws IOException {
+        if (!IMAGES.exists()) {
+            generated = generateFrames(2);
+        }
+        pipe = new Pipe<ImageSchema>(new PipeConfig<ImageSchema>(ImageSchema.instance, 16, PiImageListenerStage.ROW_SIZE));
+        pipe.initBuffers();
+        GraphManager gm = new GraphManager();
+        if ("handles".equals(delivery)) {
+            framePool = new FramePool(2);
+            stage = new PiImageListenerStage(gm, pipe, 1, framePool, 1);
+        } else {
+            stage = new PiImageListenerStage(gm, pipe, 1);
+        }
+        stage.startup();
+    }
+
+    private static File[] generateFrames(int count) throws IOException {
+        IMAGES.mkdirs();
+        File[] frames = new File[count];
+        byte[] bytes = new byte[FRAME_BYTES];
+        for (int f = 0; f < count; f++) {
+            int i = bytes.length;
+            while (--i>=0) {
+                bytes[i] = (byte)(i+f);
+            }
+            frames[f] = new File(IMAGES, "frame"+f+".raw");
+            try (FileOutputStream out = new FileOutputStream(frames[f])) {
+                out.write(bytes);
+            }
+        }
+        return frames;
+    }
+
+    @TearDown
+    public void tearDown() {
+        stage.shutdown();
+        if (null != generated) {
+            for (File f : generated) {
+                f.delete();
+            }
+            IMAGES.delete();
+        }
+    }
+
+    /**
+     * @return bytes of the frame received.
+     */
+    @Benchmark
+    public int nextFrame() {
+        int bytes = 0;
+        while (true) {
+            stage.run();
+            while (PipeReader.tryReadFragment(pipe)) {
+                switch (PipeReader.getMsgIdx(pipe)) {
+                    case ImageSchema.MSG_FRAMECHUNK_2:
+                        bytes += PipeReader.readBytesLength(pipe, ImageSchema.MSG_FRAMECHUNK_2_FIELD_ROWBYTES_102);
+                        break;
+                    case ImageSchema.MSG_FRAMEHANDLE_3:
+                        bytes = PipeReader.readInt(pipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_LENGTH_501);
+                        framePool.release(PipeReader.readInt(pipe, ImageSchema.MSG_FRAMEHANDLE_3_FIELD_FRAMEID_401));
+                        break;
+                }
+                PipeReader.releaseReadLock(pipe);
+                if (bytes >= FRAME_BYTES) {
+                    return bytes;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ImageCaptureBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package com.ociweb.iot.maker.image;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Pixel operations on a 96x96 rgb bitmap, the size of the Grove OLED, at 8 and 16 bit
+ * component depth. Compares component by component access through {@link FogBitmapLayout}
+ * with the row based {@link FogBmpConverter}.
+ *
+ * Run with main, reports pixels per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FogBitmapLayoutBenchmark {
+
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 96;
+    private static final int PIXELS = WIDTH*HEIGHT;
+
+    @Param({"8", "16"})
+    public byte depth;
+
+    private final FogBmpConverter converter = new FogBmpConverter();
+    private FogBitmap rgb;
+    private FogBitmap mono;
+    private FogBitmapLayout layout;
+    private byte[] bmp;
+    private int value;
+
+    @Setup
+    public void setup() {
+        rgb = new FogBitmap(FogColorSpace.rgb, depth, WIDTH, HEIGHT);
+        mono = new FogBitmap(FogColorSpace.gray, (byte) 1, WIDTH, HEIGHT);
+        layout = rgb.getLayout();
+        bmp = rgb.getBmp();
+        converter.fill(rgb, 0, 0, WIDTH, HEIGHT, 1, 2, 3);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public void setComponent() {
+        int v = value++;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                layout.setComponent(bmp, x, y, 0, v);
+                layout.setComponent(bmp, x, y, 1, v+x);
+                layout.setComponent(bmp, x, y, 2, v+y);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int getComponent() {
+        int sum = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                sum += layout.getComponent(bmp, x, y, 0)
+                     + layout.getComponent(bmp, x, y, 1)
+                     + layout.getComponent(bmp, x, y, 2);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public void fill() {
+        int v = value++;
+        converter.fill(rgb, 0, 0, WIDTH, HEIGHT, v, v+1, v+2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public FogBitmap convertToMono() {
+        converter.convert(rgb, mono);
+        return mono;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FogBitmapLayoutBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
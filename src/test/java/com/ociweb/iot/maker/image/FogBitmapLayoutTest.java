@@ -0,0 +1,30 @@
+package com.ociweb.iot.maker.image;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FogBitmapLayoutTest {
+
+    @Test
+    public void oneByteComponentsAreUnsigned() {
+        FogBitmap bmp = new FogBitmap(FogColorSpace.gray, (byte) 8, 3, 1);
+        bmp.setComponent(0, 0, 0, 127);
+        bmp.setComponent(1, 0, 0, 128);
+        bmp.setComponent(2, 0, 0, 255);
+
+        assertEquals(127, bmp.getComponent(0, 0, 0));
+        assertEquals(128, bmp.getComponent(1, 0, 0));
+        assertEquals(255, bmp.getComponent(2, 0, 0));
+    }
+
+    @Test
+    public void oneByteComponentsMatchWiderWidths() {
+        FogBitmap narrow = new FogBitmap(FogColorSpace.rgb, (byte) 8, 1, 1);
+        FogBitmap wide = new FogBitmap(FogColorSpace.rgb, (byte) 16, 1, 1);
+        narrow.getBmp()[2] = (byte) 0xF0;
+        wide.setComponent(0, 0, 2, 0xF0);
+
+        assertEquals(wide.getComponent(0, 0, 2), narrow.getComponent(0, 0, 2));
+    }
+}
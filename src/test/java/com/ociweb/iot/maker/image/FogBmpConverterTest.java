@@ -0,0 +1,69 @@
+package com.ociweb.iot.maker.image;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FogBmpConverterTest {
+
+    private final FogBmpConverter converter = new FogBmpConverter();
+
+    @Test
+    public void fillMatchesPerPixelWrites() {
+        FogBitmap bmp = new FogBitmap(FogColorSpace.rgb, (byte) 16, 5, 3);
+        converter.fill(bmp, 1, 1, 3, 2, 0x1234, 0x00FF, 0xABCD);
+
+        assertEquals(0, bmp.getComponent(0, 1, 0));
+        assertEquals(0x1234, bmp.getComponent(1, 1, 0));
+        assertEquals(0x00FF, bmp.getComponent(3, 2, 1));
+        assertEquals(0xABCD, bmp.getComponent(2, 2, 2));
+        assertEquals(0, bmp.getComponent(4, 2, 2));
+    }
+
+    @Test
+    public void rotateClockwiseQuarterTurn() {
+        FogBitmap src = new FogBitmap(FogColorSpace.gray, (byte) 8, 3, 2);
+        int v = 0;
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 3; x++) {
+                src.setComponent(x, y, 0, ++v);
+            }
+        }
+        FogBitmap dst = new FogBitmap(FogColorSpace.gray, (byte) 8, 2, 3);
+        converter.rotate(src, dst, FogFixedRotation.two);
+
+        // top left of the source moves to the top right
+        assertEquals(1, dst.getComponent(1, 0, 0));
+        assertEquals(4, dst.getComponent(0, 0, 0));
+        assertEquals(6, dst.getComponent(0, 2, 0));
+    }
+
+    @Test
+    public void rgbConvertsToMonoAndPacksIntoPages() {
+        FogBitmap rgb = new FogBitmap(FogColorSpace.rgb, (byte) 8, 4, 8);
+        converter.fill(rgb, 0, 0, 4, 8, 0, 0, 0);
+        converter.fill(rgb, 2, 0, 2, 8, 255, 255, 255);
+
+        FogBitmap mono = new FogBitmap(FogColorSpace.gray, (byte) 1, 4, 8);
+        converter.convert(rgb, mono);
+        assertEquals(0, mono.getComponent(1, 3, 0));
+        assertEquals(1, mono.getComponent(2, 3, 0));
+
+        int[] pages = new int[4];
+        assertEquals(4, FogBmpConverter.packPages(mono, pages));
+        assertEquals(0x00, pages[0]);
+        assertEquals(0xFF, pages[3]);
+    }
+
+    @Test
+    public void scaleDoublesPixels() {
+        FogBitmap src = new FogBitmap(FogColorSpace.gray, (byte) 8, 2, 1);
+        src.setComponent(0, 0, 0, 10);
+        src.setComponent(1, 0, 0, 20);
+        FogBitmap dst = new FogBitmap(FogColorSpace.gray, (byte) 8, 4, 2);
+        converter.scale(src, dst);
+
+        assertEquals(10, dst.getComponent(1, 1, 0));
+        assertEquals(20, dst.getComponent(2, 0, 0));
+    }
+}
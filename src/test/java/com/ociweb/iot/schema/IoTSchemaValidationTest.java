@@ -86,6 +86,18 @@ public class IoTSchemaValidationTest {
     	}
     } 
 
+    @Test
+    public void sensorWindowSchemaFROMTest() {
+
+    	if ("arm".equals(System.getProperty("os.arch"))) {
+    		assertTrue(true);
+    	}
+
+    	else {
+        assertTrue(FROMValidation.checkSchema("/SensorWindowSchema.xml", SensorWindowSchema.class));
+    	}
+    }
+
     @Test
     public void imageSchemaFROMTest() {
 
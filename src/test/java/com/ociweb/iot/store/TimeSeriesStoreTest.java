@@ -0,0 +1,110 @@
+package com.ociweb.iot.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ociweb.iot.maker.Port;
+
+public class TimeSeriesStoreTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("fogts").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void samplesAreReadBackExactly() {
+
+        TimeSeriesStore store = new TimeSeriesStore(directory.getPath(), 4<<20, 0);
+        assertTrue(store.open());
+
+        int key = TimeSeriesStore.analogKey(Port.A1);
+        int samples = 5000;
+        long[] expectedTimes = new long[samples];
+        long[] expectedValues = new long[samples];
+        long time = 1_500_000_000_000_000L;
+        for (int i = 0; i < samples; i++) {
+            //steady rate with occasional jitter and gaps, values which repeat, drift and jump
+            time += 1000 + (i%7==0 ? i%300 : 0) + (i%997==0 ? 5_000_000 : 0);
+            long value = i%10<5 ? 512 : (i%3==0 ? -i : (long)i<<40);
+            expectedTimes[i] = time;
+            expectedValues[i] = value;
+            store.append(key, time, value, 0);
+        }
+        store.append(TimeSeriesStore.digitalKey(Port.D2), expectedTimes[0], 1, 0);
+        store.flushOlderThan(0, 0);
+
+        long[] times = new long[1000];
+        long[] values = new long[1000];
+        int total = 0;
+        long from = Long.MIN_VALUE;
+        int count;
+        while ((count = store.range(key, from, Long.MAX_VALUE, times, values)) > 0) {
+            for (int i = 0; i < count; i++) {
+                assertEquals(expectedTimes[total], times[i]);
+                assertEquals(expectedValues[total], values[i]);
+                total++;
+            }
+            from = times[count-1]+1;
+        }
+        assertEquals(samples, total);
+
+        store.close();
+    }
+
+    @Test
+    public void downsampleSummarizesBuckets() {
+
+        TimeSeriesStore store = new TimeSeriesStore(directory.getPath(), 4<<20, 0);
+        assertTrue(store.open());
+
+        int key = TimeSeriesStore.i2cKey(0x04, 0x10);
+        for (int i = 0; i < 100; i++) {
+            store.append(key, 1000 + i*10, i, 0);
+        }
+        store.flushOlderThan(0, 0);
+
+        long[] mins = new long[8];
+        long[] maxs = new long[8];
+        long[] means = new long[8];
+        int[] counts = new int[8];
+        //buckets of 10 samples each
+        int buckets = store.downsample(key, 1000, 1000+8*100-1, 100, mins, maxs, means, counts);
+        assertEquals(8, buckets);
+        for (int b = 0; b < 8; b++) {
+            assertEquals(10, counts[b]);
+            assertEquals(b*10, mins[b]);
+            assertEquals(b*10+9, maxs[b]);
+            assertEquals(b*10+4, means[b]);
+        }
+        store.close();
+
+        //samples survive a restart
+        TimeSeriesStore reopened = new TimeSeriesStore(directory.getPath(), 4<<20, 0);
+        assertTrue(reopened.open());
+        long[] times = new long[200];
+        long[] values = new long[200];
+        assertEquals(100, reopened.range(key, 0, Long.MAX_VALUE, times, values));
+        assertEquals(99, values[99]);
+        reopened.close();
+    }
+
+}
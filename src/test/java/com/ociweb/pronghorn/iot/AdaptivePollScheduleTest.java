@@ -0,0 +1,88 @@
+package com.ociweb.pronghorn.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ociweb.pronghorn.util.math.ScriptedSchedule;
+
+public class AdaptivePollScheduleTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void quietConnectionBacksOffAndSnapsBack() {
+
+        AdaptivePollSchedule adaptive = new AdaptivePollSchedule(new long[]{10*MS, 20*MS}, 100*MS, 4);
+        adaptive.sample(0, 500, 0);
+        adaptive.sample(1, 1, 0);
+        assertEquals(1, adaptive.backoff(0));
+
+        adaptive.sample(0, 500, 100*MS);
+        assertEquals(2, adaptive.backoff(0));
+
+        adaptive.sample(0, 500, 200*MS);
+        adaptive.sample(0, 500, 300*MS);
+        assertEquals(4, adaptive.backoff(0)); //capped at the max backoff
+
+        assertTrue(adaptive.sample(0, 501, 310*MS));
+        assertEquals(1, adaptive.backoff(0));
+    }
+
+    @Test
+    public void activityResetsLinkedConnections() {
+
+        AdaptivePollSchedule adaptive = new AdaptivePollSchedule(new long[]{10*MS, 10*MS, 10*MS}, 100*MS, 8);
+        adaptive.link(0, 2);
+        adaptive.pin(1);
+        for (int i = 0; i < 3; i++) {
+            adaptive.sample(i, 7, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            adaptive.sample(i, 7, 100*MS);
+        }
+        assertEquals(2, adaptive.backoff(0));
+        assertEquals(1, adaptive.backoff(1));
+        assertEquals(2, adaptive.backoff(2));
+
+        adaptive.sample(0, 9, 150*MS);
+        assertEquals(1, adaptive.backoff(2));
+    }
+
+    @Test
+    public void backedOffConnectionSkipsSlotsOfTheSameScript() {
+
+        AdaptivePollSchedule adaptive = new AdaptivePollSchedule(new long[]{10*MS, 20*MS}, 100*MS, 4);
+        ScriptedSchedule script = adaptive.schedule();
+        adaptive.sample(0, 500, 0);
+        adaptive.sample(0, 500, 100*MS);
+        assertEquals(2, adaptive.backoff(0));
+        assertSame(script, adaptive.schedule());
+
+        assertFalse(adaptive.isDue(0, 110*MS)); //next slot is skipped
+        assertTrue(adaptive.isDue(0, 120*MS));
+        assertTrue(adaptive.isDue(1, 110*MS)); //not backed off
+
+        adaptive.sample(0, 600, 120*MS);
+        assertTrue(adaptive.isDue(0, 130*MS));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void maxBackoffIsCapped() {
+        new AdaptivePollSchedule(new long[]{10*MS}, 100*MS, AdaptivePollSchedule.MAX_BACKOFF*2);
+    }
+
+    @Test
+    public void changesWithinThresholdAreIgnored() {
+
+        AdaptivePollSchedule adaptive = new AdaptivePollSchedule(new long[]{10*MS}, 100*MS, 2);
+        adaptive.setThreshold(0, 4);
+        adaptive.sample(0, 100, 0);
+        assertFalse(adaptive.sample(0, 103, 50*MS));
+        assertTrue(adaptive.sample(0, 105, 60*MS));
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.ociweb.pronghorn.iot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ociweb.gl.api.MsgRuntime;
+import com.ociweb.iot.grove.simple_analog.SimpleAnalogTwig;
+import com.ociweb.iot.grove.simple_digital.SimpleDigitalTwig;
+import com.ociweb.iot.hardware.impl.test.TestHardware;
+import com.ociweb.iot.maker.AnalogListener;
+import com.ociweb.iot.maker.DigitalListener;
+import com.ociweb.iot.maker.FogApp;
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Hardware;
+import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+import com.ociweb.pronghorn.stage.scheduling.ScriptedNonThreadScheduler;
+
+/**
+ * Interleaved analog and digital samples dispatched by ReactiveIoTListenerStage.consumeResponseMessage
+ * to 40 behaviors which each listen to both kinds, through the graph the runtime builds. Filtered
+ * gives every behavior one analog and one digital port so the port filters decide each event.
+ * Only the polling stage is replaced, by a source which publishes as fast as the listeners consume.
+ *
+ * Run with main on each build of the stage to compare them, reports samples per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GroveResponseDispatchBenchmark {
+
+    private static final int BEHAVIORS = 40;
+    private static final Port[] DIGITAL_INPUTS = {Port.D2, Port.D3, Port.D4};
+    private static final int EVENTS = 240; //whole cycles of the analog and digital connectors
+
+    @Param({"false", "true"})
+    public boolean filtered;
+
+    private SampleSource source;
+    private ScriptedNonThreadScheduler scheduler;
+    private long delivered;
+    private long deliveredPerInvocation;
+
+    @Setup
+    public void setup() {
+        FogRuntime runtime = new FogRuntime(GroveResponseDispatchBenchmark.class.getSimpleName());
+        DispatchHardware hardware = new DispatchHardware(MsgRuntime.getGraphManager(runtime));
+        scheduler = FogRuntime.test(new FogApp() {
+
+            @Override
+            public void declareConnections(Hardware builder) {
+                for (Port port : Port.ANALOGS) {
+                    builder.connect(SimpleAnalogTwig.AngleSensor, port, 1, true);
+                }
+                for (Port port : DIGITAL_INPUTS) {
+                    builder.connect(SimpleDigitalTwig.Button, port, 1, true);
+                }
+            }
+
+            @Override
+            public void declareBehavior(FogRuntime runtime) {
+                for (int b = 0; b < BEHAVIORS; b++) {
+                    CountingListener listener = new CountingListener();
+                    if (filtered) {
+                        runtime.registerListener(listener).includePorts(analogPort(b), digitalPort(b));
+                    } else {
+                        runtime.registerListener(listener);
+                    }
+                }
+            }
+        }, runtime, hardware);
+        source = hardware.source;
+
+        for (int i = 0; i < EVENTS; i++) {
+            Port port = SampleSource.isAnalog(i) ? Port.ANALOGS[SampleSource.connector(i)] : Port.DIGITALS[SampleSource.connector(i)];
+            for (int b = 0; b < BEHAVIORS; b++) {
+                if (!filtered || port == analogPort(b) || port == digitalPort(b)) {
+                    deliveredPerInvocation++;
+                }
+            }
+        }
+        scheduler.startup();
+    }
+
+    private static Port analogPort(int behavior) {
+        return Port.ANALOGS[behavior % Port.ANALOGS.length];
+    }
+
+    private static Port digitalPort(int behavior) {
+        return DIGITAL_INPUTS[behavior % DIGITAL_INPUTS.length];
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void dispatch() {
+        long target = delivered + deliveredPerInvocation;
+        source.pending += EVENTS;
+        while (delivered < target) {
+            scheduler.run();
+        }
+    }
+
+    private class CountingListener implements AnalogListener, DigitalListener {
+
+        @Override
+        public void analogEvent(Port port, long time, long durationMillis, int average, int value) {
+            delivered++;
+        }
+
+        @Override
+        public void digitalEvent(Port port, long time, long durationMillis, int value) {
+            delivered++;
+        }
+    }
+
+    private static class DispatchHardware extends TestHardware {
+
+        private SampleSource source;
+
+        DispatchHardware(GraphManager gm) {
+            super(gm, new String[0]);
+        }
+
+        @Override
+        protected void createADInputStage(Pipe<GroveResponseSchema> masterResponsePipe) {
+            source = new SampleSource(gm, masterResponsePipe);
+        }
+    }
+
+    private static class SampleSource extends PronghornStage {
+
+        private final Pipe<GroveResponseSchema> output;
+        private int pending;
+        private int sent;
+
+        SampleSource(GraphManager gm, Pipe<GroveResponseSchema> output) {
+            super(gm, NONE, output);
+            this.output = output;
+        }
+
+        static boolean isAnalog(int i) {
+            return 0 == (i & 1);
+        }
+
+        static int connector(int i) {
+            return isAnalog(i) ? (i>>1) % Port.ANALOGS.length : DIGITAL_INPUTS[(i>>1) % DIGITAL_INPUTS.length].port;
+        }
+
+        @Override
+        public void run() {
+            while (pending > 0 && Pipe.hasRoomForWrite(output)) {
+                int size = Pipe.addMsgIdx(output, isAnalog(sent) ? GroveResponseSchema.MSG_ANALOGSAMPLE_30 : GroveResponseSchema.MSG_DIGITALSAMPLE_20);
+                Pipe.addIntValue(connector(sent), output);
+                Pipe.addLongValue(sent, output);
+                Pipe.addIntValue(isAnalog(sent) ? sent & 1023 : (sent>>1) & 1, output);
+                Pipe.addLongValue(0, output);
+                Pipe.addLongValue(System.nanoTime(), output);
+                Pipe.addLongValue(0, output);
+                Pipe.confirmLowLevelWrite(output, size);
+                Pipe.publishWrites(output);
+                sent++;
+                pending--;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GroveResponseDispatchBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package com.ociweb.pronghorn.iot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ociweb.gl.api.MsgRuntime;
+import com.ociweb.iot.grove.simple_analog.SimpleAnalogTwig;
+import com.ociweb.iot.hardware.impl.test.TestHardware;
+import com.ociweb.iot.maker.FogApp;
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Hardware;
+import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.stage.PronghornStage;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+import com.ociweb.pronghorn.stage.scheduling.ScriptedNonThreadScheduler;
+
+/**
+ * Dispatches analog samples to 1, 10 or 100 listeners through the graph the runtime builds,
+ * replicators and ReactiveIoTListenerStage included. Only the polling stage is replaced, by a
+ * source which publishes as fast as the listeners consume.
+ *
+ * Run with main, reports samples per second, each delivered to every listener.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ListenerDispatchBenchmark {
+
+    private static final int EVENTS = 256;
+
+    @Param({"1", "10", "100"})
+    public int listeners;
+
+    private SampleSource source;
+    private ScriptedNonThreadScheduler scheduler;
+    private long delivered;
+
+    @Setup
+    public void setup() {
+        FogRuntime runtime = new FogRuntime(ListenerDispatchBenchmark.class.getSimpleName());
+        DispatchHardware hardware = new DispatchHardware(MsgRuntime.getGraphManager(runtime));
+        scheduler = FogRuntime.test(new FogApp() {
+
+            @Override
+            public void declareConnections(Hardware builder) {
+                int i = Port.ANALOGS.length;
+                while (--i>=0) {
+                    builder.connect(SimpleAnalogTwig.AngleSensor, Port.ANALOGS[i], 1, true);
+                }
+            }
+
+            @Override
+            public void declareBehavior(FogRuntime runtime) {
+                for (int i = 0; i < listeners; i++) {
+                    runtime.addAnalogListener((port, time, durationMillis, average, value) -> delivered++);
+                }
+            }
+        }, runtime, hardware);
+        source = hardware.source;
+        scheduler.startup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void dispatch() {
+        long target = delivered + (long)EVENTS*listeners;
+        source.pending += EVENTS;
+        while (delivered < target) {
+            scheduler.run();
+        }
+    }
+
+    private static class DispatchHardware extends TestHardware {
+
+        private SampleSource source;
+
+        DispatchHardware(GraphManager gm) {
+            super(gm, new String[0]);
+        }
+
+        @Override
+        protected void createADInputStage(Pipe<GroveResponseSchema> masterResponsePipe) {
+            source = new SampleSource(gm, masterResponsePipe);
+        }
+    }
+
+    private static class SampleSource extends PronghornStage {
+
+        private final Pipe<GroveResponseSchema> output;
+        private int pending;
+        private int sent;
+
+        SampleSource(GraphManager gm, Pipe<GroveResponseSchema> output) {
+            super(gm, NONE, output);
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            while (pending > 0 && Pipe.hasRoomForWrite(output)) {
+                int size = Pipe.addMsgIdx(output, GroveResponseSchema.MSG_ANALOGSAMPLE_30);
+                Pipe.addIntValue(sent % Port.ANALOGS.length, output);
+                Pipe.addLongValue(sent, output);
+                Pipe.addIntValue(sent & 1023, output); //changes every sample
+                Pipe.addLongValue(0, output);
+                Pipe.addLongValue(System.nanoTime(), output);
+                Pipe.addLongValue(0, output);
+                Pipe.confirmLowLevelWrite(output, size);
+                Pipe.publishWrites(output);
+                sent++;
+                pending--;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ListenerDispatchBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -0,0 +1,95 @@
+package com.ociweb.pronghorn.iot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ociweb.iot.grove.simple_analog.SimpleAnalogTwig;
+import com.ociweb.iot.hardware.impl.test.TestHardware;
+import com.ociweb.iot.maker.Port;
+import com.ociweb.pronghorn.iot.schema.GroveResponseSchema;
+import com.ociweb.pronghorn.pipe.Pipe;
+import com.ociweb.pronghorn.pipe.PipeConfig;
+import com.ociweb.pronghorn.stage.scheduling.GraphManager;
+
+/**
+ * Polls analog sensors on {@link TestHardware} with the ReadDeviceInputStage at its fastest
+ * declared rate. The stage paces itself, so the sampled time between published samples is
+ * rateMS/connections when the poll loop keeps up. A regression shows as a higher mean or a
+ * longer tail, the tail is the jitter listeners see on a device.
+ *
+ * Run with main, reports the time between samples for each connection count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadDeviceInputBenchmark {
+
+    private static final int RATE_MS = 1;
+
+    @Param({"1", "4"})
+    public int connections;
+
+    private Pipe<GroveResponseSchema> pipe;
+    private ReadDeviceInputStage stage;
+
+    @Setup
+    public void setup() {
+        GraphManager gm = new GraphManager();
+        TestHardware hardware = new TestHardware(gm, new String[0]);
+        hardware.isInUnitTest = true;
+        for (int i = 0; i < connections; i++) {
+            hardware.connect(SimpleAnalogTwig.AngleSensor, Port.ANALOGS[i], RATE_MS, true);
+        }
+
+        pipe = new Pipe<GroveResponseSchema>(new PipeConfig<GroveResponseSchema>(GroveResponseSchema.instance, 64));
+        pipe.initBuffers();
+        stage = new ReadDeviceInputStage(gm, pipe, hardware);
+        stage.startup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        stage.shutdown();
+    }
+
+    /**
+     * @return AcquiredNS of the next sample.
+     */
+    @Benchmark
+    public long nextSample() {
+        while (!Pipe.hasContentToRead(pipe)) {
+            stage.run();
+        }
+        int msgIdx = Pipe.takeMsgIdx(pipe);
+        Pipe.takeInt(pipe);  //connector
+        Pipe.takeLong(pipe); //time
+        Pipe.takeInt(pipe);  //value
+        Pipe.takeLong(pipe); //PrevDuration
+        long acquiredNS = Pipe.takeLong(pipe);
+        Pipe.takeLong(pipe); //TransferNS
+        Pipe.confirmLowLevelRead(pipe, Pipe.sizeOf(pipe, msgIdx));
+        Pipe.releaseReadLock(pipe);
+        return acquiredNS;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReadDeviceInputBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.ociweb.iot.astropi.AstroPiTwig;
+import com.ociweb.iot.hardware.I2CConnection;
+
+public class I2CCoalescedReadPlanTest {
+
+    @Test
+    public void adjacentRegistersAreMerged() {
+
+        I2CConnection[] inputs = new I2CConnection[] {
+                AstroPiTwig.AstroPi.GetTempFromHumiditySensor.getI2CConnection(),
+                AstroPiTwig.AstroPi.GetHumidity.getI2CConnection(),
+                AstroPiTwig.AstroPi.GetPressure.getI2CConnection(),
+                AstroPiTwig.AstroPi.GetTempFromPressureSensor.getI2CConnection()
+        };
+
+        I2CCoalescedReadPlan plan = I2CCoalescedReadPlan.build(inputs);
+
+        assertEquals(2, plan.reads.length);
+        assertEquals(4, plan.responseCount());
+
+        int i = plan.reads.length;
+        while (--i>=0) {
+            I2CConnection[] group = plan.members[i];
+            assertEquals(2, group.length);
+            assertEquals(group[0].readBytes + group[1].readBytes, plan.reads[i].readBytes);
+            assertEquals(0, plan.offsets[i][0]);
+            assertEquals(group[0].readBytes, plan.offsets[i][1]);
+            assertEquals(group[0].readCmd[0], plan.reads[i].readCmd[0]);
+        }
+    }
+
+    @Test
+    public void gapsAreNotBridged() {
+
+        I2CConnection[] inputs = new I2CConnection[] {
+                AstroPiTwig.AstroPi.GetGyro.getI2CConnection(),
+                AstroPiTwig.AstroPi.GetAccel.getI2CConnection()
+        };
+
+        I2CCoalescedReadPlan plan = I2CCoalescedReadPlan.build(inputs);
+
+        assertEquals(2, plan.reads.length);
+        assertEquals(2, plan.responseCount());
+    }
+
+    @Test
+    public void directPlanKeepsEveryConnection() {
+
+        I2CConnection[] inputs = new I2CConnection[] {
+                AstroPiTwig.AstroPi.GetHumidity.getI2CConnection(),
+                AstroPiTwig.AstroPi.GetTempFromHumiditySensor.getI2CConnection()
+        };
+
+        I2CCoalescedReadPlan plan = I2CCoalescedReadPlan.direct(inputs);
+
+        assertEquals(2, plan.reads.length);
+        assertEquals(2, plan.responseCount());
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.ociweb.pronghorn.iot.i2c;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ociweb.iot.hardware.impl.test.TestHardware;
+import com.ociweb.iot.maker.FogApp;
+import com.ociweb.iot.maker.FogRuntime;
+import com.ociweb.iot.maker.Hardware;
+import com.ociweb.iot.maker.I2CService;
+import com.ociweb.pronghorn.iot.schema.I2CCommandSchema;
+import com.ociweb.pronghorn.pipe.DataOutputBlobWriter;
+import com.ociweb.pronghorn.stage.scheduling.ScriptedNonThreadScheduler;
+
+/**
+ * Sends batches of I2C writes from a command channel through the traffic cop and the
+ * I2CJFFIStage to the TestI2CBacking of {@link TestHardware}.
+ *
+ * Run with main, reports commands written to the backing per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class I2CCommandBenchmark {
+
+    private static final int BATCH = 16;
+    private static final int ADDRESS = 0x04; //not the LCD, so the backing does not print
+
+    private I2CService i2c;
+    private TestHardware hardware;
+    private ScriptedNonThreadScheduler scheduler;
+    private int value;
+
+    @Setup
+    public void setup() {
+        FogRuntime runtime = new FogRuntime(I2CCommandBenchmark.class.getSimpleName());
+        scheduler = FogRuntime.test(new FogApp() {
+
+            @Override
+            public void declareConnections(Hardware builder) {
+                builder.useI2C();
+            }
+
+            @Override
+            public void declareBehavior(FogRuntime runtime) {
+                i2c = runtime.newCommandChannel().newI2CService(BATCH, 8);
+            }
+        }, runtime);
+        hardware = (TestHardware)runtime.getHardware();
+        scheduler.startup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void writeBatch() {
+        while (!i2c.i2cIsReady(BATCH)) {
+            scheduler.run();
+        }
+        hardware.clearI2CWriteCount();
+        int i = BATCH;
+        while (--i>=0) {
+            DataOutputBlobWriter<I2CCommandSchema> writer = i2c.i2cCommandOpen(ADDRESS);
+            writer.writeByte(i);
+            writer.writeByte(value++);
+            i2c.i2cCommandClose(writer);
+        }
+        i2c.i2cFlushBatch();
+        while (hardware.getI2CWriteCount() < BATCH) {
+            scheduler.run();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(I2CCommandBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
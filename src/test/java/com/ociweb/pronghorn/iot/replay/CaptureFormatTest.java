@@ -0,0 +1,79 @@
+package com.ociweb.pronghorn.iot.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CaptureFormatTest {
+
+    @Test
+    public void recordsAreReadBackInOrder() throws IOException {
+
+        File file = File.createTempFile("capture", ".flic");
+        file.deleteOnExit();
+
+        byte[] ring = new byte[16];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = (byte)i;
+        }
+        byte[] frame = new byte[100_000]; //larger than the write buffer
+        Arrays.fill(frame, (byte)7);
+
+        FileChannel out = new RandomAccessFile(file, "rw").getChannel();
+        CaptureWriter writer = new CaptureWriter(out, 1024);
+        writer.header(1_500_000_000_000L);
+        writer.beginRecord(InputCapture.ANALOG, 5_000_000_000L);
+        writer.writeInt(2);
+        writer.writeTime(1_500_000_000_123L);
+        writer.writeInt(Integer.MIN_VALUE);
+        writer.writeLong(-1);
+        writer.beginRecord(InputCapture.I2C, 5_000_250_000L);
+        writer.writeTime(1_500_000_000_124L);
+        writer.writeBytes(ring, 14, 4, ring.length-1); //wraps the end of the ring
+        writer.beginRecord(InputCapture.IMAGE_FRAME, 5_001_000_000L);
+        writer.writeBytes(ByteBuffer.wrap(frame));
+        writer.flush();
+        assertEquals(null, writer.error());
+        out.close();
+
+        FileChannel in = new RandomAccessFile(file, "r").getChannel();
+        CaptureReader reader = new CaptureReader(in, 1024);
+        assertTrue(reader.readHeader());
+        assertEquals(1_500_000_000_000L, reader.epochMS);
+
+        assertTrue(reader.next());
+        assertEquals(InputCapture.ANALOG, reader.type);
+        assertEquals(0, reader.recordNS);
+        assertEquals(2, reader.readInt());
+        assertEquals(1_500_000_000_123L, reader.readTime());
+        assertEquals(Integer.MIN_VALUE, reader.readInt());
+        assertEquals(-1, reader.readLong());
+
+        assertTrue(reader.next());
+        assertEquals(InputCapture.I2C, reader.type);
+        assertEquals(250_000, reader.recordNS);
+        assertEquals(1_500_000_000_124L, reader.readTime());
+        assertEquals(4, reader.readBytes());
+        assertArrayEquals(new byte[]{14,15,0,1}, Arrays.copyOf(reader.bytes, 4));
+
+        assertTrue(reader.next());
+        assertEquals(InputCapture.IMAGE_FRAME, reader.type);
+        assertEquals(1_000_000, reader.recordNS);
+        assertEquals(frame.length, reader.readBytes());
+        assertArrayEquals(frame, Arrays.copyOf(reader.bytes, frame.length));
+
+        assertFalse(reader.next());
+        in.close();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.ociweb.pronghorn.iot.timing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        long previousHigh = -1;
+        for (int idx = 0; idx < LatencyHistogram.BUCKETS; idx++) {
+            long high = LatencyHistogram.highestInBucket(idx);
+            assertEquals(idx, LatencyHistogram.bucket(previousHigh+1));
+            assertEquals(idx, LatencyHistogram.bucket(high));
+            previousHigh = high;
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinAnEighth() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        for (long ns = 1; ns <= 1_000_000; ns++) {
+            h.record(ns*1000);
+        }
+        assertEquals(1_000_000, h.count());
+        assertEquals(1_000_000_000L, h.maxNS());
+        assertEquals(500_000_500L, h.meanNS());
+        assertWithin(500_000_000L, h.percentileNS(50));
+        assertWithin(990_000_000L, h.percentileNS(99));
+        assertEquals(1_000_000_000L, h.percentileNS(100));
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterValues() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        h.record(5);
+        h.record(-3); //counted as 0
+        LatencyHistogram s = h.snapshot();
+        h.record(1_000);
+        assertEquals(2, s.count());
+        assertEquals(5, s.maxNS());
+        assertEquals(5, s.percentileNS(100));
+        assertEquals(0, s.percentileNS(50));
+        assertEquals(3, h.count());
+        assertEquals(0, new LatencyHistogram("empty").percentileNS(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual+" for "+expected, actual >= expected && actual <= expected+expected/8);
+    }
+
+}